@@ -7,6 +7,7 @@ import android.content.res.Resources;
 import android.util.DisplayMetrics;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.collection.ArrayMap;
 import androidx.core.os.ConfigurationCompat;
@@ -28,11 +29,13 @@ import io.github.muntashirakon.AppManager.debloat.SuggestionObject;
 import io.github.muntashirakon.AppManager.misc.VMRuntime;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.FileUtils;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 
 public class StaticDataset {
     private static String[] sTrackerCodeSignatures;
     private static String[] sTrackerNames;
     private static List<DebloatObject> sDebloatObjects;
+    private static Map<String, DebloatObject> sDebloatObjectIndex;
 
     public static final String ARMEABI_V7A = "armeabi_v7a";
     public static final String ARM64_V8A = "arm64_v8a";
@@ -98,24 +101,57 @@ public class StaticDataset {
 
     @WorkerThread
     public static List<DebloatObject> getDebloatObjects() {
-        if (sDebloatObjects == null) {
-            sDebloatObjects = loadDebloatObjects(ContextUtils.getContext(), new Gson());
-        }
+        ensureDebloatObjectsLoaded(ContextUtils.getContext());
         return sDebloatObjects;
     }
 
+    /**
+     * Look up the bloatware entry of the given package in constant time.
+     *
+     * @return The matching {@link DebloatObject}, or {@code null} if the package is not listed
+     */
+    @WorkerThread
+    @Nullable
+    public static DebloatObject getDebloatObject(@NonNull String packageName) {
+        ensureDebloatObjectsLoaded(ContextUtils.getContext());
+        return sDebloatObjectIndex.get(packageName);
+    }
+
     @WorkerThread
     public static List<DebloatObject> getDebloatObjectsWithInstalledInfo(@NonNull Context context) {
         AppDb appDb = new AppDb();
-        if (sDebloatObjects == null) {
-            sDebloatObjects = loadDebloatObjects(context, new Gson());
+        ensureDebloatObjectsLoaded(context);
+        PackageSnapshot snapshot;
+        try {
+            snapshot = PackageSnapshot.getInstance();
+        } catch (InterruptedException e) {
+            // Fall back to fetching the installed packages one by one
+            snapshot = null;
         }
         for (DebloatObject debloatObject : sDebloatObjects) {
-            debloatObject.fillInstallInfo(context, appDb);
+            debloatObject.fillInstallInfo(context, appDb, snapshot);
         }
         return sDebloatObjects;
     }
 
+    @WorkerThread
+    private static synchronized void ensureDebloatObjectsLoaded(@NonNull Context context) {
+        if (sDebloatObjects != null) {
+            return;
+        }
+        List<DebloatObject> debloatObjects = loadDebloatObjects(context, new Gson());
+        Map<String, DebloatObject> debloatObjectIndex = new HashMap<>(debloatObjects.size());
+        for (DebloatObject debloatObject : debloatObjects) {
+            // Keep the first entry in case the list contains duplicates, as the linear search used to do
+            if (!debloatObjectIndex.containsKey(debloatObject.packageName)) {
+                debloatObjectIndex.put(debloatObject.packageName, debloatObject);
+            }
+        }
+        // Publish the index first so that readers never see the list without its index
+        sDebloatObjectIndex = debloatObjectIndex;
+        sDebloatObjects = debloatObjects;
+    }
+
     @NonNull
     @WorkerThread
     private static List<DebloatObject> loadDebloatObjects(@NonNull Context context, @NonNull Gson gson) {
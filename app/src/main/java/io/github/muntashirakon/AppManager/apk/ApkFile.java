@@ -23,7 +23,6 @@ import android.util.DisplayMetrics;
 import android.util.SparseIntArray;
 
 import androidx.annotation.AnyThread;
-import androidx.annotation.GuardedBy;
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -110,31 +109,55 @@ public final class ApkFile implements AutoCloseable {
 
     @AnyThread
     static int createInstance(Uri apkUri, @Nullable String mimeType) throws ApkFileException {
-        synchronized (sApkFiles) {
-            int key = getUniqueKey();
+        int key = reserveUniqueKey();
+        try {
             ApkFile apkFile = new ApkFile(apkUri, mimeType, key);
-            sApkFiles.put(key, apkFile);
+            synchronized (sApkFiles) {
+                sApkFiles.put(key, apkFile);
+            }
             return key;
+        } catch (Throwable th) {
+            releaseKey(key);
+            throw th;
         }
     }
 
     @AnyThread
     static int createInstance(ApplicationInfo info) throws ApkFileException {
-        synchronized (sApkFiles) {
-            int key = getUniqueKey();
+        int key = reserveUniqueKey();
+        try {
             ApkFile apkFile = new ApkFile(info, key);
-            sApkFiles.put(key, apkFile);
+            synchronized (sApkFiles) {
+                sApkFiles.put(key, apkFile);
+            }
+            return key;
+        } catch (Throwable th) {
+            releaseKey(key);
+            throw th;
+        }
+    }
+
+    /**
+     * Reserve a key so that the (possibly lengthy) parsing of an APK file does not block the other instances from
+     * being created or retrieved.
+     */
+    @AnyThread
+    private static int reserveUniqueKey() {
+        synchronized (sApkFiles) {
+            int key;
+            do {
+                key = ThreadLocalRandom.current().nextInt();
+            } while (sApkFiles.containsKey(key));
+            sApkFiles.put(key, null);
             return key;
         }
     }
 
-    @GuardedBy("sApkFiles")
-    private static int getUniqueKey() {
-        int key;
-        do {
-            key = ThreadLocalRandom.current().nextInt();
-        } while (sApkFiles.containsKey(key));
-        return key;
+    @AnyThread
+    private static void releaseKey(int key) {
+        synchronized (sApkFiles) {
+            sApkFiles.remove(key);
+        }
     }
 
     @IntDef(value = {
@@ -301,38 +324,47 @@ public final class ApkFile implements AutoCloseable {
             } catch (IOException e) {
                 throw new ApkFileException(e);
             }
+            // The APK files stored (i.e. not compressed) in the bundle can be read in place
+            MappedZipFile mappedBundle;
+            try {
+                mappedBundle = MappedZipFile.open(mCacheFilePath);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not map %s, APK files will be read sequentially", e, mCacheFilePath);
+                mappedBundle = null;
+            }
             Enumeration<? extends ZipEntry> zipEntries = mZipFile.entries();
             while (zipEntries.hasMoreElements()) {
                 ZipEntry zipEntry = zipEntries.nextElement();
                 if (zipEntry.isDirectory()) continue;
                 String fileName = FileUtils.getFilenameFromZipEntry(zipEntry);
                 if (fileName.endsWith(".apk")) { // APK is more likely to match
-                    try (InputStream zipInputStream = mZipFile.getInputStream(zipEntry)) {
-                        // Get manifest attributes
-                        ByteBuffer manifest;
-                        HashMap<String, String> manifestAttrs;
-                        try {
-                            manifest = getManifestFromApk(zipInputStream);
-                            manifestAttrs = getManifestAttributes(manifest);
-                        } catch (IOException e) {
-                            throw new ApkFileException("Manifest not found.", e);
-                        }
-                        if (manifestAttrs.containsKey("split")) {
-                            // TODO: check for duplicates
-                            Entry entry = new Entry(fileName, zipEntry, APK_SPLIT, manifest, manifestAttrs);
-                            mEntries.add(entry);
-                        } else {
-                            if (mBaseEntry != null) {
-                                throw new RuntimeException("Duplicate base apk found.");
+                    // Get manifest attributes
+                    ByteBuffer manifest;
+                    HashMap<String, String> manifestAttrs;
+                    try {
+                        manifest = getManifestFromStoredApk(mappedBundle, zipEntry.getName());
+                        if (manifest == null) {
+                            try (InputStream zipInputStream = mZipFile.getInputStream(zipEntry)) {
+                                manifest = getManifestFromApk(zipInputStream);
                             }
-                            mBaseEntry = new Entry(fileName, zipEntry, APK_BASE, manifest, manifestAttrs);
-                            mEntries.add(mBaseEntry);
-                            if (manifestAttrs.containsKey(ATTR_PACKAGE)) {
-                                packageName = manifestAttrs.get(ATTR_PACKAGE);
-                            } else throw new RuntimeException("Package name not found.");
                         }
+                        manifestAttrs = getManifestAttributes(manifest);
                     } catch (IOException e) {
-                        throw new ApkFileException(e);
+                        throw new ApkFileException("Manifest not found.", e);
+                    }
+                    if (manifestAttrs.containsKey("split")) {
+                        // TODO: check for duplicates
+                        Entry entry = new Entry(fileName, zipEntry, APK_SPLIT, manifest, manifestAttrs);
+                        mEntries.add(entry);
+                    } else {
+                        if (mBaseEntry != null) {
+                            throw new RuntimeException("Duplicate base apk found.");
+                        }
+                        mBaseEntry = new Entry(fileName, zipEntry, APK_BASE, manifest, manifestAttrs);
+                        mEntries.add(mBaseEntry);
+                        if (manifestAttrs.containsKey(ATTR_PACKAGE)) {
+                            packageName = manifestAttrs.get(ATTR_PACKAGE);
+                        } else throw new RuntimeException("Package name not found.");
                     }
                 } else if (fileName.equals(ApksMetadata.META_FILE)) {
                     try {
@@ -369,6 +401,28 @@ public final class ApkFile implements AutoCloseable {
         mPackageName = packageName;
     }
 
+    /**
+     * Read the manifest of an APK file stored in the bundle without extracting the APK file.
+     *
+     * @return The manifest, or {@code null} if the APK file is compressed or could not be read this way.
+     */
+    @Nullable
+    private static ByteBuffer getManifestFromStoredApk(@Nullable MappedZipFile bundle, @NonNull String entryName) {
+        if (bundle == null) {
+            return null;
+        }
+        MappedZipFile.Entry entry = bundle.getEntry(entryName);
+        if (entry == null || !entry.isStored()) {
+            return null;
+        }
+        try {
+            return getManifestFromApk(new MappedZipFile(bundle.getStoredData(entry)));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the manifest of %s in place", e, entryName);
+            return null;
+        }
+    }
+
     private ApkFile(@NonNull ApplicationInfo info, int sparseArrayKey) throws ApkFileException {
         mSparseArrayKey = sparseArrayKey;
         mPackageName = info.packageName;
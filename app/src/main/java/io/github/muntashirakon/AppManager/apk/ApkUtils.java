@@ -12,15 +12,17 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.RemoteException;
 import android.os.UserHandleHidden;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.core.content.pm.PackageInfoCompat;
 
-import com.reandroid.xml.XMLAttribute;
-import com.reandroid.xml.XMLDocument;
-import com.reandroid.xml.XMLElement;
+import com.reandroid.arsc.chunk.xml.ResXmlPullParser;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
@@ -31,6 +33,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -133,6 +136,11 @@ public final class ApkUtils {
 
     @NonNull
     public static ByteBuffer getManifestFromApk(File apkFile) throws IOException {
+        try {
+            return getManifestFromApk(MappedZipFile.open(apkFile));
+        } catch (IOException e) {
+            Log.w("ApkUtils", "Could not read %s as a mapped file, falling back to ZipFile", e, apkFile);
+        }
         try (ZipFile zipFile = new ZipFile(apkFile)) {
             Enumeration<? extends ZipEntry> archiveEntries = zipFile.entries();
             ZipEntry zipEntry;
@@ -155,6 +163,18 @@ public final class ApkUtils {
         throw new IOException("Error getting the manifest file.");
     }
 
+    /**
+     * Read the manifest from an APK file that is already opened (or mapped), e.g. an APK file stored in a bundle.
+     */
+    @NonNull
+    public static ByteBuffer getManifestFromApk(@NonNull MappedZipFile apkFile) throws IOException {
+        MappedZipFile.Entry manifestEntry = apkFile.getEntry(MANIFEST_FILE);
+        if (manifestEntry == null) {
+            throw new IOException("Error getting the manifest file.");
+        }
+        return ByteBuffer.wrap(apkFile.getBytes(manifestEntry));
+    }
+
     @NonNull
     public static ByteBuffer getManifestFromApk(InputStream apkInputStream) throws IOException {
         try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(apkInputStream))) {
@@ -183,39 +203,50 @@ public final class ApkUtils {
         return byteBuffer;
     }
 
+    /**
+     * Return the attributes of the manifest and the application elements. Only the beginning of the manifest is
+     * decoded, the rest of the document is skipped.
+     */
     @NonNull
     public static HashMap<String, String> getManifestAttributes(@NonNull ByteBuffer manifestBytes)
             throws ApkFile.ApkFileException, IOException {
         HashMap<String, String> manifestAttrs = new HashMap<>();
-        XMLDocument xmlDocument = AndroidBinXmlDecoder.decodeToXml(manifestBytes);
-        XMLElement manifestElement = xmlDocument.getDocumentElement();
-        if (!"manifest".equals(manifestElement.getName())) {
-            throw new ApkFile.ApkFileException("No manifest found.");
-        }
-        for (XMLAttribute attribute : manifestElement.listAttributes()) {
-            if (attribute.getName().isEmpty()) {
-                continue;
-            }
-            manifestAttrs.put(attribute.getName(), attribute.getValue());
-        }
-        XMLElement androidElement = null;
-        for (XMLElement elem : manifestElement.getChildElementList()) {
-            if ("application".equals(elem.getName())) {
-                androidElement = elem;
-                break;
+        try (ResXmlPullParser parser = AndroidBinXmlDecoder.newPullParser(manifestBytes)) {
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                int depth = parser.getDepth();
+                if (depth == 1) {
+                    if (!"manifest".equals(parser.getName())) {
+                        throw new ApkFile.ApkFileException("No manifest found.");
+                    }
+                    putAttributes(parser, manifestAttrs);
+                } else if (depth == 2 && "application".equals(parser.getName())) {
+                    putAttributes(parser, manifestAttrs);
+                    return manifestAttrs;
+                }
             }
+        } catch (XmlPullParserException e) {
+            throw new IOException(e);
         }
-        if (androidElement == null) {
-            Log.w("ApkUtils", "No application element found while parsing APK.");
-            return manifestAttrs;
+        if (manifestAttrs.isEmpty()) {
+            throw new ApkFile.ApkFileException("No manifest found.");
         }
-        for (XMLAttribute attribute : androidElement.listAttributes()) {
-            if (attribute.getName().isEmpty()) {
+        Log.w("ApkUtils", "No application element found while parsing APK.");
+        return manifestAttrs;
+    }
+
+    private static void putAttributes(@NonNull ResXmlPullParser parser, @NonNull Map<String, String> attrs) {
+        for (int i = 0; i < parser.getAttributeCount(); ++i) {
+            String name = parser.getAttributeName(i);
+            if (TextUtils.isEmpty(name)) {
                 continue;
             }
-            manifestAttrs.put(attribute.getName(), attribute.getValue());
+            String prefix = parser.getAttributePrefix(i);
+            attrs.put(TextUtils.isEmpty(prefix) ? name : prefix + ":" + name, parser.getAttributeValue(i));
         }
-        return manifestAttrs;
     }
 
     public static boolean hasObbFiles(@NonNull String packageName, @UserIdInt int userId) {
@@ -0,0 +1,280 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only zip archive backed by a {@link ByteBuffer}, usually a memory-mapped file. Only the central directory is
+ * read when opening the archive. The contents of a stored (i.e. uncompressed) entry are available as a slice of the
+ * buffer without any copying, which allows reading the APK files stored in an APKS bundle without extracting them.
+ * <p>
+ * Zip64 archives are not supported, {@link java.util.zip.ZipFile} should be used as a fallback.
+ */
+public final class MappedZipFile {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    public static final class Entry {
+        @NonNull
+        private final String mName;
+        private final int mMethod;
+        private final long mCrc;
+        private final long mCompressedSize;
+        private final long mSize;
+        private final long mLocalHeaderOffset;
+
+        private Entry(@NonNull String name, int method, long crc, long compressedSize, long size,
+                      long localHeaderOffset) {
+            mName = name;
+            mMethod = method;
+            mCrc = crc;
+            mCompressedSize = compressedSize;
+            mSize = size;
+            mLocalHeaderOffset = localHeaderOffset;
+        }
+
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+
+        public long getCompressedSize() {
+            return mCompressedSize;
+        }
+
+        public boolean isStored() {
+            return mMethod == ZipEntry.STORED;
+        }
+
+        public boolean isDirectory() {
+            return mName.endsWith("/");
+        }
+    }
+
+    /**
+     * Map the file into memory and read its central directory. The mapping remains valid after the file is deleted.
+     *
+     * @throws IOException If the file could not be mapped or is not a supported zip archive
+     */
+    @WorkerThread
+    @NonNull
+    public static MappedZipFile open(@NonNull File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("File is too large to be mapped: " + file);
+            }
+            return new MappedZipFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @NonNull
+    private final ByteBuffer mBuffer;
+    private final List<Entry> mEntries;
+    private final Map<String, Entry> mEntryMap;
+
+    /**
+     * Read a zip archive from the remaining bytes of the buffer. The buffer itself is not modified.
+     *
+     * @throws ZipException If the buffer does not contain a supported zip archive
+     */
+    public MappedZipFile(@NonNull ByteBuffer buffer) throws ZipException {
+        mBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        mEntries = readCentralDirectory();
+        mEntryMap = new HashMap<>(mEntries.size());
+        for (Entry entry : mEntries) {
+            mEntryMap.put(entry.mName, entry);
+        }
+    }
+
+    /**
+     * All the entries in the order of the central directory.
+     */
+    @NonNull
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    @Nullable
+    public Entry getEntry(@NonNull String name) {
+        return mEntryMap.get(name);
+    }
+
+    /**
+     * Return the contents of a stored entry as a read-only slice of the archive.
+     *
+     * @throws ZipException If the entry is compressed or its local header is invalid
+     */
+    @NonNull
+    public ByteBuffer getStoredData(@NonNull Entry entry) throws ZipException {
+        if (!entry.isStored()) {
+            throw new ZipException("Entry " + entry.mName + " is not stored.");
+        }
+        return getRawData(entry);
+    }
+
+    /**
+     * Return the uncompressed contents of an entry. Meant for small entries such as AndroidManifest.xml.
+     *
+     * @throws ZipException If the entry is invalid, too large or uses an unsupported compression method
+     */
+    @NonNull
+    public byte[] getBytes(@NonNull Entry entry) throws ZipException {
+        if (entry.mSize > Integer.MAX_VALUE) {
+            throw new ZipException("Entry " + entry.mName + " is too large.");
+        }
+        ByteBuffer rawData = getRawData(entry);
+        byte[] bytes = new byte[(int) entry.mSize];
+        if (entry.isStored()) {
+            if (rawData.remaining() != bytes.length) {
+                throw new ZipException("Invalid size of entry " + entry.mName);
+            }
+            rawData.get(bytes);
+        } else if (entry.mMethod == ZipEntry.DEFLATED) {
+            byte[] compressed = new byte[rawData.remaining()];
+            rawData.get(compressed);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < bytes.length) {
+                    int count = inflater.inflate(bytes, n, bytes.length - n);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += count;
+                }
+                if (n != bytes.length) {
+                    throw new ZipException("Invalid size of entry " + entry.mName);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid data in entry " + entry.mName + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new ZipException("Unsupported compression method " + entry.mMethod + " for " + entry.mName);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        if (crc32.getValue() != entry.mCrc) {
+            throw new ZipException("CRC mismatch for entry " + entry.mName);
+        }
+        return bytes;
+    }
+
+    @NonNull
+    private ByteBuffer getRawData(@NonNull Entry entry) throws ZipException {
+        long headerOffset = entry.mLocalHeaderOffset;
+        if (headerOffset + LOCAL_HEADER_SIZE > mBuffer.limit()
+                || mBuffer.getInt((int) headerOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry " + entry.mName);
+        }
+        int offset = (int) headerOffset;
+        long dataOffset = headerOffset + LOCAL_HEADER_SIZE + getUInt16(offset + 26) + getUInt16(offset + 28);
+        if (dataOffset + entry.mCompressedSize > mBuffer.limit()) {
+            throw new ZipException("Entry " + entry.mName + " is out of bounds.");
+        }
+        ByteBuffer data = mBuffer.duplicate();
+        data.limit((int) (dataOffset + entry.mCompressedSize));
+        data.position((int) dataOffset);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    @NonNull
+    private List<Entry> readCentralDirectory() throws ZipException {
+        int limit = mBuffer.limit();
+        if (limit < END_OF_CENTRAL_DIR_SIZE) {
+            throw new ZipException("Not a zip archive.");
+        }
+        // The end of central directory record is followed by a comment of variable length
+        int endOffset = -1;
+        int minOffset = Math.max(0, limit - END_OF_CENTRAL_DIR_SIZE - MAX_COMMENT_SIZE);
+        for (int i = limit - END_OF_CENTRAL_DIR_SIZE; i >= minOffset; --i) {
+            if (mBuffer.getInt(i) == END_OF_CENTRAL_DIR_SIGNATURE
+                    && i + END_OF_CENTRAL_DIR_SIZE + getUInt16(i + 20) <= limit) {
+                endOffset = i;
+                break;
+            }
+        }
+        if (endOffset == -1) {
+            throw new ZipException("End of central directory not found.");
+        }
+        int count = getUInt16(endOffset + 10);
+        long size = getUInt32(endOffset + 12);
+        long offset = getUInt32(endOffset + 16);
+        if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+            throw new ZipException("Zip64 archives are not supported.");
+        }
+        if (offset + size > endOffset) {
+            throw new ZipException("Invalid central directory.");
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        int position = (int) offset;
+        int end = (int) (offset + size);
+        for (int i = 0; i < count; ++i) {
+            if (position + CENTRAL_HEADER_SIZE > end || mBuffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry at " + position);
+            }
+            int method = getUInt16(position + 10);
+            long crc = getUInt32(position + 16);
+            long compressedSize = getUInt32(position + 20);
+            long uncompressedSize = getUInt32(position + 24);
+            int nameLength = getUInt16(position + 28);
+            int extraLength = getUInt16(position + 30);
+            int commentLength = getUInt16(position + 32);
+            long localHeaderOffset = getUInt32(position + 42);
+            int nameOffset = position + CENTRAL_HEADER_SIZE;
+            if (nameOffset + nameLength > end) {
+                throw new ZipException("Invalid central directory entry at " + position);
+            }
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = mBuffer.duplicate();
+            nameBuffer.position(nameOffset);
+            nameBuffer.get(nameBytes);
+            entries.add(new Entry(new String(nameBytes, StandardCharsets.UTF_8), method, crc, compressedSize,
+                    uncompressedSize, localHeaderOffset));
+            position = nameOffset + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private int getUInt16(int offset) {
+        return mBuffer.getShort(offset) & 0xffff;
+    }
+
+    private long getUInt32(int offset) {
+        return mBuffer.getInt(offset) & 0xffffffffL;
+    }
+}
@@ -48,8 +48,13 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import aosp.libcore.util.EmptyArray;
 import dev.rikka.tools.refine.Refine;
@@ -66,10 +71,10 @@ import io.github.muntashirakon.AppManager.self.SelfPermissions;
 import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.BroadcastUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
-import io.github.muntashirakon.AppManager.utils.FileUtils;
 import io.github.muntashirakon.AppManager.utils.MiuiUtils;
 import io.github.muntashirakon.AppManager.utils.ThreadUtils;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
+import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 
 // FIXME: 21/1/23 This class has too many design issues that has to be addressed at some later time.
@@ -78,6 +83,9 @@ import io.github.muntashirakon.io.Path;
 public final class PackageInstallerCompat {
     public static final String TAG = PackageInstallerCompat.class.getSimpleName();
 
+    // Maximum number of APK files written to a session at the same time
+    private static final int MAX_PARALLEL_WRITES = 4;
+
     public static final String ACTION_INSTALL_STARTED = BuildConfig.APPLICATION_ID + ".action.INSTALL_STARTED";
     public static final String ACTION_INSTALL_COMPLETED = BuildConfig.APPLICATION_ID + ".action.INSTALL_COMPLETED";
     // For rootless installer to prevent PackageInstallerService from hanging
@@ -620,38 +628,41 @@ public final class PackageInstallerCompat {
             if (!openSession(userId, installFlags, options.getInstallerName(), options.getInstallLocation())) {
                 return false;
             }
-            List<ApkFile.Entry> selectedEntries = new ArrayList<>();
+            boolean signApkFiles = options.isSignApkFiles();
+            List<SessionApk> sessionApks = new ArrayList<>();
             long totalSize = 0;
             for (ApkFile.Entry entry : apkFile.getEntries()) {
                 if (selectedSplitIds.contains(entry.id)) {
-                    selectedEntries.add(entry);
-                    try {
-                        totalSize += entry.getFile(options.isSignApkFiles()).length();
-                    } catch (IOException e) {
+                    long entrySize;
+                    if (signApkFiles) {
+                        // Signing requires the APK files to be cached first
+                        entrySize = entry.getFileSize(true);
+                    } else {
+                        // Streamed directly from the source without caching
+                        try {
+                            entrySize = entry.getFileSize();
+                        } catch (RuntimeException e) {
+                            // Malformed or unreadable archive
+                            Log.w(TAG, "Install: Cannot read the size of %s.", e, entry.name);
+                            entrySize = -1;
+                        }
+                        if (entrySize < 0) {
+                            entrySize = entry.getFileSize(false);
+                        }
+                    }
+                    if (entrySize < 0) {
                         callFinish(STATUS_FAILURE_INVALID);
-                        Log.e(TAG, "Install: Cannot retrieve the selected APK files.", e);
+                        Log.e(TAG, "Install: Cannot retrieve the selected APK file %s.", entry.name);
                         return abandon();
                     }
+                    totalSize += entrySize;
+                    sessionApks.add(new SessionApk(entry.getFileName(), entrySize, () -> entry.getInputStream(signApkFiles)));
                 }
             }
             Log.d(TAG, "Install: selected entries: %s", selectedSplitIds);
             // Write apk files
-            for (ApkFile.Entry entry : selectedEntries) {
-                long entrySize = entry.getFileSize(options.isSignApkFiles());
-                try (InputStream apkInputStream = entry.getInputStream(options.isSignApkFiles());
-                     OutputStream apkOutputStream = mSession.openWrite(entry.getFileName(), 0, entrySize)) {
-                    FileUtils.copy(apkInputStream, apkOutputStream, totalSize, progressHandler);
-                    mSession.fsync(apkOutputStream);
-                    Log.d(TAG, "Install: copied entry %s", entry.name);
-                } catch (IOException e) {
-                    callFinish(STATUS_FAILURE_SESSION_WRITE);
-                    Log.e(TAG, "Install: Cannot copy files to session.", e);
-                    return abandon();
-                } catch (SecurityException e) {
-                    callFinish(STATUS_FAILURE_SECURITY);
-                    Log.e(TAG, "Install: Cannot access apk files.", e);
-                    return abandon();
-                }
+            if (!writeApks(sessionApks, totalSize, progressHandler)) {
+                return abandon();
             }
             Log.d(TAG, "Install: Running installation...");
             // Commit
@@ -692,25 +703,16 @@ public final class PackageInstallerCompat {
             if (!openSession(userId, installFlags, options.getInstallerName(), options.getInstallLocation())) {
                 return false;
             }
+            List<SessionApk> sessionApks = new ArrayList<>(apkFiles.length);
             long totalSize = 0;
             for (Path apkFile : apkFiles) {
-                totalSize += apkFile.length();
+                long size = apkFile.length();
+                totalSize += size;
+                sessionApks.add(new SessionApk(apkFile.getName(), size, apkFile::openInputStream));
             }
             // Write apk files
-            for (Path apkFile : apkFiles) {
-                try (InputStream apkInputStream = apkFile.openInputStream();
-                     OutputStream apkOutputStream = mSession.openWrite(apkFile.getName(), 0, apkFile.length())) {
-                    FileUtils.copy(apkInputStream, apkOutputStream, totalSize, progressHandler);
-                    mSession.fsync(apkOutputStream);
-                } catch (IOException e) {
-                    callFinish(STATUS_FAILURE_SESSION_WRITE);
-                    Log.e(TAG, "Install: Cannot copy files to session.", e);
-                    return abandon();
-                } catch (SecurityException e) {
-                    callFinish(STATUS_FAILURE_SECURITY);
-                    Log.e(TAG, "Install: Cannot access apk files.", e);
-                    return abandon();
-                }
+            if (!writeApks(sessionApks, totalSize, progressHandler)) {
+                return abandon();
             }
             // Commit
             return commit(userId);
@@ -719,6 +721,115 @@ public final class PackageInstallerCompat {
         }
     }
 
+    private interface InputStreamOpener {
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    private static class SessionApk {
+        @NonNull
+        public final String name;
+        public final long size;
+        @NonNull
+        public final InputStreamOpener opener;
+
+        SessionApk(@NonNull String name, long size, @NonNull InputStreamOpener opener) {
+            this.name = name;
+            this.size = size;
+            this.opener = opener;
+        }
+    }
+
+    /**
+     * Write the APK files to the session. Each APK file is streamed into its own session file, and up to
+     * {@link #MAX_PARALLEL_WRITES} of them are written at the same time. The first failure cancels the remaining
+     * writes.
+     *
+     * @return {@code true} if all the APK files were written, {@code false} otherwise, in which case the session must
+     * be abandoned by the caller.
+     */
+    @WorkerThread
+    private boolean writeApks(@NonNull List<SessionApk> sessionApks, long totalSize,
+                              @Nullable ProgressHandler progressHandler) {
+        long startTime = System.currentTimeMillis();
+        float lastProgress = progressHandler != null ? progressHandler.getLastProgress() : 0;
+        AtomicLong bytesWritten = new AtomicLong();
+        int threadCount = Math.min(sessionApks.size(), MAX_PARALLEL_WRITES);
+        if (threadCount <= 1) {
+            for (SessionApk sessionApk : sessionApks) {
+                int status = writeApk(sessionApk, totalSize, lastProgress, bytesWritten, progressHandler);
+                if (status != STATUS_SUCCESS) {
+                    callFinish(status);
+                    return false;
+                }
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>(sessionApks.size());
+                for (SessionApk sessionApk : sessionApks) {
+                    futures.add(executor.submit(() -> writeApk(sessionApk, totalSize, lastProgress, bytesWritten,
+                            progressHandler)));
+                }
+                for (Future<Integer> future : futures) {
+                    int status;
+                    try {
+                        status = future.get();
+                    } catch (ExecutionException e) {
+                        Log.e(TAG, "Install: Cannot copy files to session.", e);
+                        status = STATUS_FAILURE_SESSION_WRITE;
+                    } catch (InterruptedException e) {
+                        Log.e(TAG, "Install: Interrupted while copying files to session.", e);
+                        Thread.currentThread().interrupt();
+                        status = STATUS_FAILURE_ABORTED;
+                    }
+                    if (status != STATUS_SUCCESS) {
+                        for (Future<Integer> f : futures) {
+                            f.cancel(true);
+                        }
+                        callFinish(status);
+                        return false;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        Log.d(TAG, "Install: wrote %d files (%d bytes) in %d ms", sessionApks.size(), bytesWritten.get(),
+                System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    @WorkerThread
+    private int writeApk(@NonNull SessionApk sessionApk, long totalSize, float lastProgress,
+                         @NonNull AtomicLong bytesWritten, @Nullable ProgressHandler progressHandler) {
+        try (InputStream apkInputStream = sessionApk.opener.open();
+             OutputStream apkOutputStream = mSession.openWrite(sessionApk.name, 0, sessionApk.size)) {
+            long[] lastCount = new long[1];
+            // The listener is run on this thread, the progress is shared by all the writes
+            IoUtils.copy(apkInputStream, apkOutputStream, Runnable::run, progress -> {
+                long written = bytesWritten.addAndGet(progress - lastCount[0]);
+                lastCount[0] = progress;
+                if (progressHandler != null && totalSize > 0) {
+                    progressHandler.postUpdate(100, lastProgress + (written * 100f / totalSize));
+                }
+            });
+            mSession.fsync(apkOutputStream);
+            Log.d(TAG, "Install: copied entry %s", sessionApk.name);
+            return STATUS_SUCCESS;
+        } catch (IOException e) {
+            Log.e(TAG, "Install: Cannot copy files to session.", e);
+            return STATUS_FAILURE_SESSION_WRITE;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Install: Cannot access apk files.", e);
+            return STATUS_FAILURE_SECURITY;
+        } catch (RuntimeException e) {
+            // Malformed or unreadable archive
+            Log.e(TAG, "Install: Cannot read apk files.", e);
+            return STATUS_FAILURE_SESSION_WRITE;
+        }
+    }
+
     private boolean commit(int userId) {
         IntentSender sender;
         LocalIntentReceiver intentReceiver;
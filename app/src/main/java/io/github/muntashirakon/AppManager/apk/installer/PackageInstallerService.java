@@ -21,17 +21,31 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.PowerManager;
+import android.os.SystemClock;
 
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.app.PendingIntentCompat;
 import androidx.core.app.ServiceCompat;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.BuildConfig;
 import io.github.muntashirakon.AppManager.R;
@@ -41,12 +55,14 @@ import io.github.muntashirakon.AppManager.apk.CachedApkSource;
 import io.github.muntashirakon.AppManager.apk.behavior.DexOptimizer;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.intercept.IntentCompat;
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.main.MainActivity;
 import io.github.muntashirakon.AppManager.progress.NotificationProgressHandler;
 import io.github.muntashirakon.AppManager.progress.NotificationProgressHandler.NotificationInfo;
 import io.github.muntashirakon.AppManager.progress.ProgressHandler;
 import io.github.muntashirakon.AppManager.progress.QueuedProgressHandler;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
+import io.github.muntashirakon.AppManager.settings.Prefs;
 import io.github.muntashirakon.AppManager.types.ForegroundService;
 import io.github.muntashirakon.AppManager.types.UserPackagePair;
 import io.github.muntashirakon.AppManager.utils.CpuUtils;
@@ -55,6 +71,8 @@ import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.ThreadUtils;
 
 public class PackageInstallerService extends ForegroundService {
+    public static final String TAG = PackageInstallerService.class.getSimpleName();
+
     public static final String EXTRA_QUEUE_ITEM = "queue_item";
     public static final String CHANNEL_ID = BuildConfig.APPLICATION_ID + ".channel.INSTALL";
 
@@ -75,6 +93,16 @@ public class PackageInstallerService extends ForegroundService {
     private QueuedProgressHandler mProgressHandler;
     private NotificationInfo mNotificationInfo;
     private PowerManager.WakeLock mWakeLock;
+    // Queued items are prepared (parsed, and signed if requested) in advance while the current item is being
+    // installed. The installations themselves are still carried out one at a time in the queued order.
+    private final Object mPrepareLock = new Object();
+    @GuardedBy("mPrepareLock")
+    private final List<Intent> mQueuedIntents = new ArrayList<>();
+    @GuardedBy("mPrepareLock")
+    private final Map<Intent, PreparedApkFile> mPreparedApkFiles = new HashMap<>();
+    @GuardedBy("mPrepareLock")
+    @Nullable
+    private ExecutorService mPrepareExecutor;
 
     @Override
     public void onCreate() {
@@ -108,8 +136,12 @@ public class PackageInstallerService extends ForegroundService {
     @Override
     protected void onHandleIntent(@Nullable Intent intent) {
         if (intent == null) return;
+        PreparedApkFile preparedApkFile = takePreparedApkFile(intent);
         ApkQueueItem apkQueueItem = IntentCompat.getParcelableExtra(intent, EXTRA_QUEUE_ITEM, ApkQueueItem.class);
         if (apkQueueItem == null) {
+            if (preparedApkFile != null) {
+                preparedApkFile.discard();
+            }
             return;
         }
         InstallerOptions options = apkQueueItem.getInstallerOptions() != null
@@ -171,7 +203,19 @@ public class PackageInstallerService extends ForegroundService {
             // ApkFile/Uri
             ApkFile apkFile;
             ApkSource apkSource = apkQueueItem.getApkSource();
-            if (apkSource != null) {
+            long startTime = SystemClock.elapsedRealtime();
+            if (preparedApkFile != null) {
+                // Prepared in advance
+                try {
+                    apkFile = preparedApkFile.future.get();
+                } catch (ExecutionException | InterruptedException | CancellationException e) {
+                    // Could not prepare ApkFile for some reason, abort
+                    Log.e(TAG, "Could not prepare %s", e, apkQueueItem.getAppLabel());
+                    // The preparation may still be running if interrupted
+                    preparedApkFile.discard();
+                    return;
+                }
+            } else if (apkSource != null) {
                 // ApkFile set
                 try {
                     apkFile = apkSource.resolve();
@@ -184,7 +228,11 @@ public class PackageInstallerService extends ForegroundService {
                 // No apk file, abort
                 return;
             }
+            long installStartTime = SystemClock.elapsedRealtime();
             installer.install(apkFile, selectedSplitIds, options, mProgressHandler);
+            Log.d(TAG, "Installed %s: waited %d ms for preparation (prepared in advance: %b), installed in %d ms",
+                    apkFile.getPackageName(), installStartTime - startTime, preparedApkFile != null,
+                    SystemClock.elapsedRealtime() - installStartTime);
             // Delete the cached file
             if (apkSource instanceof CachedApkSource) {
                 ((CachedApkSource) apkSource).cleanup();
@@ -204,6 +252,10 @@ public class PackageInstallerService extends ForegroundService {
                 .setBody(getString(R.string.added_to_queue))
                 .setTime(System.currentTimeMillis());
         mProgressHandler.onQueue(notificationInfo);
+        synchronized (mPrepareLock) {
+            mQueuedIntents.add(intent);
+            prepareQueuedItems();
+        }
     }
 
     @Override
@@ -233,9 +285,135 @@ public class PackageInstallerService extends ForegroundService {
             mProgressHandler.onDetach(this);
         }
         CpuUtils.releaseWakeLock(mWakeLock);
+        synchronized (mPrepareLock) {
+            if (mPrepareExecutor != null) {
+                mPrepareExecutor.shutdownNow();
+                mPrepareExecutor = null;
+            }
+            mQueuedIntents.clear();
+            for (PreparedApkFile preparedApkFile : mPreparedApkFiles.values()) {
+                preparedApkFile.discard();
+            }
+            mPreparedApkFiles.clear();
+        }
         super.onDestroy();
     }
 
+    /**
+     * Remove the intent from the queue, and start preparing the items next to it.
+     *
+     * @return The preparation of the intent, or {@code null} if it was not prepared in advance.
+     */
+    @AnyThread
+    @Nullable
+    private PreparedApkFile takePreparedApkFile(@NonNull Intent intent) {
+        synchronized (mPrepareLock) {
+            mQueuedIntents.remove(intent);
+            PreparedApkFile preparedApkFile = mPreparedApkFiles.remove(intent);
+            prepareQueuedItems();
+            return preparedApkFile;
+        }
+    }
+
+    /**
+     * Prepare the first few queued items that have not been prepared yet. Only a limited number of items are prepared
+     * at a time to limit the usage of the storage by the cached and signed APK files.
+     */
+    @GuardedBy("mPrepareLock")
+    private void prepareQueuedItems() {
+        int prepareAheadCount = Prefs.Installer.getPrepareAheadCount();
+        int count = Math.min(prepareAheadCount, mQueuedIntents.size());
+        for (int i = 0; i < count; ++i) {
+            Intent intent = mQueuedIntents.get(i);
+            if (mPreparedApkFiles.containsKey(intent)) {
+                continue;
+            }
+            ApkQueueItem apkQueueItem = IntentCompat.getParcelableExtra(intent, EXTRA_QUEUE_ITEM, ApkQueueItem.class);
+            if (apkQueueItem == null || apkQueueItem.isInstallExisting() || apkQueueItem.getApkSource() == null) {
+                // Nothing to prepare
+                continue;
+            }
+            if (mPrepareExecutor == null) {
+                mPrepareExecutor = Executors.newFixedThreadPool(prepareAheadCount);
+            }
+            PreparedApkFile preparedApkFile = new PreparedApkFile(apkQueueItem);
+            preparedApkFile.future = mPrepareExecutor.submit(preparedApkFile);
+            mPreparedApkFiles.put(intent, preparedApkFile);
+        }
+    }
+
+    /**
+     * An item prepared in advance. An item that is discarded before it is installed (e.g. the service is destroyed)
+     * has its preparation cancelled, and its {@link ApkFile} closed so that the cached and signed files are removed.
+     */
+    private static class PreparedApkFile implements Callable<ApkFile> {
+        @NonNull
+        private final ApkQueueItem mApkQueueItem;
+        @GuardedBy("this")
+        private boolean mDiscarded;
+        @GuardedBy("this")
+        @Nullable
+        private ApkFile mApkFile;
+        Future<ApkFile> future;
+
+        PreparedApkFile(@NonNull ApkQueueItem apkQueueItem) {
+            mApkQueueItem = apkQueueItem;
+        }
+
+        @WorkerThread
+        @Override
+        public ApkFile call() throws Exception {
+            ApkFile apkFile = prepare(mApkQueueItem);
+            synchronized (this) {
+                if (!mDiscarded) {
+                    mApkFile = apkFile;
+                    return apkFile;
+                }
+            }
+            apkFile.close();
+            throw new CancellationException();
+        }
+
+        @AnyThread
+        void discard() {
+            ApkFile apkFile;
+            synchronized (this) {
+                mDiscarded = true;
+                apkFile = mApkFile;
+                mApkFile = null;
+            }
+            future.cancel(true);
+            if (apkFile != null) {
+                apkFile.close();
+            }
+        }
+    }
+
+    /**
+     * Resolve the APK file, and sign the selected entries if requested. Any failure is reported only when the item is
+     * about to be installed, so that it does not affect the other items.
+     */
+    @WorkerThread
+    @NonNull
+    private static ApkFile prepare(@NonNull ApkQueueItem apkQueueItem) throws ApkFile.ApkFileException, IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        ApkFile apkFile = Objects.requireNonNull(apkQueueItem.getApkSource()).resolve();
+        long resolveTime = SystemClock.elapsedRealtime() - startTime;
+        InstallerOptions options = apkQueueItem.getInstallerOptions();
+        List<String> selectedSplitIds = apkQueueItem.getSelectedSplits();
+        if (options != null && options.isSignApkFiles() && selectedSplitIds != null) {
+            for (ApkFile.Entry entry : apkFile.getEntries()) {
+                if (selectedSplitIds.contains(entry.id)) {
+                    // Signed files are cached and reused during installation
+                    entry.getFile(true);
+                }
+            }
+        }
+        Log.d(TAG, "Prepared %s: resolved in %d ms, signed in %d ms", apkFile.getPackageName(), resolveTime,
+                SystemClock.elapsedRealtime() - startTime - resolveTime);
+        return apkFile;
+    }
+
     public void setOnInstallFinished(@Nullable OnInstallFinished onInstallFinished) {
         this.mOnInstallFinished = onInstallFinished;
     }
@@ -10,6 +10,7 @@ import static org.xmlpull.v1.XmlPullParser.START_TAG;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.reandroid.apk.AndroidFrameworks;
 import com.reandroid.arsc.chunk.PackageBlock;
@@ -20,11 +21,13 @@ import com.reandroid.xml.XMLDocument;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
@@ -61,61 +64,71 @@ public class AndroidBinXmlDecoder {
 
     @NonNull
     public static String decode(@NonNull ByteBuffer byteBuffer) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            decode(byteBuffer, bos);
-            byte[] bs = bos.toByteArray();
-            return new String(bs, StandardCharsets.UTF_8);
-        }
+        StringBuilder sb = new StringBuilder();
+        decodeInternal(byteBuffer, sb);
+        return sb.toString();
     }
 
+    /**
+     * Decode the binary XML as UTF-8 text into the output stream. The stream is flushed but not closed.
+     */
     public static void decode(@NonNull ByteBuffer byteBuffer, @NonNull OutputStream os) throws IOException {
-        try (BlockReader reader = new BlockReader(byteBuffer.array());
-             PrintStream out = new PrintStream(os)) {
-            ResXmlDocument resXmlDocument = new ResXmlDocument();
-            resXmlDocument.readBytes(reader);
-            try (ResXmlPullParser parser = new ResXmlPullParser()) {
-                parser.setCurrentPackage(getFrameworkPackageBlock());
-                parser.setResXmlDocument(resXmlDocument);
-                StringBuilder indent = new StringBuilder(10);
-                final String indentStep = "  ";
-                out.println("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-                XML_BUILDER:
-                while (true) {
-                    int type = parser.next();
-                    switch (type) {
-                        case START_TAG: {
-                            out.printf("%s<%s%s", indent, getNamespacePrefix(parser.getPrefix()), parser.getName());
-                            indent.append(indentStep);
-
-                            int nsStart = parser.getNamespaceCount(parser.getDepth() - 1);
-                            int nsEnd = parser.getNamespaceCount(parser.getDepth());
-                            for (int i = nsStart; i < nsEnd; ++i) {
-                                out.printf("\n%sxmlns:%s=\"%s\"", indent,
-                                        parser.getNamespacePrefix(i),
-                                        parser.getNamespaceUri(i));
-                            }
-
-                            for (int i = 0; i != parser.getAttributeCount(); ++i) {
-                                out.printf("\n%s%s%s=\"%s\"",
-                                        indent,
-                                        getNamespacePrefix(parser.getAttributePrefix(i)),
-                                        parser.getAttributeName(i),
-                                        parser.getAttributeValue(i));
-                            }
-                            out.println(">");
-                            break;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        decode(byteBuffer, writer);
+        writer.flush();
+    }
+
+    /**
+     * Decode the binary XML as text. Each element is written as soon as it is read, i.e. the text of the whole document
+     * is never held in memory unless the writer does so. The writer is not flushed.
+     */
+    public static void decode(@NonNull ByteBuffer byteBuffer, @NonNull Writer writer) throws IOException {
+        decodeInternal(byteBuffer, writer);
+    }
+
+    private static void decodeInternal(@NonNull ByteBuffer byteBuffer, @NonNull Appendable out) throws IOException {
+        try (ResXmlPullParser parser = newPullParser(byteBuffer)) {
+            StringBuilder indent = new StringBuilder(10);
+            final String indentStep = "  ";
+            out.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            XML_BUILDER:
+            while (true) {
+                int type = parser.next();
+                switch (type) {
+                    case START_TAG: {
+                        out.append(indent).append('<');
+                        appendNamespacePrefix(out, parser.getPrefix());
+                        out.append(parser.getName());
+                        indent.append(indentStep);
+
+                        int nsStart = parser.getNamespaceCount(parser.getDepth() - 1);
+                        int nsEnd = parser.getNamespaceCount(parser.getDepth());
+                        for (int i = nsStart; i < nsEnd; ++i) {
+                            out.append('\n').append(indent).append("xmlns:").append(parser.getNamespacePrefix(i))
+                                    .append("=\"").append(parser.getNamespaceUri(i)).append('"');
                         }
-                        case END_TAG: {
-                            indent.setLength(indent.length() - indentStep.length());
-                            out.printf("%s</%s%s>%n", indent, getNamespacePrefix(parser.getPrefix()), parser.getName());
-                            break;
+
+                        for (int i = 0; i != parser.getAttributeCount(); ++i) {
+                            out.append('\n').append(indent);
+                            appendNamespacePrefix(out, parser.getAttributePrefix(i));
+                            out.append(parser.getAttributeName(i)).append("=\"")
+                                    .append(parser.getAttributeValue(i)).append('"');
                         }
-                        case END_DOCUMENT:
-                            break XML_BUILDER;
-                        case START_DOCUMENT:
-                            // Unreachable statement
-                            break;
+                        out.append(">\n");
+                        break;
+                    }
+                    case END_TAG: {
+                        indent.setLength(indent.length() - indentStep.length());
+                        out.append(indent).append("</");
+                        appendNamespacePrefix(out, parser.getPrefix());
+                        out.append(parser.getName()).append(">\n");
+                        break;
                     }
+                    case END_DOCUMENT:
+                        break XML_BUILDER;
+                    case START_DOCUMENT:
+                        // Unreachable statement
+                        break;
                 }
             }
         } catch (XmlPullParserException e) {
@@ -123,25 +136,57 @@ public class AndroidBinXmlDecoder {
         }
     }
 
+    /**
+     * Create a pull parser for the binary XML. This is the fastest way to read a part of a document (e.g. the root
+     * element of a manifest) since, unlike {@link #decodeToXml(ByteBuffer)}, no element is created for the rest of
+     * the document. The parser must be closed after use.
+     */
+    @NonNull
+    public static ResXmlPullParser newPullParser(@NonNull ByteBuffer byteBuffer) throws IOException {
+        ResXmlDocument resXmlDocument = new ResXmlDocument();
+        try (BlockReader reader = new BlockReader(getBytes(byteBuffer))) {
+            resXmlDocument.readBytes(reader);
+        }
+        ResXmlPullParser parser = new ResXmlPullParser();
+        parser.setCurrentPackage(getFrameworkPackageBlock());
+        parser.setResXmlDocument(resXmlDocument);
+        return parser;
+    }
+
     public static XMLDocument decodeToXml(@NonNull ByteBuffer byteBuffer) throws IOException {
         ResXmlDocument xmlBlock = new ResXmlDocument();
-        try (BlockReader reader = new BlockReader(byteBuffer.array())) {
+        try (BlockReader reader = new BlockReader(getBytes(byteBuffer))) {
             xmlBlock.readBytes(reader);
             xmlBlock.setPackageBlock(getFrameworkPackageBlock());
             return xmlBlock.decodeToXml();
         }
     }
 
+    /**
+     * Return the contents of the buffer from its beginning, without copying if it is backed by an array as a whole.
+     * Direct (e.g. memory-mapped) buffers are copied.
+     */
     @NonNull
-    private static String getNamespacePrefix(String prefix) {
-        if (TextUtils.isEmpty(prefix)) {
-            return "";
+    private static byte[] getBytes(@NonNull ByteBuffer byteBuffer) {
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0
+                && byteBuffer.array().length == byteBuffer.capacity()) {
+            return byteBuffer.array();
+        }
+        ByteBuffer duplicate = byteBuffer.duplicate();
+        duplicate.clear();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    private static void appendNamespacePrefix(@NonNull Appendable out, @Nullable String prefix) throws IOException {
+        if (!TextUtils.isEmpty(prefix)) {
+            out.append(prefix).append(':');
         }
-        return prefix + ":";
     }
 
     @NonNull
-    static PackageBlock getFrameworkPackageBlock() throws IOException {
+    static synchronized PackageBlock getFrameworkPackageBlock() throws IOException {
         if (sFrameworkPackageBlock != null) {
             return sFrameworkPackageBlock;
         }
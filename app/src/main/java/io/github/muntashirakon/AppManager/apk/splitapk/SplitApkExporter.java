@@ -24,6 +24,7 @@ import java.util.zip.ZipOutputStream;
 import io.github.muntashirakon.AppManager.apk.ApkUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -65,31 +66,42 @@ public final class SplitApkExporter {
         bitmap.compress(Bitmap.CompressFormat.PNG, 100, pngOutputStream);
         addBytes(zipOutputStream, pngOutputStream.toByteArray(), ApksMetadata.ICON_FILE, apksMetadata.exportTimestamp);
 
-        // Add apk files
-        for (Path apkFile : apkFiles) {
-            addFile(zipOutputStream, apkFile, apkFile.getName(), apksMetadata.exportTimestamp);
-        }
-
         // Add OBB files if possible
+        List<Path> files = new ArrayList<>(apkFiles);
         Path obbDir = null;
         try {
             obbDir = ApkUtils.getObbDir(packageInfo.packageName, UserHandleHidden.getUserId(applicationInfo.uid));
         } catch (IOException ignore) {
         }
         if (obbDir != null) {
-            Path[] obbFiles = obbDir.listFiles();
-            for (Path obbFile : obbFiles) {
-                addFile(zipOutputStream, obbFile, obbFile.getName(), apksMetadata.exportTimestamp);
-            }
+            Collections.addAll(files, obbDir.listFiles());
+        }
+        // These files are already compressed, and are therefore stored as is. A stored entry requires the CRC before
+        // its data is written, which is calculated for all the files in parallel.
+        long[] crcs = calculateCrc32(files);
+        for (int i = 0; i < files.size(); ++i) {
+            Path file = files.get(i);
+            addFile(zipOutputStream, file, file.getName(), apksMetadata.exportTimestamp, crcs[i]);
         }
     }
 
+    /**
+     * Add the file as a stored (i.e. uncompressed) entry. This is suitable for files that are already compressed, such
+     * as APK and OBB files.
+     */
     static void addFile(@NonNull ZipOutputStream zipOutputStream, @NonNull Path filePath, @NonNull String name,
-                               long timestamp) throws IOException {
+                        long timestamp) throws IOException {
+        addFile(zipOutputStream, filePath, name, timestamp, DigestUtils.calculateCrc32(filePath));
+    }
+
+    private static void addFile(@NonNull ZipOutputStream zipOutputStream, @NonNull Path filePath, @NonNull String name,
+                                long timestamp, long crc) throws IOException {
+        long size = filePath.length();
         ZipEntry zipEntry = new ZipEntry(name);
-        zipEntry.setMethod(ZipEntry.DEFLATED);
-        zipEntry.setSize(filePath.length());
-        zipEntry.setCrc(DigestUtils.calculateCrc32(filePath));
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(size);
+        zipEntry.setCompressedSize(size);
+        zipEntry.setCrc(crc);
         zipEntry.setTime(timestamp);
         zipOutputStream.putNextEntry(zipEntry);
         try (InputStream apkInputStream = filePath.openInputStream()) {
@@ -98,6 +110,40 @@ public final class SplitApkExporter {
         zipOutputStream.closeEntry();
     }
 
+    @WorkerThread
+    @NonNull
+    private static long[] calculateCrc32(@NonNull List<Path> files) throws IOException {
+        long[] crcs = new long[files.size()];
+        if (files.size() == 1) {
+            crcs[0] = DigestUtils.calculateCrc32(files.get(0));
+            return crcs;
+        }
+        IOException[] exception = new IOException[1];
+        MultithreadedExecutor executor = MultithreadedExecutor.getNewInstance();
+        try {
+            for (int i = 0; i < files.size(); ++i) {
+                int index = i;
+                executor.submit(() -> {
+                    try {
+                        crcs[index] = DigestUtils.calculateCrc32(files.get(index));
+                    } catch (IOException e) {
+                        synchronized (exception) {
+                            exception[0] = e;
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.awaitCompletion();
+        }
+        synchronized (exception) {
+            if (exception[0] != null) {
+                throw exception[0];
+            }
+        }
+        return crcs;
+    }
+
     static void addBytes(@NonNull ZipOutputStream zipOutputStream, @NonNull byte[] bytes, @NonNull String name,
                                long timestamp) throws IOException {
         ZipEntry zipEntry = new ZipEntry(name);
@@ -19,7 +19,6 @@ import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PermissionInfo;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.RemoteException;
@@ -27,7 +26,6 @@ import android.os.RemoteException;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
-import androidx.core.content.pm.PermissionInfoCompat;
 
 import java.io.Closeable;
 import java.io.FileNotFoundException;
@@ -55,6 +53,7 @@ import io.github.muntashirakon.AppManager.magisk.MagiskDenyList;
 import io.github.muntashirakon.AppManager.magisk.MagiskHide;
 import io.github.muntashirakon.AppManager.magisk.MagiskProcess;
 import io.github.muntashirakon.AppManager.misc.OsEnvironment;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
 import io.github.muntashirakon.AppManager.progress.ProgressHandler;
 import io.github.muntashirakon.AppManager.rules.PseudoRules;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
@@ -267,8 +266,9 @@ class BackupOp implements Closeable {
         }
         Path[] sourceFiles;
         try {
+            // APK files are already compressed, the fastest compression level is good enough
             sourceFiles = TarUtils.create(mMetadata.tarType, sourceDir, mTempBackupPath, sourceBackupFilePrefix,
-                    /* language=regexp */ new String[]{".*\\.apk"}, null, null, false).toArray(new Path[0]);
+                    /* language=regexp */ new String[]{".*\\.apk"}, null, null, false, true).toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no source directory has been backed up.", th);
         }
@@ -386,27 +386,18 @@ class BackupOp implements Closeable {
             if (packageOpsList.size() == 1) opEntries.addAll(packageOpsList.get(0).getOps());
         } catch (Exception ignore) {
         }
-        PermissionInfo info;
-        int basePermissionType;
-        int protectionLevels;
+        PermissionInfoCache permissionInfoCache = PermissionInfoCache.getInstance();
         for (int i = 0; i < permissions.length; ++i) {
-            try {
-                info = mPm.getPermissionInfo(permissions[i], 0);
-                basePermissionType = PermissionInfoCompat.getProtection(info);
-                protectionLevels = PermissionInfoCompat.getProtectionFlags(info);
-                if (basePermissionType != PermissionInfo.PROTECTION_DANGEROUS
-                        && (protectionLevels & PermissionInfo.PROTECTION_FLAG_DEVELOPMENT) == 0) {
-                    // Don't include permissions that are neither dangerous nor development
-                    continue;
-                }
-                boolean isGranted = (permissionFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0;
-                int permFlags;
-                if (SelfPermissions.checkGetGrantRevokeRuntimePermissions()) {
-                    permFlags = PermissionCompat.getPermissionFlags(info.name, mPackageName, mUserId);
-                } else permFlags = PermissionCompat.FLAG_PERMISSION_NONE;
-                rules.setPermission(permissions[i], isGranted, permFlags);
-            } catch (PackageManager.NameNotFoundException ignore) {
+            if (!permissionInfoCache.isModifiable(permissions[i])) {
+                // Don't include permissions that are neither dangerous nor development
+                continue;
             }
+            boolean isGranted = (permissionFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0;
+            int permFlags;
+            if (SelfPermissions.checkGetGrantRevokeRuntimePermissions()) {
+                permFlags = PermissionCompat.getPermissionFlags(permissions[i], mPackageName, mUserId);
+            } else permFlags = PermissionCompat.FLAG_PERMISSION_NONE;
+            rules.setPermission(permissions[i], isGranted, permFlags);
         }
         // Backup app ops
         for (AppOpsManagerCompat.OpEntry entry : opEntries) {
@@ -19,9 +19,12 @@ import androidx.annotation.WorkerThread;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import io.github.muntashirakon.AppManager.db.entity.Backup;
@@ -31,6 +34,7 @@ import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.misc.OsEnvironment;
 import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
 import io.github.muntashirakon.AppManager.users.Users;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
@@ -72,25 +76,56 @@ public final class BackupUtils {
         return backupPaths;
     }
 
+    /**
+     * Scan all backups, store them in the database and return the latest backup of each package. The metadata of a
+     * backup is only parsed if it has been modified since the last scan.
+     */
     @WorkerThread
     @NonNull
     public static HashMap<String, Backup> storeAllAndGetLatestBackupMetadata() {
         AppDb appDb = new AppDb();
+        Map<String, Backup> cachedBackups = new HashMap<>();
+        for (Backup backup : appDb.getAllBackups()) {
+            if (backup.backupLocation != null && backup.metaLastModified > 0) {
+                cachedBackups.put(backup.backupLocation, backup);
+            }
+        }
+        long s = System.currentTimeMillis();
+        List<Path> backupPaths = getBackupPaths();
+        List<Backup> backups = Collections.synchronizedList(new ArrayList<>(backupPaths.size()));
+        AtomicInteger parsedCount = new AtomicInteger();
+        MultithreadedExecutor executor = MultithreadedExecutor.getNewInstance();
+        try {
+            for (Path backupPath : backupPaths) {
+                executor.submit(() -> {
+                    try {
+                        String backupLocation = backupPath.getUri().toString();
+                        Path metadataFile = backupPath.findFile(MetadataManager.META_FILE);
+                        long lastModified = metadataFile.lastModified();
+                        Backup backup = cachedBackups.get(backupLocation);
+                        if (backup == null || lastModified <= 0 || backup.metaLastModified != lastModified) {
+                            backup = Backup.fromBackupMetadata(MetadataManager.getMetadata(backupPath));
+                            backup.backupLocation = backupLocation;
+                            backup.metaLastModified = lastModified;
+                            parsedCount.incrementAndGet();
+                        }
+                        backups.add(backup);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        } finally {
+            executor.awaitCompletion();
+        }
+        Log.d(TAG, "Scanned %d backups in %d ms (%d parsed)", backupPaths.size(), System.currentTimeMillis() - s,
+                parsedCount.get());
         HashMap<String, Backup> backupMetadata = new HashMap<>();
-        HashMap<String, List<MetadataManager.Metadata>> allBackupMetadata = getAllMetadata();
-        List<Backup> backups = new ArrayList<>();
-        for (List<MetadataManager.Metadata> metadataList : allBackupMetadata.values()) {
-            if (metadataList.size() == 0) continue;
-            Backup latestBackup = null;
-            Backup backup;
-            for (MetadataManager.Metadata metadata : metadataList) {
-                backup = Backup.fromBackupMetadata(metadata);
-                backups.add(backup);
-                if (latestBackup == null || backup.backupTime > latestBackup.backupTime) {
-                    latestBackup = backup;
-                }
+        for (Backup backup : backups) {
+            Backup latestBackup = backupMetadata.get(backup.packageName);
+            if (latestBackup == null || backup.backupTime > latestBackup.backupTime) {
+                backupMetadata.put(backup.packageName, backup);
             }
-            backupMetadata.put(latestBackup.packageName, latestBackup);
         }
         appDb.deleteAllBackups();
         appDb.insertBackups(backups);
@@ -169,19 +204,29 @@ public final class BackupUtils {
     @WorkerThread
     @NonNull
     public static HashMap<String, List<MetadataManager.Metadata>> getAllMetadata() {
-        HashMap<String, List<MetadataManager.Metadata>> backupMetadata = new HashMap<>();
         List<Path> backupPaths = getBackupPaths();
-        for (Path backupPath : backupPaths) {
-            try {
-                MetadataManager.Metadata metadata = MetadataManager.getMetadata(backupPath);
-                if (!backupMetadata.containsKey(metadata.packageName)) {
-                    backupMetadata.put(metadata.packageName, new ArrayList<>());
-                }
-                //noinspection ConstantConditions
-                backupMetadata.get(metadata.packageName).add(metadata);
-            } catch (IOException e) {
-                e.printStackTrace();
+        List<MetadataManager.Metadata> metadataList = Collections.synchronizedList(new ArrayList<>(backupPaths.size()));
+        MultithreadedExecutor executor = MultithreadedExecutor.getNewInstance();
+        try {
+            for (Path backupPath : backupPaths) {
+                executor.submit(() -> {
+                    try {
+                        metadataList.add(MetadataManager.getMetadata(backupPath));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        } finally {
+            executor.awaitCompletion();
+        }
+        HashMap<String, List<MetadataManager.Metadata>> backupMetadata = new HashMap<>();
+        for (MetadataManager.Metadata metadata : metadataList) {
+            if (!backupMetadata.containsKey(metadata.packageName)) {
+                backupMetadata.put(metadata.packageName, new ArrayList<>());
             }
+            //noinspection ConstantConditions
+            backupMetadata.get(metadata.packageName).add(metadata);
         }
         return backupMetadata;
     }
@@ -0,0 +1,208 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.github.muntashirakon.AppManager.db.entity.Backup;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.io.Path;
+
+/**
+ * Verify the integrity of many backups in one go, e.g. the whole backup library. Backups are verified concurrently
+ * and their files are hashed on a shared, bounded pool so that slow storage is not flooded with reads. Files verified
+ * recently are skipped (see {@link VerifiedFileIndex}).
+ */
+public class BackupVerifier {
+    public static final String TAG = BackupVerifier.class.getSimpleName();
+
+    public static final String REPORT_FILENAME = "verification_report.am.json";
+
+    public static class Result {
+        @NonNull
+        public final Backup backup;
+        @Nullable
+        public final String error;
+        public final int hashedFiles;
+        public final int skippedFiles;
+        public final long hashedBytes;
+        public final long elapsedMillis;
+
+        Result(@NonNull Backup backup, @Nullable String error, int hashedFiles, int skippedFiles, long hashedBytes,
+               long elapsedMillis) {
+            this.backup = backup;
+            this.error = error;
+            this.hashedFiles = hashedFiles;
+            this.skippedFiles = skippedFiles;
+            this.hashedBytes = hashedBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public boolean isVerified() {
+            return error == null;
+        }
+
+        @NonNull
+        JSONObject toJson() throws JSONException {
+            JSONObject object = new JSONObject();
+            object.put("package_name", backup.packageName);
+            object.put("backup_name", backup.backupName);
+            object.put("user_id", backup.userId);
+            object.put("backup_time", backup.backupTime);
+            object.put("verified", isVerified());
+            object.put("error", error != null ? error : JSONObject.NULL);
+            object.put("hashed_files", hashedFiles);
+            object.put("skipped_files", skippedFiles);
+            object.put("hashed_bytes", hashedBytes);
+            object.put("elapsed_ms", elapsedMillis);
+            return object;
+        }
+    }
+
+    public static class Report {
+        public final long startTime;
+        public final long endTime;
+        @NonNull
+        public final List<Result> results;
+
+        Report(long startTime, long endTime, @NonNull List<Result> results) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.results = Collections.unmodifiableList(results);
+        }
+
+        @NonNull
+        public List<Result> getFailedResults() {
+            List<Result> failedResults = new ArrayList<>();
+            for (Result result : results) {
+                if (!result.isVerified()) {
+                    failedResults.add(result);
+                }
+            }
+            return failedResults;
+        }
+
+        @NonNull
+        public JSONObject toJson() throws JSONException {
+            int hashedFiles = 0;
+            int skippedFiles = 0;
+            long hashedBytes = 0;
+            JSONArray backups = new JSONArray();
+            for (Result result : results) {
+                hashedFiles += result.hashedFiles;
+                skippedFiles += result.skippedFiles;
+                hashedBytes += result.hashedBytes;
+                backups.put(result.toJson());
+            }
+            JSONObject object = new JSONObject();
+            object.put("start_time", startTime);
+            object.put("end_time", endTime);
+            object.put("total", results.size());
+            object.put("failed", getFailedResults().size());
+            object.put("hashed_files", hashedFiles);
+            object.put("skipped_files", skippedFiles);
+            object.put("hashed_bytes", hashedBytes);
+            object.put("backups", backups);
+            return object;
+        }
+    }
+
+    /**
+     * Verify the given backups. The results are in the same order as the backups.
+     */
+    @WorkerThread
+    @NonNull
+    public static Report verify(@NonNull Collection<Backup> backups) {
+        long startTime = System.currentTimeMillis();
+        int parallelism = VerifyOp.getParallelism();
+        // Backup-level tasks only wait for file-level tasks, using separate pools avoids starving the latter
+        ExecutorService backupExecutor = Executors.newFixedThreadPool(parallelism);
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(parallelism);
+        VerifiedFileIndex index = VerifiedFileIndex.getInstance();
+        List<Future<Result>> futures = new ArrayList<>(backups.size());
+        List<Result> results = new ArrayList<>(backups.size());
+        try {
+            for (Backup backup : backups) {
+                futures.add(backupExecutor.submit(() -> verify(backup, fileExecutor, index)));
+            }
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // verify(Backup, ...) catches everything
+                    throw new IllegalStateException(e.getCause());
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "Verification was interrupted.");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            backupExecutor.shutdownNow();
+            fileExecutor.shutdownNow();
+            index.persist();
+        }
+        Report report = new Report(startTime, System.currentTimeMillis(), results);
+        Log.i(TAG, "Verified %d backups in %d ms, %d failed.", results.size(), report.endTime - startTime,
+                report.getFailedResults().size());
+        return report;
+    }
+
+    /**
+     * Write the report to {@link #REPORT_FILENAME} in the backup directory.
+     */
+    @WorkerThread
+    @NonNull
+    public static Path saveReport(@NonNull Report report) throws IOException {
+        Path reportFile = BackupFiles.getBaseDirectory().findOrCreateFile(REPORT_FILENAME, null);
+        try (OutputStream os = reportFile.openOutputStream()) {
+            os.write(report.toJson().toString(4).getBytes(StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return reportFile;
+    }
+
+    @WorkerThread
+    @NonNull
+    private static Result verify(@NonNull Backup backup, @NonNull ExecutorService fileExecutor,
+                                 @NonNull VerifiedFileIndex index) {
+        long startTime = System.currentTimeMillis();
+        VerifyOp verifyOp = null;
+        try {
+            BackupFiles.BackupFile backupFile = new BackupFiles.BackupFile(backup.getBackupPath(), false);
+            verifyOp = new VerifyOp(MetadataManager.getNewInstance(), backupFile);
+            verifyOp.verify(fileExecutor, index);
+            return new Result(backup, null, verifyOp.getHashedFileCount(), verifyOp.getSkippedFileCount(),
+                    verifyOp.getHashedBytes(), System.currentTimeMillis() - startTime);
+        } catch (Throwable th) {
+            Log.w(TAG, "Could not verify %s (%s)", th, backup.packageName, backup.backupName);
+            String error = th.getMessage() != null ? th.getMessage() : th.getClass().getName();
+            return new Result(backup, error, verifyOp != null ? verifyOp.getHashedFileCount() : 0,
+                    verifyOp != null ? verifyOp.getSkippedFileCount() : 0,
+                    verifyOp != null ? verifyOp.getHashedBytes() : 0, System.currentTimeMillis() - startTime);
+        } finally {
+            if (verifyOp != null) {
+                verifyOp.close();
+            }
+        }
+    }
+}
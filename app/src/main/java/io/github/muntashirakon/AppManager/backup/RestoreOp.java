@@ -25,12 +25,21 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.apk.ApkFile;
 import io.github.muntashirakon.AppManager.apk.installer.InstallerOptions;
@@ -69,6 +78,7 @@ import io.github.muntashirakon.AppManager.utils.KeyStoreUtils;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.AppManager.utils.Utils;
+import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
 import io.github.muntashirakon.io.UidGidPair;
@@ -78,6 +88,24 @@ class RestoreOp implements Closeable {
     static final String TAG = RestoreOp.class.getSimpleName();
     private static final Object sLock = new Object();
 
+    private static class DataArchive {
+        final int index;
+        @NonNull
+        final Path[] files;
+        @NonNull
+        final BackupDataDirectoryInfo directoryInfo;
+        @NonNull
+        final UidGidPair uidGidPair;
+
+        DataArchive(int index, @NonNull Path[] files, @NonNull BackupDataDirectoryInfo directoryInfo,
+                    @NonNull UidGidPair uidGidPair) {
+            this.index = index;
+            this.files = files;
+            this.directoryInfo = directoryInfo;
+            this.uidGidPair = uidGidPair;
+        }
+    }
+
     @NonNull
     private final String mPackageName;
     @NonNull
@@ -191,18 +219,27 @@ class RestoreOp implements Closeable {
     }
 
     void runRestore(@Nullable ProgressHandler progressHandler) throws BackupException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Future<?> dataVerification = null;
         try {
             if (mRequestedFlags.backupData() && mMetadata.keyStore && !mRequestedFlags.skipSignatureCheck()) {
                 // Check checksum of master key first
                 checkMasterKey();
             }
             incrementProgress(progressHandler);
+            if (mRequestedFlags.backupData() && !mRequestedFlags.skipSignatureCheck()) {
+                // The data files do not depend on the installation, verify them while the APK files are restored
+                dataVerification = executor.submit(() -> {
+                    verifyDataFiles();
+                    return null;
+                });
+            }
             if (mRequestedFlags.backupApkFiles()) {
                 restoreApkFiles();
                 incrementProgress(progressHandler);
             }
             if (mRequestedFlags.backupData()) {
-                restoreData();
+                restoreData(executor, dataVerification);
                 if (mMetadata.keyStore) restoreKeyStore();
                 incrementProgress(progressHandler);
             }
@@ -218,6 +255,11 @@ class RestoreOp implements Closeable {
             throw e;
         } catch (Throwable th) {
             throw new BackupException("Unknown error occurred", th);
+        } finally {
+            if (dataVerification != null) {
+                dataVerification.cancel(true);
+            }
+            executor.shutdown();
         }
     }
 
@@ -328,15 +370,9 @@ class RestoreOp implements Closeable {
             } catch (IOException e) {
                 throw new BackupException("Could not create staging files", e);
             }
-            // Decrypt sources
+            // Decrypt and extract apk files to the package staging directory
             try {
-                backupSourceFiles = decrypt(backupSourceFiles);
-            } catch (IOException e) {
-                throw new BackupException("Failed to decrypt " + Arrays.toString(backupSourceFiles), e);
-            }
-            // Extract apk files to the package staging directory
-            try {
-                TarUtils.extract(mMetadata.tarType, backupSourceFiles, packageStagingDirectory, allApkNames, null, null);
+                extractTar(backupSourceFiles, packageStagingDirectory, allApkNames, null, null);
             } catch (Throwable th) {
                 throw new BackupException("Failed to extract the apk file(s).", th);
             }
@@ -399,12 +435,6 @@ class RestoreOp implements Closeable {
                 }
             }
         }
-        // Decrypt sources
-        try {
-            keyStoreFiles = decrypt(keyStoreFiles);
-        } catch (IOException e) {
-            throw new BackupException("Failed to decrypt " + Arrays.toString(keyStoreFiles), e);
-        }
         // Restore KeyStore files to the /data/misc/keystore folder
         Path keyStorePath = KeyStoreUtils.getKeyStorePath(mUserId);
         // Note down UID/GID
@@ -417,7 +447,7 @@ class RestoreOp implements Closeable {
             throw new BackupException("Failed to access properties of the KeyStore folder.", e);
         }
         try {
-            TarUtils.extract(mMetadata.tarType, keyStoreFiles, keyStorePath, null, null, null);
+            extractTar(keyStoreFiles, keyStorePath, null, null, null);
             // Restore folder permission
             Paths.chown(keyStorePath, uidGidPair.uid, uidGidPair.gid);
             //noinspection OctalInteger
@@ -444,34 +474,50 @@ class RestoreOp implements Closeable {
         Runner.runCommand(new String[]{"restorecon", "-R", keyStorePath.getFilePath()});
     }
 
-    private void restoreData() throws BackupException {
+    private void verifyDataFiles() throws BackupException {
+        // Verify integrity of the data backups
+        String checksum;
+        for (int i = 0; i < mMetadata.dataDirs.length; ++i) {
+            Path[] dataFiles = getDataFiles(mBackupPath, i);
+            if (dataFiles.length == 0) {
+                throw new BackupException("Data restore is requested but there are no data files for index " + i + ".");
+            }
+            for (Path file : dataFiles) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new BackupException("Data file verification was interrupted.");
+                }
+                checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, file);
+                if (!checksum.equals(mChecksum.get(file.getName()))) {
+                    throw new BackupException("Data file verification failed for index " + i + "." +
+                            "\nFile: " + file +
+                            "\nFound: " + checksum +
+                            "\nRequired: " + mChecksum.get(file.getName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dataVerification The result of {@link #verifyDataFiles()} if it was started earlier. If {@code null},
+     *                         the data files are verified now unless the signature check is skipped.
+     */
+    private void restoreData(@NonNull ExecutorService executor, @Nullable Future<?> dataVerification)
+            throws BackupException {
         // Data restore is requested: Data restore is only possible if the app is actually
         // installed. So, check if it's installed first.
         if (mPackageInfo == null) {
             throw new BackupException("Data restore is requested but the app isn't installed.");
         }
-        if (!mRequestedFlags.skipSignatureCheck()) {
-            // Verify integrity of the data backups
-            String checksum;
-            for (int i = 0; i < mMetadata.dataDirs.length; ++i) {
-                Path[] dataFiles = getDataFiles(mBackupPath, i);
-                if (dataFiles.length == 0) {
-                    throw new BackupException("Data restore is requested but there are no data files for index " + i + ".");
-                }
-                for (Path file : dataFiles) {
-                    checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, file);
-                    if (!checksum.equals(mChecksum.get(file.getName()))) {
-                        throw new BackupException("Data file verification failed for index " + i + "." +
-                                "\nFile: " + file +
-                                "\nFound: " + checksum +
-                                "\nRequired: " + mChecksum.get(file.getName()));
-                    }
-                }
-            }
+        if (dataVerification != null) {
+            awaitAll(Collections.singletonList(dataVerification));
+        } else if (!mRequestedFlags.skipSignatureCheck()) {
+            verifyDataFiles();
         }
         // Force-stop and clear app data
         PackageManagerCompat.clearApplicationUserData(mPackageName, mUserId);
-        // Restore backups
+        // Prepare the data directories
+        String publicSourceDir = new File(mPackageInfo.applicationInfo.publicSourceDir).getParent();
+        List<DataArchive> archives = new ArrayList<>(mMetadata.dataDirs.length);
         for (int i = 0; i < mMetadata.dataDirs.length; ++i) {
             String dataSource = BackupUtils.getWritableDataDirectory(mMetadata.dataDirs[i], mMetadata.userHandle, mUserId);
             BackupDataDirectoryInfo dataDirectoryInfo = BackupDataDirectoryInfo.getInfo(dataSource, mUserId);
@@ -523,29 +569,84 @@ class RestoreOp implements Closeable {
                     dataSourceFile.setUidGid(uidGidPair);
                 }
             }
-            // Decrypt data
-            try {
-                dataFiles = decrypt(dataFiles);
-            } catch (IOException e) {
-                throw new BackupException("Failed to decrypt " + Arrays.toString(dataFiles), e);
-            }
-            // Extract data to the data directory
-            try {
-                String publicSourceDir = new File(mPackageInfo.applicationInfo.publicSourceDir).getParent();
-                TarUtils.extract(mMetadata.tarType, dataFiles, dataSourceFile, null, BackupUtils
-                        .getExcludeDirs(!mRequestedFlags.backupCache(), null), publicSourceDir);
-            } catch (Throwable th) {
-                throw new BackupException("Failed to restore data files for index " + i + ".", th);
+            archives.add(new DataArchive(i, dataFiles, dataDirectoryInfo, uidGidPair));
+        }
+        // Archives on the same volume are restored one after another as they would only compete for the same disk,
+        // but archives on different volumes (e.g. internal and external data) are restored concurrently.
+        Map<Integer, List<DataArchive>> volumes = new LinkedHashMap<>();
+        for (DataArchive archive : archives) {
+            List<DataArchive> volumeArchives = volumes.get(archive.directoryInfo.type);
+            if (volumeArchives == null) {
+                volumeArchives = new ArrayList<>();
+                volumes.put(archive.directoryInfo.type, volumeArchives);
             }
-            // Restore UID and GID
-            if (!Runner.runCommand(String.format(Locale.ROOT, "chown -R %d:%d \"%s\"", uidGidPair.uid, uidGidPair.gid, dataSource)).isSuccessful()) {
-                throw new BackupException("Failed to restore ownership info for index " + i + ".");
+            volumeArchives.add(archive);
+        }
+        if (volumes.size() <= 1) {
+            for (DataArchive archive : archives) {
+                restoreDataArchive(archive, publicSourceDir);
             }
-            // Restore context
-            if (!dataDirectoryInfo.isExternal()) {
-                Runner.runCommand(new String[]{"restorecon", "-R", dataSource});
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(volumes.size());
+        for (List<DataArchive> volumeArchives : volumes.values()) {
+            futures.add(executor.submit(() -> {
+                for (DataArchive archive : volumeArchives) {
+                    restoreDataArchive(archive, publicSourceDir);
+                }
+                return null;
+            }));
+        }
+        awaitAll(futures);
+    }
+
+    private void restoreDataArchive(@NonNull DataArchive archive, @NonNull String publicSourceDir)
+            throws BackupException {
+        String dataSource = archive.directoryInfo.rawRath;
+        // Decrypt and extract data to the data directory
+        try {
+            extractTar(archive.files, archive.directoryInfo.path, null,
+                    BackupUtils.getExcludeDirs(!mRequestedFlags.backupCache(), null), publicSourceDir);
+        } catch (Throwable th) {
+            throw new BackupException("Failed to restore data files for index " + archive.index + ".", th);
+        }
+        // Restore UID and GID
+        UidGidPair uidGidPair = archive.uidGidPair;
+        if (!Runner.runCommand(String.format(Locale.ROOT, "chown -R %d:%d \"%s\"", uidGidPair.uid, uidGidPair.gid, dataSource)).isSuccessful()) {
+            throw new BackupException("Failed to restore ownership info for index " + archive.index + ".");
+        }
+        // Restore context
+        if (!archive.directoryInfo.isExternal()) {
+            Runner.runCommand(new String[]{"restorecon", "-R", dataSource});
+        }
+    }
+
+    /**
+     * Wait for all the tasks to finish, and throw the first error, if any. Tasks are not cancelled on error since an
+     * extraction cannot be stopped midway without leaving the data directory in an unknown state either way.
+     */
+    private static void awaitAll(@NonNull List<Future<?>> futures) throws BackupException {
+        Throwable error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            } catch (InterruptedException | CancellationException e) {
+                for (Future<?> f : futures) {
+                    f.cancel(true);
+                }
+                throw new BackupException("Restore was interrupted.", e);
             }
         }
+        if (error instanceof BackupException) {
+            throw (BackupException) error;
+        }
+        if (error != null) {
+            throw new BackupException("Unknown error occurred", error);
+        }
     }
 
     private synchronized void restoreExtras() throws BackupException {
@@ -751,14 +852,74 @@ class RestoreOp implements Closeable {
         return backupPath.listFiles((dir, name) -> name.startsWith(dataPrefix) && name.endsWith(mode));
     }
 
+    /**
+     * Extract the parts of a tar file. The parts are decrypted while being extracted if the encryption mode allows it,
+     * i.e. no decrypted copy of the parts is stored and the parts are read only once. Otherwise, the parts are
+     * decrypted first.
+     */
+    private void extractTar(@NonNull Path[] files, @NonNull Path dest, @Nullable String[] filters,
+                            @Nullable String[] exclusions, @Nullable String realDataAppPath) throws IOException {
+        long startTime = System.currentTimeMillis();
+        InputStream decryptedStream = openDecryptingStream(files);
+        boolean streaming = decryptedStream != null;
+        if (decryptedStream != null) {
+            TarUtils.extract(mMetadata.tarType, decryptedStream, dest, filters, exclusions, realDataAppPath);
+        } else {
+            TarUtils.extract(mMetadata.tarType, decrypt(files), dest, filters, exclusions, realDataAppPath);
+        }
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+        long size = 0;
+        for (Path file : files) {
+            size += file.length();
+        }
+        Log.d(TAG, "Extracted %s (%d bytes) in %d ms, %.2f MiB/s (decrypted on the fly: %b)", Arrays.toString(files),
+                size, elapsed, size * 1000f / elapsed / (1 << 20), streaming);
+    }
+
+    /**
+     * Open the parts as a single decrypted stream.
+     *
+     * @return The stream, or {@code null} if the parts cannot be decrypted on the fly.
+     */
+    @Nullable
+    private InputStream openDecryptingStream(@NonNull Path[] files) throws IOException {
+        List<InputStream> streams = new ArrayList<>(files.length);
+        try {
+            for (Path file : files) {
+                InputStream is = file.openInputStream();
+                InputStream decryptingStream;
+                try {
+                    decryptingStream = mCrypto.getDecryptingStream(is);
+                } catch (IOException e) {
+                    is.close();
+                    throw e;
+                }
+                if (decryptingStream == null) {
+                    is.close();
+                    for (InputStream stream : streams) {
+                        IoUtils.closeQuietly(stream);
+                    }
+                    return null;
+                }
+                streams.add(decryptingStream);
+            }
+        } catch (IOException e) {
+            for (InputStream stream : streams) {
+                IoUtils.closeQuietly(stream);
+            }
+            throw e;
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
     @NonNull
     private Path[] decrypt(@NonNull Path[] files) throws IOException {
         Path[] newFiles;
         synchronized (Crypto.class) {
             mCrypto.decrypt(files);
             newFiles = mCrypto.getNewFiles();
+            mDecryptedFiles.addAll(Arrays.asList(newFiles));
         }
-        mDecryptedFiles.addAll(Arrays.asList(newFiles));
         return newFiles.length > 0 ? newFiles : files;
     }
 }
\ No newline at end of file
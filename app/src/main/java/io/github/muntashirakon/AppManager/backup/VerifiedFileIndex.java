@@ -0,0 +1,212 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.FileUtils;
+import io.github.muntashirakon.io.Path;
+
+/**
+ * A persistent record of the backup files whose checksums were verified recently. A file is not hashed again as long
+ * as its size and modification time are unchanged, its expected checksum is the same, and it was verified less than
+ * {@link #MAX_AGE_MILLIS} ago. The age limit ensures that bit rot, which alters neither the size nor the modification
+ * time of a file, is eventually detected.
+ */
+public class VerifiedFileIndex {
+    public static final String TAG = VerifiedFileIndex.class.getSimpleName();
+
+    private static final int INDEX_VERSION = 1;
+    private static final String INDEX_FILENAME = "backup_verified_index.bin";
+    private static final long MAX_AGE_MILLIS = 7 * 86_400_000L; // 7 days
+    private static final int MAX_ENTRIES = 100_000;
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        @NonNull
+        final String algorithm;
+        @NonNull
+        final String checksum;
+        final long verifiedAt;
+
+        Entry(long size, long lastModified, @NonNull String algorithm, @NonNull String checksum, long verifiedAt) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.algorithm = algorithm;
+            this.checksum = checksum;
+            this.verifiedAt = verifiedAt;
+        }
+
+        boolean isValid(long size, long lastModified, @NonNull String algorithm, @NonNull String checksum, long now) {
+            return this.size == size && this.lastModified == lastModified && this.algorithm.equals(algorithm)
+                    && this.checksum.equals(checksum) && (now - verifiedAt) < MAX_AGE_MILLIS;
+        }
+    }
+
+    @Nullable
+    private static VerifiedFileIndex sInstance;
+
+    @AnyThread
+    @NonNull
+    public static VerifiedFileIndex getInstance() {
+        synchronized (VerifiedFileIndex.class) {
+            if (sInstance == null) {
+                sInstance = new VerifiedFileIndex();
+            }
+            return sInstance;
+        }
+    }
+
+    @GuardedBy("mEntries")
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    @GuardedBy("mEntries")
+    private boolean mLoaded = false;
+    @GuardedBy("mEntries")
+    private boolean mModified = false;
+
+    private VerifiedFileIndex() {
+    }
+
+    /**
+     * Whether the file was verified recently against the given checksum.
+     *
+     * @param size         Current size of the file
+     * @param lastModified Current modification time of the file
+     */
+    @WorkerThread
+    public boolean isVerified(@NonNull Path file, long size, long lastModified,
+                              @DigestUtils.Algorithm String algorithm, @Nullable String checksum) {
+        if (checksum == null || lastModified <= 0) {
+            // Nothing to compare with
+            return false;
+        }
+        Entry entry;
+        synchronized (mEntries) {
+            ensureLoadedLocked();
+            entry = mEntries.get(getKey(file));
+        }
+        return entry != null && entry.isValid(size, lastModified, algorithm, checksum, System.currentTimeMillis());
+    }
+
+    @WorkerThread
+    public void markVerified(@NonNull Path file, long size, long lastModified,
+                             @DigestUtils.Algorithm String algorithm, @NonNull String checksum) {
+        if (lastModified <= 0) {
+            // Modification time is not available (e.g. some SAF providers), the entry could not be validated
+            return;
+        }
+        Entry entry = new Entry(size, lastModified, algorithm, checksum, System.currentTimeMillis());
+        synchronized (mEntries) {
+            ensureLoadedLocked();
+            if (mEntries.size() < MAX_ENTRIES) {
+                mEntries.put(getKey(file), entry);
+                mModified = true;
+            }
+        }
+    }
+
+    /**
+     * Write the index to the disk if it has been modified.
+     */
+    @WorkerThread
+    public void persist() {
+        Map<String, Entry> entries;
+        synchronized (mEntries) {
+            if (!mLoaded || !mModified) {
+                return;
+            }
+            entries = new HashMap<>(mEntries);
+            mModified = false;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if ((now - entry.verifiedAt) < MAX_AGE_MILLIS) {
+                ++count;
+            }
+        }
+        File indexFile = getIndexFile();
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            dos.writeInt(INDEX_VERSION);
+            dos.writeInt(count);
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if ((now - entry.verifiedAt) >= MAX_AGE_MILLIS) {
+                    continue;
+                }
+                dos.writeUTF(mapEntry.getKey());
+                dos.writeLong(entry.size);
+                dos.writeLong(entry.lastModified);
+                dos.writeUTF(entry.algorithm);
+                dos.writeUTF(entry.checksum);
+                dos.writeLong(entry.verifiedAt);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save index", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            Log.w(TAG, "Could not replace index %s", indexFile);
+        }
+    }
+
+    @GuardedBy("mEntries")
+    private void ensureLoadedLocked() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        long s = System.currentTimeMillis();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != INDEX_VERSION) {
+                Log.i(TAG, "Index version mismatch, discarding index.");
+                return;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = dis.readUTF();
+                Entry entry = new Entry(dis.readLong(), dis.readLong(), dis.readUTF(), dis.readUTF(), dis.readLong());
+                mEntries.put(key, entry);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load index, discarding it.", e);
+            mEntries.clear();
+        }
+        Log.d(TAG, "Time to load %d entries: %d ms", mEntries.size(), System.currentTimeMillis() - s);
+    }
+
+    @NonNull
+    private static File getIndexFile() {
+        return new File(FileUtils.getCachePath(), INDEX_FILENAME);
+    }
+
+    @NonNull
+    private static String getKey(@NonNull Path path) {
+        return path.getUri().toString();
+    }
+}
@@ -3,6 +3,7 @@
 package io.github.muntashirakon.AppManager.backup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.io.Closeable;
@@ -10,11 +11,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.crypto.Crypto;
 import io.github.muntashirakon.AppManager.crypto.CryptoException;
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.io.Path;
 
 import static io.github.muntashirakon.AppManager.backup.BackupManager.DATA_PREFIX;
@@ -25,6 +31,25 @@ import static io.github.muntashirakon.AppManager.backup.BackupManager.SOURCE_PRE
 class VerifyOp implements Closeable {
     static final String TAG = VerifyOp.class.getSimpleName();
 
+    // Concurrent reads beyond this only add seeks on SD cards and other slow storage
+    private static final int MAX_PARALLEL_READS = 4;
+
+    private static class FileCheck {
+        @NonNull
+        final Path file;
+        @NonNull
+        final String errorMessage;
+        final long size;
+        final long lastModified;
+
+        FileCheck(@NonNull Path file, @NonNull String errorMessage) {
+            this.file = file;
+            this.errorMessage = errorMessage;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+
     @NonNull
     private final BackupFlags mBackupFlags;
     @NonNull
@@ -38,6 +63,9 @@ class VerifyOp implements Closeable {
     @NonNull
     private final BackupFiles.Checksum mChecksum;
     private final List<Path> mDecryptedFiles = new ArrayList<>();
+    private int mHashedFiles;
+    private int mSkippedFiles;
+    private long mHashedBytes;
 
     VerifyOp(@NonNull MetadataManager metadataManager, @NonNull BackupFiles.BackupFile backupFile)
             throws BackupException {
@@ -107,25 +135,45 @@ class VerifyOp implements Closeable {
         }
     }
 
+    /**
+     * Same as {@link #verify(ExecutorService, VerifiedFileIndex)}, except that a temporary executor is used.
+     */
     void verify() throws BackupException {
+        ExecutorService executor = Executors.newFixedThreadPool(getParallelism());
+        VerifiedFileIndex index = VerifiedFileIndex.getInstance();
         try {
+            verify(executor, index);
+        } finally {
+            executor.shutdownNow();
+            index.persist();
+        }
+    }
+
+    /**
+     * Verify the checksums of the backup files. The files are hashed in parallel using the given executor, and the
+     * files that were verified recently according to the index are skipped.
+     */
+    void verify(@NonNull ExecutorService executor, @Nullable VerifiedFileIndex index) throws BackupException {
+        try {
+            List<FileCheck> checks = new ArrayList<>();
             // No need to check master key as it varies from device to device and APK signing key checksum as it would
             // remain intact if the APK files are not modified.
             if (mBackupFlags.backupApkFiles()) {
-                verifyApkFiles();
+                addApkFiles(checks);
             }
             if (mBackupFlags.backupData()) {
-                verifyData();
+                addData(checks);
                 if (mMetadata.keyStore) {
-                    verifyKeyStore();
+                    addKeyStore(checks);
                 }
             }
             if (mBackupFlags.backupExtras()) {
-                verifyExtras();
+                addExtras(checks);
             }
             if (mBackupFlags.backupRules()) {
-                verifyRules();
+                addRules(checks);
             }
+            verifyFiles(checks, executor, index);
         } catch (BackupException e) {
             throw e;
         } catch (Throwable th) {
@@ -133,62 +181,107 @@ class VerifyOp implements Closeable {
         }
     }
 
-    private void verifyApkFiles() throws BackupException {
+    public int getHashedFileCount() {
+        return mHashedFiles;
+    }
+
+    public int getSkippedFileCount() {
+        return mSkippedFiles;
+    }
+
+    public long getHashedBytes() {
+        return mHashedBytes;
+    }
+
+    static int getParallelism() {
+        return Math.min(MultithreadedExecutor.getThreadCount(), MAX_PARALLEL_READS);
+    }
+
+    private void verifyFiles(@NonNull List<FileCheck> checks, @NonNull ExecutorService executor,
+                             @Nullable VerifiedFileIndex index) throws BackupException {
+        String algorithm = mMetadata.checksumAlgo;
+        List<Future<String>> futures = new ArrayList<>(checks.size());
+        for (FileCheck check : checks) {
+            if (index != null && index.isVerified(check.file, check.size, check.lastModified, algorithm,
+                    mChecksum.get(check.file.getName()))) {
+                futures.add(null);
+            } else {
+                futures.add(executor.submit(() -> DigestUtils.getFileHexDigest(algorithm, check.file)));
+            }
+        }
+        try {
+            for (int i = 0; i < checks.size(); ++i) {
+                FileCheck check = checks.get(i);
+                Future<String> future = futures.get(i);
+                if (future == null) {
+                    ++mSkippedFiles;
+                    continue;
+                }
+                String checksum;
+                try {
+                    checksum = future.get();
+                } catch (ExecutionException e) {
+                    throw new BackupException("Could not read " + check.file.getName(), e.getCause());
+                } catch (InterruptedException e) {
+                    throw new BackupException("Verification was interrupted.", e);
+                }
+                ++mHashedFiles;
+                mHashedBytes += check.size;
+                String requiredChecksum = mChecksum.get(check.file.getName());
+                if (!checksum.equals(requiredChecksum)) {
+                    throw new BackupException(check.errorMessage +
+                            "\nFile: " + check.file.getName() +
+                            "\nFound: " + checksum +
+                            "\nRequired: " + requiredChecksum);
+                }
+                if (index != null) {
+                    index.markVerified(check.file, check.size, check.lastModified, algorithm, checksum);
+                }
+            }
+        } finally {
+            for (Future<String> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private void addApkFiles(@NonNull List<FileCheck> checks) throws BackupException {
         Path[] backupSourceFiles = getSourceFiles(mBackupPath);
         if (backupSourceFiles.length == 0) {
             // No APK files found
             throw new BackupException("Backup does not contain any APK files.");
         }
-        String checksum;
         for (Path file : backupSourceFiles) {
-            checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, file);
-            if (!checksum.equals(mChecksum.get(file.getName()))) {
-                throw new BackupException("Could not verify APK files." +
-                        "\nFile: " + file.getName() +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + mChecksum.get(file.getName()));
-            }
+            checks.add(new FileCheck(file, "Could not verify APK files."));
         }
     }
 
-    private void verifyKeyStore() throws BackupException {
+    private void addKeyStore(@NonNull List<FileCheck> checks) throws BackupException {
         Path[] keyStoreFiles = getKeyStoreFiles(mBackupPath);
         if (keyStoreFiles.length == 0) {
             throw new BackupException("KeyStore files do not exist.");
         }
-        String checksum;
         for (Path file : keyStoreFiles) {
-            checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, file);
-            if (!checksum.equals(mChecksum.get(file.getName()))) {
-                throw new BackupException("Could not verify KeyStore files." +
-                        "\nFile: " + file.getName() +
-                        "\nFound: " + checksum +
-                        "\nRequired: " + mChecksum.get(file.getName()));
-            }
+            checks.add(new FileCheck(file, "Could not verify KeyStore files."));
         }
     }
 
-    private void verifyData() throws BackupException {
+    private void addData(@NonNull List<FileCheck> checks) throws BackupException {
         Path[] dataFiles;
-        String checksum;
         for (int i = 0; i < mMetadata.dataDirs.length; ++i) {
             dataFiles = getDataFiles(mBackupPath, i);
             if (dataFiles.length == 0) {
                 throw new BackupException("No data files at index " + i + ".");
             }
             for (Path file : dataFiles) {
-                checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, file);
-                if (!checksum.equals(mChecksum.get(file.getName()))) {
-                    throw new BackupException("Could not verify data files at index " + i + "." +
-                            "\nFile: " + file.getName() +
-                            "\nFound: " + checksum +
-                            "\nRequired: " + mChecksum.get(file.getName()));
-                }
+                checks.add(new FileCheck(file, "Could not verify data files at index " + i + "."));
             }
         }
     }
 
-    private void verifyExtras() throws BackupException {
+    private void addExtras(@NonNull List<FileCheck> checks) {
         Path miscFile;
         try {
             miscFile = mBackupFile.getMiscFile(mMetadata.crypto);
@@ -196,16 +289,10 @@ class VerifyOp implements Closeable {
             // There are no permissions, just skip
             return;
         }
-        String checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, miscFile);
-        if (!checksum.equals(mChecksum.get(miscFile.getName()))) {
-            throw new BackupException("Could not verify extras." +
-                    "\nFile: " + miscFile.getName() +
-                    "\nFound: " + checksum +
-                    "\nRequired: " + mChecksum.get(miscFile.getName()));
-        }
+        checks.add(new FileCheck(miscFile, "Could not verify extras."));
     }
 
-    private void verifyRules() throws BackupException {
+    private void addRules(@NonNull List<FileCheck> checks) throws BackupException {
         Path rulesFile;
         try {
             rulesFile = mBackupFile.getRulesFile(mMetadata.crypto);
@@ -217,13 +304,7 @@ class VerifyOp implements Closeable {
                 return;
             }
         }
-        String checksum = DigestUtils.getHexDigest(mMetadata.checksumAlgo, rulesFile);
-        if (!checksum.equals(mChecksum.get(rulesFile.getName()))) {
-            throw new BackupException("Could not verify rules file." +
-                    "\nFile: " + rulesFile.getName() +
-                    "\nFound: " + checksum +
-                    "\nRequired: " + mChecksum.get(rulesFile.getName()));
-        }
+        checks.add(new FileCheck(rulesFile, "Could not verify rules file."));
     }
 
     @NonNull
@@ -0,0 +1,240 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup.convert;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import aosp.libcore.util.HexEncoding;
+import io.github.muntashirakon.AppManager.backup.CryptoUtils;
+import io.github.muntashirakon.AppManager.crypto.Crypto;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.AppManager.utils.ExUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.SplitOutputStream;
+
+/**
+ * Same as {@link SplitOutputStream}, except that each part is encrypted and checksummed while it is being written.
+ * This saves reading and writing every part again to encrypt it, and reading it once more to calculate its checksum.
+ * <p>
+ * If the parts cannot be encrypted on the fly (see {@link Crypto#getEncryptingStream(OutputStream)}), they are written
+ * as is, and encrypted and checksummed the usual way in {@link #getChecksums()}.
+ */
+class EncryptedSplitOutputStream extends OutputStream {
+    private static class DigestOutputStream extends FilterOutputStream {
+        @Nullable
+        private final MessageDigest mMessageDigest;
+        @Nullable
+        private final CRC32 mCrc32;
+
+        DigestOutputStream(@NonNull OutputStream out, @DigestUtils.Algorithm String algorithm) throws IOException {
+            super(out);
+            if (DigestUtils.CRC32.equals(algorithm)) {
+                mMessageDigest = null;
+                mCrc32 = new CRC32();
+            } else {
+                try {
+                    mMessageDigest = MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    ExUtils.rethrowAsIOException(e);
+                    throw new AssertionError();
+                }
+                mCrc32 = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (mCrc32 != null) {
+                mCrc32.update(b);
+            } else {
+                //noinspection ConstantConditions
+                mMessageDigest.update((byte) b);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (mCrc32 != null) {
+                mCrc32.update(b, off, len);
+            } else {
+                //noinspection ConstantConditions
+                mMessageDigest.update(b, off, len);
+            }
+        }
+
+        /**
+         * Same as {@link DigestUtils#getHexDigest(String, Path)}.
+         */
+        @NonNull
+        String getHexDigest() {
+            byte[] digest;
+            if (mCrc32 != null) {
+                digest = ByteBuffer.allocate(8).putLong(mCrc32.getValue()).array();
+            } else {
+                //noinspection ConstantConditions
+                digest = mMessageDigest.digest();
+            }
+            return HexEncoding.encodeToString(digest, false /* lowercase */);
+        }
+    }
+
+    private final List<Path> mFiles = new ArrayList<>(1);
+    private final List<String> mChecksums = new ArrayList<>(1);
+    @NonNull
+    private final Path mBasePath;
+    @NonNull
+    private final String mBaseName;
+    private final long mMaxBytesPerFile;
+    @NonNull
+    private final Crypto mCrypto;
+    @NonNull
+    private final String mExtension;
+    @DigestUtils.Algorithm
+    private final String mAlgorithm;
+    private boolean mEncrypted = true;
+    @Nullable
+    private OutputStream mCurrentStream;
+    @Nullable
+    private DigestOutputStream mCurrentDigest;
+    private long mBytesWritten;
+    private boolean mClosed;
+
+    /**
+     * @param cryptoMode Mode of the {@code crypto}, used for the extension of the parts
+     * @param algorithm  Algorithm for the checksums of the parts
+     */
+    EncryptedSplitOutputStream(@NonNull Path basePath, @NonNull String baseName, long maxBytesPerFile,
+                               @NonNull Crypto crypto, @CryptoUtils.Mode String cryptoMode,
+                               @DigestUtils.Algorithm String algorithm) {
+        mBasePath = basePath;
+        mBaseName = baseName;
+        mMaxBytesPerFile = maxBytesPerFile;
+        mCrypto = crypto;
+        mExtension = CryptoUtils.getExtension(cryptoMode);
+        mAlgorithm = algorithm;
+        mBytesWritten = maxBytesPerFile;
+    }
+
+    @WorkerThread
+    @Override
+    public void write(int b) throws IOException {
+        checkCurrentStream(1);
+        //noinspection ConstantConditions
+        mCurrentStream.write(b);
+        ++mBytesWritten;
+    }
+
+    @WorkerThread
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        checkCurrentStream(len);
+        //noinspection ConstantConditions
+        mCurrentStream.write(b, off, len);
+        mBytesWritten += len;
+    }
+
+    @WorkerThread
+    @Override
+    public void flush() throws IOException {
+        if (mCurrentStream != null) {
+            mCurrentStream.flush();
+        }
+    }
+
+    @WorkerThread
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        closeCurrentStream();
+        mClosed = true;
+    }
+
+    /**
+     * Return the names of the (encrypted) parts along with their checksums in the order they were written. This must
+     * only be called after the stream is closed.
+     */
+    @WorkerThread
+    @NonNull
+    Map<String, String> getChecksums() throws IOException {
+        if (!mClosed) {
+            throw new IllegalStateException("The stream is not closed yet.");
+        }
+        Map<String, String> checksums = new LinkedHashMap<>(mFiles.size());
+        if (mEncrypted) {
+            for (int i = 0; i < mFiles.size(); ++i) {
+                checksums.put(mFiles.get(i).getName(), mChecksums.get(i));
+            }
+            return checksums;
+        }
+        Path[] newFiles;
+        synchronized (Crypto.class) {
+            mCrypto.encrypt(mFiles.toArray(new Path[0]));
+            newFiles = mCrypto.getNewFiles();
+        }
+        for (Path file : newFiles) {
+            checksums.put(file.getName(), DigestUtils.getFileHexDigest(mAlgorithm, file));
+        }
+        return checksums;
+    }
+
+    @WorkerThread
+    private void checkCurrentStream(int nextBytesSize) throws IOException {
+        if (mBytesWritten + nextBytesSize > mMaxBytesPerFile || mCurrentStream == null) {
+            // Need to create a new stream
+            closeCurrentStream();
+            String name = mBaseName + "." + mFiles.size();
+            if (mEncrypted) {
+                Path file = mBasePath.createNewFile(name + mExtension, null);
+                DigestOutputStream digestStream = new DigestOutputStream(file.openOutputStream(), mAlgorithm);
+                OutputStream encryptingStream = mCrypto.getEncryptingStream(digestStream);
+                if (encryptingStream != null) {
+                    mFiles.add(file);
+                    mCurrentDigest = digestStream;
+                    mCurrentStream = encryptingStream;
+                    mBytesWritten = 0;
+                    return;
+                }
+                // Cannot be encrypted on the fly, can only happen for the first part
+                digestStream.close();
+                file.delete();
+                mEncrypted = false;
+            }
+            Path file = mBasePath.createNewFile(name, null);
+            mFiles.add(file);
+            mCurrentStream = file.openOutputStream();
+            mBytesWritten = 0;
+        }
+    }
+
+    @WorkerThread
+    private void closeCurrentStream() throws IOException {
+        if (mCurrentStream == null) {
+            return;
+        }
+        // Closing the encrypting stream writes the authentication tag, the checksum must include it
+        mCurrentStream.close();
+        mCurrentStream = null;
+        if (mCurrentDigest != null) {
+            mChecksums.add(mCurrentDigest.getHexDigest());
+            mCurrentDigest = null;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -58,7 +59,6 @@ import io.github.muntashirakon.AppManager.utils.ExUtils;
 import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
-import io.github.muntashirakon.io.SplitOutputStream;
 
 /**
  * A documentation about OAndBackup is located at
@@ -303,7 +303,7 @@ public class OABConverter extends Converter {
         Path[] sourceFiles;
         try {
             sourceFiles = TarUtils.create(mDestMetadata.tarType, baseApkFile, mTempBackupPath, sourceBackupFilePrefix,
-                            /* language=regexp */ new String[]{".*\\.apk"}, null, null, false)
+                            /* language=regexp */ new String[]{".*\\.apk"}, null, null, false, true)
                     .toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
@@ -353,8 +353,10 @@ public class OABConverter extends Converter {
             }
             String dataBackupFilePrefix = DATA_PREFIX + (i++) + getExt(mDestMetadata.tarType);
             try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(files[0].openInputStream()));
-                 SplitOutputStream sos = new SplitOutputStream(mTempBackupPath, dataBackupFilePrefix, DEFAULT_SPLIT_SIZE);
-                 BufferedOutputStream bos = new BufferedOutputStream(sos)) {
+                 EncryptedSplitOutputStream esos = new EncryptedSplitOutputStream(mTempBackupPath,
+                         dataBackupFilePrefix, DEFAULT_SPLIT_SIZE, mCrypto, mDestMetadata.crypto,
+                         mDestMetadata.checksumAlgo);
+                 BufferedOutputStream bos = new BufferedOutputStream(esos)) {
                 OutputStream os;
                 if (TAR_GZIP.equals(mDestMetadata.tarType)) {
                     os = new GzipCompressorOutputStream(bos);
@@ -370,26 +372,29 @@ public class OABConverter extends Converter {
                     tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
                     ZipEntry zipEntry;
                     while ((zipEntry = zis.getNextEntry()) != null) {
-                        File tmpFile = null;
-                        if (!zipEntry.isDirectory()) {
-                            // We need to use a temporary file
-                            tmpFile = FileCache.getGlobalFileCache().createCachedFile(files[0].getExtension());
-                            try (OutputStream fos = new FileOutputStream(tmpFile)) {
-                                IoUtils.copy(zis, fos);
-                            }
-                        }
                         String fileName = zipEntry.getName().replaceFirst(Pattern.quote(mPackageName + "/"), "");
                         if (fileName.equals("")) continue;
                         // New tar entry
                         TarArchiveEntry tarArchiveEntry = new TarArchiveEntry(fileName);
-                        if (tmpFile != null) {
-                            tarArchiveEntry.setSize(tmpFile.length());
-                        }
-                        tos.putArchiveEntry(tarArchiveEntry);
-                        if (tmpFile != null) {
-                            // Copy from the temporary file
-                            try (FileInputStream fis = new FileInputStream(tmpFile)) {
-                                IoUtils.copy(fis, tos);
+                        if (zipEntry.isDirectory()) {
+                            tos.putArchiveEntry(tarArchiveEntry);
+                        } else if (zipEntry.getSize() >= 0) {
+                            // Size is known in advance, copy directly
+                            tarArchiveEntry.setSize(zipEntry.getSize());
+                            tos.putArchiveEntry(tarArchiveEntry);
+                            IoUtils.copy(zis, tos);
+                        } else {
+                            // Size is only known after reading the entry, we need to use a temporary file
+                            File tmpFile = FileCache.getGlobalFileCache().createCachedFile(files[0].getExtension());
+                            try {
+                                try (OutputStream fos = new FileOutputStream(tmpFile)) {
+                                    IoUtils.copy(zis, fos);
+                                }
+                                tarArchiveEntry.setSize(tmpFile.length());
+                                tos.putArchiveEntry(tarArchiveEntry);
+                                try (FileInputStream fis = new FileInputStream(tmpFile)) {
+                                    IoUtils.copy(fis, tos);
+                                }
                             } finally {
                                 FileCache.getGlobalFileCache().delete(tmpFile);
                             }
@@ -398,10 +403,10 @@ public class OABConverter extends Converter {
                     }
                     tos.finish();
                 }
-                // Encrypt backups
-                Path[] newBackupFiles = encrypt(sos.getFiles().toArray(new Path[0]));
-                for (Path file : newBackupFiles) {
-                    mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+                // Backups are encrypted and checksummed already
+                esos.close();
+                for (Map.Entry<String, String> checksum : esos.getChecksums().entrySet()) {
+                    mChecksum.add(checksum.getKey(), checksum.getValue());
                 }
             } catch (IOException e) {
                 throw new BackupException("Backup failed for " + dataFile, e);
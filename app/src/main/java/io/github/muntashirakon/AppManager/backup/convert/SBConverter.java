@@ -43,6 +43,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -67,7 +68,6 @@ import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
-import io.github.muntashirakon.io.SplitOutputStream;
 
 public class SBConverter extends Converter {
     public static final String TAG = SBConverter.class.getSimpleName();
@@ -213,7 +213,7 @@ public class SBConverter extends Converter {
         try {
             // We have to specify APK files because the folder may contain many
             sourceFiles = TarUtils.create(mDestMetadata.tarType, sourceDir, mTempBackupPath, sourceBackupFilePrefix,
-                    apkFiles, null, null, false).toArray(new Path[0]);
+                    apkFiles, null, null, false, true).toArray(new Path[0]);
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
         }
@@ -246,8 +246,10 @@ public class SBConverter extends Converter {
         for (Path dataFile : dataFiles) {
             String dataBackupFilePrefix = DATA_PREFIX + (i++) + getExt(mDestMetadata.tarType);
             try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(dataFile.openInputStream()));
-                 SplitOutputStream sos = new SplitOutputStream(mTempBackupPath, dataBackupFilePrefix, DEFAULT_SPLIT_SIZE);
-                 BufferedOutputStream bos = new BufferedOutputStream(sos)) {
+                 EncryptedSplitOutputStream esos = new EncryptedSplitOutputStream(mTempBackupPath,
+                         dataBackupFilePrefix, DEFAULT_SPLIT_SIZE, mCrypto, mDestMetadata.crypto,
+                         mDestMetadata.checksumAlgo);
+                 BufferedOutputStream bos = new BufferedOutputStream(esos)) {
                 // TODO: 31/5/21 Check backup format (each zip file has a comment section which can be parsed as JSON)
                 OutputStream os;
                 if (TAR_GZIP.equals(mDestMetadata.tarType)) {
@@ -264,26 +266,29 @@ public class SBConverter extends Converter {
                     tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
                     ZipEntry zipEntry;
                     while ((zipEntry = zis.getNextEntry()) != null) {
-                        File tmpFile = null;
-                        if (!zipEntry.isDirectory()) {
-                            // We need to use a temporary file
-                            tmpFile = FileCache.getGlobalFileCache().createCachedFile(dataFile.getExtension());
-                            try (OutputStream fos = new FileOutputStream(tmpFile)) {
-                                IoUtils.copy(zis, fos);
-                            }
-                        }
                         String fileName = zipEntry.getName().replaceFirst(Pattern.quote(mPackageName + "/"), "");
                         if (fileName.equals("")) continue;
                         // New tar entry
                         TarArchiveEntry tarArchiveEntry = new TarArchiveEntry(fileName);
-                        if (tmpFile != null) {
-                            tarArchiveEntry.setSize(tmpFile.length());
-                        }
-                        tos.putArchiveEntry(tarArchiveEntry);
-                        if (tmpFile != null) {
-                            // Copy from the temporary file
-                            try (FileInputStream fis = new FileInputStream(tmpFile)) {
-                                IoUtils.copy(fis, tos);
+                        if (zipEntry.isDirectory()) {
+                            tos.putArchiveEntry(tarArchiveEntry);
+                        } else if (zipEntry.getSize() >= 0) {
+                            // Size is known in advance, copy directly
+                            tarArchiveEntry.setSize(zipEntry.getSize());
+                            tos.putArchiveEntry(tarArchiveEntry);
+                            IoUtils.copy(zis, tos);
+                        } else {
+                            // Size is only known after reading the entry, we need to use a temporary file
+                            File tmpFile = FileCache.getGlobalFileCache().createCachedFile(dataFile.getExtension());
+                            try {
+                                try (OutputStream fos = new FileOutputStream(tmpFile)) {
+                                    IoUtils.copy(zis, fos);
+                                }
+                                tarArchiveEntry.setSize(tmpFile.length());
+                                tos.putArchiveEntry(tarArchiveEntry);
+                                try (FileInputStream fis = new FileInputStream(tmpFile)) {
+                                    IoUtils.copy(fis, tos);
+                                }
                             } finally {
                                 FileCache.getGlobalFileCache().delete(tmpFile);
                             }
@@ -292,10 +297,10 @@ public class SBConverter extends Converter {
                     }
                     tos.finish();
                 }
-                // Encrypt backups
-                Path[] newBackupFiles = encrypt(sos.getFiles().toArray(new Path[0]));
-                for (Path file : newBackupFiles) {
-                    mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+                // Backups are encrypted and checksummed already
+                esos.close();
+                for (Map.Entry<String, String> checksum : esos.getChecksums().entrySet()) {
+                    mChecksum.add(checksum.getKey(), checksum.getValue());
                 }
             } catch (IOException e) {
                 throw new BackupException("Backup failed for " + dataFile, e);
@@ -442,7 +447,7 @@ public class SBConverter extends Converter {
 
     @NonNull
     private Path[] encrypt(@NonNull Path[] files) throws IOException {
-        synchronized (Class.class) {
+        synchronized (Crypto.class) {
             mCrypto.encrypt(files);
             return mCrypto.getNewFiles();
         }
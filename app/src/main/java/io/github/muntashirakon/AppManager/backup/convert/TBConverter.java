@@ -26,23 +26,27 @@ import com.github.luben.zstd.ZstdOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
 import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import io.github.muntashirakon.AppManager.backup.BackupException;
 import io.github.muntashirakon.AppManager.backup.BackupFiles;
@@ -61,7 +65,6 @@ import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
-import io.github.muntashirakon.io.SplitOutputStream;
 
 public class TBConverter extends Converter {
     public static final String TAG = TBConverter.class.getSimpleName();
@@ -246,24 +249,87 @@ public class TBConverter extends Converter {
         }
         // Backup APK file
         String sourceBackupFilePrefix = SOURCE_PREFIX + getExt(mDestMetadata.tarType);
-        Path[] sourceFiles;
+        EncryptedSplitOutputStream esos = new EncryptedSplitOutputStream(mTempBackupPath, sourceBackupFilePrefix,
+                DEFAULT_SPLIT_SIZE, mCrypto, mDestMetadata.crypto, mDestMetadata.checksumAlgo);
         try {
-            sourceFiles = TarUtils.create(mDestMetadata.tarType, baseApkFile, mTempBackupPath, sourceBackupFilePrefix,
-                            /* language=regexp */new String[]{".*\\.apk"}, null, null, false)
-                    .toArray(new Path[0]);
+            TarArchiveEntry tarEntry = new TarArchiveEntry(baseApkFile, mDestMetadata.apkName);
+            if (mSourceMetadata.tarType.equals(mDestMetadata.tarType) && tarEntry.getSize() <= TarConstants.MAXSIZE
+                    && tarEntry.getLongUserId() <= TarConstants.MAXID
+                    && tarEntry.getLongGroupId() <= TarConstants.MAXID) {
+                // The APK is already compressed the way we want, reuse it as is
+                copyCompressedApkFile(tarEntry, esos);
+            } else {
+                try (TarArchiveOutputStream tos = new TarArchiveOutputStream(createCompressorOutputStream(
+                        new BufferedOutputStream(esos), true))) {
+                    tos.putArchiveEntry(tarEntry);
+                    try (InputStream is = baseApkFile.openInputStream()) {
+                        IoUtils.copy(is, tos);
+                    }
+                    tos.closeArchiveEntry();
+                    tos.finish();
+                }
+            }
+            esos.close();
+            for (Map.Entry<String, String> checksum : esos.getChecksums().entrySet()) {
+                mChecksum.add(checksum.getKey(), checksum.getValue());
+            }
         } catch (Throwable th) {
             throw new BackupException("APK files backup is requested but no APK files have been backed up.", th);
         } finally {
+            IoUtils.closeQuietly(esos);
             baseApkFile.requireParent().delete();
         }
-        // Overwrite with the new files
-        try {
-            sourceFiles = encrypt(sourceFiles);
-        } catch (IOException e) {
-            throw new BackupException("Failed to encrypt " + Arrays.toString(sourceFiles));
+    }
+
+    /**
+     * Write a tar containing only the APK file without decompressing and compressing the APK file again. The source
+     * APK file is a gzip or bzip2 stream, and such streams can be concatenated. So, the tar header and the trailer are
+     * compressed separately, and the source APK file is put between them. This is extracted the same way as a tar file
+     * compressed as a whole.
+     */
+    private void copyCompressedApkFile(@NonNull TarArchiveEntry tarEntry, @NonNull OutputStream os)
+            throws IOException, BackupException {
+        byte[] header = new byte[TarConstants.DEFAULT_RCDSIZE];
+        tarEntry.writeEntryHeader(header);
+        // The APK file is padded to a record, followed by two empty records marking the end of the archive
+        int padding = (int) ((TarConstants.DEFAULT_RCDSIZE - tarEntry.getSize() % TarConstants.DEFAULT_RCDSIZE)
+                % TarConstants.DEFAULT_RCDSIZE);
+        byte[] trailer = new byte[padding + 2 * TarConstants.DEFAULT_RCDSIZE];
+        BufferedOutputStream bos = new BufferedOutputStream(os);
+        bos.write(compress(header));
+        try (InputStream is = getApkFile(mSourceMetadata.apkName, mSourceMetadata.tarType).openInputStream()) {
+            IoUtils.copy(is, bos);
+        }
+        bos.write(compress(trailer));
+        bos.flush();
+    }
+
+    @NonNull
+    private byte[] compress(@NonNull byte[] bytes) throws IOException, BackupException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream cos = createCompressorOutputStream(bos, false)) {
+            cos.write(bytes);
         }
-        for (Path file : sourceFiles) {
-            mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+        return bos.toByteArray();
+    }
+
+    @NonNull
+    private OutputStream createCompressorOutputStream(@NonNull OutputStream os, boolean fastCompression)
+            throws IOException, BackupException {
+        if (TAR_GZIP.equals(mDestMetadata.tarType)) {
+            if (fastCompression) {
+                GzipParameters parameters = new GzipParameters();
+                parameters.setCompressionLevel(Deflater.BEST_SPEED);
+                return new GzipCompressorOutputStream(os, parameters);
+            } else return new GzipCompressorOutputStream(os);
+        } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
+            return new BZip2CompressorOutputStream(os);
+        } else if (TAR_ZSTD.equals(mDestMetadata.tarType)) {
+            if (fastCompression) {
+                return new ZstdOutputStream(os, 1);
+            } else return new ZstdOutputStream(os);
+        } else {
+            throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
         }
     }
 
@@ -293,38 +359,20 @@ public class TBConverter extends Converter {
                 throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
             }
             TarArchiveInputStream tis = new TarArchiveInputStream(cis);
-            SplitOutputStream intSos = null, extSos = null;
+            EncryptedSplitOutputStream intSos = null, extSos = null;
             TarArchiveOutputStream intTos = null, extTos = null;
             if (intBackupFilePrefix != null) {
-                intSos = new SplitOutputStream(mTempBackupPath, intBackupFilePrefix, DEFAULT_SPLIT_SIZE);
-                BufferedOutputStream bos = new BufferedOutputStream(intSos);
-                OutputStream cos;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    cos = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    cos = new BZip2CompressorOutputStream(bos);
-                } else if (TAR_ZSTD.equals(mDestMetadata.tarType)) {
-                    cos = new ZstdOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                intSos = new EncryptedSplitOutputStream(mTempBackupPath, intBackupFilePrefix, DEFAULT_SPLIT_SIZE,
+                        mCrypto, mDestMetadata.crypto, mDestMetadata.checksumAlgo);
+                OutputStream cos = createCompressorOutputStream(new BufferedOutputStream(intSos), false);
                 intTos = new TarArchiveOutputStream(cos);
                 intTos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                 intTos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
             }
             if (extBackupFilePrefix != null) {
-                extSos = new SplitOutputStream(mTempBackupPath, extBackupFilePrefix, DEFAULT_SPLIT_SIZE);
-                BufferedOutputStream bos = new BufferedOutputStream(extSos);
-                OutputStream cos;
-                if (TAR_GZIP.equals(mDestMetadata.tarType)) {
-                    cos = new GzipCompressorOutputStream(bos);
-                } else if (TAR_BZIP2.equals(mDestMetadata.tarType)) {
-                    cos = new BZip2CompressorOutputStream(bos);
-                } else if (TAR_ZSTD.equals(mDestMetadata.tarType)) {
-                    cos = new ZstdOutputStream(bos);
-                } else {
-                    throw new BackupException("Invalid compression type: " + mDestMetadata.tarType);
-                }
+                extSos = new EncryptedSplitOutputStream(mTempBackupPath, extBackupFilePrefix, DEFAULT_SPLIT_SIZE,
+                        mCrypto, mDestMetadata.crypto, mDestMetadata.checksumAlgo);
+                OutputStream cos = createCompressorOutputStream(new BufferedOutputStream(extSos), false);
                 extTos = new TarArchiveOutputStream(cos);
                 extTos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
                 extTos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
@@ -381,32 +429,24 @@ public class TBConverter extends Converter {
             }
             if (intTos != null) {
                 intTos.finish();
-                try {
-                    intTos.close();
-                } catch (Exception ignore) {
-                }
+                // Closing also finishes the encryption
+                intTos.close();
             }
             if (extTos != null) {
                 extTos.finish();
-                try {
-                    extTos.close();
-                } catch (Exception ignore) {
-                }
+                // Closing also finishes the encryption
+                extTos.close();
             }
 
-            // Encrypt created backups and generate checksum
+            // Backups are encrypted and checksummed already
             if (intSos != null) {
-                // Encrypt backups
-                Path[] newBackupFiles = encrypt(intSos.getFiles().toArray(new Path[0]));
-                for (Path file : newBackupFiles) {
-                    mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+                for (Map.Entry<String, String> checksum : intSos.getChecksums().entrySet()) {
+                    mChecksum.add(checksum.getKey(), checksum.getValue());
                 }
             }
             if (extSos != null) {
-                // Encrypt backups
-                Path[] newBackupFiles = encrypt(extSos.getFiles().toArray(new Path[0]));
-                for (Path file : newBackupFiles) {
-                    mChecksum.add(file.getName(), DigestUtils.getHexDigest(mDestMetadata.checksumAlgo, file));
+                for (Map.Entry<String, String> checksum : extSos.getChecksums().entrySet()) {
+                    mChecksum.add(checksum.getKey(), checksum.getValue());
                 }
             }
         } catch (IOException e) {
@@ -501,7 +541,7 @@ public class TBConverter extends Converter {
 
     @NonNull
     private Path[] encrypt(@NonNull Path[] files) throws IOException {
-        synchronized (Class.class) {
+        synchronized (Crypto.class) {
             mCrypto.encrypt(files);
             return mCrypto.getNewFiles();
         }
@@ -58,6 +58,7 @@ import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.compat.PermissionCompat;
 import io.github.muntashirakon.AppManager.compat.StorageManagerCompat;
 import io.github.muntashirakon.AppManager.logs.Logger;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
 import io.github.muntashirakon.AppManager.progress.NotificationProgressHandler;
 import io.github.muntashirakon.AppManager.progress.NotificationProgressHandler.NotificationInfo;
 import io.github.muntashirakon.AppManager.progress.ProgressHandler;
@@ -70,6 +71,7 @@ import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.FreezeUtils;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.ThreadUtils;
 import io.github.muntashirakon.io.Path;
@@ -624,6 +626,7 @@ public class BatchOpsManager {
         float lastProgress = mProgressHandler != null ? mProgressHandler.getLastProgress() : 0;
         if (permissions.length == 1 && permissions[0].equals("*")) {
             // Wildcard detected
+            PermissionInfoCache permissionInfoCache = PermissionInfoCache.getInstance();
             int i = 0;
             for (UserPackagePair pair : mUserPackagePairs) {
                 updateProgress(lastProgress, ++i);
@@ -631,6 +634,10 @@ public class BatchOpsManager {
                     permissions = PackageUtils.getPermissionsForPackage(pair.getPackageName(), pair.getUserId());
                     if (permissions == null) continue;
                     for (String permission : permissions) {
+                        if (!permissionInfoCache.isModifiable(permission)) {
+                            // Install-time and signature permissions cannot be granted or revoked
+                            continue;
+                        }
                         if (isGrant) {
                             PermissionCompat.grantPermission(pair.getPackageName(), permission, pair.getUserId());
                         } else {
@@ -737,6 +744,7 @@ public class BatchOpsManager {
                 }
             }
         }
+        PackageSnapshot.invalidate();
         return new Result(failedPkgList);
     }
 
@@ -156,6 +156,22 @@ public class AESCrypto implements Crypto {
         }
     }
 
+    @NonNull
+    @Override
+    public InputStream getDecryptingStream(@NonNull InputStream encryptedStream) {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(false, getParams());
+        return new CipherInputStream(encryptedStream, cipher);
+    }
+
+    @NonNull
+    @Override
+    public OutputStream getEncryptingStream(@NonNull OutputStream unencryptedStream) {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, getParams());
+        return new CipherOutputStream(unencryptedStream, cipher);
+    }
+
     @WorkerThread
     private void handleFiles(boolean forEncryption, @NonNull Path[] files) throws IOException {
         mNewFiles.clear();
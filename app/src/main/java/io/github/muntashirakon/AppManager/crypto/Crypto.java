@@ -3,6 +3,7 @@
 package io.github.muntashirakon.AppManager.crypto;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.io.Closeable;
@@ -25,6 +26,28 @@ public interface Crypto extends Closeable {
     @WorkerThread
     void decrypt(@NonNull InputStream encryptedStream, @NonNull OutputStream unencryptedStream) throws IOException;
 
+    /**
+     * Return a stream that decrypts the encrypted stream while it is being read. Closing the returned stream also
+     * closes the encrypted stream.
+     *
+     * @return The decrypting stream, or {@code null} if the encrypted stream cannot be decrypted on the fly, in which
+     * case {@link #decrypt(Path[])} has to be used.
+     */
+    @WorkerThread
+    @Nullable
+    InputStream getDecryptingStream(@NonNull InputStream encryptedStream) throws IOException;
+
+    /**
+     * Return a stream that encrypts everything written to it into the given stream. Closing the returned stream
+     * finishes the encryption and closes the given stream.
+     *
+     * @return The encrypting stream, or {@code null} if the data cannot be encrypted on the fly, in which case
+     * {@link #encrypt(Path[])} has to be used.
+     */
+    @WorkerThread
+    @Nullable
+    OutputStream getEncryptingStream(@NonNull OutputStream unencryptedStream) throws IOException;
+
     @NonNull
     Path[] getNewFiles();
 
@@ -36,6 +36,20 @@ public class DummyCrypto implements Crypto {
         // Do nothing since both are the same stream
     }
 
+    @NonNull
+    @Override
+    public InputStream getDecryptingStream(@NonNull InputStream encryptedStream) {
+        // Not encrypted
+        return encryptedStream;
+    }
+
+    @NonNull
+    @Override
+    public OutputStream getEncryptingStream(@NonNull OutputStream unencryptedStream) {
+        // Not encrypted
+        return unencryptedStream;
+    }
+
     @NonNull
     @Override
     public Path[] getNewFiles() {
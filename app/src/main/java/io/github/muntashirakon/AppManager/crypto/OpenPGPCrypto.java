@@ -14,6 +14,7 @@ import android.os.SystemClock;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationCompat;
@@ -124,6 +125,20 @@ public class OpenPGPCrypto implements Crypto {
         handleStreams(intent, Cipher.DECRYPT_MODE, encryptedStream, unencryptedStream);
     }
 
+    @Nullable
+    @Override
+    public InputStream getDecryptingStream(@NonNull InputStream encryptedStream) {
+        // Decryption is done by the OpenPGP provider which writes to an output stream
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public OutputStream getEncryptingStream(@NonNull OutputStream unencryptedStream) {
+        // Encryption is done by the OpenPGP provider which reads from an input stream
+        return null;
+    }
+
     @WorkerThread
     @Override
     public void encrypt(@NonNull Path[] filesList) throws IOException {
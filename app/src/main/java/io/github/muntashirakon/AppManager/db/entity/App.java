@@ -18,6 +18,7 @@ import java.io.Serializable;
 import java.util.Objects;
 
 import io.github.muntashirakon.AppManager.compat.ApplicationInfoCompat;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
 import io.github.muntashirakon.AppManager.utils.FreezeUtils;
 import io.github.muntashirakon.AppManager.utils.Utils;
@@ -35,6 +36,12 @@ public class App implements Serializable {
     @ColumnInfo(name = "label")
     public String packageLabel;
 
+    /**
+     * Locales the label was loaded in, see {@link AppLabelCache#getLabelLocale()}
+     */
+    @ColumnInfo(name = "label_locale", defaultValue = "''")
+    public String labelLocale;
+
     @ColumnInfo(name = "version_name")
     public String versionName;
 
@@ -136,6 +143,7 @@ public class App implements Serializable {
         app.flags = applicationInfo.flags;
         app.isEnabled = !FreezeUtils.isFrozen(applicationInfo);
         app.packageLabel = ApplicationInfoCompat.loadLabelSafe(applicationInfo, context.getPackageManager()).toString();
+        app.labelLocale = AppLabelCache.getLabelLocale();
         app.sdk = applicationInfo.targetSdkVersion;
         app.versionName = packageInfo.versionName;
         app.versionCode = PackageInfoCompat.getLongVersionCode(packageInfo);
@@ -165,6 +173,7 @@ public class App implements Serializable {
         }
         app.isEnabled = true;
         app.packageLabel = backup.label;
+        app.labelLocale = "";
         app.sdk = 0;
         app.versionName = backup.versionName;
         app.versionCode = backup.versionCode;
@@ -6,6 +6,7 @@ import android.os.UserHandleHidden;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 
@@ -77,6 +78,17 @@ public class Backup {
     @ColumnInfo(name = "info_hash")
     public String uuid;
 
+    /**
+     * Location of the backup directory, used along with {@link #metaLastModified} to skip parsing the metadata of
+     * unchanged backups during a full scan.
+     */
+    @ColumnInfo(name = "backup_location")
+    @Nullable
+    public String backupLocation;
+
+    @ColumnInfo(name = "meta_last_modified")
+    public long metaLastModified;
+
     public BackupFlags getFlags() {
         return new BackupFlags(flags);
     }
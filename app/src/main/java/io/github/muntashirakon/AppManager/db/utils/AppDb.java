@@ -10,6 +10,7 @@ import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MAT
 import android.annotation.UserIdInt;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
@@ -31,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 
 import io.github.muntashirakon.AppManager.backup.BackupUtils;
+import io.github.muntashirakon.AppManager.compat.ApplicationInfoCompat;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.db.AppsDb;
 import io.github.muntashirakon.AppManager.db.dao.AppDao;
@@ -40,6 +42,7 @@ import io.github.muntashirakon.AppManager.db.entity.Backup;
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentsBlocker;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
+import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
 import io.github.muntashirakon.AppManager.settings.FeatureController;
 import io.github.muntashirakon.AppManager.ssaid.SsaidSettings;
 import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
@@ -125,12 +128,14 @@ public class AppDb {
     public void deleteApplication(String packageName, int userId) {
         synchronized (sLock) {
             mAppDao.delete(packageName, userId);
+            AppLabelCache.getInstance().remove(packageName, userId);
         }
     }
 
     public void deleteAllApplications() {
         synchronized (sLock) {
             mAppDao.deleteAll();
+            AppLabelCache.getInstance().clear();
         }
     }
 
@@ -154,32 +159,43 @@ public class AppDb {
 
     @WorkerThread
     public List<App> updateApplications(@NonNull Context context, @NonNull String[] packageNames) {
+        List<ApplicationInfo> changedPackages = new ArrayList<>();
+        List<App> appList = new ArrayList<>();
         synchronized (sLock) {
-            List<App> appList = new ArrayList<>();
             for (String packageName : packageNames) {
-                appList.addAll(updateApplicationInternal(context, packageName));
+                appList.addAll(updateApplicationInternal(context, packageName, changedPackages));
             }
             // Update usage and others
             updateVariableData(context, appList);
             mAppDao.insert(appList);
-            return appList;
+            AppLabelCache.getInstance().update(appList);
         }
+        ImageLoader.getInstance().storeImagesInBackground(changedPackages);
+        return appList;
     }
 
     @WorkerThread
     public List<App> updateApplication(@NonNull Context context, @NonNull String packageName) {
+        List<ApplicationInfo> changedPackages = new ArrayList<>(1);
+        List<App> appList;
         synchronized (sLock) {
-            List<App> appList = updateApplicationInternal(context, packageName);
+            appList = updateApplicationInternal(context, packageName, changedPackages);
             // Update usage and others
             updateVariableData(context, appList);
             mAppDao.insert(appList);
-            return appList;
+            AppLabelCache.getInstance().update(appList);
         }
+        ImageLoader.getInstance().storeImagesInBackground(changedPackages);
+        return appList;
     }
 
+    /**
+     * @param changedPackages Packages whose info have changed, i.e. their icons have to be loaded again
+     */
     @WorkerThread
     @NonNull
-    private List<App> updateApplicationInternal(@NonNull Context context, @NonNull String packageName) {
+    private List<App> updateApplicationInternal(@NonNull Context context, @NonNull String packageName,
+                                                @NonNull List<ApplicationInfo> changedPackages) {
         int[] userIds = Users.getUsersIds();
         List<App> oldApps = new ArrayList<>(mAppDao.getAll(packageName));
         List<App> appList = new ArrayList<>(userIds.length);
@@ -221,13 +237,20 @@ public class AppDb {
                 if ((packageInfo != null && isUpToDate(oldApp, packageInfo))
                         || (backup != null && isUpToDate(oldApp, backup))) {
                     // Up-to-date app
+                    if (packageInfo != null) {
+                        updateLabelIfNeeded(context, oldApp, packageInfo);
+                    }
                     appList.add(oldApp);
                     oldApp.lastActionTime = System.currentTimeMillis();
                     continue;
                 }
             }
             // New app
-            App app = packageInfo != null ? App.fromPackageInfo(context, packageInfo) : App.fromBackup(backup);
+            App app;
+            if (packageInfo != null) {
+                app = App.fromPackageInfo(context, packageInfo);
+                changedPackages.add(packageInfo.applicationInfo);
+            } else app = App.fromBackup(backup);
             appList.add(app);
         }
 
@@ -242,6 +265,13 @@ public class AppDb {
 
     @WorkerThread
     public void updateApplications(@NonNull Context context) {
+        List<ApplicationInfo> changedPackages = new ArrayList<>();
+        updateApplicationsInternal(context, changedPackages);
+        ImageLoader.getInstance().storeImagesInBackground(changedPackages);
+    }
+
+    @WorkerThread
+    private void updateApplicationsInternal(@NonNull Context context, @NonNull List<ApplicationInfo> changedPackages) {
         synchronized (sLock) {
             Map<String, Backup> backups = getBackups(false);
             List<App> oldApps = new ArrayList<>(mAppDao.getAll());
@@ -272,6 +302,7 @@ public class AppDb {
                         App oldApp = oldApps.remove(oldAppIndex);
                         if (isUpToDate(oldApp, packageInfo)) {
                             // Up-to-date app
+                            updateLabelIfNeeded(context, oldApp, packageInfo);
                             updatedApps.add(oldApp.packageName);
                             modifiedApps.add(oldApp);
                             backups.remove(packageInfo.packageName);
@@ -281,6 +312,7 @@ public class AppDb {
                     }
                     // New app
                     App app = App.fromPackageInfo(context, packageInfo);
+                    changedPackages.add(packageInfo.applicationInfo);
                     backups.remove(packageInfo.packageName);
                     newApps.add(app.packageName);
                     modifiedApps.add(app);
@@ -315,6 +347,11 @@ public class AppDb {
             // Add new data
             mAppDao.delete(oldApps);
             mAppDao.insert(modifiedApps);
+            AppLabelCache labelCache = AppLabelCache.getInstance();
+            for (App app : oldApps) {
+                labelCache.remove(app.packageName, app.userId);
+            }
+            labelCache.update(modifiedApps);
             if (!oldApps.isEmpty()) {
                 // Delete broadcast
                 Intent intent = new Intent(PackageChangeReceiver.ACTION_DB_PACKAGE_REMOVED);
@@ -440,6 +477,19 @@ public class AppDb {
         return null;
     }
 
+    /**
+     * Load the label of an up-to-date app again if it was loaded in other locales.
+     */
+    private static void updateLabelIfNeeded(@NonNull Context context, @NonNull App app,
+                                            @NonNull PackageInfo packageInfo) {
+        String locale = AppLabelCache.getLabelLocale();
+        if (!locale.equals(app.labelLocale)) {
+            app.packageLabel = ApplicationInfoCompat.loadLabelSafe(packageInfo.applicationInfo,
+                    context.getPackageManager()).toString();
+            app.labelLocale = locale;
+        }
+    }
+
     private static boolean isUpToDate(@NonNull App currentApp, @NonNull PackageInfo installedPackageInfo) {
         if (!currentApp.isInstalled) {
             // The app was not installed earlier
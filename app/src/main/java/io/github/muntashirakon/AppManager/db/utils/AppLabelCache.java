@@ -0,0 +1,145 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.db.utils;
+
+import android.annotation.UserIdInt;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.UserHandleHidden;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.ConfigurationCompat;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.muntashirakon.AppManager.compat.ApplicationInfoCompat;
+import io.github.muntashirakon.AppManager.db.AppsDb;
+import io.github.muntashirakon.AppManager.db.entity.App;
+import io.github.muntashirakon.AppManager.utils.ThreadUtils;
+
+/**
+ * A process-wide lookup of app labels. Loading a label opens the resources of the APK file, which is too slow for
+ * scanning many packages or for binding list items. The labels are therefore loaded once, when {@link AppDb} adds or
+ * updates an app, and stored in the app table along with the locale they were loaded in. This cache serves them from
+ * memory and only falls back to loading the label if it is missing or was loaded in a different locale.
+ * <p>
+ * The labels are kept up-to-date by {@link AppDb} whenever it adds, updates or removes an app, e.g. when a
+ * {@link io.github.muntashirakon.AppManager.types.PackageChangeReceiver} reports a package change.
+ */
+public final class AppLabelCache {
+    public static final String TAG = AppLabelCache.class.getSimpleName();
+
+    private static AppLabelCache sInstance;
+
+    @AnyThread
+    @NonNull
+    public static AppLabelCache getInstance() {
+        synchronized (AppLabelCache.class) {
+            if (sInstance == null) {
+                sInstance = new AppLabelCache();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * The locales the app labels are currently loaded in, i.e. the system locales.
+     */
+    @AnyThread
+    @NonNull
+    public static String getLabelLocale() {
+        return ConfigurationCompat.getLocales(Resources.getSystem().getConfiguration()).toLanguageTags();
+    }
+
+    private final Map<String, String> mLabels = new ConcurrentHashMap<>();
+    @GuardedBy("this")
+    @Nullable
+    private String mLoadedLocale;
+
+    private AppLabelCache() {
+    }
+
+    /**
+     * @return The stored label of the app, or {@code null} if it is not stored (yet). Stored labels are not read from
+     * the database in the main thread.
+     */
+    @AnyThread
+    @Nullable
+    public String getLabel(@NonNull String packageName, @UserIdInt int userId) {
+        ensureLoaded();
+        return mLabels.get(getKey(packageName, userId));
+    }
+
+    /**
+     * Same as {@link ApplicationInfoCompat#loadLabelSafe(ApplicationInfo, PackageManager)}, except that the stored
+     * label is returned if available.
+     */
+    @AnyThread
+    @NonNull
+    public String getLabel(@NonNull ApplicationInfo info, @NonNull PackageManager pm) {
+        String key = getKey(info.packageName, UserHandleHidden.getUserId(info.uid));
+        ensureLoaded();
+        String label = mLabels.get(key);
+        if (label == null) {
+            label = ApplicationInfoCompat.loadLabelSafe(info, pm).toString();
+            mLabels.put(key, label);
+        }
+        return label;
+    }
+
+    /**
+     * Store the labels of the apps that are just added to or updated in the database.
+     */
+    @AnyThread
+    void update(@NonNull Collection<App> apps) {
+        String locale = getLabelLocale();
+        for (App app : apps) {
+            String key = getKey(app.packageName, app.userId);
+            if (app.isInstalled && app.packageLabel != null && locale.equals(app.labelLocale)) {
+                mLabels.put(key, app.packageLabel);
+            } else mLabels.remove(key);
+        }
+    }
+
+    @AnyThread
+    void remove(@NonNull String packageName, @UserIdInt int userId) {
+        mLabels.remove(getKey(packageName, userId));
+    }
+
+    @AnyThread
+    void clear() {
+        mLabels.clear();
+    }
+
+    @AnyThread
+    private void ensureLoaded() {
+        if (ThreadUtils.isMainThread()) {
+            // Database cannot be accessed, and the main thread should not wait for another thread loading it
+            return;
+        }
+        synchronized (this) {
+            String locale = getLabelLocale();
+            if (locale.equals(mLoadedLocale)) {
+                return;
+            }
+            mLabels.clear();
+            for (App app : AppsDb.getInstance().appDao().getAllInstalled()) {
+                if (app.packageLabel != null && locale.equals(app.labelLocale)) {
+                    mLabels.put(getKey(app.packageName, app.userId), app.packageLabel);
+                }
+            }
+            mLoadedLocale = locale;
+        }
+    }
+
+    @NonNull
+    private static String getKey(@NonNull String packageName, @UserIdInt int userId) {
+        return userId + "/" + packageName;
+    }
+}
@@ -235,15 +235,11 @@ public class BloatwareDetailsDialog extends CapsuleBottomSheetDialogFragment {
 
         public void findDebloatObject(@NonNull String packageName) {
             ThreadUtils.postOnBackgroundThread(() -> {
-                List<DebloatObject> debloatObjects = StaticDataset.getDebloatObjects();
-                for (DebloatObject debloatObject : debloatObjects) {
-                    if (packageName.equals(debloatObject.packageName)) {
-                        debloatObject.fillInstallInfo(getApplication(), new AppDb());
-                        debloatObjectLiveData.postValue(debloatObject);
-                        return;
-                    }
+                DebloatObject debloatObject = StaticDataset.getDebloatObject(packageName);
+                if (debloatObject != null) {
+                    debloatObject.fillInstallInfo(getApplication(), new AppDb());
                 }
-                debloatObjectLiveData.postValue(null);
+                debloatObjectLiveData.postValue(debloatObject);
             });
         }
     }
@@ -14,6 +14,7 @@ import android.os.RemoteException;
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -25,7 +26,9 @@ import io.github.muntashirakon.AppManager.compat.ApplicationInfoCompat;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.db.entity.App;
 import io.github.muntashirakon.AppManager.db.utils.AppDb;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 
 public class DebloatObject {
     @IntDef({REMOVAL_SAFE, REMOVAL_REPLACE, REMOVAL_CAUTION})
@@ -167,6 +170,15 @@ public class DebloatObject {
     }
 
     public void fillInstallInfo(@NonNull Context context, @NonNull AppDb appDb) {
+        fillInstallInfo(context, appDb, null);
+    }
+
+    /**
+     * Same as {@link #fillInstallInfo(Context, AppDb)}, except that the application info and the label are taken from
+     * the snapshot whenever the package is available there.
+     */
+    @WorkerThread
+    public void fillInstallInfo(@NonNull Context context, @NonNull AppDb appDb, @Nullable PackageSnapshot snapshot) {
         PackageManager pm = context.getPackageManager();
         List<SuggestionObject> suggestionObjects = getSuggestions();
         if (suggestionObjects != null) {
@@ -192,12 +204,13 @@ public class DebloatObject {
             mSystemApp = app.isSystemApp();
             mLabel = app.packageLabel;
             if (getIcon() == null) {
+                PackageSnapshot.Entry entry = snapshot != null ? snapshot.getEntry(packageName, app.userId) : null;
                 try {
-                    ApplicationInfo ai = PackageManagerCompat.getApplicationInfo(packageName,
-                            MATCH_UNINSTALLED_PACKAGES | MATCH_STATIC_SHARED_AND_SDK_LIBRARIES, app.userId);
+                    ApplicationInfo ai = entry != null ? entry.applicationInfo : PackageManagerCompat.getApplicationInfo(
+                            packageName, MATCH_UNINSTALLED_PACKAGES | MATCH_STATIC_SHARED_AND_SDK_LIBRARIES, app.userId);
                     mInstalled = (ai.flags & ApplicationInfo.FLAG_INSTALLED) != 0;
                     mSystemApp = ApplicationInfoCompat.isSystemApp(ai);
-                    mLabel = ai.loadLabel(pm);
+                    mLabel = entry != null ? entry.label : AppLabelCache.getInstance().getLabel(ai, pm);
                     mIcon = ai.loadIcon(pm);
                 } catch (RemoteException | PackageManager.NameNotFoundException ignore) {
                 }
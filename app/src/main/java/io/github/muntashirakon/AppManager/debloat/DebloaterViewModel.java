@@ -3,11 +3,14 @@
 package io.github.muntashirakon.AppManager.debloat;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
 import android.os.UserHandleHidden;
 import android.text.TextUtils;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
@@ -24,11 +27,13 @@ import java.util.concurrent.ExecutorService;
 
 import io.github.muntashirakon.AppManager.StaticDataset;
 import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
+import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
 import io.github.muntashirakon.AppManager.types.UserPackagePair;
 import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.AppPref;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 
 public class DebloaterViewModel extends AndroidViewModel {
     @DebloaterListOptions.Filter
@@ -42,10 +47,20 @@ public class DebloaterViewModel extends AndroidViewModel {
     private final Map<String, int[]> mSelectedPackages = new HashMap<>();
     private final MutableLiveData<List<DebloatObject>> mDebloatObjectListLiveData = new MutableLiveData<>();
     private final ExecutorService mExecutor = MultithreadedExecutor.getNewInstance();
+    private final PackageIntentReceiver mPackageObserver;
 
     public DebloaterViewModel(@NonNull Application application) {
         super(application);
         mFilterFlags = AppPref.getInt(AppPref.PrefKey.PREF_DEBLOATER_FILTER_FLAGS_INT);
+        PackageSnapshot.startObserving();
+        mPackageObserver = new PackageIntentReceiver(application);
+    }
+
+    @Override
+    protected void onCleared() {
+        getApplication().unregisterReceiver(mPackageObserver);
+        PackageSnapshot.stopObserving();
+        super.onCleared();
     }
 
     public boolean hasFilterFlag(@DebloaterListOptions.Filter int flag) {
@@ -201,4 +216,16 @@ public class DebloaterViewModel extends AndroidViewModel {
         }
         mDebloatObjects.addAll(StaticDataset.getDebloatObjectsWithInstalledInfo(getApplication()));
     }
+
+    public static class PackageIntentReceiver extends PackageChangeReceiver {
+        public PackageIntentReceiver(@NonNull Context context) {
+            super(context);
+        }
+
+        @Override
+        @WorkerThread
+        protected void onPackageChanged(Intent intent, @Nullable Integer uid, @Nullable String[] packages) {
+            PackageSnapshot.invalidate();
+        }
+    }
 }
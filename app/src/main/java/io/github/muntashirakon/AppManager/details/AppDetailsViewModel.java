@@ -56,10 +56,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.muntashirakon.AppManager.apk.ApkFile;
@@ -88,6 +91,7 @@ import io.github.muntashirakon.AppManager.permission.DevelopmentPermission;
 import io.github.muntashirakon.AppManager.permission.PermUtils;
 import io.github.muntashirakon.AppManager.permission.Permission;
 import io.github.muntashirakon.AppManager.permission.PermissionException;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
 import io.github.muntashirakon.AppManager.permission.ReadOnlyPermission;
 import io.github.muntashirakon.AppManager.permission.RuntimePermission;
 import io.github.muntashirakon.AppManager.rules.RuleType;
@@ -105,6 +109,7 @@ import io.github.muntashirakon.AppManager.users.UserInfo;
 import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.ExUtils;
 import io.github.muntashirakon.AppManager.utils.FreezeUtils;
+import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
 import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.IoUtils;
 
@@ -112,6 +117,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
     public static final String TAG = AppDetailsViewModel.class.getSimpleName();
 
     private final PackageManager mPackageManager;
+    private final PermissionInfoCache mPermissionInfoCache = PermissionInfoCache.getInstance();
     private final Object mBlockerLocker = new Object();
     private final ExecutorService mExecutor = Executors.newFixedThreadPool(4);
     private final CountDownLatch mPackageInfoWatcher = new CountDownLatch(1);
@@ -182,6 +188,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
             ((CachedApkSource) mApkSource).cleanup();
         }
         mExecutor.shutdownNow();
+        mComponentExecutor.shutdownNow();
     }
 
     @UiThread
@@ -354,22 +361,22 @@ public class AppDetailsViewModel extends AndroidViewModel {
         switch (property) {
             case AppDetailsFragment.ACTIVITIES:
                 synchronized (mActivityItems) {
-                    mActivities.postValue(filterAndSortComponents(mActivityItems));
+                    mActivities.postValue(filterAndSortComponents(new ArrayList<>(mActivityItems)));
                 }
                 break;
             case AppDetailsFragment.PROVIDERS:
                 synchronized (mProviderItems) {
-                    mProviders.postValue(filterAndSortComponents(mProviderItems));
+                    mProviders.postValue(filterAndSortComponents(new ArrayList<>(mProviderItems)));
                 }
                 break;
             case AppDetailsFragment.RECEIVERS:
                 synchronized (mReceiverItems) {
-                    mReceivers.postValue(filterAndSortComponents(mReceiverItems));
+                    mReceivers.postValue(filterAndSortComponents(new ArrayList<>(mReceiverItems)));
                 }
                 break;
             case AppDetailsFragment.SERVICES:
                 synchronized (mServiceItems) {
-                    mServices.postValue(filterAndSortComponents(mServiceItems));
+                    mServices.postValue(filterAndSortComponents(new ArrayList<>(mServiceItems)));
                 }
                 break;
             case AppDetailsFragment.APP_OPS: {
@@ -808,9 +815,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                 try {
                     permName = AppOpsManagerCompat.opToPermission(mAppOpItem.getOp());
                     if (permName != null) {
-                        PermissionInfo permissionInfo = mPackageManager.getPermissionInfo(permName,
-                                PackageManager.GET_META_DATA);
-                        int basePermissionType = PermissionInfoCompat.getProtection(permissionInfo);
+                        int basePermissionType = mPermissionInfoCache.getProtection(permName);
                         if (basePermissionType == PermissionInfo.PROTECTION_DANGEROUS) {
                             // Set mode
                             try {
@@ -825,8 +830,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                             }
                         }
                     }
-                } catch (PackageManager.NameNotFoundException | IllegalArgumentException |
-                         IndexOutOfBoundsException ignore) {
+                } catch (IllegalArgumentException | IndexOutOfBoundsException ignore) {
                 }
             }
         }
@@ -1151,95 +1155,192 @@ public class AppDetailsViewModel extends AndroidViewModel {
         mAppInfo.postValue(appDetailsItems);
     }
 
-    @NonNull
-    private final MutableLiveData<List<AppDetailsItem<ComponentInfo>>> mActivities = new MutableLiveData<>();
-    @NonNull
-    private final List<AppDetailsItem<ComponentInfo>> mActivityItems = new ArrayList<>();
+    /**
+     * An immutable view of everything the component tabs need, taken once per load so that the rows can be computed
+     * in parallel without holding {@link #mBlockerLocker}.
+     */
+    private static final class ComponentsSnapshot {
+        @NonNull
+        final PackageInfo packageInfo;
+        @NonNull
+        final CharSequence appLabel;
+        @NonNull
+        final Map<String, ComponentRule> rules;
+
+        ComponentsSnapshot(@NonNull PackageInfo packageInfo, @NonNull CharSequence appLabel,
+                           @NonNull Map<String, ComponentRule> rules) {
+            this.packageInfo = packageInfo;
+            this.appLabel = appLabel;
+            this.rules = rules;
+        }
+    }
+
+    private interface ComponentRowFactory<T extends ComponentInfo> {
+        @WorkerThread
+        @NonNull
+        AppDetailsComponentItem create(@NonNull T componentInfo, @NonNull ComponentsSnapshot snapshot);
+    }
+
+    // Number of components computed by a single task
+    private static final int COMPONENT_CHUNK_SIZE = 32;
+
+    // The loaders run on mExecutor, rows are computed on a separate pool so that the loaders do not wait on themselves
+    private final ExecutorService mComponentExecutor = Executors.newFixedThreadPool(MultithreadedExecutor.getThreadCount());
+    private final Object mAppLabelLock = new Object();
+    @GuardedBy("mAppLabelLock")
+    @Nullable
+    private PackageInfo mAppLabelOwner;
+    @GuardedBy("mAppLabelLock")
+    @Nullable
+    private CharSequence mAppLabel;
 
     @WorkerThread
-    @GuardedBy("blockerLocker")
-    private void loadActivities() {
-        synchronized (mActivityItems) {
-            mActivityItems.clear();
-            PackageInfo packageInfo = getPackageInfoInternal();
-            if (packageInfo == null || packageInfo.activities == null) {
-                mActivities.postValue(mActivityItems);
+    @Nullable
+    private ComponentsSnapshot takeComponentsSnapshot() {
+        PackageInfo packageInfo = getPackageInfoInternal();
+        if (packageInfo == null) {
+            return null;
+        }
+        CharSequence appLabel;
+        synchronized (mAppLabelLock) {
+            if (mAppLabelOwner != packageInfo || mAppLabel == null) {
+                mAppLabel = packageInfo.applicationInfo.loadLabel(mPackageManager);
+                mAppLabelOwner = packageInfo;
+            }
+            appLabel = mAppLabel;
+        }
+        Map<String, ComponentRule> rules = new HashMap<>();
+        if (!mExternalApk) {
+            synchronized (mBlockerLocker) {
+                waitForBlockerOrExit();
+                if (mBlocker != null) {
+                    for (ComponentRule rule : mBlocker.getAllComponents()) {
+                        // Same as ComponentsBlocker#getComponent(): the first rule wins
+                        if (!rules.containsKey(rule.name)) {
+                            rules.put(rule.name, rule);
+                        }
+                    }
+                }
+            }
+        }
+        return new ComponentsSnapshot(packageInfo, appLabel, rules);
+    }
+
+    /**
+     * Compute the rows of a component tab in parallel. The first chunk is published as soon as it is ready so that the
+     * tab is not blank for apps with hundreds of components, and the complete list is published at the end.
+     */
+    @WorkerThread
+    private <T extends ComponentInfo> void loadComponentRows(@Nullable T[] componentInfos,
+                                                             @NonNull List<AppDetailsItem<ComponentInfo>> items,
+                                                             @NonNull MutableLiveData<List<AppDetailsItem<ComponentInfo>>> liveData,
+                                                             @NonNull ComponentRowFactory<T> factory) {
+        synchronized (items) {
+            items.clear();
+            ComponentsSnapshot snapshot = componentInfos != null ? takeComponentsSnapshot() : null;
+            if (snapshot == null) {
+                liveData.postValue(Collections.emptyList());
                 return;
             }
-            CharSequence appLabel = packageInfo.applicationInfo.loadLabel(mPackageManager);
-            boolean canStartAnyActivity = SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.START_ANY_ACTIVITY);
-            boolean canStartViaAssist = UserHandleHidden.myUserId() == mUserId &&
-                    SelfPermissions.checkSelfPermission(Manifest.permission.WRITE_SECURE_SETTINGS);
-            for (ActivityInfo activityInfo : packageInfo.activities) {
-                AppDetailsActivityItem componentItem = new AppDetailsActivityItem(activityInfo);
-                componentItem.name = activityInfo.name;
-                componentItem.label = getComponentLabel(activityInfo, appLabel);
-                synchronized (mBlockerLocker) {
-                    if (!mExternalApk) {
-                        componentItem.setRule(mBlocker.getComponent(activityInfo.name));
+            List<Future<List<AppDetailsComponentItem>>> chunks = new ArrayList<>();
+            for (int start = 0; start < componentInfos.length; start += COMPONENT_CHUNK_SIZE) {
+                int from = start;
+                int to = Math.min(start + COMPONENT_CHUNK_SIZE, componentInfos.length);
+                chunks.add(mComponentExecutor.submit(() -> {
+                    List<AppDetailsComponentItem> rows = new ArrayList<>(to - from);
+                    for (int i = from; i < to; ++i) {
+                        rows.add(factory.create(componentInfos[i], snapshot));
+                    }
+                    return rows;
+                }));
+            }
+            try {
+                for (int i = 0; i < chunks.size(); ++i) {
+                    items.addAll(chunks.get(i).get());
+                    if (i == 0 && chunks.size() > 1) {
+                        liveData.postValue(filterAndSortComponents(new ArrayList<>(items)));
                     }
                 }
-                componentItem.setTracker(ComponentUtils.isTracker(activityInfo.name));
-                componentItem.setDisabled(isComponentDisabled(activityInfo));
-                // An activity is allowed to launch only if it's
-                // 1) Not from an external APK
-                // 2) Root enabled or the activity is exportable
-                // 3) App or the activity is not disabled and/or blocked
-                componentItem.canLaunch = !mExternalApk && (canStartAnyActivity || activityInfo.exported)
-                        && !componentItem.isDisabled() && !componentItem.isBlocked();
-                componentItem.canLaunchAssist = !mExternalApk && canStartViaAssist && !componentItem.isDisabled()
-                        && !componentItem.isBlocked();
-                mActivityItems.add(componentItem);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not load components", e);
+            } catch (InterruptedException e) {
+                for (Future<?> chunk : chunks) {
+                    chunk.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return;
             }
-            mActivities.postValue(filterAndSortComponents(mActivityItems));
+            liveData.postValue(filterAndSortComponents(new ArrayList<>(items)));
         }
     }
 
+    @NonNull
+    private final MutableLiveData<List<AppDetailsItem<ComponentInfo>>> mActivities = new MutableLiveData<>();
+    @NonNull
+    private final List<AppDetailsItem<ComponentInfo>> mActivityItems = new ArrayList<>();
+
+    @WorkerThread
+    private void loadActivities() {
+        PackageInfo packageInfo = getPackageInfoInternal();
+        boolean canStartAnyActivity = SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.START_ANY_ACTIVITY);
+        boolean canStartViaAssist = UserHandleHidden.myUserId() == mUserId &&
+                SelfPermissions.checkSelfPermission(Manifest.permission.WRITE_SECURE_SETTINGS);
+        loadComponentRows(packageInfo != null ? packageInfo.activities : null, mActivityItems, mActivities,
+                (activityInfo, snapshot) -> {
+                    AppDetailsActivityItem componentItem = new AppDetailsActivityItem(activityInfo);
+                    componentItem.name = activityInfo.name;
+                    componentItem.label = getComponentLabel(activityInfo, snapshot.appLabel);
+                    componentItem.setRule(snapshot.rules.get(activityInfo.name));
+                    componentItem.setTracker(ComponentUtils.isTracker(activityInfo.name));
+                    componentItem.setDisabled(isComponentDisabled(activityInfo));
+                    // An activity is allowed to launch only if it's
+                    // 1) Not from an external APK
+                    // 2) Root enabled or the activity is exportable
+                    // 3) App or the activity is not disabled and/or blocked
+                    componentItem.canLaunch = !mExternalApk && (canStartAnyActivity || activityInfo.exported)
+                            && !componentItem.isDisabled() && !componentItem.isBlocked();
+                    componentItem.canLaunchAssist = !mExternalApk && canStartViaAssist && !componentItem.isDisabled()
+                            && !componentItem.isBlocked();
+                    return componentItem;
+                });
+    }
+
     @NonNull
     private final MutableLiveData<List<AppDetailsItem<ComponentInfo>>> mServices = new MutableLiveData<>();
     @NonNull
     private final List<AppDetailsItem<ComponentInfo>> mServiceItems = new ArrayList<>();
 
     @WorkerThread
-    @GuardedBy("blockerLocker")
     private void loadServices() {
-        synchronized (mServiceItems) {
-            mServiceItems.clear();
-            PackageInfo packageInfo = getPackageInfoInternal();
-            if (packageInfo == null || packageInfo.services == null) {
-                // There are no services
-                mServices.postValue(Collections.emptyList());
-                return;
-            }
-            List<ActivityManager.RunningServiceInfo> runningServiceInfoList;
-            runningServiceInfoList = ActivityManagerCompat.getRunningServices(mPackageName, mUserId);
-            CharSequence appLabel = packageInfo.applicationInfo.loadLabel(mPackageManager);
-            for (ServiceInfo serviceInfo : packageInfo.services) {
-                AppDetailsServiceItem serviceItem = new AppDetailsServiceItem(serviceInfo);
-                serviceItem.name = serviceInfo.name;
-                serviceItem.label = getComponentLabel(serviceInfo, appLabel);
-                synchronized (mBlockerLocker) {
-                    if (!mExternalApk) {
-                        serviceItem.setRule(mBlocker.getComponent(serviceInfo.name));
-                    }
-                }
-                serviceItem.setTracker(ComponentUtils.isTracker(serviceInfo.name));
-                serviceItem.setDisabled(isComponentDisabled(serviceInfo));
-                for (ActivityManager.RunningServiceInfo runningServiceInfo : runningServiceInfoList) {
-                    if (runningServiceInfo.service.getClassName().equals(serviceInfo.name)) {
-                        serviceItem.setRunningServiceInfo(runningServiceInfo);
-                    }
-                }
-                // A service is allowed to launch only if it's
-                // 1) Not from an external APK
-                // 2) Root enabled or the service is exportable without any permission
-                // 3) App or the service is not disabled and/or blocked
-                serviceItem.canLaunch = !mExternalApk && canLaunchService(serviceInfo) && !serviceItem.isDisabled()
-                        && !serviceItem.isBlocked();
-                mServiceItems.add(serviceItem);
+        PackageInfo packageInfo = getPackageInfoInternal();
+        ServiceInfo[] serviceInfos = packageInfo != null ? packageInfo.services : null;
+        Map<String, ActivityManager.RunningServiceInfo> runningServices = new HashMap<>();
+        if (serviceInfos != null) {
+            for (ActivityManager.RunningServiceInfo runningServiceInfo
+                    : ActivityManagerCompat.getRunningServices(mPackageName, mUserId)) {
+                // The last match wins as before
+                runningServices.put(runningServiceInfo.service.getClassName(), runningServiceInfo);
             }
-            mServices.postValue(filterAndSortComponents(mServiceItems));
         }
+        loadComponentRows(serviceInfos, mServiceItems, mServices, (serviceInfo, snapshot) -> {
+            AppDetailsServiceItem serviceItem = new AppDetailsServiceItem(serviceInfo);
+            serviceItem.name = serviceInfo.name;
+            serviceItem.label = getComponentLabel(serviceInfo, snapshot.appLabel);
+            serviceItem.setRule(snapshot.rules.get(serviceInfo.name));
+            serviceItem.setTracker(ComponentUtils.isTracker(serviceInfo.name));
+            serviceItem.setDisabled(isComponentDisabled(serviceInfo));
+            ActivityManager.RunningServiceInfo runningServiceInfo = runningServices.get(serviceInfo.name);
+            if (runningServiceInfo != null) {
+                serviceItem.setRunningServiceInfo(runningServiceInfo);
+            }
+            // A service is allowed to launch only if it's
+            // 1) Not from an external APK
+            // 2) Root enabled or the service is exportable without any permission
+            // 3) App or the service is not disabled and/or blocked
+            serviceItem.canLaunch = !mExternalApk && canLaunchService(serviceInfo) && !serviceItem.isDisabled()
+                    && !serviceItem.isBlocked();
+            return serviceItem;
+        });
     }
 
     @NonNull
@@ -1248,32 +1349,18 @@ public class AppDetailsViewModel extends AndroidViewModel {
     private final List<AppDetailsItem<ComponentInfo>> mReceiverItems = new ArrayList<>();
 
     @WorkerThread
-    @GuardedBy("blockerLocker")
     private void loadReceivers() {
-        synchronized (mReceiverItems) {
-            mReceiverItems.clear();
-            PackageInfo packageInfo = getPackageInfoInternal();
-            if (packageInfo == null || packageInfo.receivers == null) {
-                // There are no receivers
-                mReceivers.postValue(Collections.emptyList());
-                return;
-            }
-            CharSequence appLabel = packageInfo.applicationInfo.loadLabel(mPackageManager);
-            for (ActivityInfo activityInfo : packageInfo.receivers) {
-                AppDetailsComponentItem componentItem = new AppDetailsComponentItem(activityInfo);
-                componentItem.name = activityInfo.name;
-                componentItem.label = getComponentLabel(activityInfo, appLabel);
-                synchronized (mBlockerLocker) {
-                    if (!mExternalApk) {
-                        componentItem.setRule(mBlocker.getComponent(activityInfo.name));
-                    }
-                }
-                componentItem.setTracker(ComponentUtils.isTracker(activityInfo.name));
-                componentItem.setDisabled(isComponentDisabled(activityInfo));
-                mReceiverItems.add(componentItem);
-            }
-            mReceivers.postValue(filterAndSortComponents(mReceiverItems));
-        }
+        PackageInfo packageInfo = getPackageInfoInternal();
+        loadComponentRows(packageInfo != null ? packageInfo.receivers : null, mReceiverItems, mReceivers,
+                (activityInfo, snapshot) -> {
+                    AppDetailsComponentItem componentItem = new AppDetailsComponentItem(activityInfo);
+                    componentItem.name = activityInfo.name;
+                    componentItem.label = getComponentLabel(activityInfo, snapshot.appLabel);
+                    componentItem.setRule(snapshot.rules.get(activityInfo.name));
+                    componentItem.setTracker(ComponentUtils.isTracker(activityInfo.name));
+                    componentItem.setDisabled(isComponentDisabled(activityInfo));
+                    return componentItem;
+                });
     }
 
     @NonNull
@@ -1282,36 +1369,26 @@ public class AppDetailsViewModel extends AndroidViewModel {
     private final List<AppDetailsItem<ComponentInfo>> mProviderItems = new ArrayList<>();
 
     @WorkerThread
-    @GuardedBy("blockerLocker")
     private void loadProviders() {
-        synchronized (mProviderItems) {
-            mProviderItems.clear();
-            PackageInfo packageInfo = getPackageInfoInternal();
-            if (packageInfo == null || packageInfo.providers == null) {
-                // There are no providers
-                mProviders.postValue(Collections.emptyList());
-                return;
-            }
-            CharSequence appLabel = packageInfo.applicationInfo.loadLabel(mPackageManager);
-            for (ProviderInfo providerInfo : packageInfo.providers) {
-                AppDetailsComponentItem componentItem = new AppDetailsComponentItem(providerInfo);
-                componentItem.name = providerInfo.name;
-                componentItem.label = getComponentLabel(providerInfo, appLabel);
-                synchronized (mBlockerLocker) {
-                    if (!mExternalApk) {
-                        componentItem.setRule(mBlocker.getComponent(providerInfo.name));
-                    }
-                }
-                componentItem.setTracker(ComponentUtils.isTracker(providerInfo.name));
-                componentItem.setDisabled(isComponentDisabled(providerInfo));
-                mProviderItems.add(componentItem);
-            }
-            mProviders.postValue(filterAndSortComponents(mProviderItems));
-        }
+        PackageInfo packageInfo = getPackageInfoInternal();
+        loadComponentRows(packageInfo != null ? packageInfo.providers : null, mProviderItems, mProviders,
+                (providerInfo, snapshot) -> {
+                    AppDetailsComponentItem componentItem = new AppDetailsComponentItem(providerInfo);
+                    componentItem.name = providerInfo.name;
+                    componentItem.label = getComponentLabel(providerInfo, snapshot.appLabel);
+                    componentItem.setRule(snapshot.rules.get(providerInfo.name));
+                    componentItem.setTracker(ComponentUtils.isTracker(providerInfo.name));
+                    componentItem.setDisabled(isComponentDisabled(providerInfo));
+                    return componentItem;
+                });
     }
 
     @NonNull
     private CharSequence getComponentLabel(@NonNull ComponentInfo componentInfo, @NonNull CharSequence appLabel) {
+        if (componentInfo.nonLocalizedLabel == null && componentInfo.labelRes == 0) {
+            // No label of its own, loading it would only load the app label
+            return Utils.camelCaseToSpaceSeparatedString(Utils.getLastComponent(componentInfo.name));
+        }
         CharSequence componentLabel = componentInfo.loadLabel(mPackageManager);
         if (componentLabel.equals(componentInfo.name) || componentLabel.equals(appLabel)) {
             // Component label is as good as null
@@ -1324,22 +1401,23 @@ public class AppDetailsViewModel extends AndroidViewModel {
     @SuppressLint("SwitchIntDef")
     @WorkerThread
     private void sortComponents(List<AppDetailsItem<ComponentInfo>> appDetailsItems) {
-        // First sort by name
-        Collections.sort(appDetailsItems, (o1, o2) -> o1.name.compareToIgnoreCase(o2.name));
-        if (mSortOrderComponents == AppDetailsFragment.SORT_BY_NAME) return;
+        // A single pass: by the selected criterion first, then by name
+        int sortOrder = mSortOrderComponents;
         Collections.sort(appDetailsItems, (o1, o2) -> {
-            switch (mSortOrderComponents) {
-                // No need to sort by name since we've already done it
+            int result = 0;
+            switch (sortOrder) {
                 case AppDetailsFragment.SORT_BY_BLOCKED:
-                    return -Boolean.compare(
+                    result = -Boolean.compare(
                             ((AppDetailsComponentItem) o1).isBlocked(),
                             ((AppDetailsComponentItem) o2).isBlocked());
+                    break;
                 case AppDetailsFragment.SORT_BY_TRACKERS:
-                    return -Boolean.compare(
+                    result = -Boolean.compare(
                             ((AppDetailsComponentItem) o1).isTracker(),
                             ((AppDetailsComponentItem) o2).isTracker());
+                    break;
             }
-            return 0;
+            return result != 0 ? result : o1.name.compareToIgnoreCase(o2.name);
         });
     }
 
@@ -1448,7 +1526,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                         int permissionFlags = canGetGrantRevokeRuntimePermissions
                                 ? PermissionCompat.getPermissionFlags(permissionName, packageName, mUserId)
                                 : PermissionCompat.FLAG_PERMISSION_NONE;
-                        PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(permissionName, packageName, 0);
+                        PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(permissionName);
                         if (permissionInfo == null) {
                             permissionInfo = new PermissionInfo();
                             permissionInfo.name = permissionName;
@@ -1471,7 +1549,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                         int permissionFlags = canGetGrantRevokeRuntimePermissions
                                 ? PermissionCompat.getPermissionFlags(permissionName, packageName, mUserId)
                                 : PermissionCompat.FLAG_PERMISSION_NONE;
-                        PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(permissionName, packageName, 0);
+                        PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(permissionName);
                         if (permissionInfo == null) {
                             permissionInfo = new PermissionInfo();
                             permissionInfo.name = permissionName;
@@ -1551,8 +1629,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
         PackageInfo packageInfo = getPackageInfoInternal();
         if (packageInfo == null) return null;
         try {
-            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(permissionName,
-                    packageInfo.packageName, PackageManager.GET_META_DATA);
+            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(permissionName);
             if (permissionInfo == null) {
                 Log.d(TAG, "Couldn't fetch info for permission %s", permissionName);
                 permissionInfo = new PermissionInfo();
@@ -1619,8 +1696,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                 for (ActivityInfo activityInfo : packageInfo.activities) {
                     if (activityInfo.permission != null && !visitedPerms.contains(activityInfo.permission)) {
                         try {
-                            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(activityInfo.permission,
-                                    packageInfo.packageName, PackageManager.GET_META_DATA);
+                            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(activityInfo.permission);
                             if (permissionInfo == null) {
                                 Log.d(TAG, "Couldn't fetch info for permission %s", activityInfo.permission);
                                 permissionInfo = new PermissionInfo();
@@ -1640,8 +1716,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                 for (ServiceInfo serviceInfo : packageInfo.services) {
                     if (serviceInfo.permission != null && !visitedPerms.contains(serviceInfo.permission)) {
                         try {
-                            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(serviceInfo.permission,
-                                    packageInfo.packageName, PackageManager.GET_META_DATA);
+                            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(serviceInfo.permission);
                             if (permissionInfo == null) {
                                 Log.d(TAG, "Couldn't fetch info for permission %s", serviceInfo.permission);
                                 permissionInfo = new PermissionInfo();
@@ -1661,8 +1736,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                 for (ProviderInfo providerInfo : packageInfo.providers) {
                     if (providerInfo.readPermission != null && !visitedPerms.contains(providerInfo.readPermission)) {
                         try {
-                            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(providerInfo.readPermission,
-                                    packageInfo.packageName, PackageManager.GET_META_DATA);
+                            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(providerInfo.readPermission);
                             if (permissionInfo == null) {
                                 Log.d(TAG, "Couldn't fetch info for permission %s", providerInfo.readPermission);
                                 permissionInfo = new PermissionInfo();
@@ -1678,8 +1752,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                     }
                     if (providerInfo.writePermission != null && !visitedPerms.contains(providerInfo.writePermission)) {
                         try {
-                            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(providerInfo.writePermission,
-                                    packageInfo.packageName, PackageManager.GET_META_DATA);
+                            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(providerInfo.writePermission);
                             if (permissionInfo == null) {
                                 Log.d(TAG, "Couldn't fetch info for permission %s", providerInfo.writePermission);
                                 permissionInfo = new PermissionInfo();
@@ -1699,8 +1772,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
                 for (ActivityInfo activityInfo : packageInfo.receivers) {
                     if (activityInfo.permission != null && !visitedPerms.contains(activityInfo.permission)) {
                         try {
-                            PermissionInfo permissionInfo = PermissionCompat.getPermissionInfo(activityInfo.permission,
-                                    packageInfo.packageName, PackageManager.GET_META_DATA);
+                            PermissionInfo permissionInfo = mPermissionInfoCache.getPermissionInfo(activityInfo.permission);
                             if (permissionInfo == null) {
                                 Log.d(TAG, "Couldn't fetch info for permission %s", activityInfo.permission);
                                 permissionInfo = new PermissionInfo();
@@ -1929,6 +2001,7 @@ public class AppDetailsViewModel extends AndroidViewModel {
         @Override
         @WorkerThread
         protected void onPackageChanged(Intent intent, @Nullable Integer uid, @Nullable String[] packages) {
+            mModel.mPermissionInfoCache.invalidate(intent, packages);
             if (uid != null) {
                 if (mModel.mPackageInfo != null && mModel.mPackageInfo.applicationInfo.uid == uid) {
                     Log.d(TAG, "Package is changed.");
@@ -49,7 +49,6 @@ import io.github.muntashirakon.AppManager.compat.ManifestCompat;
 import io.github.muntashirakon.AppManager.compat.NetworkPolicyManagerCompat;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.db.entity.Backup;
-import io.github.muntashirakon.AppManager.debloat.DebloatObject;
 import io.github.muntashirakon.AppManager.details.AppDetailsViewModel;
 import io.github.muntashirakon.AppManager.magisk.MagiskDenyList;
 import io.github.muntashirakon.AppManager.magisk.MagiskHide;
@@ -214,13 +213,7 @@ public class AppInfoViewModel extends AndroidViewModel {
             if (ThreadUtils.isInterrupted()) {
                 return;
             }
-            List<DebloatObject> debloatObjects = StaticDataset.getDebloatObjects();
-            for (DebloatObject debloatObject : debloatObjects) {
-                if (packageName.equals(debloatObject.packageName)) {
-                    tagCloud.isBloatware = true;
-                    break;
-                }
-            }
+            tagCloud.isBloatware = StaticDataset.getDebloatObject(packageName) != null;
             if (ThreadUtils.isInterrupted()) {
                 return;
             }
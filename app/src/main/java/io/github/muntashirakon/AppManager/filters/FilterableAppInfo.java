@@ -463,12 +463,7 @@ public class FilterableAppInfo {
     @Nullable
     public DebloatObject getBloatwareInfo() {
         if (mBloatwareInfo == null) {
-            for (DebloatObject debloatObject : StaticDataset.getDebloatObjects()) {
-                if (getPackageName().equals(debloatObject.packageName)) {
-                    mBloatwareInfo = debloatObject;
-                    break;
-                }
-            }
+            mBloatwareInfo = StaticDataset.getDebloatObject(getPackageName());
         }
         return mBloatwareInfo;
     }
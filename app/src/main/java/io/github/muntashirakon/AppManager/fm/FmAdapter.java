@@ -257,6 +257,7 @@ class FmAdapter extends MultiSelectionView.Adapter<FmAdapter.ViewHolder> {
                 } else {
                     displayName = prefix;
                 }
+                FmSizeIndex.getInstance().invalidate(item.path);
                 if (item.path.renameTo(displayName)) {
                     UIUtils.displayShortToast(R.string.renamed_successfully);
                     mViewModel.reload();
@@ -273,6 +274,7 @@ class FmAdapter extends MultiSelectionView.Adapter<FmAdapter.ViewHolder> {
                     .setMessage(R.string.are_you_sure)
                     .setNegativeButton(R.string.cancel, null)
                     .setPositiveButton(R.string.confirm_file_deletion, (dialog, which) -> {
+                        FmSizeIndex.getInstance().invalidate(item.path);
                         if (item.path.delete()) {
                             UIUtils.displayShortToast(R.string.deleted_successfully);
                             mViewModel.reload();
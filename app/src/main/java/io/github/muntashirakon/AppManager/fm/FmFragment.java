@@ -69,6 +69,7 @@ import io.github.muntashirakon.AppManager.fm.dialogs.NewFileDialogFragment;
 import io.github.muntashirakon.AppManager.fm.dialogs.NewFolderDialogFragment;
 import io.github.muntashirakon.AppManager.fm.dialogs.NewSymbolicLinkDialogFragment;
 import io.github.muntashirakon.AppManager.fm.dialogs.RenameDialogFragment;
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.settings.Prefs;
 import io.github.muntashirakon.AppManager.settings.SettingsActivity;
 import io.github.muntashirakon.AppManager.shortcut.CreateShortcutDialogFragment;
@@ -681,6 +682,7 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
         String displayName = findNextBestDisplayName(path, name, null);
         try {
             Path newDir = path.createNewDirectory(displayName);
+            FmSizeIndex.getInstance().invalidate(newDir);
             UIUtils.displayShortToast(R.string.done);
             mModel.reload(newDir.getName());
         } catch (IOException e) {
@@ -699,6 +701,7 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
         try {
             Path newFile = path.createNewFile(displayName, null);
             FileUtils.copyFromAsset(requireContext(), "blanks/" + template, newFile);
+            FmSizeIndex.getInstance().invalidate(newFile);
             UIUtils.displayShortToast(R.string.done);
             mModel.reload(newFile.getName());
         } catch (IOException e) {
@@ -768,6 +771,7 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
                     if (ThreadUtils.isInterrupted()) {
                         break;
                     }
+                    FmSizeIndex.getInstance().invalidate(path);
                     path.delete();
                     TextView c = counterRef.get();
                     int finalI = i;
@@ -844,6 +848,7 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
                     Path basePath = path.getParent();
                     if (basePath != null) {
                         String displayName = findNextBestDisplayName(basePath, prefix, extension, i);
+                        FmSizeIndex.getInstance().invalidate(path);
                         path.renameTo(displayName);
                     }
                     TextView c = counterRef.get();
@@ -901,65 +906,55 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
             WeakReference<TextView> counterRef = new WeakReference<>(counter);
             WeakReference<AlertDialog> dialogRef = new WeakReference<>(dialog);
             Path targetPath = Paths.get(uri);
-            try {
-                LinearProgressIndicator p = progressRef.get();
-                if (p != null) {
-                    p.setMax(task.files.size());
-                    p.setProgress(0);
-                    p.setIndeterminate(false);
+            boolean success = false;
+            FmTransferEngine engine = new FmTransferEngine(task, targetPath, new FmTransferEngine.TransferCallback() {
+                @Override
+                public int onConflict(@NonNull Path source, @NonNull Path target) {
+                    return askForConflictPolicy(source.getName());
                 }
-                int i = 1;
-                for (Path sourcePath : task.files) {
-                    // Update label
-                    TextView l = labelRef.get();
-                    if (l != null) {
-                        ThreadUtils.postOnMainThread(() -> l.setText(sourcePath.getName()));
-                    }
-                    if (ThreadUtils.isInterrupted()) {
-                        break;
-                    }
-                    // Sleep, copy, progress
-                    SystemClock.sleep(2_000);
-                    if (ThreadUtils.isInterrupted()) {
-                        break;
-                    }
-                    if (!copy(sourcePath, targetPath)) {
-                        // Failed to copy, abort
-                        ThreadUtils.postOnMainThread(() -> new MaterialAlertDialogBuilder(requireContext())
-                                .setTitle(R.string.error)
-                                .setMessage(getString(R.string.failed_to_copy_specified_file, sourcePath.getName()))
-                                .setPositiveButton(R.string.close, null)
-                                .show());
-                        return;
-                    }
-                    if (task.type == TYPE_CUT) {
-                        if (!sourcePath.delete()) {
-                            // Failed to move, abort
-                            ThreadUtils.postOnMainThread(() -> new MaterialAlertDialogBuilder(requireContext())
-                                    .setTitle(R.string.error)
-                                    .setMessage(getString(R.string.failed_to_delete_specified_file_after_copying, sourcePath.getName()))
-                                    .setPositiveButton(R.string.close, null)
-                                    .show());
-                            return;
-                        }
-                    }
-                    TextView c = counterRef.get();
-                    int finalI = i;
+
+                @Override
+                public void onProgress(@NonNull FmTransferEngine.TransferStats stats) {
                     ThreadUtils.postOnMainThread(() -> {
+                        TextView l = labelRef.get();
+                        if (l != null && stats.currentName != null) {
+                            l.setText(stats.currentName);
+                        }
+                        TextView c = counterRef.get();
                         if (c != null) {
-                            c.setText(String.format(Locale.getDefault(), "%d/%d", finalI, task.files.size()));
+                            c.setText(String.format(Locale.getDefault(), "%d/%d • %s/s", stats.transferredFiles,
+                                    stats.totalFiles, Formatter.formatShortFileSize(c.getContext(),
+                                            stats.getBytesPerSecond())));
                         }
+                        LinearProgressIndicator p = progressRef.get();
                         if (p != null) {
-                            p.setProgress(finalI);
+                            p.setIndeterminate(false);
+                            // Progress is measured in KiB to avoid overflow
+                            p.setMax((int) Math.max(1, stats.totalBytes >> 10));
+                            p.setProgress((int) (stats.transferredBytes >> 10));
                         }
                     });
-                    ++i;
-                    if (ThreadUtils.isInterrupted()) {
-                        break;
-                    }
                 }
-                UIUtils.displayShortToast(task.type == TYPE_CUT ? R.string.moved_successfully : R.string.copied_successfully);
+            });
+            try {
+                success = engine.transfer();
+                if (success) {
+                    UIUtils.displayShortToast(task.type == TYPE_CUT ? R.string.moved_successfully : R.string.copied_successfully);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not paste files.", e);
+                String name = engine.getStats().currentName;
+                ThreadUtils.postOnMainThread(() -> new MaterialAlertDialogBuilder(requireContext())
+                        .setTitle(R.string.error)
+                        .setMessage(getString(R.string.failed_to_copy_specified_file, name != null ? name
+                                : targetPath.getName()))
+                        .setPositiveButton(R.string.close, null)
+                        .show());
             } finally {
+                if (!success && task.type == TYPE_CUT && FmTasks.getInstance().isEmpty()) {
+                    // Cut tasks are removed when pasting; put it back so that the paste can be resumed
+                    FmTasks.getInstance().enqueue(task);
+                }
                 AlertDialog d = dialogRef.get();
                 if (d != null) {
                     ThreadUtils.postOnMainThread(() -> {
@@ -972,57 +967,27 @@ public class FmFragment extends Fragment implements SearchView.OnQueryTextListen
     }
 
     @WorkerThread
-    private boolean copy(Path source, Path dest) {
-        String name = source.getName();
-        if (dest.hasFile(name)) {
-            // Duplicate found. Ask user for what to do.
-            CountDownLatch waitForUser = new CountDownLatch(1);
-            AtomicReference<Boolean> keepBoth = new AtomicReference<>(null);
-            ThreadUtils.postOnMainThread(() -> new MaterialAlertDialogBuilder(requireContext())
-                    .setTitle(R.string.conflict_detected_while_copying)
-                    .setMessage(getString(R.string.conflict_detected_while_copying_message, name))
-                    .setCancelable(false)
-                    .setOnDismissListener(dialog -> waitForUser.countDown())
-                    .setPositiveButton(R.string.replace, (dialog, which) -> keepBoth.set(false))
-                    .setNegativeButton(R.string.action_stop_service, (dialog, which) -> keepBoth.set(null))
-                    .setNeutralButton(R.string.copy_keep_both_file, (dialog, which) -> keepBoth.set(true))
-                    .show());
-            try {
-                waitForUser.await();
-            } catch (InterruptedException ignore) {
-            }
-            if (keepBoth.get() == null) {
-                // Abort copying
-                return false;
-            }
-            if (keepBoth.get()) {
-                // Keep both
-                String prefix;
-                String extension;
-                if (!source.isDirectory()) {
-                    prefix = Paths.trimPathExtension(name);
-                    extension = Paths.getPathExtension(name);
-                } else {
-                    prefix = name;
-                    extension = null;
-                }
-                String newName = findNextBestDisplayName(dest, prefix, extension);
-                try {
-                    Path newPath = source.isDirectory() ? dest.createNewDirectory(newName) : dest.createNewFile(newName, null);
-                    // Need to create that path again
-                    newPath.delete();
-                    return source.copyTo(newPath) != null;
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    return false;
-                }
-            } else {
-                // Overwrite
-                return source.copyTo(dest, true) != null;
-            }
+    @FmTransferEngine.ConflictPolicy
+    private int askForConflictPolicy(@NonNull String name) {
+        // Duplicate found. Ask user for what to do.
+        CountDownLatch waitForUser = new CountDownLatch(1);
+        AtomicInteger policy = new AtomicInteger(FmTransferEngine.CONFLICT_ABORT);
+        ThreadUtils.postOnMainThread(() -> new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.conflict_detected_while_copying)
+                .setMessage(getString(R.string.conflict_detected_while_copying_message, name))
+                .setCancelable(false)
+                .setOnDismissListener(dialog -> waitForUser.countDown())
+                .setPositiveButton(R.string.replace, (dialog, which) -> policy.set(FmTransferEngine.CONFLICT_REPLACE))
+                .setNegativeButton(R.string.action_stop_service, (dialog, which) -> policy.set(FmTransferEngine.CONFLICT_ABORT))
+                .setNeutralButton(R.string.copy_keep_both_file, (dialog, which) -> policy.set(FmTransferEngine.CONFLICT_KEEP_BOTH))
+                .show());
+        try {
+            waitForUser.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FmTransferEngine.CONFLICT_ABORT;
         }
-        // Simply copy
-        return source.copyTo(dest, false) != null;
+        return policy.get();
     }
 
     private String findNextBestDisplayName(@NonNull Path basePath, @NonNull String prefix, @Nullable String extension) {
@@ -32,6 +32,7 @@ public class FmItem implements Comparable<FmItem> {
     @Nullable
     private String mName;
     private int mChildCount = UNRESOLVED;
+    private long mDirectorySize = UNRESOLVED;
     private boolean mCached = false;
 
     public FmItem(@NonNull Path path) {
@@ -79,6 +80,28 @@ public class FmItem implements Comparable<FmItem> {
         return path.length();
     }
 
+    /**
+     * Size of the directory including all its contents as reported by {@link FmSizeIndex}, or {@link #UNRESOLVED} if
+     * it has not been calculated yet.
+     */
+    public long getDirectorySize() {
+        return mDirectorySize;
+    }
+
+    void setDirectorySize(long directorySize) {
+        mDirectorySize = directorySize;
+    }
+
+    /**
+     * Same as {@link #getSize()} except that the size of the contents is used for directories whenever available.
+     */
+    public long getSizeForSorting() {
+        if (isDirectory && mDirectorySize != UNRESOLVED) {
+            return mDirectorySize;
+        }
+        return getSize();
+    }
+
     public int getChildCount() {
         if (!isDirectory) {
             return 0;
@@ -25,7 +25,8 @@ public class FmListOptions extends ListOptions {
     public static final int SORT_BY_SIZE = 2;
     public static final int SORT_BY_TYPE = 3;
 
-    @IntDef(flag = true, value = {OPTIONS_DISPLAY_DOT_FILES, OPTIONS_FOLDERS_FIRST})
+    @IntDef(flag = true, value = {OPTIONS_DISPLAY_DOT_FILES, OPTIONS_FOLDERS_FIRST, OPTIONS_FOLDER_SIZE,
+            OPTIONS_RECURSIVE_SEARCH})
     @Retention(RetentionPolicy.SOURCE)
     public @interface Options {
     }
@@ -33,6 +34,8 @@ public class FmListOptions extends ListOptions {
     public static final int OPTIONS_DISPLAY_DOT_FILES = 1 << 0;
     public static final int OPTIONS_FOLDERS_FIRST = 1 << 1;
     public static final int OPTIONS_ONLY_FOR_THIS_FOLDER = 1 << 2; // TODO: 11/12/22
+    public static final int OPTIONS_FOLDER_SIZE = 1 << 3;
+    public static final int OPTIONS_RECURSIVE_SEARCH = 1 << 4;
 
     private static final LinkedHashMap<Integer, Integer> SORT_ITEMS_MAP = new LinkedHashMap<Integer, Integer>() {{
         put(SORT_BY_NAME, R.string.sort_by_filename);
@@ -44,6 +47,8 @@ public class FmListOptions extends ListOptions {
     private static final LinkedHashMap<Integer, Integer> OPTIONS_MAP = new LinkedHashMap<Integer, Integer>() {{
         put(OPTIONS_DISPLAY_DOT_FILES, R.string.option_display_dot_files);
         put(OPTIONS_FOLDERS_FIRST, R.string.option_display_folders_on_top);
+        put(OPTIONS_FOLDER_SIZE, R.string.option_calculate_folder_size);
+        put(OPTIONS_RECURSIVE_SEARCH, R.string.option_search_in_subfolders);
     }};
 
     @Nullable
@@ -0,0 +1,349 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.fm;
+
+import android.os.SystemClock;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.ThreadUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * A recursive filename index of a directory tree. The index keeps the modification time of every directory so that an
+ * update only lists the directories that have been altered since the last update. Searching is done on an immutable
+ * snapshot ({@link NameTable}) using a trigram index, and therefore does not touch the file system at all.
+ */
+public class FmSearchIndex {
+    public static final String TAG = FmSearchIndex.class.getSimpleName();
+
+    // Updates are skipped if the index was updated recently
+    private static final long UPDATE_INTERVAL_MILLIS = 30_000;
+
+    private static final int MAX_INDICES = 4;
+
+    // Virtual file systems, they contain a large number of entries that are never searched for
+    private static final String[] UNINDEXED_DIRS = new String[]{"/proc/", "/sys/", "/dev/"};
+
+    // Least recently used indices are dropped to limit the memory usage
+    private static final Map<String, FmSearchIndex> sIndices = new LinkedHashMap<String, FmSearchIndex>(MAX_INDICES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FmSearchIndex> eldest) {
+            return size() > MAX_INDICES;
+        }
+    };
+
+    /**
+     * Whether the given directory can be indexed. Indexing the root of the file system would walk every mounted volume
+     * on each update, and the virtual file systems are not worth indexing. A recursive search is not offered for them.
+     */
+    @AnyThread
+    public static boolean isIndexable(@NonNull Path dir) {
+        String key = getKey(dir);
+        if (key.equals("/")) {
+            return false;
+        }
+        for (String unindexedDir : UNINDEXED_DIRS) {
+            if (key.startsWith(unindexedDir)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return an index covering the given directory. An existing index of a parent directory is reused.
+     *
+     * @see #isIndexable(Path)
+     */
+    @AnyThread
+    @NonNull
+    public static FmSearchIndex getInstance(@NonNull Path dir) {
+        String key = getKey(dir);
+        synchronized (sIndices) {
+            String parentKey = null;
+            for (String indexKey : sIndices.keySet()) {
+                if (key.startsWith(indexKey)) {
+                    parentKey = indexKey;
+                    break;
+                }
+            }
+            if (parentKey != null) {
+                // Only get() marks the index as recently used
+                return Objects.requireNonNull(sIndices.get(parentKey));
+            }
+            FmSearchIndex index = new FmSearchIndex(dir);
+            sIndices.put(key, index);
+            return index;
+        }
+    }
+
+    private static class DirectoryNode {
+        final long lastModified;
+        @NonNull
+        final String[] fileNames;
+        @NonNull
+        final String[] directoryNames;
+
+        DirectoryNode(long lastModified, @NonNull String[] fileNames, @NonNull String[] directoryNames) {
+            this.lastModified = lastModified;
+            this.fileNames = fileNames;
+            this.directoryNames = directoryNames;
+        }
+    }
+
+    @NonNull
+    private final Path mRoot;
+    @NonNull
+    private final String mRootKey;
+    // Relative directory path (empty for root) -> contents
+    private final Map<String, DirectoryNode> mDirectories = new HashMap<>();
+    @Nullable
+    private volatile NameTable mNameTable;
+    private long mLastUpdateTime;
+
+    private FmSearchIndex(@NonNull Path root) {
+        mRoot = root;
+        mRootKey = getKey(root);
+    }
+
+    public boolean isReady() {
+        return mNameTable != null;
+    }
+
+    /**
+     * Bring the index up-to-date. The first call walks the whole tree, subsequent calls only list the directories
+     * whose modification time have changed.
+     *
+     * @return {@code false} if interrupted
+     */
+    @WorkerThread
+    public synchronized boolean update() {
+        long now = SystemClock.elapsedRealtime();
+        if (mNameTable != null && now - mLastUpdateTime < UPDATE_INTERVAL_MILLIS) {
+            return true;
+        }
+        long s = System.currentTimeMillis();
+        Set<String> visited = new HashSet<>();
+        int[] rescanned = new int[1];
+        if (!updateDirectory(mRoot, "", visited, rescanned)) {
+            return false;
+        }
+        // Remove directories that no longer exist
+        mDirectories.keySet().retainAll(visited);
+        if (rescanned[0] > 0 || mNameTable == null) {
+            List<String> relativePaths = new ArrayList<>();
+            for (Map.Entry<String, DirectoryNode> entry : mDirectories.entrySet()) {
+                String prefix = entry.getKey().isEmpty() ? "" : entry.getKey() + "/";
+                DirectoryNode node = entry.getValue();
+                for (String name : node.directoryNames) {
+                    relativePaths.add(prefix + name);
+                }
+                for (String name : node.fileNames) {
+                    relativePaths.add(prefix + name);
+                }
+            }
+            mNameTable = NameTable.build(relativePaths);
+        }
+        mLastUpdateTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Updated index of %s in %d ms (%d directories rescanned, %d entries)", mRoot,
+                System.currentTimeMillis() - s, rescanned[0], mNameTable.size());
+        return true;
+    }
+
+    /**
+     * Search the filenames under the given directory. The index must be ready before calling this.
+     *
+     * @param dir   The directory to search in, must be the root of this index or one of its subdirectories
+     * @param query The text to look for (case-insensitive) in the filenames
+     * @param limit Maximum number of results
+     */
+    @WorkerThread
+    @NonNull
+    public List<Path> search(@NonNull Path dir, @NonNull String query, int limit) {
+        NameTable nameTable = mNameTable;
+        if (nameTable == null) {
+            return new ArrayList<>(0);
+        }
+        String dirKey = getKey(dir);
+        String relativePrefix = dirKey.length() > mRootKey.length() ? dirKey.substring(mRootKey.length()) : "";
+        List<String> relativePaths = nameTable.search(query, relativePrefix, limit);
+        List<Path> results = new ArrayList<>(relativePaths.size());
+        for (String relativePath : relativePaths) {
+            Path path = Paths.build(mRoot, relativePath.split("/"));
+            if (path != null) {
+                results.add(path);
+            }
+        }
+        return results;
+    }
+
+    @WorkerThread
+    private boolean updateDirectory(@NonNull Path dir, @NonNull String relativePath, @NonNull Set<String> visited,
+                                    @NonNull int[] rescanned) {
+        if (ThreadUtils.isInterrupted()) {
+            return false;
+        }
+        visited.add(relativePath);
+        long lastModified = dir.lastModified();
+        DirectoryNode node = mDirectories.get(relativePath);
+        if (node == null || lastModified <= 0 || node.lastModified != lastModified) {
+            List<String> fileNames = new ArrayList<>();
+            List<String> directoryNames = new ArrayList<>();
+            for (Path child : dir.listFiles()) {
+                if (!child.isSymbolicLink() && child.isDirectory()) {
+                    directoryNames.add(child.getName());
+                } else fileNames.add(child.getName());
+            }
+            node = new DirectoryNode(lastModified, fileNames.toArray(new String[0]),
+                    directoryNames.toArray(new String[0]));
+            mDirectories.put(relativePath, node);
+            ++rescanned[0];
+        }
+        String prefix = relativePath.isEmpty() ? "" : relativePath + "/";
+        for (String name : node.directoryNames) {
+            Path child = Paths.build(dir, name);
+            if (child != null && !updateDirectory(child, prefix + name, visited, rescanned)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private static String getKey(@NonNull Path path) {
+        // Only the paths of the Linux file system can be matched with their subdirectories
+        String key = path.getFile() != null ? path.getFilePath() : path.getUri().toString();
+        return key.endsWith("/") ? key : key + "/";
+    }
+
+    /**
+     * An immutable table of relative paths along with a trigram index of their lowercase filenames.
+     */
+    @VisibleForTesting
+    static final class NameTable {
+        @NonNull
+        static NameTable build(@NonNull List<String> relativePaths) {
+            int size = relativePaths.size();
+            String[] paths = relativePaths.toArray(new String[0]);
+            String[] names = new String[size];
+            Map<Long, IntList> postings = new HashMap<>();
+            for (int id = 0; id < size; ++id) {
+                String path = paths[id];
+                String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+                names[id] = name;
+                for (int i = 0; i + 3 <= name.length(); ++i) {
+                    long trigram = getTrigram(name, i);
+                    IntList ids = postings.get(trigram);
+                    if (ids == null) {
+                        ids = new IntList();
+                        postings.put(trigram, ids);
+                    }
+                    // Ids are added in the increasing order, so checking the last one is enough to avoid duplicates
+                    ids.addIfNotLast(id);
+                }
+            }
+            Map<Long, int[]> compactPostings = new HashMap<>(postings.size());
+            for (Map.Entry<Long, IntList> entry : postings.entrySet()) {
+                compactPostings.put(entry.getKey(), entry.getValue().toArray());
+            }
+            return new NameTable(paths, names, compactPostings);
+        }
+
+        @NonNull
+        private final String[] mPaths;
+        @NonNull
+        private final String[] mNames;
+        @NonNull
+        private final Map<Long, int[]> mPostings;
+
+        private NameTable(@NonNull String[] paths, @NonNull String[] names, @NonNull Map<Long, int[]> postings) {
+            mPaths = paths;
+            mNames = names;
+            mPostings = postings;
+        }
+
+        public int size() {
+            return mPaths.length;
+        }
+
+        /**
+         * @param relativePrefix Only paths starting with this prefix are returned, an empty prefix matches all paths
+         */
+        @NonNull
+        public List<String> search(@NonNull String query, @NonNull String relativePrefix, int limit) {
+            String q = query.toLowerCase(Locale.ROOT);
+            List<String> results = new ArrayList<>();
+            if (q.length() < 3) {
+                // Too short for trigrams, scan the names instead
+                for (int id = 0; id < mNames.length && results.size() < limit; ++id) {
+                    if (mNames[id].contains(q) && mPaths[id].startsWith(relativePrefix)) {
+                        results.add(mPaths[id]);
+                    }
+                }
+                return results;
+            }
+            // Candidates are taken from the shortest postings list, and verified against the name
+            int[] candidates = null;
+            for (int i = 0; i + 3 <= q.length(); ++i) {
+                int[] ids = mPostings.get(getTrigram(q, i));
+                if (ids == null) {
+                    return results;
+                }
+                if (candidates == null || ids.length < candidates.length) {
+                    candidates = ids;
+                }
+            }
+            for (int id : candidates) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                if (mNames[id].contains(q) && mPaths[id].startsWith(relativePrefix)) {
+                    results.add(mPaths[id]);
+                }
+            }
+            return results;
+        }
+
+        private static long getTrigram(@NonNull String s, int start) {
+            return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+        }
+    }
+
+    private static final class IntList {
+        private int[] mValues = new int[4];
+        private int mSize;
+
+        void addIfNotLast(int value) {
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        @NonNull
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.fm;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.FileUtils;
+import io.github.muntashirakon.AppManager.utils.ThreadUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * A persistent, du-style index of directory sizes. Each indexed directory stores the aggregate size and the number of
+ * files and folders beneath it along with its own modification time. An entry is reused as long as the modification
+ * times of the directory and of all the indexed directories beneath it are unchanged, and the entry is not older than
+ * {@link #MAX_AGE_MILLIS}. The age limit exists because modifying the content of a file does not alter the modification
+ * time of its parent directories. The file operations of the file manager call {@link #invalidate(Path)} so that their
+ * changes are reflected immediately. However, a size may be up to one day stale if the content of a file is modified
+ * outside the file manager.
+ * <p>
+ * Directories accessed via SAF are not indexed: their content URIs encode the path separators, so the directories
+ * beneath them cannot be looked up, and their sizes could not be validated.
+ */
+public class FmSizeIndex {
+    public static final String TAG = FmSizeIndex.class.getSimpleName();
+
+    private static final int INDEX_VERSION = 2;
+    private static final String INDEX_FILENAME = "fm_size_index.bin";
+    private static final long MAX_AGE_MILLIS = 86_400_000; // 1 day
+    private static final int MAX_ENTRIES = 200_000;
+    // Writing the index is deferred so that loading several folders in a row writes it only once
+    private static final long PERSIST_DELAY_MILLIS = 30_000;
+
+    public static class DirectorySize {
+        public final long size;
+        public final int fileCount;
+        public final int folderCount;
+
+        DirectorySize(long size, int fileCount, int folderCount) {
+            this.size = size;
+            this.fileCount = fileCount;
+            this.folderCount = folderCount;
+        }
+    }
+
+    private static class Entry {
+        final long lastModified;
+        final long indexedAt;
+        final long size;
+        final int fileCount;
+        final int folderCount;
+
+        Entry(long lastModified, long indexedAt, long size, int fileCount, int folderCount) {
+            this.lastModified = lastModified;
+            this.indexedAt = indexedAt;
+            this.size = size;
+            this.fileCount = fileCount;
+            this.folderCount = folderCount;
+        }
+
+        boolean isValid(long lastModified, long now) {
+            return this.lastModified == lastModified && (now - indexedAt) < MAX_AGE_MILLIS;
+        }
+
+        @NonNull
+        DirectorySize toDirectorySize() {
+            return new DirectorySize(size, fileCount, folderCount);
+        }
+    }
+
+    @Nullable
+    private static FmSizeIndex sInstance;
+
+    @AnyThread
+    @NonNull
+    public static FmSizeIndex getInstance() {
+        synchronized (FmSizeIndex.class) {
+            if (sInstance == null) {
+                sInstance = new FmSizeIndex();
+            }
+            return sInstance;
+        }
+    }
+
+    // Sorted so that the entries beneath a directory are adjacent to it
+    @GuardedBy("mEntries")
+    private final TreeMap<String, Entry> mEntries = new TreeMap<>();
+    // Invalidated before the index is loaded, applied once it is loaded
+    @GuardedBy("mEntries")
+    private final Set<String> mPendingInvalidations = new HashSet<>();
+    @GuardedBy("mEntries")
+    private boolean mLoaded = false;
+    @GuardedBy("mEntries")
+    private boolean mModified = false;
+    @GuardedBy("mEntries")
+    private boolean mPersistScheduled = false;
+    private final ScheduledExecutorService mPersistExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private FmSizeIndex() {
+    }
+
+    /**
+     * Return the indexed size of the given directory without walking it. Only the modification times of the directory
+     * and of the indexed directories beneath it are checked.
+     *
+     * @return The size if a valid entry exists, {@code null} otherwise
+     */
+    @WorkerThread
+    @Nullable
+    public DirectorySize getCachedSize(@NonNull Path dir) {
+        long lastModified = dir.lastModified();
+        if (lastModified <= 0) {
+            // Modification time is not available (e.g. some SAF providers), the entry could not be validated
+            return null;
+        }
+        String key = getKey(dir);
+        if (!isIndexable(key)) {
+            return null;
+        }
+        Entry entry;
+        synchronized (mEntries) {
+            ensureLoadedLocked();
+            entry = mEntries.get(key);
+        }
+        if (entry != null && isValid(key, entry, lastModified, System.currentTimeMillis())) {
+            return entry.toDirectorySize();
+        }
+        return null;
+    }
+
+    /**
+     * Calculate the size of the given path, reusing valid entries of the index for the directories beneath it and
+     * updating the index with the newly calculated ones. The result is identical to {@link
+     * io.github.muntashirakon.io.Paths#size(Path)} when the index is empty.
+     *
+     * @return The size of the path, or {@code null} if the operation was interrupted
+     */
+    @WorkerThread
+    @Nullable
+    public DirectorySize computeSize(@NonNull Path path) {
+        if (path.isFile()) {
+            return new DirectorySize(path.length(), 1, 0);
+        }
+        if (path.isSymbolicLink() || !path.isDirectory()) {
+            return new DirectorySize(0, 0, 0);
+        }
+        synchronized (mEntries) {
+            ensureLoadedLocked();
+        }
+        Entry entry = computeDirectory(path, System.currentTimeMillis(), new boolean[1]);
+        return entry != null ? entry.toDirectorySize() : null;
+    }
+
+    /**
+     * Remove the entries of the given path, the directories beneath it and all its parents. This should be called
+     * whenever a path is created, modified, moved or deleted.
+     */
+    @AnyThread
+    public void invalidate(@NonNull Path path) {
+        String key = getKey(path);
+        List<String> parentKeys = new ArrayList<>();
+        Path parent = path.getParent();
+        while (parent != null) {
+            parentKeys.add(getKey(parent));
+            parent = parent.getParent();
+        }
+        synchronized (mEntries) {
+            if (!mLoaded) {
+                mPendingInvalidations.add(key);
+                mPendingInvalidations.addAll(parentKeys);
+                return;
+            }
+            invalidateLocked(key);
+            for (String parentKey : parentKeys) {
+                if (mEntries.remove(parentKey) != null) {
+                    mModified = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the index to the disk if it has been modified. The write is deferred by {@link #PERSIST_DELAY_MILLIS}, and
+     * the requests made in the meantime are merged.
+     */
+    @AnyThread
+    public void persist() {
+        synchronized (mEntries) {
+            if (!mLoaded || !mModified || mPersistScheduled) {
+                return;
+            }
+            mPersistScheduled = true;
+        }
+        mPersistExecutor.schedule(this::persistNow, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @WorkerThread
+    private void persistNow() {
+        Map<String, Entry> entries;
+        synchronized (mEntries) {
+            mPersistScheduled = false;
+            if (!mLoaded || !mModified) {
+                return;
+            }
+            entries = new HashMap<>(mEntries);
+            mModified = false;
+        }
+        long now = System.currentTimeMillis();
+        File indexFile = getIndexFile();
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            int count = 0;
+            for (Entry entry : entries.values()) {
+                if ((now - entry.indexedAt) < MAX_AGE_MILLIS) {
+                    ++count;
+                }
+            }
+            dos.writeInt(INDEX_VERSION);
+            dos.writeInt(Math.min(count, MAX_ENTRIES));
+            int written = 0;
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if ((now - entry.indexedAt) >= MAX_AGE_MILLIS) {
+                    continue;
+                }
+                if (written++ >= MAX_ENTRIES) {
+                    break;
+                }
+                dos.writeUTF(mapEntry.getKey());
+                dos.writeLong(entry.lastModified);
+                dos.writeLong(entry.indexedAt);
+                dos.writeLong(entry.size);
+                dos.writeInt(entry.fileCount);
+                dos.writeInt(entry.folderCount);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save index", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            Log.w(TAG, "Could not replace index %s", indexFile);
+        }
+    }
+
+    /**
+     * @param indexed Set to whether the entry of the directory is in the index on return. A directory is only indexed
+     *                if all the directories beneath it are, otherwise {@link #isValid(String, Entry, long, long)} could
+     *                not detect the changes made in the directories that are missing from the index.
+     */
+    @WorkerThread
+    @Nullable
+    private Entry computeDirectory(@NonNull Path dir, long now, @NonNull boolean[] indexed) {
+        long lastModified = dir.lastModified();
+        String key = getKey(dir);
+        boolean indexable = lastModified > 0 && isIndexable(key);
+        if (indexable) {
+            Entry entry;
+            synchronized (mEntries) {
+                entry = mEntries.get(key);
+            }
+            if (entry != null && isValid(key, entry, lastModified, now)) {
+                indexed[0] = true;
+                return entry;
+            }
+        }
+        long size = 0;
+        int fileCount = 0;
+        int folderCount = 0;
+        // The entry must not outlive the entries beneath it
+        long indexedAt = now;
+        for (Path child : dir.listFiles()) {
+            if (ThreadUtils.isInterrupted()) {
+                return null;
+            }
+            if (child.isFile()) {
+                size += child.length();
+                ++fileCount;
+            } else if (!child.isSymbolicLink() && child.isDirectory()) {
+                Entry childEntry = computeDirectory(child, now, indexed);
+                if (childEntry == null) {
+                    // Interrupted
+                    return null;
+                }
+                indexable &= indexed[0];
+                indexedAt = Math.min(indexedAt, childEntry.indexedAt);
+                size += childEntry.size;
+                fileCount += childEntry.fileCount;
+                folderCount += childEntry.folderCount + 1;
+            }
+        }
+        Entry entry = new Entry(lastModified, indexedAt, size, fileCount, folderCount);
+        indexed[0] = false;
+        if (indexable) {
+            synchronized (mEntries) {
+                if (mEntries.size() < MAX_ENTRIES) {
+                    mEntries.put(key, entry);
+                    mModified = true;
+                    indexed[0] = true;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Check the entry of a directory along with the entries of the indexed directories beneath it. A change anywhere
+     * in the tree alters the modification time of the directory that contains it, so checking every indexed directory
+     * is enough to detect that files were added, removed or renamed, without listing any directory.
+     */
+    @WorkerThread
+    private boolean isValid(@NonNull String key, @NonNull Entry entry, long lastModified, long now) {
+        if (!entry.isValid(lastModified, now)) {
+            return false;
+        }
+        List<String> keys;
+        List<Entry> entries;
+        synchronized (mEntries) {
+            SortedMap<String, Entry> descendants = getDescendantsLocked(key);
+            keys = new ArrayList<>(descendants.keySet());
+            entries = new ArrayList<>(descendants.values());
+        }
+        for (int i = 0; i < keys.size(); ++i) {
+            if (ThreadUtils.isInterrupted()) {
+                return false;
+            }
+            String descendantKey = keys.get(i);
+            long descendantLastModified;
+            try {
+                descendantLastModified = Paths.get(Uri.parse(descendantKey)).lastModified();
+            } catch (RuntimeException e) {
+                descendantLastModified = 0;
+            }
+            if (!entries.get(i).isValid(descendantLastModified, now)) {
+                synchronized (mEntries) {
+                    // Modified or no longer exists
+                    if (mEntries.remove(descendantKey) != null) {
+                        mModified = true;
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @GuardedBy("mEntries")
+    private void invalidateLocked(@NonNull String key) {
+        if (mEntries.remove(key) != null) {
+            mModified = true;
+        }
+        SortedMap<String, Entry> descendants = getDescendantsLocked(key);
+        if (!descendants.isEmpty()) {
+            descendants.clear();
+            mModified = true;
+        }
+    }
+
+    @GuardedBy("mEntries")
+    @NonNull
+    private SortedMap<String, Entry> getDescendantsLocked(@NonNull String key) {
+        // '0' is the character that comes right after '/'
+        return mEntries.subMap(key + "/", key + "0");
+    }
+
+    @GuardedBy("mEntries")
+    @WorkerThread
+    private void ensureLoadedLocked() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            mPendingInvalidations.clear();
+            return;
+        }
+        long s = System.currentTimeMillis();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != INDEX_VERSION) {
+                Log.i(TAG, "Index version mismatch, discarding index.");
+                mPendingInvalidations.clear();
+                return;
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = dis.readUTF();
+                Entry entry = new Entry(dis.readLong(), dis.readLong(), dis.readLong(), dis.readInt(), dis.readInt());
+                mEntries.put(key, entry);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load index, discarding it.", e);
+            mEntries.clear();
+        }
+        for (String key : mPendingInvalidations) {
+            invalidateLocked(key);
+        }
+        mPendingInvalidations.clear();
+        Log.d(TAG, "Time to load %d entries: %d ms", mEntries.size(), System.currentTimeMillis() - s);
+    }
+
+    @NonNull
+    private static File getIndexFile() {
+        return new File(FileUtils.getCachePath(), INDEX_FILENAME);
+    }
+
+    private static boolean isIndexable(@NonNull String key) {
+        return !key.startsWith(ContentResolver.SCHEME_CONTENT + ":");
+    }
+
+    @NonNull
+    private static String getKey(@NonNull Path path) {
+        return path.getUri().toString();
+    }
+}
@@ -3,14 +3,20 @@
 package io.github.muntashirakon.AppManager.fm;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import io.github.muntashirakon.io.Path;
 
@@ -65,6 +71,11 @@ public class FmTasks {
         public final List<Path> files;
 
         private int mFlags;
+        // State required to resume an interrupted paste. Only valid for the target recorded here.
+        @Nullable
+        private volatile String mResumeTarget;
+        private final Map<String, String> mResolvedNames = Collections.synchronizedMap(new HashMap<>());
+        private final Set<String> mCompletedFiles = Collections.synchronizedSet(new HashSet<>());
 
         public FmTask(@TaskType int type, List<Path> files) {
             this.type = type;
@@ -87,5 +98,36 @@ public class FmTasks {
         public boolean hasFlag(int flag) {
             return (mFlags & flag) != 0;
         }
+
+        @Nullable
+        String getResumeTarget() {
+            return mResumeTarget;
+        }
+
+        void resetResumeState(@Nullable String resumeTarget) {
+            mResumeTarget = resumeTarget;
+            mResolvedNames.clear();
+            mCompletedFiles.clear();
+        }
+
+        /**
+         * Name of the top-level item in the target after resolving conflicts, if the item was already processed.
+         */
+        @Nullable
+        String getResolvedName(@NonNull String name) {
+            return mResolvedNames.get(name);
+        }
+
+        void setResolvedName(@NonNull String name, @NonNull String targetName) {
+            mResolvedNames.put(name, targetName);
+        }
+
+        boolean isCompleted(@NonNull String relativePath) {
+            return mCompletedFiles.contains(relativePath);
+        }
+
+        void markCompleted(@NonNull String relativePath) {
+            mCompletedFiles.add(relativePath);
+        }
     }
 }
@@ -0,0 +1,456 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.fm;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.utils.ThreadUtils;
+import io.github.muntashirakon.io.ExtendedFile;
+import io.github.muntashirakon.io.FileSystemManager;
+import io.github.muntashirakon.io.IoUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+import io.github.muntashirakon.io.fs.VirtualFileSystem;
+
+/**
+ * Copies or moves the files of an {@link FmTasks.FmTask} into a directory. Directories are created in the calling
+ * thread whereas the files are copied by a bounded pool of workers. Large files are copied in chunks via
+ * {@link FileChannel} whenever both ends support it. Moves within the same file system are done using a rename.
+ * <p>
+ * Copied files are recorded in the task so that a cancelled or failed paste can be resumed by pasting the same task
+ * again into the same directory.
+ */
+public class FmTransferEngine {
+    public static final String TAG = FmTransferEngine.class.getSimpleName();
+
+    @IntDef({CONFLICT_ABORT, CONFLICT_REPLACE, CONFLICT_KEEP_BOTH, CONFLICT_SKIP})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ConflictPolicy {
+    }
+
+    public static final int CONFLICT_ABORT = 0;
+    public static final int CONFLICT_REPLACE = 1;
+    public static final int CONFLICT_KEEP_BOTH = 2;
+    public static final int CONFLICT_SKIP = 3;
+
+    public interface TransferCallback {
+        /**
+         * Called when an item with the same name already exists in the target directory.
+         */
+        @WorkerThread
+        @ConflictPolicy
+        int onConflict(@NonNull Path source, @NonNull Path target);
+
+        /**
+         * Called periodically as well as when the transfer has finished.
+         */
+        @WorkerThread
+        void onProgress(@NonNull TransferStats stats);
+    }
+
+    public static class TransferStats {
+        public final long totalBytes;
+        public final int totalFiles;
+        public final long transferredBytes;
+        public final int transferredFiles;
+        public final long elapsedMillis;
+        @Nullable
+        public final String currentName;
+
+        TransferStats(long totalBytes, int totalFiles, long transferredBytes, int transferredFiles,
+                      long elapsedMillis, @Nullable String currentName) {
+            this.totalBytes = totalBytes;
+            this.totalFiles = totalFiles;
+            this.transferredBytes = transferredBytes;
+            this.transferredFiles = transferredFiles;
+            this.elapsedMillis = elapsedMillis;
+            this.currentName = currentName;
+        }
+
+        public long getBytesPerSecond() {
+            return elapsedMillis > 0 ? transferredBytes * 1000 / elapsedMillis : 0;
+        }
+
+        public float getFilesPerSecond() {
+            return elapsedMillis > 0 ? transferredFiles * 1000f / elapsedMillis : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "TransferStats{files=%d/%d, bytes=%d/%d, %d B/s, %.1f files/s}",
+                    transferredFiles, totalFiles, transferredBytes, totalBytes, getBytesPerSecond(),
+                    getFilesPerSecond());
+        }
+    }
+
+    private static final int MAX_WORKERS = 4;
+    private static final long LARGE_FILE_THRESHOLD = 8 * 1024 * 1024;
+    private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+    private static class FileJob {
+        @NonNull
+        final Path source;
+        @NonNull
+        final Path targetDir;
+        @NonNull
+        final String name;
+        @NonNull
+        final String relativePath;
+        final long size;
+
+        FileJob(@NonNull Path source, @NonNull Path targetDir, @NonNull String name, @NonNull String relativePath) {
+            this.source = source;
+            this.targetDir = targetDir;
+            this.name = name;
+            this.relativePath = relativePath;
+            this.size = source.length();
+        }
+    }
+
+    @NonNull
+    private final FmTasks.FmTask mTask;
+    @NonNull
+    private final Path mTargetDir;
+    @NonNull
+    private final TransferCallback mCallback;
+    private final AtomicLong mTransferredBytes = new AtomicLong();
+    private final AtomicInteger mTransferredFiles = new AtomicInteger();
+    private final AtomicLong mLastProgressTime = new AtomicLong();
+    private long mTotalBytes;
+    private int mTotalFiles;
+    private long mStartTime;
+    @Nullable
+    private volatile String mCurrentName;
+
+    public FmTransferEngine(@NonNull FmTasks.FmTask task, @NonNull Path targetDir, @NonNull TransferCallback callback) {
+        mTask = task;
+        mTargetDir = targetDir;
+        mCallback = callback;
+    }
+
+    /**
+     * Run the transfer in the calling thread.
+     *
+     * @return {@code true} if all the files were transferred (or skipped on request)
+     * @throws IOException If any file could not be transferred. Files that were already transferred are kept.
+     */
+    @WorkerThread
+    public boolean transfer() throws IOException {
+        mStartTime = SystemClock.elapsedRealtime();
+        String targetKey = mTargetDir.getUri().toString();
+        if (!targetKey.equals(mTask.getResumeTarget())) {
+            // The task is being pasted somewhere else, nothing to resume
+            mTask.resetResumeState(targetKey);
+        }
+        boolean isMove = mTask.type == FmTasks.FmTask.TYPE_CUT;
+        try {
+            return transfer(isMove);
+        } finally {
+            // Sizes of the target as well as the moved sources are changed even if the transfer was not complete
+            FmSizeIndex sizeIndex = FmSizeIndex.getInstance();
+            sizeIndex.invalidate(mTargetDir);
+            if (isMove) {
+                for (Path source : mTask.files) {
+                    sizeIndex.invalidate(source);
+                }
+            }
+        }
+    }
+
+    @WorkerThread
+    private boolean transfer(boolean isMove) throws IOException {
+        List<Path> pendingDeletions = new ArrayList<>();
+        List<FileJob> fileJobs = new ArrayList<>();
+        // Step 1: Resolve conflicts, rename items if possible and create the directory tree
+        for (Path source : mTask.files) {
+            if (ThreadUtils.isInterrupted()) {
+                return false;
+            }
+            String name = source.getName();
+            if (isUnder(mTargetDir, source)) {
+                throw new IOException("Cannot paste " + name + " into itself.");
+            }
+            String targetName = mTask.getResolvedName(name);
+            boolean merge = targetName != null;
+            if (merge) {
+                // Resuming an earlier attempt
+                if (!source.exists()) {
+                    // Already moved
+                    continue;
+                }
+            } else if (mTargetDir.hasFile(name)) {
+                Path existing = mTargetDir.findFile(name);
+                if (existing.getUri().equals(source.getUri())) {
+                    if (isMove) {
+                        // Moving into the same directory is a no-op
+                        continue;
+                    }
+                    // Copying into the same directory always keeps both
+                    targetName = findNextBestDisplayName(mTargetDir, source);
+                } else {
+                    int policy = mCallback.onConflict(source, existing);
+                    if (policy == CONFLICT_ABORT) {
+                        return false;
+                    } else if (policy == CONFLICT_SKIP) {
+                        continue;
+                    } else if (policy == CONFLICT_KEEP_BOTH) {
+                        targetName = findNextBestDisplayName(mTargetDir, source);
+                    } else {
+                        // Replace: directories are merged, files are overwritten
+                        targetName = name;
+                        merge = true;
+                    }
+                }
+            } else targetName = name;
+            mTask.setResolvedName(name, targetName);
+            if (isMove && !merge && renameIfPossible(source, targetName)) {
+                continue;
+            }
+            if (source.isDirectory()) {
+                Path targetDir = mTargetDir.createDirectoriesIfRequired(targetName);
+                if (!targetDir.isDirectory()) {
+                    throw new IOException(targetDir + " is not a directory.");
+                }
+                prepareDirectory(source, targetDir, name, fileJobs);
+            } else if (source.isFile()) {
+                if (!mTask.isCompleted(name)) {
+                    fileJobs.add(new FileJob(source, mTargetDir, targetName, name));
+                }
+            } else {
+                Log.w(TAG, "Skipped unsupported file %s", source);
+                continue;
+            }
+            if (isMove) {
+                pendingDeletions.add(source);
+            }
+        }
+        for (FileJob fileJob : fileJobs) {
+            mTotalBytes += fileJob.size;
+        }
+        mTotalFiles = fileJobs.size();
+        publishProgress(true);
+        // Step 2: Copy the files in parallel
+        copyFiles(fileJobs);
+        // Step 3: Delete the sources that were copied rather than renamed
+        for (Path source : pendingDeletions) {
+            if (ThreadUtils.isInterrupted()) {
+                return false;
+            }
+            if (!source.delete()) {
+                throw new IOException("Could not delete " + source.getName() + " after copying.");
+            }
+        }
+        mTask.resetResumeState(null);
+        mCurrentName = null;
+        publishProgress(true);
+        Log.i(TAG, "Transfer finished: %s", getStats());
+        return true;
+    }
+
+    @NonNull
+    public TransferStats getStats() {
+        return new TransferStats(mTotalBytes, mTotalFiles, mTransferredBytes.get(), mTransferredFiles.get(),
+                SystemClock.elapsedRealtime() - mStartTime, mCurrentName);
+    }
+
+    @WorkerThread
+    private void prepareDirectory(@NonNull Path sourceDir, @NonNull Path targetDir, @NonNull String relativeDir,
+                                  @NonNull List<FileJob> fileJobs) throws IOException {
+        for (Path child : sourceDir.listFiles()) {
+            if (ThreadUtils.isInterrupted()) {
+                return;
+            }
+            String name = child.getName();
+            String relativePath = relativeDir + "/" + name;
+            if (child.isDirectory()) {
+                Path newDir = targetDir.createDirectoriesIfRequired(name);
+                if (VirtualFileSystem.getFsRoot(child.getUri()) != null) {
+                    VirtualFileSystem.alterMountPoint(child.getUri(), newDir.getUri());
+                }
+                prepareDirectory(child, newDir, relativePath, fileJobs);
+            } else if (child.isFile()) {
+                if (mTask.isCompleted(relativePath)) {
+                    // Already copied in an earlier attempt
+                    continue;
+                }
+                fileJobs.add(new FileJob(child, targetDir, name, relativePath));
+            }
+        }
+    }
+
+    @WorkerThread
+    private void copyFiles(@NonNull List<FileJob> fileJobs) throws IOException {
+        if (fileJobs.isEmpty()) {
+            return;
+        }
+        int workers = Math.min(MAX_WORKERS, fileJobs.size());
+        if (workers == 1) {
+            for (FileJob fileJob : fileJobs) {
+                if (ThreadUtils.isInterrupted()) {
+                    return;
+                }
+                copyFile(fileJob);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>> results = new ArrayList<>(fileJobs.size());
+        try {
+            for (FileJob fileJob : fileJobs) {
+                results.add(executor.submit(() -> {
+                    if (ThreadUtils.isInterrupted()) {
+                        return null;
+                    }
+                    copyFile(fileJob);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @WorkerThread
+    private void copyFile(@NonNull FileJob fileJob) throws IOException {
+        mCurrentName = fileJob.name;
+        Path source = fileJob.source;
+        if (source.isMountPoint()) {
+            throw new IOException(source.getName() + " is a mount point.");
+        }
+        Path target = fileJob.targetDir.findOrCreateFile(fileJob.name, null);
+        if (fileJob.size < LARGE_FILE_THRESHOLD || !copyFileChunked(source, target, fileJob.size)) {
+            long copied = IoUtils.copy(source, target);
+            mTransferredBytes.addAndGet(copied);
+        }
+        mTask.markCompleted(fileJob.relativePath);
+        mTransferredFiles.incrementAndGet();
+        publishProgress(false);
+    }
+
+    /**
+     * Copy a large file in chunks using file channels so that the progress is updated and the cancellation is
+     * honoured in the middle of the file.
+     *
+     * @return {@code false} if channels are not supported by either path, in which case nothing has been copied
+     * @throws IOException If the file could only be copied partially
+     */
+    @WorkerThread
+    private boolean copyFileChunked(@NonNull Path source, @NonNull Path target, long size) throws IOException {
+        FileChannel srcChannel;
+        try {
+            srcChannel = source.openFileChannel(FileSystemManager.MODE_READ_ONLY);
+        } catch (IOException e) {
+            return false;
+        }
+        try (FileChannel src = srcChannel) {
+            FileChannel dstChannel;
+            try {
+                dstChannel = target.openFileChannel(FileSystemManager.MODE_WRITE_ONLY
+                        | FileSystemManager.MODE_CREATE | FileSystemManager.MODE_TRUNCATE);
+            } catch (IOException e) {
+                return false;
+            }
+            try (FileChannel dst = dstChannel) {
+                long position = 0;
+                while (position < size) {
+                    if (ThreadUtils.isInterrupted()) {
+                        throw new IOException("Interrupted while copying " + source.getName());
+                    }
+                    long count = src.transferTo(position, Math.min(CHUNK_SIZE, size - position), dst);
+                    if (count <= 0) {
+                        if (position == 0) {
+                            // Channel transfer is not supported, copy using streams instead
+                            return false;
+                        }
+                        throw new IOException("Could not copy " + source.getName() + ": only " + position
+                                + " of " + size + " bytes were copied.");
+                    }
+                    position += count;
+                    mTransferredBytes.addAndGet(count);
+                    publishProgress(false);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the source using a rename if both source and target live in the same Linux file system.
+     */
+    @WorkerThread
+    private boolean renameIfPossible(@NonNull Path source, @NonNull String targetName) {
+        ExtendedFile srcFile = source.getFile();
+        ExtendedFile dstDir = mTargetDir.getFile();
+        if (srcFile == null || dstDir == null || source.isMountPoint()) {
+            return false;
+        }
+        ExtendedFile dstFile = dstDir.getChildFile(targetName);
+        if (dstFile.exists() || !srcFile.renameTo(dstFile)) {
+            // Different file systems or insufficient permissions
+            return false;
+        }
+        Uri srcUri = Uri.fromFile(srcFile);
+        if (VirtualFileSystem.getFileSystem(srcUri) != null) {
+            VirtualFileSystem.alterMountPoint(srcUri, Uri.fromFile(dstFile));
+        }
+        return true;
+    }
+
+    private void publishProgress(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        long last = mLastProgressTime.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MILLIS || !mLastProgressTime.compareAndSet(last, now))) {
+            return;
+        }
+        mLastProgressTime.set(now);
+        mCallback.onProgress(getStats());
+    }
+
+    private static boolean isUnder(@NonNull Path path, @NonNull Path parent) {
+        String pathStr = path.getUri() + "/";
+        String parentStr = parent.getUri() + "/";
+        return pathStr.startsWith(parentStr);
+    }
+
+    @NonNull
+    private static String findNextBestDisplayName(@NonNull Path basePath, @NonNull Path source) {
+        String name = source.getName();
+        if (source.isDirectory()) {
+            return Paths.findNextBestDisplayName(basePath, name, null);
+        }
+        return Paths.findNextBestDisplayName(basePath, Paths.trimPathExtension(name), Paths.getPathExtension(name));
+    }
+}
@@ -11,6 +11,7 @@ import android.net.Uri;
 import android.provider.DocumentsContract;
 import android.text.TextUtils;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -26,6 +27,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,6 +36,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.dex.DexUtils;
@@ -57,6 +60,8 @@ import io.github.muntashirakon.lifecycle.SingleLiveEvent;
 public class FmViewModel extends AndroidViewModel implements ListOptions.ListOptionActions {
     public static final String TAG = FmViewModel.class.getSimpleName();
 
+    private static final int MAX_RECURSIVE_SEARCH_RESULTS = 1000;
+
     private final Object mSizeLock = new Object();
     private final MutableLiveData<List<FmItem>> mFmItemsLiveData = new MutableLiveData<>();
     private final MutableLiveData<Throwable> mFmErrorLiveData = new MutableLiveData<>();
@@ -83,7 +88,11 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
     @Nullable
     private Future<?> mFmFileLoaderResult;
     private Future<?> mFmFileSystemLoaderResult;
+    @Nullable
+    private volatile Future<?> mFmSearchIndexResult;
     private final Set<Integer> mVfsIdSet = new HashSet<>();
+    // Incremented whenever the filtering or sorting options are altered
+    private final AtomicInteger mFmListGeneration = new AtomicInteger();
     private final FileCache mFileCache = new FileCache();
 
     public FmViewModel(@NonNull Application application) {
@@ -102,6 +111,9 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
         if (mFmFileSystemLoaderResult != null) {
             mFmFileSystemLoaderResult.cancel(true);
         }
+        if (mFmSearchIndexResult != null) {
+            mFmSearchIndexResult.cancel(true);
+        }
         // Clear VFS related data
         for (int vfsId : mVfsIdSet) {
             ExUtils.exceptionAsIgnored(() -> VirtualFileSystem.unmount(vfsId));
@@ -114,6 +126,7 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
     public void setSortBy(@FmListOptions.SortOrder int sortBy) {
         mSortBy = sortBy;
         Prefs.FileManager.setSortOrder(sortBy);
+        mFmListGeneration.incrementAndGet();
         ThreadUtils.postOnBackgroundThread(this::filterAndSort);
     }
 
@@ -127,6 +140,7 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
     public void setReverseSort(boolean reverseSort) {
         mReverseSort = reverseSort;
         Prefs.FileManager.setReverseSort(reverseSort);
+        mFmListGeneration.incrementAndGet();
         ThreadUtils.postOnBackgroundThread(this::filterAndSort);
     }
 
@@ -145,11 +159,21 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
         if (selected) mSelectedOptions |= option;
         else mSelectedOptions &= ~option;
         Prefs.FileManager.setOptions(mSelectedOptions);
+        mFmListGeneration.incrementAndGet();
+        if (option == FmListOptions.OPTIONS_FOLDER_SIZE && selected) {
+            // Folder sizes have to be calculated
+            reload();
+            return;
+        }
+        if (option == FmListOptions.OPTIONS_RECURSIVE_SEARCH && selected && mCurrentUri != null) {
+            updateSearchIndex(Paths.get(mCurrentUri));
+        }
         ThreadUtils.postOnBackgroundThread(this::filterAndSort);
     }
 
     public void setQueryString(@Nullable String queryString) {
         mQueryString = queryString;
+        mFmListGeneration.incrementAndGet();
         ThreadUtils.postOnBackgroundThread(this::filterAndSort);
     }
 
@@ -317,71 +341,70 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
             long s, e;
             boolean isSaf = ContentResolver.SCHEME_CONTENT.equals(mCurrentUri.getScheme());
             FolderShortInfo folderShortInfo = new FolderShortInfo();
-            int folderCount = 0;
             synchronized (mFmItems) {
                 mFmItems.clear();
-                if (isSaf) {
-                    // SAF needs special handling to retrieve children
-                    s = System.currentTimeMillis();
-                    ContentResolver resolver = getApplication().getContentResolver();
-                    Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(mCurrentUri,
-                            DocumentsContract.getDocumentId(mCurrentUri));
-                    Cursor c = null;
-                    try {
-                        c = resolver.query(childrenUri, null, null, null, null);
-                        String[] columns = c.getColumnNames();
-                        while (c.moveToNext()) {
-                            String documentId = null;
-                            for (int i = 0; i < columns.length; ++i) {
-                                if (DocumentsContract.Document.COLUMN_DOCUMENT_ID.equals(columns[i])) {
-                                    documentId = c.getString(i);
-                                }
-                            }
-                            if (documentId == null) {
-                                // Invalid document, probably loading still?
-                                continue;
-                            }
-                            Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(mCurrentUri, documentId);
-                            Path child = Paths.getTreeDocument(path, documentUri);
-                            PathAttributes attributes = Paths.getAttributesFromSafTreeCursor(documentUri, c);
-                            FmItem fmItem = new FmItem(child, attributes);
-                            mFmItems.add(fmItem);
-                            if (fmItem.isDirectory) {
-                                ++folderCount;
-                            }
-                            if (ThreadUtils.isInterrupted()) {
-                                return;
-                            }
+            }
+            PagedListLoader listLoader = new PagedListLoader();
+            if (isSaf) {
+                // SAF needs special handling to retrieve children
+                s = System.currentTimeMillis();
+                ContentResolver resolver = getApplication().getContentResolver();
+                Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(mCurrentUri,
+                        DocumentsContract.getDocumentId(mCurrentUri));
+                Cursor c = null;
+                try {
+                    c = resolver.query(childrenUri, null, null, null, null);
+                    String[] columns = c.getColumnNames();
+                    int documentIdIndex = -1;
+                    for (int i = 0; i < columns.length; ++i) {
+                        if (DocumentsContract.Document.COLUMN_DOCUMENT_ID.equals(columns[i])) {
+                            documentIdIndex = i;
                         }
-                        e = System.currentTimeMillis();
-                        Log.d(TAG, "Time to fetch files via SAF: %d ms", e - s);
-                    } catch (Exception ex) {
-                        Log.w(TAG, "Failed query: %s", ex);
-                    } finally {
-                        IoUtils.closeQuietly(c);
                     }
-                } else {
-                    s = System.currentTimeMillis();
-                    Path[] children = path.listFiles();
-                    e = System.currentTimeMillis();
-                    Log.d(TAG, "Time to list files: %d ms", e - s);
-                    s = System.currentTimeMillis();
-                    for (Path child : children) {
-                        FmItem fmItem = new FmItem(child);
-                        mFmItems.add(fmItem);
-                        if (fmItem.isDirectory) {
-                            ++folderCount;
+                    while (documentIdIndex != -1 && c.moveToNext()) {
+                        String documentId = c.getString(documentIdIndex);
+                        if (documentId == null) {
+                            // Invalid document, probably loading still?
+                            continue;
                         }
+                        Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(mCurrentUri, documentId);
+                        Path child = Paths.getTreeDocument(path, documentUri);
+                        PathAttributes attributes = Paths.getAttributesFromSafTreeCursor(documentUri, c);
+                        listLoader.add(new FmItem(child, attributes));
                         if (ThreadUtils.isInterrupted()) {
                             return;
                         }
                     }
                     e = System.currentTimeMillis();
-                    Log.d(TAG, "Time to process file list: %d ms", e - s);
+                    Log.d(TAG, "Time to fetch files via SAF: %d ms", e - s);
+                } catch (Exception ex) {
+                    Log.w(TAG, "Failed query: %s", ex);
+                } finally {
+                    IoUtils.closeQuietly(c);
+                }
+            } else {
+                s = System.currentTimeMillis();
+                Path[] children = path.listFiles();
+                e = System.currentTimeMillis();
+                Log.d(TAG, "Time to list files: %d ms", e - s);
+                s = System.currentTimeMillis();
+                for (Path child : children) {
+                    listLoader.add(new FmItem(child));
+                    if (ThreadUtils.isInterrupted()) {
+                        return;
+                    }
                 }
+                e = System.currentTimeMillis();
+                Log.d(TAG, "Time to process file list: %d ms", e - s);
             }
+            // Run filter and sorting options for the remaining items
+            s = System.currentTimeMillis();
+            listLoader.finish();
+            e = System.currentTimeMillis();
+            Log.d(TAG, "Time to sort the last page: %d ms", e - s);
+            int folderCount = listLoader.getFolderCount();
             folderShortInfo.folderCount = folderCount;
-            folderShortInfo.fileCount = mFmItems.size() - folderCount;
+            folderShortInfo.fileCount = listLoader.getItemCount() - folderCount;
             folderShortInfo.canRead = path.canRead();
             folderShortInfo.canWrite = path.canWrite();
             if (ThreadUtils.isInterrupted()) {
@@ -389,22 +412,84 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
             }
             // Send folder info for the first time
             mFolderShortInfoLiveData.postValue(folderShortInfo);
-            // Run filter and sorting options for fmItems
-            s = System.currentTimeMillis();
-            filterAndSort();
-            e = System.currentTimeMillis();
-            Log.d(TAG, "Time to sort files: %d ms", e - s);
+            if ((mSelectedOptions & FmListOptions.OPTIONS_RECURSIVE_SEARCH) != 0) {
+                // Build the index before the first search so that searching does not have to wait for it
+                updateSearchIndex(path);
+            }
             synchronized (mSizeLock) {
-                // Calculate size and send folder info again
-                folderShortInfo.size = Paths.size(path);
-                if (ThreadUtils.isInterrupted()) {
-                    return;
+                FmSizeIndex sizeIndex = FmSizeIndex.getInstance();
+                // Send the indexed size first (if available) so that it is displayed instantly
+                FmSizeIndex.DirectorySize directorySize = sizeIndex.getCachedSize(path);
+                if (directorySize != null) {
+                    folderShortInfo.size = directorySize.size;
+                    mFolderShortInfoLiveData.postValue(folderShortInfo);
+                }
+                if ((mSelectedOptions & FmListOptions.OPTIONS_FOLDER_SIZE) != 0) {
+                    // Calculating sizes of the subfolders first allows the index to reuse them for the current folder
+                    if (!loadDirectorySizes()) {
+                        return;
+                    }
+                }
+                if (directorySize == null) {
+                    // Calculate size and send folder info again
+                    s = System.currentTimeMillis();
+                    directorySize = sizeIndex.computeSize(path);
+                    e = System.currentTimeMillis();
+                    Log.d(TAG, "Time to calculate size: %d ms", e - s);
+                    if (directorySize == null || ThreadUtils.isInterrupted()) {
+                        return;
+                    }
+                    folderShortInfo.size = directorySize.size;
+                    mFolderShortInfoLiveData.postValue(folderShortInfo);
                 }
-                mFolderShortInfoLiveData.postValue(folderShortInfo);
+                sizeIndex.persist();
             }
         });
     }
 
+    /**
+     * Fill in the sizes of the subfolders of the current folder, first from the index and then by calculating the
+     * missing ones. The list is sorted again after each step if it is sorted by size.
+     *
+     * @return {@code false} if interrupted
+     */
+    @WorkerThread
+    private boolean loadDirectorySizes() {
+        FmSizeIndex sizeIndex = FmSizeIndex.getInstance();
+        List<FmItem> directories = new ArrayList<>();
+        synchronized (mFmItems) {
+            for (FmItem fmItem : mFmItems) {
+                if (fmItem.isDirectory) {
+                    directories.add(fmItem);
+                }
+            }
+        }
+        List<FmItem> unresolvedDirectories = new ArrayList<>();
+        for (FmItem fmItem : directories) {
+            FmSizeIndex.DirectorySize directorySize = sizeIndex.getCachedSize(fmItem.path);
+            if (directorySize != null) {
+                fmItem.setDirectorySize(directorySize.size);
+            } else unresolvedDirectories.add(fmItem);
+            if (ThreadUtils.isInterrupted()) {
+                return false;
+            }
+        }
+        if (mSortBy == FmListOptions.SORT_BY_SIZE && unresolvedDirectories.size() != directories.size()) {
+            filterAndSort();
+        }
+        for (FmItem fmItem : unresolvedDirectories) {
+            FmSizeIndex.DirectorySize directorySize = sizeIndex.computeSize(fmItem.path);
+            if (directorySize == null || ThreadUtils.isInterrupted()) {
+                return false;
+            }
+            fmItem.setDirectorySize(directorySize.size);
+        }
+        if (mSortBy == FmListOptions.SORT_BY_SIZE && !unresolvedDirectories.isEmpty()) {
+            filterAndSort();
+        }
+        return true;
+    }
+
     public void createShortcut(@NonNull FmItem fmItem) {
         ThreadUtils.postOnBackgroundThread(() -> {
             Bitmap bitmap = ImageLoader.getInstance().getCachedImage(fmItem.getTag());
@@ -473,19 +558,85 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
     }
 
     private void filterAndSort() {
-        boolean displayDotFiles = (mSelectedOptions & FmListOptions.OPTIONS_DISPLAY_DOT_FILES) != 0;
-        boolean foldersOnTop = (mSelectedOptions & FmListOptions.OPTIONS_FOLDERS_FIRST) != 0;
-
         List<FmItem> filteredList;
-        synchronized (mFmItems) {
-            if (!TextUtils.isEmpty(mQueryString)) {
-                filteredList = AdvancedSearchView.matches(mQueryString, mFmItems, FmItem::getName,
-                        AdvancedSearchView.SEARCH_TYPE_CONTAINS);
-            } else filteredList = new ArrayList<>(mFmItems);
+        if (isRecursiveSearch()) {
+            filteredList = searchRecursively();
+            if (filteredList == null) {
+                // Interrupted
+                return;
+            }
+        } else {
+            synchronized (mFmItems) {
+                filteredList = filter(mFmItems);
+            }
+        }
+        if (ThreadUtils.isInterrupted()) {
+            return;
         }
+        Collections.sort(filteredList, getComparator());
         if (ThreadUtils.isInterrupted()) {
             return;
         }
+        postFmItems(filteredList, true);
+    }
+
+    private boolean isRecursiveSearch() {
+        return (mSelectedOptions & FmListOptions.OPTIONS_RECURSIVE_SEARCH) != 0 && !TextUtils.isEmpty(mQueryString)
+                && mCurrentUri != null && FmSearchIndex.isIndexable(Paths.get(mCurrentUri));
+    }
+
+    @AnyThread
+    private void updateSearchIndex(@NonNull Path path) {
+        if (mFmSearchIndexResult != null) {
+            mFmSearchIndexResult.cancel(true);
+        }
+        if (!FmSearchIndex.isIndexable(path)) {
+            // Only the current folder is filtered
+            mFmSearchIndexResult = null;
+            return;
+        }
+        mFmSearchIndexResult = ThreadUtils.postOnBackgroundThread(() -> FmSearchIndex.getInstance(path).update());
+    }
+
+    /**
+     * Search the current folder and its subfolders using {@link FmSearchIndex}.
+     *
+     * @return The matching items, or {@code null} if interrupted
+     */
+    @WorkerThread
+    @Nullable
+    private List<FmItem> searchRecursively() {
+        String queryString = Objects.requireNonNull(mQueryString);
+        Path currentPath = Paths.get(mCurrentUri);
+        FmSearchIndex searchIndex = FmSearchIndex.getInstance(currentPath);
+        if (!searchIndex.update()) {
+            return null;
+        }
+        boolean displayDotFiles = (mSelectedOptions & FmListOptions.OPTIONS_DISPLAY_DOT_FILES) != 0;
+        long s = System.currentTimeMillis();
+        List<Path> results = searchIndex.search(currentPath, queryString, MAX_RECURSIVE_SEARCH_RESULTS);
+        List<FmItem> fmItems = new ArrayList<>(results.size());
+        for (Path path : results) {
+            if (!displayDotFiles && path.getName().startsWith(".")) {
+                continue;
+            }
+            fmItems.add(new FmItem(path));
+            if (ThreadUtils.isInterrupted()) {
+                return null;
+            }
+        }
+        Log.d(TAG, "Time to search recursively: %d ms", System.currentTimeMillis() - s);
+        return fmItems;
+    }
+
+    @NonNull
+    private List<FmItem> filter(@NonNull List<FmItem> fmItems) {
+        boolean displayDotFiles = (mSelectedOptions & FmListOptions.OPTIONS_DISPLAY_DOT_FILES) != 0;
+        List<FmItem> filteredList;
+        if (!TextUtils.isEmpty(mQueryString)) {
+            filteredList = AdvancedSearchView.matches(mQueryString, fmItems, FmItem::getName,
+                    AdvancedSearchView.SEARCH_TYPE_CONTAINS);
+        } else filteredList = new ArrayList<>(fmItems);
         if (!displayDotFiles) {
             Iterator<FmItem> iterator = filteredList.listIterator();
             while (iterator.hasNext()) {
@@ -495,50 +646,153 @@ public class FmViewModel extends AndroidViewModel implements ListOptions.ListOpt
                 }
             }
         }
-        if (ThreadUtils.isInterrupted()) {
-            return;
-        }
-        // Sort by name first
-        Collections.sort(filteredList, (o1, o2) -> o1.getName().compareToIgnoreCase(o2.getName()));
-        if (mSortBy == FmListOptions.SORT_BY_NAME) {
-            if (mReverseSort) {
-                Collections.reverse(filteredList);
-            }
-        } else {
-            // Other sorting options
-            int inverse = mReverseSort ? -1 : 1;
-            Collections.sort(filteredList, (o1, o2) -> {
-                Path p1 = o1.path;
-                Path p2 = o2.path;
-                if (mSortBy == FmListOptions.SORT_BY_LAST_MODIFIED) {
-                    return -Long.compare(o1.getLastModified(), o2.getLastModified()) * inverse;
-                }
-                if (mSortBy == FmListOptions.SORT_BY_SIZE) {
-                    return -Long.compare(o1.getSize(), o2.getSize()) * inverse;
+        return filteredList;
+    }
+
+    @NonNull
+    private Comparator<FmItem> getComparator() {
+        boolean foldersOnTop = (mSelectedOptions & FmListOptions.OPTIONS_FOLDERS_FIRST) != 0;
+        int sortBy = mSortBy;
+        int inverse = mReverseSort ? -1 : 1;
+        return (o1, o2) -> {
+            if (foldersOnTop) {
+                // Folders should be on top
+                int typeComp = -Boolean.compare(o1.isDirectory, o2.isDirectory);
+                if (typeComp != 0) {
+                    return typeComp;
                 }
-                if (mSortBy == FmListOptions.SORT_BY_TYPE) {
-                    return p1.getType().compareToIgnoreCase(p2.getType()) * inverse;
+            }
+            int nameComp = o1.getName().compareToIgnoreCase(o2.getName());
+            if (sortBy == FmListOptions.SORT_BY_NAME) {
+                return nameComp * inverse;
+            }
+            // Other sorting options, items with the same value are sorted by name
+            int comp = 0;
+            if (sortBy == FmListOptions.SORT_BY_LAST_MODIFIED) {
+                comp = -Long.compare(o1.getLastModified(), o2.getLastModified()) * inverse;
+            } else if (sortBy == FmListOptions.SORT_BY_SIZE) {
+                comp = -Long.compare(o1.getSizeForSorting(), o2.getSizeForSorting()) * inverse;
+            } else if (sortBy == FmListOptions.SORT_BY_TYPE) {
+                comp = o1.path.getType().compareToIgnoreCase(o2.path.getType()) * inverse;
+            }
+            return comp != 0 ? comp : nameComp;
+        };
+    }
+
+    private void postFmItems(@NonNull List<FmItem> sortedList, boolean isFinal) {
+        if (mScrollToFilename != null) {
+            // Resolved again for every page since the items of later pages may be merged before the file
+            for (int i = 0; i < sortedList.size(); ++i) {
+                if (mScrollToFilename.equals(sortedList.get(i).getName())) {
+                    setScrollPosition(mCurrentUri, i);
+                    break;
                 }
-                return 0;
-            });
+            }
+            if (isFinal) {
+                mScrollToFilename = null;
+            }
         }
-        if (foldersOnTop) {
-            // Folders should be on top
-            Collections.sort(filteredList, (o1, o2) -> -Boolean.compare(o1.isDirectory, o2.isDirectory));
+        mFmItemsLiveData.postValue(sortedList);
+    }
+
+    @NonNull
+    private static List<FmItem> merge(@NonNull List<FmItem> left, @NonNull List<FmItem> right,
+                                      @NonNull Comparator<FmItem> comparator) {
+        List<FmItem> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0, j = 0;
+        while (i < left.size() && j < right.size()) {
+            // Prefer the left list on ties to keep the merge stable
+            if (comparator.compare(left.get(i), right.get(j)) <= 0) {
+                merged.add(left.get(i++));
+            } else merged.add(right.get(j++));
         }
-        if (ThreadUtils.isInterrupted()) {
-            return;
+        while (i < left.size()) {
+            merged.add(left.get(i++));
         }
-        if (mScrollToFilename != null) {
-            for (int i = 0; i < filteredList.size(); ++i) {
-                if (mScrollToFilename.equals(filteredList.get(i).getName())) {
-                    setScrollPosition(mCurrentUri, i);
-                    break;
+        while (j < right.size()) {
+            merged.add(right.get(j++));
+        }
+        return merged;
+    }
+
+    /**
+     * Publishes the items of a folder in pages as they are being listed. The first page is kept small so that the first
+     * screen is displayed as soon as possible. Each page is filtered and sorted on its own and then merged into the
+     * already sorted items, so that the whole list is never sorted again unless the filtering or sorting options are
+     * altered in the meantime.
+     */
+    @WorkerThread
+    private class PagedListLoader {
+        private static final int FIRST_PAGE_SIZE = 64;
+        private static final int PAGE_SIZE = 2048;
+
+        private final List<FmItem> mPage = new ArrayList<>(FIRST_PAGE_SIZE);
+        private List<FmItem> mSortedItems = Collections.emptyList();
+        private int mListGeneration;
+        private int mPageSize = FIRST_PAGE_SIZE;
+        private int mItemCount;
+        private int mFolderCount;
+
+        PagedListLoader() {
+            mListGeneration = mFmListGeneration.get();
+        }
+
+        public void add(@NonNull FmItem fmItem) {
+            mPage.add(fmItem);
+            ++mItemCount;
+            if (fmItem.isDirectory) {
+                ++mFolderCount;
+            }
+            if (mPage.size() >= mPageSize) {
+                publishPage(false);
+                mPageSize = PAGE_SIZE;
+            }
+        }
+
+        public void finish() {
+            publishPage(true);
+        }
+
+        public int getItemCount() {
+            return mItemCount;
+        }
+
+        public int getFolderCount() {
+            return mFolderCount;
+        }
+
+        private void publishPage(boolean isFinal) {
+            synchronized (mFmItems) {
+                mFmItems.addAll(mPage);
+            }
+            if (isRecursiveSearch()) {
+                // Results come from the search index rather than the listed items
+                mPage.clear();
+                if (isFinal) {
+                    filterAndSort();
+                }
+                return;
+            }
+            int listGeneration = mFmListGeneration.get();
+            Comparator<FmItem> comparator = getComparator();
+            if (listGeneration != mListGeneration) {
+                // Filtering or sorting options have changed, the sorted items can no longer be used
+                mListGeneration = listGeneration;
+                synchronized (mFmItems) {
+                    mSortedItems = filter(mFmItems);
                 }
+                Collections.sort(mSortedItems, comparator);
+            } else {
+                List<FmItem> page = filter(mPage);
+                Collections.sort(page, comparator);
+                mSortedItems = merge(mSortedItems, page, comparator);
+            }
+            mPage.clear();
+            if (ThreadUtils.isInterrupted()) {
+                return;
             }
-            mScrollToFilename = null;
+            postFmItems(new ArrayList<>(mSortedItems), isFinal);
         }
-        mFmItemsLiveData.postValue(filteredList);
     }
 
     @WorkerThread
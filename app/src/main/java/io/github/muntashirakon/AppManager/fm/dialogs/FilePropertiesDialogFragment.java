@@ -45,6 +45,7 @@ import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.fm.FmItem;
+import io.github.muntashirakon.AppManager.fm.FmSizeIndex;
 import io.github.muntashirakon.AppManager.fm.FmUtils;
 import io.github.muntashirakon.AppManager.fm.icons.FmIconFetcher;
 import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
@@ -681,8 +682,14 @@ public class FilePropertiesDialogFragment extends CapsuleBottomSheetDialogFragme
         public void loadFileSize(@NonNull FileProperties properties) {
             sizeResult = ThreadUtils.postOnBackgroundThread(() -> {
                 FileProperties newProperties = new FileProperties(properties);
-                newProperties.size = Paths.size(newProperties.path);
+                FmSizeIndex.DirectorySize directorySize = FmSizeIndex.getInstance().computeSize(newProperties.path);
+                if (directorySize == null) {
+                    // Interrupted
+                    return;
+                }
+                newProperties.size = directorySize.size;
                 mFilePropertiesLiveData.postValue(newProperties);
+                FmSizeIndex.getInstance().persist();
             });
         }
 
@@ -15,6 +15,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.File;
+import java.util.ArrayList;
 
 import aosp.android.content.pm.ParceledListSlice;
 import io.github.muntashirakon.AppManager.IAMService;
@@ -27,6 +28,9 @@ import io.github.muntashirakon.compat.os.ParcelCompat2;
 
 public class AMService extends RootService {
     static class IAMServiceImpl extends IAMService.Stub {
+        // Reused so that the information that does not change is not read again for every call
+        private final Ps mPs = new Ps();
+
         /**
          * To get {@link Process}, wrap it using {@link RemoteProcess}. Since the streams are piped,
          * I/O operations may have to be done in different threads.
@@ -49,9 +53,11 @@ public class AMService extends RootService {
 
         @Override
         public ParceledListSlice<ProcessEntry> getRunningProcesses() {
-            Ps ps = new Ps();
-            ps.loadProcesses();
-            return new ParceledListSlice<>(ps.getProcesses());
+            synchronized (mPs) {
+                mPs.loadProcesses();
+                // Copy, since the list is reused by the next call
+                return new ParceledListSlice<>(new ArrayList<>(mPs.getProcesses()));
+            }
         }
 
         @Override
@@ -0,0 +1,221 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.ipc.ps;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.github.muntashirakon.proc.ProcMemStat;
+import io.github.muntashirakon.proc.ProcStat;
+
+/**
+ * Reads files in /proc/$PID into a single reusable buffer and parses them in place. Unlike {@link ProcStat},
+ * {@link ProcMemStat} and {@link io.github.muntashirakon.proc.ProcStatus}, no string is created for the fields that
+ * are only needed as numbers. Not thread-safe.
+ */
+final class ProcFileReader {
+    public static final int STAT_COUNT = ProcStat.STAT_EXIT_CODE + 1;
+    public static final int MEM_STAT_COUNT = ProcMemStat.MEM_STAT_DT + 1;
+
+    private byte[] mBuffer = new byte[4096];
+    private int mLength;
+
+    /**
+     * Read /proc/$PID/stat. The numeric fields are stored using the indices defined in {@link ProcStat}. Instead of
+     * the command name, its hash code is stored in {@link ProcStat#STAT_TCOMM}, and {@link ProcStat#STAT_STATE}
+     * contains the state character. Fields not supported by the kernel are set to zero.
+     *
+     * @return {@code false} if the file could not be read, e.g. the process has already exited.
+     */
+    public boolean readStat(@NonNull File file, @NonNull long[] fields) {
+        if (!read(file)) {
+            return false;
+        }
+        Arrays.fill(fields, 0);
+        // The command name is enclosed in parentheses and may contain anything, including spaces and parentheses.
+        // See: https://www.openwall.com/lists/oss-security/2022/12/21/6
+        int open = indexOf((byte) '(', 0);
+        int close = lastIndexOf((byte) ')');
+        if (open < 0 || close < open || close + 2 >= mLength) {
+            return false;
+        }
+        fields[ProcStat.STAT_PID] = parseLong(0, open - 1);
+        int commHash = 0;
+        for (int i = open + 1; i < close; ++i) {
+            commHash = 31 * commHash + mBuffer[i];
+        }
+        fields[ProcStat.STAT_TCOMM] = commHash;
+        int pos = close + 2;
+        fields[ProcStat.STAT_STATE] = mBuffer[pos];
+        pos += 2;
+        for (int i = ProcStat.STAT_PPID; i < STAT_COUNT && pos < mLength; ++i) {
+            int end = nextSeparator(pos);
+            fields[i] = parseLong(pos, end);
+            pos = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Read /proc/$PID/statm. The fields are stored using the indices defined in {@link ProcMemStat}.
+     */
+    public boolean readMemStat(@NonNull File file, @NonNull long[] fields) {
+        if (!read(file)) {
+            return false;
+        }
+        Arrays.fill(fields, 0);
+        int pos = 0;
+        for (int i = 0; i < MEM_STAT_COUNT && pos < mLength; ++i) {
+            int end = nextSeparator(pos);
+            fields[i] = parseLong(pos, end);
+            pos = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Read the values of the given keys from /proc/$PID/status. The values are trimmed, and the values of the keys
+     * that are not present are set to {@code null}.
+     *
+     * @param keys   Keys encoded in ASCII, without the colon
+     * @param values Array to store the values, same length as the keys
+     */
+    public boolean readStatus(@NonNull File file, @NonNull byte[][] keys, @NonNull String[] values) {
+        if (!read(file)) {
+            return false;
+        }
+        Arrays.fill(values, null);
+        int lineStart = 0;
+        while (lineStart < mLength) {
+            int lineEnd = indexOf((byte) '\n', lineStart);
+            if (lineEnd < 0) lineEnd = mLength;
+            int colon = indexOf((byte) ':', lineStart);
+            if (colon >= 0 && colon < lineEnd) {
+                for (int i = 0; i < keys.length; ++i) {
+                    if (values[i] == null && regionMatches(lineStart, colon, keys[i])) {
+                        values[i] = getTrimmedString(colon + 1, lineEnd);
+                        break;
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #readStatus(File, byte[][], String[])}, but for files with numeric values such as /proc/$PID/io.
+     * The values of the keys that are not present are set to -1.
+     */
+    public boolean readLongValues(@NonNull File file, @NonNull byte[][] keys, @NonNull long[] values) {
+        if (!read(file)) {
+            return false;
+        }
+        Arrays.fill(values, -1);
+        int lineStart = 0;
+        while (lineStart < mLength) {
+            int lineEnd = indexOf((byte) '\n', lineStart);
+            if (lineEnd < 0) lineEnd = mLength;
+            int colon = indexOf((byte) ':', lineStart);
+            if (colon >= 0 && colon < lineEnd) {
+                for (int i = 0; i < keys.length; ++i) {
+                    if (regionMatches(lineStart, colon, keys[i])) {
+                        int start = colon + 1;
+                        while (start < lineEnd && mBuffer[start] == ' ') ++start;
+                        values[i] = parseLong(start, lineEnd);
+                        break;
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Read the whole file as a string, or {@code null} if it could not be read.
+     */
+    @Nullable
+    public String readString(@NonNull File file, boolean trim) {
+        if (!read(file)) {
+            return null;
+        }
+        return trim ? getTrimmedString(0, mLength) : new String(mBuffer, 0, mLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean read(@NonNull File file) {
+        mLength = 0;
+        try (FileInputStream is = new FileInputStream(file)) {
+            int count;
+            while ((count = is.read(mBuffer, mLength, mBuffer.length - mLength)) > 0) {
+                mLength += count;
+                if (mLength == mBuffer.length) {
+                    mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private int nextSeparator(int from) {
+        int i = from;
+        while (i < mLength && mBuffer[i] != ' ' && mBuffer[i] != '\n') {
+            ++i;
+        }
+        return i;
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < mLength; ++i) {
+            if (mBuffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private int lastIndexOf(byte b) {
+        for (int i = mLength - 1; i >= 0; --i) {
+            if (mBuffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, int end, @NonNull byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; ++i) {
+            if (mBuffer[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a decimal number. Unsigned 64-bit values beyond {@link Long#MAX_VALUE} wrap around.
+     */
+    private long parseLong(int start, int end) {
+        boolean negative = start < end && mBuffer[start] == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; ++i) {
+            int digit = mBuffer[i] - '0';
+            if (digit < 0 || digit > 9) break;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    @NonNull
+    private String getTrimmedString(int start, int end) {
+        // Same as String#trim(), which also removes the NUL characters
+        while (start < end && (mBuffer[start] & 0xff) <= ' ') ++start;
+        while (end > start && (mBuffer[end - 1] & 0xff) <= ' ') --end;
+        return new String(mBuffer, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -37,6 +37,13 @@ public class ProcessEntry implements Parcelable {
     public long elapsedTime;
     public String processState;
     public String processStatePlus;
+    // Start time since boot in clock ticks, identifies the process along with the PID
+    public long startTime;
+    // Same as cpuTimeConsumed, but in milliseconds for computing the CPU usage between two samples
+    public long cpuTimeMillis;
+    // Bytes read from and written to the storage, -1 if /proc/$PID/io is not readable
+    public long ioReadBytes = -1;
+    public long ioWriteBytes = -1;
 
     ProcessEntry() {
     }
@@ -66,6 +73,10 @@ public class ProcessEntry implements Parcelable {
         elapsedTime = in.readLong();
         processState = in.readString();
         processStatePlus = in.readString();
+        startTime = in.readLong();
+        cpuTimeMillis = in.readLong();
+        ioReadBytes = in.readLong();
+        ioWriteBytes = in.readLong();
     }
 
     public static final Creator<ProcessEntry> CREATOR = new Creator<ProcessEntry>() {
@@ -113,5 +124,9 @@ public class ProcessEntry implements Parcelable {
         dest.writeLong(elapsedTime);
         dest.writeString(processState);
         dest.writeString(processStatePlus);
+        dest.writeLong(startTime);
+        dest.writeLong(cpuTimeMillis);
+        dest.writeLong(ioReadBytes);
+        dest.writeLong(ioWriteBytes);
     }
 }
@@ -4,6 +4,7 @@ package io.github.muntashirakon.AppManager.ipc.ps;
 
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.GuardedBy;
@@ -12,7 +13,10 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import io.github.muntashirakon.AppManager.utils.CpuUtils;
 import io.github.muntashirakon.AppManager.utils.Utils;
@@ -26,14 +30,49 @@ import io.github.muntashirakon.proc.ProcStatus;
 /**
  * This is a generic Java-way of parsing processes from /proc. This is a work in progress and by no means perfect. To
  * create this class, I extensively followed the documentation located at https://www.kernel.org/doc/Documentation/filesystems/proc.txt.
+ * <p>
+ * An instance is meant to be reused for sampling the processes periodically. Only stat and statm are read for every
+ * process each time. The rest, i.e. the name, the users and the SELinux context, rarely change during the lifetime of
+ * a process, and are only read again if the process is new, or its start time or command name has changed (the latter
+ * happens when an app process is specialised from zygote).
  */
 public final class Ps {
     public static final String TAG = Ps.class.getSimpleName();
 
+    private static final byte[][] STATUS_KEYS = new byte[][]{
+            ProcStatus.STATUS_NAME.getBytes(StandardCharsets.US_ASCII),
+            ProcStatus.STATUS_UID.getBytes(StandardCharsets.US_ASCII),
+            ProcStatus.STATUS_GID.getBytes(StandardCharsets.US_ASCII),
+            ProcStatus.STATUS_VM_LCK.getBytes(StandardCharsets.US_ASCII),
+    };
+    private static final int STATUS_INDEX_NAME = 0;
+    private static final int STATUS_INDEX_UID = 1;
+    private static final int STATUS_INDEX_GID = 2;
+    private static final int STATUS_INDEX_VM_LCK = 3;
+    private static final byte[][] IO_KEYS = new byte[][]{
+            "read_bytes".getBytes(StandardCharsets.US_ASCII),
+            "write_bytes".getBytes(StandardCharsets.US_ASCII),
+    };
+
     @NonNull
     private final ProcFs mProcFs;
+    @NonNull
+    private final File mProcDir;
     @GuardedBy("processEntries")
     private final ArrayList<ProcessEntry> mProcessEntries = new ArrayList<>(256);
+    @GuardedBy("processEntries")
+    private final ProcFileReader mReader = new ProcFileReader();
+    @GuardedBy("processEntries")
+    private final long[] mStat = new long[ProcFileReader.STAT_COUNT];
+    @GuardedBy("processEntries")
+    private final long[] mMemStat = new long[ProcFileReader.MEM_STAT_COUNT];
+    @GuardedBy("processEntries")
+    private final String[] mStatus = new String[STATUS_KEYS.length];
+    @GuardedBy("processEntries")
+    private final long[] mIo = new long[IO_KEYS.length];
+    // PID -> info that does not change during the lifetime of the process
+    @GuardedBy("processEntries")
+    private SparseArray<ProcInfo> mProcInfoCache = new SparseArray<>(0);
     private long mUptime;
     private long mClockTicks;
 
@@ -44,6 +83,7 @@ public final class Ps {
     @VisibleForTesting
     public Ps(@NonNull Path procPath) {
         mProcFs = new ProcFs(procPath);
+        mProcDir = procPath.getFile();
     }
 
     @AnyThread
@@ -61,99 +101,143 @@ public final class Ps {
         synchronized (mProcessEntries) {
             mProcessEntries.clear();
             mUptime = mProcFs.getUptime() / 1000;
-            if (!Utils.isRoboUnitTest()) {
-                mClockTicks = CpuUtils.getClockTicksPerSecond();
-            } else mClockTicks = 100; // To prevent error due to native library
+            if (mClockTicks == 0) {
+                if (!Utils.isRoboUnitTest()) {
+                    mClockTicks = CpuUtils.getClockTicksPerSecond();
+                } else mClockTicks = 100; // To prevent error due to native library
+            }
+            SparseArray<ProcInfo> procInfoCache = new SparseArray<>(mProcInfoCache.size());
             // Get process info for each PID
-            for (int pid : mProcFs.getPids()) {
-                ProcItem procItem = new ProcItem();
-                ProcStat procStat = mProcFs.getStat(pid);
-                ProcMemStat procMemStat = mProcFs.getMemStat(pid);
-                ProcStatus procStatus = mProcFs.getStatus(pid);
-                if (procStat == null) {
+            for (int pid : getPids()) {
+                File pidDir = new File(mProcDir, String.valueOf(pid));
+                if (!mReader.readStat(new File(pidDir, "stat"), mStat)) {
                     Log.w(TAG, "Could not read /proc/" + pid + "/stat");
                     continue;
                 }
-                if (procMemStat == null) {
+                if (!mReader.readMemStat(new File(pidDir, "statm"), mMemStat)) {
                     Log.w(TAG, "Could not read /proc/" + pid + "/statm");
                     continue;
                 }
-                if (procStatus == null) {
-                    Log.w(TAG, "Could not read /proc/" + pid + "/status");
-                    continue;
+                ProcInfo procInfo = mProcInfoCache.get(pid);
+                if (procInfo == null || procInfo.startTime != mStat[ProcStat.STAT_START_TIME]
+                        || procInfo.commHash != mStat[ProcStat.STAT_TCOMM]) {
+                    procInfo = loadProcInfo(pidDir);
+                    if (procInfo == null) {
+                        Log.w(TAG, "Could not read /proc/" + pid + "/status");
+                        continue;
+                    }
                 }
-                procItem.stat = procStat;
-                procItem.memStat = procMemStat;
-                procItem.status = procStatus;
-                procItem.name = mProcFs.getCmdline(pid);
-                procItem.sepol = mProcFs.getCurrentContext(pid);
-                procItem.wchan = mProcFs.getWchan(pid);
-                mProcessEntries.add(newProcess(procItem));
+                // Only readable by the owner of the process (or root)
+                if (!mReader.readLongValues(new File(pidDir, "io"), IO_KEYS, mIo)) {
+                    Arrays.fill(mIo, -1);
+                }
+                procInfoCache.put(pid, procInfo);
+                mProcessEntries.add(newProcess(procInfo));
             }
+            // Processes that have exited are dropped
+            mProcInfoCache = procInfoCache;
         }
     }
 
+    @GuardedBy("processEntries")
     @NonNull
-    private ProcessEntry newProcess(@NonNull ProcItem procItem) {
-        ProcessEntry processEntry = new ProcessEntry();
-        processEntry.pid = procItem.stat.getInteger(ProcStat.STAT_PID);
-        processEntry.ppid = procItem.stat.getInteger(ProcStat.STAT_PPID);
-        processEntry.priority = procItem.stat.getInteger(ProcStat.STAT_PRIORITY);
-        processEntry.niceness = procItem.stat.getInteger(ProcStat.STAT_NICE);
-        processEntry.instructionPointer = procItem.stat.getLong(ProcStat.STAT_EIP);
-        processEntry.virtualMemorySize = procItem.stat.getLong(ProcStat.STAT_VSIZE);
-        processEntry.residentSetSize = procItem.stat.getLong(ProcStat.STAT_RSS);
-        processEntry.sharedMemory = procItem.memStat.getLong(ProcMemStat.MEM_STAT_SHARED);
-        processEntry.processGroupId = procItem.stat.getInteger(ProcStat.STAT_PGRP);
-        processEntry.majorPageFaults = procItem.stat.getInteger(ProcStat.STAT_MAJ_FLT);
-        processEntry.minorPageFaults = procItem.stat.getInteger(ProcStat.STAT_MIN_FLT);
-        processEntry.realTimePriority = procItem.stat.getInteger(ProcStat.STAT_RT_PRIORITY);
-        processEntry.schedulingPolicy = procItem.stat.getInteger(ProcStat.STAT_POLICY);
-        processEntry.cpu = procItem.stat.getInteger(ProcStat.STAT_TASK_CPU);
-        processEntry.threadCount = procItem.stat.getInteger(ProcStat.STAT_NUM_THREADS);
-        processEntry.tty = procItem.stat.getInteger(ProcStat.STAT_TTY_NR);
-        processEntry.seLinuxPolicy = procItem.sepol;
-        processEntry.name = TextUtils.isEmpty(procItem.name) ? procItem.status.getString(ProcStatus.STATUS_NAME) : procItem.name;
-        processEntry.users = new ProcessUsers(procItem.status.getString(ProcStatus.STATUS_UID), procItem.status.getString(ProcStatus.STATUS_GID));
-        processEntry.cpuTimeConsumed = (procItem.stat.getInteger(ProcStat.STAT_UTIME)
-                + procItem.stat.getInteger(ProcStat.STAT_STIME)) / mClockTicks;
-        processEntry.cCpuTimeConsumed = (procItem.stat.getInteger(ProcStat.STAT_CUTIME)
-                + procItem.stat.getInteger(ProcStat.STAT_CSTIME)) / mClockTicks;
-        processEntry.elapsedTime = mUptime - (procItem.stat.getInteger(ProcStat.STAT_START_TIME) / mClockTicks);
-        String state = procItem.status.getString(ProcStatus.STATUS_STATE);
-        if (state == null) {
-            throw new RuntimeException("Process state cannot be empty!");
+    private int[] getPids() {
+        String[] names = mProcDir.list();
+        if (names == null) {
+            return new int[0];
         }
-        processEntry.processState = state.substring(0, 1);
+        int[] pids = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (TextUtils.isDigitsOnly(name)) {
+                pids[count++] = Integer.parseInt(name);
+            }
+        }
+        return count == pids.length ? pids : Arrays.copyOf(pids, count);
+    }
+
+    @GuardedBy("processEntries")
+    @Nullable
+    private ProcInfo loadProcInfo(@NonNull File pidDir) {
+        if (!mReader.readStatus(new File(pidDir, "status"), STATUS_KEYS, mStatus)) {
+            return null;
+        }
+        String uidLine = mStatus[STATUS_INDEX_UID];
+        String gidLine = mStatus[STATUS_INDEX_GID];
+        if (uidLine == null || gidLine == null) {
+            return null;
+        }
+        ProcInfo procInfo = new ProcInfo();
+        procInfo.startTime = mStat[ProcStat.STAT_START_TIME];
+        procInfo.commHash = mStat[ProcStat.STAT_TCOMM];
+        procInfo.users = new ProcessUsers(uidLine, gidLine);
+        String vmLck = mStatus[STATUS_INDEX_VM_LCK];
+        procInfo.memoryLocked = vmLck != null && Integer.decode(vmLck.substring(0, 1)) > 0;
+        String cmdline = mReader.readString(new File(pidDir, "cmdline"), false);
+        procInfo.name = TextUtils.isEmpty(cmdline) ? mStatus[STATUS_INDEX_NAME] : cmdline;
+        procInfo.sepol = mReader.readString(new File(new File(pidDir, "attr"), "current"), true);
+        return procInfo;
+    }
+
+    @GuardedBy("processEntries")
+    @NonNull
+    private ProcessEntry newProcess(@NonNull ProcInfo procInfo) {
+        long[] stat = mStat;
+        ProcessEntry processEntry = new ProcessEntry();
+        processEntry.pid = (int) stat[ProcStat.STAT_PID];
+        processEntry.ppid = (int) stat[ProcStat.STAT_PPID];
+        processEntry.priority = (int) stat[ProcStat.STAT_PRIORITY];
+        processEntry.niceness = (int) stat[ProcStat.STAT_NICE];
+        processEntry.instructionPointer = stat[ProcStat.STAT_EIP];
+        processEntry.virtualMemorySize = stat[ProcStat.STAT_VSIZE];
+        processEntry.residentSetSize = stat[ProcStat.STAT_RSS];
+        processEntry.sharedMemory = mMemStat[ProcMemStat.MEM_STAT_SHARED];
+        processEntry.processGroupId = (int) stat[ProcStat.STAT_PGRP];
+        processEntry.majorPageFaults = (int) stat[ProcStat.STAT_MAJ_FLT];
+        processEntry.minorPageFaults = (int) stat[ProcStat.STAT_MIN_FLT];
+        processEntry.realTimePriority = (int) stat[ProcStat.STAT_RT_PRIORITY];
+        processEntry.schedulingPolicy = (int) stat[ProcStat.STAT_POLICY];
+        processEntry.cpu = (int) stat[ProcStat.STAT_TASK_CPU];
+        processEntry.threadCount = (int) stat[ProcStat.STAT_NUM_THREADS];
+        processEntry.tty = (int) stat[ProcStat.STAT_TTY_NR];
+        processEntry.seLinuxPolicy = procInfo.sepol;
+        processEntry.name = procInfo.name;
+        processEntry.users = procInfo.users;
+        processEntry.cpuTimeConsumed = (stat[ProcStat.STAT_UTIME] + stat[ProcStat.STAT_STIME]) / mClockTicks;
+        processEntry.cCpuTimeConsumed = (stat[ProcStat.STAT_CUTIME] + stat[ProcStat.STAT_CSTIME]) / mClockTicks;
+        processEntry.elapsedTime = mUptime - (stat[ProcStat.STAT_START_TIME] / mClockTicks);
+        processEntry.startTime = stat[ProcStat.STAT_START_TIME];
+        processEntry.cpuTimeMillis = (stat[ProcStat.STAT_UTIME] + stat[ProcStat.STAT_STIME]) * 1000 / mClockTicks;
+        processEntry.ioReadBytes = mIo[0];
+        processEntry.ioWriteBytes = mIo[1];
+        processEntry.processState = String.valueOf((char) stat[ProcStat.STAT_STATE]);
         StringBuilder stateExtra = new StringBuilder();
-        if (procItem.stat.getInteger(ProcStat.STAT_NICE) < 0) {
+        if (processEntry.niceness < 0) {
             stateExtra.append("<");
-        } else if (procItem.stat.getInteger(ProcStat.STAT_NICE) > 0) {
+        } else if (processEntry.niceness > 0) {
             stateExtra.append("N");
         }
-        if (procItem.stat.getInteger(ProcStat.STAT_SID) == processEntry.pid) {
+        if (stat[ProcStat.STAT_SID] == processEntry.pid) {
             stateExtra.append("s");
         }
-        String vmLck = procItem.status.getString(ProcStatus.STATUS_VM_LCK);
-        if (vmLck != null && Integer.decode(vmLck.substring(0, 1)) > 0) {
+        if (procInfo.memoryLocked) {
             stateExtra.append("L");
         }
-        if (procItem.stat.getInteger(ProcStat.STAT_TTY_PGRP) == processEntry.pid) {
+        if (stat[ProcStat.STAT_TTY_PGRP] == processEntry.pid) {
             stateExtra.append("+");
         }
         processEntry.processStatePlus = stateExtra.toString();
         return processEntry;
     }
 
-    private static class ProcItem {
-        public ProcStat stat;
-        public ProcMemStat memStat;
-        public ProcStatus status;
+    private static class ProcInfo {
+        public long startTime;
+        public long commHash;
+        public ProcessUsers users;
+        public boolean memoryLocked;
         @Nullable
         public String name;
         @Nullable
         public String sepol;
-        @Nullable
-        public String wchan;
     }
 }
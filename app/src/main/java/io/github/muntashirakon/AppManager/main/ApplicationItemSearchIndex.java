@@ -0,0 +1,164 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.main;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
+import io.github.muntashirakon.AppManager.utils.Utils;
+
+/**
+ * Search index for the main app list. The lowercase package names, labels and initials of the labels are computed only
+ * once per package (and again when the label changes) instead of on every keystroke.
+ * <p>
+ * While typing, a query usually extends the previous one. In that case, the packages rejected by the previous query
+ * cannot match the new one, and are skipped unless their labels have changed since.
+ */
+public class ApplicationItemSearchIndex {
+    private static class Entry {
+        @NonNull
+        final String label;
+        @NonNull
+        final String packageNameLower;
+        @NonNull
+        final String labelLower;
+        @NonNull
+        final String initials;
+
+        Entry(@NonNull String packageName, @NonNull String label) {
+            this.label = label;
+            this.packageNameLower = packageName.toLowerCase(Locale.ROOT);
+            this.labelLower = label.toLowerCase(Locale.ROOT);
+            // Same as Utils#containsOrHasInitials(String, String)
+            this.initials = Utils.getFirstLettersInLowerCase(Utils.camelCaseToSpaceSeparatedString(label));
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    // Packages that did not match the last query
+    private final Set<String> mRejected = new HashSet<>();
+    @Nullable
+    private String mLastQuery;
+    @AdvancedSearchView.SearchType
+    private int mLastType;
+
+    /**
+     * Index the given items in advance so that the first query does not have to.
+     */
+    @WorkerThread
+    public synchronized void prepare(@NonNull Collection<ApplicationItem> items) {
+        for (ApplicationItem item : items) {
+            getEntry(item);
+        }
+    }
+
+    @WorkerThread
+    public synchronized void remove(@NonNull String packageName) {
+        mEntries.remove(packageName);
+        mRejected.remove(packageName);
+    }
+
+    /**
+     * Return the candidates matching the query in the same order. The query must be in lowercase unless the search
+     * type is {@link AdvancedSearchView#SEARCH_TYPE_REGEX}.
+     */
+    @WorkerThread
+    @NonNull
+    public synchronized List<ApplicationItem> search(@NonNull String query, @AdvancedSearchView.SearchType int type,
+                                                     @NonNull List<ApplicationItem> candidates) {
+        List<ApplicationItem> results = new ArrayList<>();
+        if (type == AdvancedSearchView.SEARCH_TYPE_REGEX) {
+            clearLastQuery();
+            Pattern p;
+            try {
+                p = Pattern.compile(query);
+            } catch (PatternSyntaxException e) {
+                return results;
+            }
+            for (ApplicationItem item : candidates) {
+                Entry entry = getEntry(item);
+                if (p.matcher(item.packageName).find() || p.matcher(entry.label).find()) {
+                    results.add(item);
+                }
+            }
+            return results;
+        }
+        boolean narrow = isNarrowing(query, type);
+        if (!narrow) {
+            mRejected.clear();
+        }
+        for (ApplicationItem item : candidates) {
+            // Clears the rejection of a package whose entry is stale
+            Entry entry = getEntry(item);
+            if (narrow && mRejected.contains(item.packageName)) {
+                continue;
+            }
+            if (matches(entry, query, type)) {
+                results.add(item);
+            } else mRejected.add(item.packageName);
+        }
+        mLastQuery = query;
+        mLastType = type;
+        return results;
+    }
+
+    private void clearLastQuery() {
+        mLastQuery = null;
+        mRejected.clear();
+    }
+
+    /**
+     * Whether every text matching the query also matches the last query.
+     */
+    private boolean isNarrowing(@NonNull String query, @AdvancedSearchView.SearchType int type) {
+        if (mLastQuery == null || mLastType != type) {
+            return false;
+        }
+        switch (type) {
+            case AdvancedSearchView.SEARCH_TYPE_CONTAINS:
+                return query.contains(mLastQuery);
+            case AdvancedSearchView.SEARCH_TYPE_PREFIX:
+                return query.startsWith(mLastQuery);
+            case AdvancedSearchView.SEARCH_TYPE_SUFFIX:
+                return query.endsWith(mLastQuery);
+        }
+        return false;
+    }
+
+    private static boolean matches(@NonNull Entry entry, @NonNull String query,
+                                   @AdvancedSearchView.SearchType int type) {
+        if (AdvancedSearchView.matches(query, entry.packageNameLower, type)) {
+            return true;
+        }
+        if (type == AdvancedSearchView.SEARCH_TYPE_CONTAINS) {
+            return entry.labelLower.contains(query) || entry.initials.contains(query);
+        }
+        return AdvancedSearchView.matches(query, entry.labelLower, type);
+    }
+
+    @NonNull
+    private Entry getEntry(@NonNull ApplicationItem item) {
+        String label = item.label != null ? item.label : item.packageName;
+        Entry entry = mEntries.get(item.packageName);
+        if (entry == null || !entry.label.equals(label)) {
+            entry = new Entry(item.packageName, label);
+            mEntries.put(item.packageName, entry);
+            // The previous result no longer applies to this package
+            mRejected.remove(item.packageName);
+        }
+        return entry;
+    }
+}
@@ -31,6 +31,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.UiThread;
 import androidx.appcompat.widget.AppCompatImageView;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
@@ -50,6 +51,7 @@ import io.github.muntashirakon.AppManager.db.entity.Backup;
 import io.github.muntashirakon.AppManager.details.AppDetailsActivity;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
 import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
+import io.github.muntashirakon.AppManager.self.imagecache.ImagePrefetcher;
 import io.github.muntashirakon.AppManager.settings.FeatureController;
 import io.github.muntashirakon.AppManager.users.UserInfo;
 import io.github.muntashirakon.AppManager.users.Users;
@@ -64,12 +66,13 @@ import io.github.muntashirakon.util.AdapterUtils;
 import io.github.muntashirakon.widget.MultiSelectionView;
 
 public class MainRecyclerAdapter extends MultiSelectionView.Adapter<MainRecyclerAdapter.ViewHolder>
-        implements SectionIndexer {
+        implements SectionIndexer, ImagePrefetcher.PrefetchCallback {
     private static final String sSections = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
     private final MainActivity mActivity;
     private final PackageManager mPackageManager;
     private String mSearchQuery;
+    private int mListGeneration = -1;
     @GuardedBy("mAdapterList")
     private final List<ApplicationItem> mAdapterList = new ArrayList<>();
 
@@ -97,11 +100,56 @@ public class MainRecyclerAdapter extends MultiSelectionView.Adapter<MainRecycler
         if (mActivity.viewModel == null) return;
         synchronized (mAdapterList) {
             mSearchQuery = mActivity.viewModel.getSearchQuery();
-            AdapterUtils.notifyDataSetChanged(this, mAdapterList, list);
+            int listGeneration = mActivity.viewModel.getListGeneration();
+            if (listGeneration != mListGeneration || list == null || mAdapterList.isEmpty()) {
+                // Filtered or sorted differently, most rows are going to change anyway
+                mListGeneration = listGeneration;
+                AdapterUtils.notifyDataSetChanged(this, mAdapterList, list);
+            } else {
+                // Only a few packages have changed, update only their rows
+                DiffUtil.DiffResult result = DiffUtil.calculateDiff(new ApplicationItemDiffCallback(
+                        new ArrayList<>(mAdapterList), list), false);
+                mAdapterList.clear();
+                mAdapterList.addAll(list);
+                result.dispatchUpdatesTo(this);
+            }
             notifySelectionChange();
         }
     }
 
+    private static class ApplicationItemDiffCallback extends DiffUtil.Callback {
+        private final List<ApplicationItem> mOldList;
+        private final List<ApplicationItem> mNewList;
+
+        ApplicationItemDiffCallback(@NonNull List<ApplicationItem> oldList, @NonNull List<ApplicationItem> newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldList.get(oldItemPosition).packageName.equals(mNewList.get(newItemPosition).packageName);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // Updated packages are always replaced with new items. Moved rows have to be bound again as well since
+            // the click listeners refer to the bound position.
+            return oldItemPosition == newItemPosition
+                    && mOldList.get(oldItemPosition) == mNewList.get(newItemPosition);
+        }
+    }
+
     @GuardedBy("mAdapterList")
     @Override
     public void cancelSelection() {
@@ -388,6 +436,17 @@ public class MainRecyclerAdapter extends MultiSelectionView.Adapter<MainRecycler
         }
     }
 
+    @UiThread
+    @Override
+    public void prefetchImage(int position) {
+        ApplicationItem item;
+        synchronized (mAdapterList) {
+            if (position < 0 || position >= mAdapterList.size()) return;
+            item = mAdapterList.get(position);
+        }
+        ImageLoader.getInstance().prefetchImage(item.packageName, item);
+    }
+
     @GuardedBy("mAdapterList")
     @Override
     public int getItemCount() {
@@ -10,6 +10,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Handler;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandleHidden;
 import android.text.TextUtils;
 import android.util.Pair;
@@ -33,9 +34,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -43,6 +46,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.muntashirakon.AppManager.apk.list.ListExporter;
 import io.github.muntashirakon.AppManager.backup.BackupUtils;
@@ -53,6 +57,7 @@ import io.github.muntashirakon.AppManager.db.utils.AppDb;
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
 import io.github.muntashirakon.AppManager.misc.ListOptions;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
 import io.github.muntashirakon.AppManager.profiles.ProfileManager;
 import io.github.muntashirakon.AppManager.profiles.struct.AppsProfile;
 import io.github.muntashirakon.AppManager.settings.Prefs;
@@ -61,19 +66,22 @@ import io.github.muntashirakon.AppManager.types.UserPackagePair;
 import io.github.muntashirakon.AppManager.users.Users;
 import io.github.muntashirakon.AppManager.utils.ArrayUtils;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
-import io.github.muntashirakon.AppManager.utils.Utils;
 import io.github.muntashirakon.io.Path;
 
 public class MainViewModel extends AndroidViewModel implements ListOptions.ListOptionActions {
     private static final Collator sCollator = Collator.getInstance();
+    // Package changes are applied together once no other change arrives within this period
+    private static final long PACKAGE_UPDATE_DELAY_MILLIS = 500;
+    private static final long PACKAGE_UPDATE_MAX_DELAY_MILLIS = 3000;
 
     private final PackageManager mPackageManager;
     private final PackageIntentReceiver mPackageObserver;
     private final Handler mHandler;
     @MainListOptions.SortOrder
-    private int mSortBy;
-    private boolean mReverseSort;
+    private volatile int mSortBy;
+    private volatile boolean mReverseSort;
     @MainListOptions.Filter
     private int mFilterFlags;
     @Nullable
@@ -91,9 +99,14 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         Log.d("MVM", "New instance created");
         mPackageManager = application.getPackageManager();
         mHandler = new Handler(application.getMainLooper());
+        // Permission definitions may have changed while packages were not observed
+        PermissionInfoCache.getInstance().invalidate();
+        // The package snapshot can be shared by the screens opened from the main list
+        PackageSnapshot.startObserving();
         mPackageObserver = new PackageIntentReceiver(this);
         mSortBy = Prefs.MainPage.getSortOrder();
         mReverseSort = Prefs.MainPage.isReverseSort();
+        mListComparator = getComparator(mSortBy, mReverseSort);
         mFilterFlags = Prefs.MainPage.getFilters();
         mFilterProfileName = Prefs.MainPage.getFilteredProfileName();
         mSelectedUsers = null; // TODO: 5/6/23 Load from prefs?
@@ -104,6 +117,34 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     @NonNull
     private final MutableLiveData<List<ApplicationItem>> mApplicationItemsLiveData = new MutableLiveData<>();
     private final List<ApplicationItem> mApplicationItems = new ArrayList<>();
+    private final ApplicationItemSearchIndex mSearchIndex = new ApplicationItemSearchIndex();
+    // Comparator the list is currently sorted with
+    @GuardedBy("mApplicationItems")
+    @NonNull
+    private Comparator<ApplicationItem> mListComparator;
+    // Incremented whenever the list is filtered or sorted differently, see #getListGeneration()
+    private final AtomicInteger mListGeneration = new AtomicInteger();
+    private final Object mPendingUpdatesLock = new Object();
+    @GuardedBy("mPendingUpdatesLock")
+    private final Set<String> mPendingDbPackages = new LinkedHashSet<>();
+    @GuardedBy("mPendingUpdatesLock")
+    private final Set<String> mPendingPackages = new LinkedHashSet<>();
+    @GuardedBy("mPendingUpdatesLock")
+    private long mFirstPendingUpdateTime;
+    private final Runnable mPendingUpdatesRunnable = () -> {
+        if (!executor.isShutdown()) {
+            executor.submit(this::applyPendingPackageUpdates);
+        }
+    };
+
+    /**
+     * The generation of the list. Two lists of the same generation differ only by the packages that have been
+     * installed, updated or uninstalled in the meantime.
+     */
+    @AnyThread
+    int getListGeneration() {
+        return mListGeneration.get();
+    }
 
     public int getApplicationItemCount() {
         return mApplicationItems.size();
@@ -208,6 +249,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     public void setSearchQuery(String searchQuery, @AdvancedSearchView.SearchType int searchType) {
         this.mSearchQuery = searchType != AdvancedSearchView.SEARCH_TYPE_REGEX ? searchQuery.toLowerCase(Locale.ROOT) : searchQuery;
         this.mSearchType = searchType;
+        mListGeneration.incrementAndGet();
         executor.submit(this::filterItemsByFlags);
     }
 
@@ -218,12 +260,13 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
 
     @Override
     public void setReverseSort(boolean reverseSort) {
+        mReverseSort = reverseSort;
+        Prefs.MainPage.setReverseSort(mReverseSort);
+        mListGeneration.incrementAndGet();
         executor.submit(() -> {
-            sortApplicationList(mSortBy, mReverseSort);
+            sortApplicationList();
             filterItemsByFlags();
         });
-        mReverseSort = reverseSort;
-        Prefs.MainPage.setReverseSort(mReverseSort);
     }
 
     @Override
@@ -233,14 +276,16 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
 
     @Override
     public void setSortBy(int sortBy) {
-        if (mSortBy != sortBy) {
+        boolean changed = mSortBy != sortBy;
+        mSortBy = sortBy;
+        Prefs.MainPage.setSortOrder(mSortBy);
+        if (changed) {
+            mListGeneration.incrementAndGet();
             executor.submit(() -> {
-                sortApplicationList(sortBy, mReverseSort);
+                sortApplicationList();
                 filterItemsByFlags();
             });
         }
-        mSortBy = sortBy;
-        Prefs.MainPage.setSortOrder(mSortBy);
     }
 
     @Override
@@ -252,6 +297,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     public void addFilterFlag(@MainListOptions.Filter int filterFlag) {
         mFilterFlags |= filterFlag;
         Prefs.MainPage.setFilters(mFilterFlags);
+        mListGeneration.incrementAndGet();
         executor.submit(this::filterItemsByFlags);
     }
 
@@ -259,6 +305,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     public void removeFilterFlag(@MainListOptions.Filter int filterFlag) {
         mFilterFlags &= ~filterFlag;
         Prefs.MainPage.setFilters(mFilterFlags);
+        mListGeneration.incrementAndGet();
         executor.submit(this::filterItemsByFlags);
     }
 
@@ -268,6 +315,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         } else if (mFilterProfileName.equals(filterProfileName)) return;
         mFilterProfileName = filterProfileName;
         Prefs.MainPage.setFilteredProfileName(filterProfileName);
+        mListGeneration.incrementAndGet();
         executor.submit(this::filterItemsByFlags);
     }
 
@@ -299,6 +347,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         }
         mSelectedUsers = selectedUsers;
         // TODO: 5/6/23 Store value to prefs
+        mListGeneration.incrementAndGet();
         executor.submit(this::filterItemsByFlags);
     }
 
@@ -344,40 +393,20 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
             synchronized (mApplicationItems) {
                 mApplicationItems.clear();
                 mApplicationItems.addAll(updatedApplicationItems);
+                mSearchIndex.prepare(mApplicationItems);
                 // select apps again
                 for (ApplicationItem item : getSelectedApplicationItems()) {
                     select(item);
                 }
-                sortApplicationList(mSortBy, mReverseSort);
+                sortApplicationList();
                 filterItemsByFlags();
             }
         });
     }
 
     private void filterItemsByQuery(@NonNull List<ApplicationItem> applicationItems) {
-        List<ApplicationItem> filteredApplicationItems;
-        if (mSearchType == AdvancedSearchView.SEARCH_TYPE_REGEX) {
-            filteredApplicationItems = AdvancedSearchView.matches(mSearchQuery, applicationItems,
-                    (AdvancedSearchView.ChoicesGenerator<ApplicationItem>) item -> new ArrayList<String>() {{
-                        add(item.packageName);
-                        add(item.label);
-                    }}, AdvancedSearchView.SEARCH_TYPE_REGEX);
-            mHandler.post(() -> mApplicationItemsLiveData.postValue(filteredApplicationItems));
-            return;
-        }
-        // Others
-        filteredApplicationItems = new ArrayList<>();
-        for (ApplicationItem item : applicationItems) {
-            if (AdvancedSearchView.matches(mSearchQuery, item.packageName.toLowerCase(Locale.ROOT), mSearchType)) {
-                filteredApplicationItems.add(item);
-            } else if (mSearchType == AdvancedSearchView.SEARCH_TYPE_CONTAINS) {
-                if (Utils.containsOrHasInitials(mSearchQuery, item.label)) {
-                    filteredApplicationItems.add(item);
-                }
-            } else if (AdvancedSearchView.matches(mSearchQuery, item.label.toLowerCase(Locale.ROOT), mSearchType)) {
-                filteredApplicationItems.add(item);
-            }
-        }
+        List<ApplicationItem> filteredApplicationItems = mSearchIndex.search(mSearchQuery, mSearchType,
+                applicationItems);
         mHandler.post(() -> mApplicationItemsLiveData.postValue(filteredApplicationItems));
     }
 
@@ -514,77 +543,96 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         }
     }
 
+    /**
+     * Sort the list using the current sort options. The options are read inside the lock so that the sorts submitted
+     * in quick succession always leave the list sorted by the latest options, regardless of the order they are run in.
+     */
     @GuardedBy("applicationItems")
-    private void sortApplicationList(@MainListOptions.SortOrder int sortBy, boolean reverse) {
+    private void sortApplicationList() {
         synchronized (mApplicationItems) {
-            if (sortBy != MainListOptions.SORT_BY_APP_LABEL) {
-                sortApplicationList(MainListOptions.SORT_BY_APP_LABEL, false);
+            mListComparator = getComparator(mSortBy, mReverseSort);
+            Collections.sort(mApplicationItems, mListComparator);
+        }
+    }
+
+    /**
+     * Items are compared by the given criterion first, and then by their labels in the ascending order.
+     */
+    @NonNull
+    private static Comparator<ApplicationItem> getComparator(@MainListOptions.SortOrder int sortBy, boolean reverse) {
+        int mode = reverse ? -1 : 1;
+        return (o1, o2) -> {
+            int result = compare(sortBy, mode, o1, o2);
+            if (result != 0 || sortBy == MainListOptions.SORT_BY_APP_LABEL) {
+                return result;
             }
-            int mode = reverse ? -1 : 1;
-            Collections.sort(mApplicationItems, (o1, o2) -> {
-                switch (sortBy) {
-                    case MainListOptions.SORT_BY_APP_LABEL:
-                        return mode * sCollator.compare(o1.label, o2.label);
-                    case MainListOptions.SORT_BY_PACKAGE_NAME:
-                        return mode * o1.packageName.compareTo(o2.packageName);
-                    case MainListOptions.SORT_BY_DOMAIN:
-                        boolean isSystem1 = (o1.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                        boolean isSystem2 = (o2.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                        return mode * Boolean.compare(isSystem1, isSystem2);
-                    case MainListOptions.SORT_BY_LAST_UPDATE:
-                        // Sort in decreasing order
-                        return -mode * o1.lastUpdateTime.compareTo(o2.lastUpdateTime);
-                    case MainListOptions.SORT_BY_TOTAL_SIZE:
-                        // Sort in decreasing order
-                        return -mode * o1.totalSize.compareTo(o2.totalSize);
-                    case MainListOptions.SORT_BY_DATA_USAGE:
-                        // Sort in decreasing order
-                        return -mode * o1.dataUsage.compareTo(o2.dataUsage);
-                    case MainListOptions.SORT_BY_OPEN_COUNT:
-                        // Sort in decreasing order
-                        return -mode * Integer.compare(o1.openCount, o2.openCount);
-                    case MainListOptions.SORT_BY_INSTALLATION_DATE:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.firstInstallTime, o2.firstInstallTime);
-                    case MainListOptions.SORT_BY_SCREEN_TIME:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.screenTime, o2.screenTime);
-                    case MainListOptions.SORT_BY_LAST_USAGE_TIME:
-                        // Sort in decreasing order
-                        return -mode * Long.compare(o1.lastUsageTime, o2.lastUsageTime);
-                    case MainListOptions.SORT_BY_TARGET_SDK:
-                        // null on top
-                        if (o1.sdk == null) return -mode;
-                        else if (o2.sdk == null) return +mode;
-                        return mode * o1.sdk.compareTo(o2.sdk);
-                    case MainListOptions.SORT_BY_SHARED_ID:
-                        return mode * Integer.compare(o1.uid, o2.uid);
-                    case MainListOptions.SORT_BY_SHA:
-                        // null on top
-                        if (o1.sha == null) {
-                            return -mode;
-                        } else if (o2.sha == null) {
-                            return +mode;
-                        } else {  // Both aren't null
-                            int i = o1.sha.first.compareToIgnoreCase(o2.sha.first);
-                            if (i == 0) {
-                                return mode * o1.sha.second.compareToIgnoreCase(o2.sha.second);
-                            } else return mode * i;
-                        }
-                    case MainListOptions.SORT_BY_BLOCKED_COMPONENTS:
-                        return -mode * o1.blockedCount.compareTo(o2.blockedCount);
-                    case MainListOptions.SORT_BY_FROZEN_APP:
-                        return -mode * Boolean.compare(o1.isDisabled, o2.isDisabled);
-                    case MainListOptions.SORT_BY_BACKUP:
-                        return -mode * Boolean.compare(o1.backup != null, o2.backup != null);
-                    case MainListOptions.SORT_BY_LAST_ACTION:
-                        return -mode * o1.lastActionTime.compareTo(o2.lastActionTime);
-                    case MainListOptions.SORT_BY_TRACKERS:
-                        return -mode * o1.trackerCount.compareTo(o2.trackerCount);
+            return sCollator.compare(o1.label, o2.label);
+        };
+    }
+
+    private static int compare(@MainListOptions.SortOrder int sortBy, int mode, @NonNull ApplicationItem o1,
+                               @NonNull ApplicationItem o2) {
+        switch (sortBy) {
+            case MainListOptions.SORT_BY_APP_LABEL:
+                return mode * sCollator.compare(o1.label, o2.label);
+            case MainListOptions.SORT_BY_PACKAGE_NAME:
+                return mode * o1.packageName.compareTo(o2.packageName);
+            case MainListOptions.SORT_BY_DOMAIN:
+                boolean isSystem1 = (o1.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+                boolean isSystem2 = (o2.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+                return mode * Boolean.compare(isSystem1, isSystem2);
+            case MainListOptions.SORT_BY_LAST_UPDATE:
+                // Sort in decreasing order
+                return -mode * o1.lastUpdateTime.compareTo(o2.lastUpdateTime);
+            case MainListOptions.SORT_BY_TOTAL_SIZE:
+                // Sort in decreasing order
+                return -mode * o1.totalSize.compareTo(o2.totalSize);
+            case MainListOptions.SORT_BY_DATA_USAGE:
+                // Sort in decreasing order
+                return -mode * o1.dataUsage.compareTo(o2.dataUsage);
+            case MainListOptions.SORT_BY_OPEN_COUNT:
+                // Sort in decreasing order
+                return -mode * Integer.compare(o1.openCount, o2.openCount);
+            case MainListOptions.SORT_BY_INSTALLATION_DATE:
+                // Sort in decreasing order
+                return -mode * Long.compare(o1.firstInstallTime, o2.firstInstallTime);
+            case MainListOptions.SORT_BY_SCREEN_TIME:
+                // Sort in decreasing order
+                return -mode * Long.compare(o1.screenTime, o2.screenTime);
+            case MainListOptions.SORT_BY_LAST_USAGE_TIME:
+                // Sort in decreasing order
+                return -mode * Long.compare(o1.lastUsageTime, o2.lastUsageTime);
+            case MainListOptions.SORT_BY_TARGET_SDK:
+                // null on top
+                if (o1.sdk == null) return -mode;
+                else if (o2.sdk == null) return +mode;
+                return mode * o1.sdk.compareTo(o2.sdk);
+            case MainListOptions.SORT_BY_SHARED_ID:
+                return mode * Integer.compare(o1.uid, o2.uid);
+            case MainListOptions.SORT_BY_SHA:
+                // null on top
+                if (o1.sha == null) {
+                    return -mode;
+                } else if (o2.sha == null) {
+                    return +mode;
+                } else {  // Both aren't null
+                    int i = o1.sha.first.compareToIgnoreCase(o2.sha.first);
+                    if (i == 0) {
+                        return mode * o1.sha.second.compareToIgnoreCase(o2.sha.second);
+                    } else return mode * i;
                 }
-                return 0;
-            });
+            case MainListOptions.SORT_BY_BLOCKED_COMPONENTS:
+                return -mode * o1.blockedCount.compareTo(o2.blockedCount);
+            case MainListOptions.SORT_BY_FROZEN_APP:
+                return -mode * Boolean.compare(o1.isDisabled, o2.isDisabled);
+            case MainListOptions.SORT_BY_BACKUP:
+                return -mode * Boolean.compare(o1.backup != null, o2.backup != null);
+            case MainListOptions.SORT_BY_LAST_ACTION:
+                return -mode * o1.lastActionTime.compareTo(o2.lastActionTime);
+            case MainListOptions.SORT_BY_TRACKERS:
+                return -mode * o1.trackerCount.compareTo(o2.trackerCount);
         }
+        return 0;
     }
 
     @WorkerThread
@@ -600,72 +648,100 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     private void updateInfoForPackages(@Nullable String[] packages, @NonNull String action) {
         Log.d("updateInfoForPackages", "packages: %s", Arrays.toString(packages));
         if (packages == null || packages.length == 0) return;
+        synchronized (mPendingUpdatesLock) {
+            switch (action) {
+                case PackageChangeReceiver.ACTION_DB_PACKAGE_REMOVED:
+                case PackageChangeReceiver.ACTION_DB_PACKAGE_ALTERED:
+                case PackageChangeReceiver.ACTION_DB_PACKAGE_ADDED:
+                    for (String packageName : packages) {
+                        // The database is going to be updated for this package anyway
+                        if (!mPendingPackages.contains(packageName)) {
+                            mPendingDbPackages.add(packageName);
+                        }
+                    }
+                    break;
+                case PackageChangeReceiver.ACTION_PACKAGE_REMOVED:
+                case PackageChangeReceiver.ACTION_PACKAGE_ALTERED:
+                case PackageChangeReceiver.ACTION_PACKAGE_ADDED:
+                // case BatchOpsService.ACTION_BATCH_OPS_COMPLETED:
+                case Intent.ACTION_PACKAGE_REMOVED:
+                case Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE:
+                case Intent.ACTION_PACKAGE_ADDED:
+                case Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE:
+                case Intent.ACTION_PACKAGE_CHANGED:
+                    for (String packageName : packages) {
+                        mPendingDbPackages.remove(packageName);
+                        mPendingPackages.add(packageName);
+                    }
+                    break;
+                default:
+                    return;
+            }
+            // Debounce, but do not hold back the list for too long during a long burst (e.g. updates from a store)
+            long now = SystemClock.elapsedRealtime();
+            if (mFirstPendingUpdateTime == 0) {
+                mFirstPendingUpdateTime = now;
+            }
+            long delay = Math.min(PACKAGE_UPDATE_DELAY_MILLIS,
+                    Math.max(0, mFirstPendingUpdateTime + PACKAGE_UPDATE_MAX_DELAY_MILLIS - now));
+            mHandler.removeCallbacks(mPendingUpdatesRunnable);
+            mHandler.postDelayed(mPendingUpdatesRunnable, delay);
+        }
+    }
+
+    @WorkerThread
+    private void applyPendingPackageUpdates() {
+        String[] dbPackages;
+        String[] packages;
+        synchronized (mPendingUpdatesLock) {
+            dbPackages = mPendingDbPackages.toArray(new String[0]);
+            packages = mPendingPackages.toArray(new String[0]);
+            mPendingDbPackages.clear();
+            mPendingPackages.clear();
+            mFirstPendingUpdateTime = 0;
+        }
+        if (dbPackages.length == 0 && packages.length == 0) return;
+        Log.d("MVM", "Updating %d packages", dbPackages.length + packages.length);
         boolean modified = false;
-        switch (action) {
-            case PackageChangeReceiver.ACTION_DB_PACKAGE_REMOVED:
-            case PackageChangeReceiver.ACTION_DB_PACKAGE_ALTERED:
-            case PackageChangeReceiver.ACTION_DB_PACKAGE_ADDED: {
-                AppDb appDb = new AppDb();
-                for (String packageName : packages) {
-                    ApplicationItem item = getNewApplicationItem(packageName, appDb.getAllApplications(packageName));
-                    modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
-                }
-                break;
+        if (dbPackages.length > 0) {
+            AppDb appDb = new AppDb();
+            for (String packageName : dbPackages) {
+                ApplicationItem item = getNewApplicationItem(packageName, appDb.getAllApplications(packageName));
+                modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
             }
-            case PackageChangeReceiver.ACTION_PACKAGE_REMOVED:
-            case PackageChangeReceiver.ACTION_PACKAGE_ALTERED:
-            case PackageChangeReceiver.ACTION_PACKAGE_ADDED:
-            // case BatchOpsService.ACTION_BATCH_OPS_COMPLETED:
-            case Intent.ACTION_PACKAGE_REMOVED:
-            case Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE:
-            case Intent.ACTION_PACKAGE_ADDED:
-            case Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE:
-            case Intent.ACTION_PACKAGE_CHANGED: {
-                List<App> appList = new AppDb().updateApplications(getApplication(), packages);
-                for (String packageName : packages) {
-                    ApplicationItem item = getNewApplicationItem(packageName, appList);
-                    modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
-                }
-                break;
+        }
+        if (packages.length > 0) {
+            List<App> appList = new AppDb().updateApplications(getApplication(), packages);
+            for (String packageName : packages) {
+                ApplicationItem item = getNewApplicationItem(packageName, appList);
+                modified |= item != null ? insertOrAddApplicationItem(item) : deleteApplicationItem(packageName);
             }
-            default:
-                return;
         }
         if (modified) {
-            sortApplicationList(mSortBy, mReverseSort);
+            // The list is still sorted
             filterItemsByFlags();
         }
     }
 
+    /**
+     * Replace the existing item with the same package name, or add it as a new item. The item is put where it belongs
+     * in the (already sorted) list.
+     */
     @GuardedBy("applicationItems")
     private boolean insertOrAddApplicationItem(@Nullable ApplicationItem item) {
         if (item == null) return false;
         synchronized (mApplicationItems) {
-            if (insertApplicationItem(item)) {
-                return true;
+            int oldIndex = mApplicationItems.indexOf(item);
+            if (oldIndex >= 0) {
+                mApplicationItems.remove(oldIndex);
             }
-            boolean inserted = mApplicationItems.add(item);
+            // The sort options may have been altered already, but the list is only re-sorted later
+            int index = Collections.binarySearch(mApplicationItems, item, mListComparator);
+            mApplicationItems.add(index < 0 ? -index - 1 : index, item);
             if (mSelectedPackageApplicationItemMap.containsKey(item.packageName)) {
                 select(item);
             }
-            return inserted;
-        }
-    }
-
-    @GuardedBy("applicationItems")
-    private boolean insertApplicationItem(@NonNull ApplicationItem item) {
-        synchronized (mApplicationItems) {
-            boolean isInserted = false;
-            for (int i = 0; i < mApplicationItems.size(); ++i) {
-                if (item.equals(mApplicationItems.get(i))) {
-                    mApplicationItems.set(i, item);
-                    isInserted = true;
-                    if (mSelectedPackageApplicationItemMap.containsKey(item.packageName)) {
-                        select(item);
-                    }
-                }
-            }
-            return isInserted;
+            return true;
         }
     }
 
@@ -676,6 +752,7 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
                 ApplicationItem item = it.next();
                 if (item.packageName.equals(packageName)) {
                     mSelectedPackageApplicationItemMap.remove(packageName);
+                    mSearchIndex.remove(packageName);
                     it.remove();
                     return true;
                 }
@@ -774,6 +851,8 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
     @Override
     protected void onCleared() {
         if (mPackageObserver != null) getApplication().unregisterReceiver(mPackageObserver);
+        PackageSnapshot.stopObserving();
+        mHandler.removeCallbacks(mPendingUpdatesRunnable);
         executor.shutdownNow();
         super.onCleared();
     }
@@ -789,6 +868,8 @@ public class MainViewModel extends AndroidViewModel implements ListOptions.ListO
         @Override
         @WorkerThread
         protected void onPackageChanged(Intent intent, @Nullable Integer uid, @Nullable String[] packages) {
+            PermissionInfoCache.getInstance().invalidate(intent, packages);
+            PackageSnapshot.invalidate();
             if (uid != null) {
                 mModel.updateInfoForUid(uid, intent.getAction());
             } else if (packages != null) {
@@ -25,9 +25,11 @@ import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.R;
 import io.github.muntashirakon.AppManager.backup.BackupManager;
+import io.github.muntashirakon.AppManager.backup.BackupVerifier;
 import io.github.muntashirakon.AppManager.backup.dialog.BackupRestoreDialogFragment;
 import io.github.muntashirakon.AppManager.db.AppsDb;
 import io.github.muntashirakon.AppManager.db.entity.Backup;
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.main.ApplicationItem;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
 import io.github.muntashirakon.AppManager.settings.FeatureController;
@@ -158,25 +160,34 @@ public class BackupTasksDialogFragment extends DialogFragment {
                 try {
                     List<ApplicationItem> applicationItems = new ArrayList<>();
                     List<CharSequence> applicationLabels = new ArrayList<>();
-                    Backup backup;
+                    List<ApplicationItem> backedUpItems = new ArrayList<>();
+                    List<Backup> backups = new ArrayList<>();
                     for (ApplicationItem item : PackageUtils.getInstalledOrBackedUpApplicationsFromDb(requireContext(), false, true)) {
                         if (ThreadUtils.isInterrupted()) return;
-                        backup = item.backup;
-                        if (backup == null || !item.isInstalled) continue;
-                        try {
-                            BackupManager.getNewInstance(new UserPackagePair(item.packageName, backup.userId),
-                                    0).verify(backup.backupName);
-                        } catch (Throwable e) {
-                            applicationItems.add(item);
-                            applicationLabels.add(new SpannableStringBuilder(backup.label)
-                                    .append(LangUtils.getSeparatorString())
-                                    .append(backup.backupName)
-                                    .append('\n')
-                                    .append(UIUtils.getSmallerText(UIUtils.getSecondaryText(mActivity,
-                                            new SpannableStringBuilder(backup.packageName)
-                                                    .append('\n')
-                                                    .append(e.getMessage())))));
-                        }
+                        if (item.backup == null || !item.isInstalled) continue;
+                        backedUpItems.add(item);
+                        backups.add(item.backup);
+                    }
+                    BackupVerifier.Report report = BackupVerifier.verify(backups);
+                    if (ThreadUtils.isInterrupted()) return;
+                    try {
+                        BackupVerifier.saveReport(report);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not save verification report", e);
+                    }
+                    for (int i = 0; i < report.results.size(); ++i) {
+                        BackupVerifier.Result result = report.results.get(i);
+                        if (result.isVerified()) continue;
+                        Backup backup = result.backup;
+                        applicationItems.add(backedUpItems.get(i));
+                        applicationLabels.add(new SpannableStringBuilder(backup.label)
+                                .append(LangUtils.getSeparatorString())
+                                .append(backup.backupName)
+                                .append('\n')
+                                .append(UIUtils.getSmallerText(UIUtils.getSecondaryText(mActivity,
+                                        new SpannableStringBuilder(backup.packageName)
+                                                .append('\n')
+                                                .append(result.error)))));
                     }
                     if (ThreadUtils.isInterrupted()) return;
                     ThreadUtils.postOnMainThread(() -> runMultiChoiceDialog(applicationItems, applicationLabels));
@@ -7,6 +7,8 @@ import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MAT
 
 import android.Manifest;
 import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -17,6 +19,7 @@ import android.os.UserHandleHidden;
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.util.Pair;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
@@ -30,13 +33,15 @@ import java.util.concurrent.Future;
 
 import io.github.muntashirakon.AppManager.BuildConfig;
 import io.github.muntashirakon.AppManager.compat.ApplicationInfoCompat;
-import io.github.muntashirakon.AppManager.compat.ManifestCompat;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.compat.StorageManagerCompat;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
 import io.github.muntashirakon.AppManager.settings.Ops;
+import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
 import io.github.muntashirakon.AppManager.users.Users;
+import io.github.muntashirakon.AppManager.utils.PackageSnapshot;
 import io.github.muntashirakon.AppManager.utils.PackageUtils;
 import io.github.muntashirakon.AppManager.utils.ThreadUtils;
 import io.github.muntashirakon.io.Paths;
@@ -45,6 +50,7 @@ public class OneClickOpsViewModel extends AndroidViewModel {
     public static final String TAG = OneClickOpsViewModel.class.getSimpleName();
 
     private final PackageManager mPm;
+    private final PackageIntentReceiver mPackageObserver;
     private final MutableLiveData<List<ItemCount>> mTrackerCount = new MutableLiveData<>();
     private final MutableLiveData<Pair<List<ItemCount>, String[]>> mComponentCount = new MutableLiveData<>();
     private final MutableLiveData<Pair<List<AppOpCount>, Pair<int[], Integer>>> mAppOpsCount = new MutableLiveData<>();
@@ -58,10 +64,14 @@ public class OneClickOpsViewModel extends AndroidViewModel {
     public OneClickOpsViewModel(@NonNull Application application) {
         super(application);
         mPm = application.getPackageManager();
+        PackageSnapshot.startObserving();
+        mPackageObserver = new PackageIntentReceiver(application);
     }
 
     @Override
     protected void onCleared() {
+        getApplication().unregisterReceiver(mPackageObserver);
+        PackageSnapshot.stopObserving();
         if (mFutureResult != null) {
             mFutureResult.cancel(true);
         }
@@ -119,25 +129,23 @@ public class OneClickOpsViewModel extends AndroidViewModel {
                 mTrackerCount.postValue(Collections.emptyList());
                 return;
             }
-            boolean crossUserPermission = SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS)
-                    || SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS_FULL);
+            PackageSnapshot snapshot = getPackageSnapshot();
+            if (snapshot == null) return;
             boolean isShell = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && Users.getSelfOrRemoteUid() == Ops.SHELL_UID;
             List<ItemCount> trackerCounts = new ArrayList<>();
-            HashSet<String> packageNames = new HashSet<>();
-            for (PackageInfo packageInfo : PackageUtils.getAllPackages(flags, !crossUserPermission)) {
-                if (packageNames.contains(packageInfo.packageName)) {
-                    continue;
-                }
-                packageNames.add(packageInfo.packageName);
+            for (PackageSnapshot.Entry entry : snapshot.getEntries()) {
                 if (ThreadUtils.isInterrupted()) return;
-                ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+                ApplicationInfo applicationInfo = entry.applicationInfo;
                 if (isShell && !ApplicationInfoCompat.isTestOnly(applicationInfo)) {
                     continue;
                 }
                 if (!systemApps && ApplicationInfoCompat.isSystemApp(applicationInfo)) {
                     continue;
                 }
-                ItemCount trackerCount = getTrackerCountForApp(packageInfo);
+                ItemCount trackerCount = new ItemCount();
+                trackerCount.packageName = entry.getPackageName();
+                trackerCount.packageLabel = entry.label;
+                trackerCount.count = entry.getTrackerComponents().size();
                 if (trackerCount.count > 0) {
                     trackerCounts.add(trackerCount);
                 }
@@ -160,7 +168,7 @@ public class OneClickOpsViewModel extends AndroidViewModel {
                 if (systemApps || !ApplicationInfoCompat.isSystemApp(applicationInfo)) {
                     ItemCount componentCount = new ItemCount();
                     componentCount.packageName = applicationInfo.packageName;
-                    componentCount.packageLabel = applicationInfo.loadLabel(mPm).toString();
+                    componentCount.packageLabel = AppLabelCache.getInstance().getLabel(applicationInfo, mPm);
                     componentCount.count = PackageUtils.getFilteredComponents(applicationInfo.packageName,
                             UserHandleHidden.myUserId(), signatures).size();
                     if (componentCount.count > 0) {
@@ -171,27 +179,21 @@ public class OneClickOpsViewModel extends AndroidViewModel {
                 mComponentCount.postValue(new Pair<>(Collections.emptyList(), signatures));
                 return;
             }
-            boolean crossUserPermission = SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS)
-                    || SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS_FULL);
+            PackageSnapshot snapshot = getPackageSnapshot();
+            if (snapshot == null) return;
             boolean isShell = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && Users.getSelfOrRemoteUid() == Ops.SHELL_UID;
             List<ItemCount> componentCounts = new ArrayList<>();
-            HashSet<String> packageNames = new HashSet<>();
-            for (ApplicationInfo applicationInfo : PackageUtils.getAllApplications(MATCH_UNINSTALLED_PACKAGES
-                    | PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES, !crossUserPermission)) {
-                if (packageNames.contains(applicationInfo.packageName)) {
-                    continue;
-                }
-                packageNames.add(applicationInfo.packageName);
+            for (PackageSnapshot.Entry entry : snapshot.getEntries()) {
                 if (ThreadUtils.isInterrupted()) return;
+                ApplicationInfo applicationInfo = entry.applicationInfo;
                 if (isShell && !ApplicationInfoCompat.isTestOnly(applicationInfo))
                     continue;
                 if (!systemApps && (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
                     continue;
                 ItemCount componentCount = new ItemCount();
-                componentCount.packageName = applicationInfo.packageName;
-                componentCount.packageLabel = applicationInfo.loadLabel(mPm).toString();
-                componentCount.count = PackageUtils.getFilteredComponents(applicationInfo.packageName,
-                        UserHandleHidden.myUserId(), signatures).size();
+                componentCount.packageName = entry.getPackageName();
+                componentCount.packageLabel = entry.label;
+                componentCount.count = entry.getFilteredComponents(signatures).size();
                 if (componentCount.count > 0) componentCounts.add(componentCount);
             }
             mComponentCount.postValue(new Pair<>(componentCounts, signatures));
@@ -205,22 +207,23 @@ public class OneClickOpsViewModel extends AndroidViewModel {
         }
         mFutureResult = ThreadUtils.postOnBackgroundThread(() -> {
             Pair<int[], Integer> appOpsModePair = new Pair<>(appOpList, mode);
+            PackageSnapshot snapshot = getPackageSnapshot();
+            if (snapshot == null) return;
+            try {
+                snapshot.loadAppOps();
+            } catch (InterruptedException e) {
+                return;
+            }
             List<AppOpCount> appOpCounts = new ArrayList<>();
-            HashSet<String> packageNames = new HashSet<>();
-            for (ApplicationInfo applicationInfo : PackageUtils.getAllApplications(MATCH_UNINSTALLED_PACKAGES
-                    | PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES)) {
-                if (packageNames.contains(applicationInfo.packageName)) {
-                    continue;
-                }
-                packageNames.add(applicationInfo.packageName);
+            for (PackageSnapshot.Entry entry : snapshot.getEntries()) {
                 if (ThreadUtils.isInterrupted()) return;
+                ApplicationInfo applicationInfo = entry.applicationInfo;
                 if (!systemApps && (applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
                     continue;
                 AppOpCount appOpCount = new AppOpCount();
-                appOpCount.packageName = applicationInfo.packageName;
-                appOpCount.packageLabel = applicationInfo.loadLabel(mPm).toString();
-                appOpCount.appOps = PackageUtils.getFilteredAppOps(applicationInfo.packageName,
-                        UserHandleHidden.myUserId(), appOpList, mode);
+                appOpCount.packageName = entry.getPackageName();
+                appOpCount.packageLabel = entry.label;
+                appOpCount.appOps = entry.getFilteredAppOps(appOpList, mode);
                 appOpCount.count = appOpCount.appOps.size();
                 if (appOpCount.count > 0) appOpCounts.add(appOpCount);
             }
@@ -279,11 +282,24 @@ public class OneClickOpsViewModel extends AndroidViewModel {
         });
     }
 
+    /**
+     * @return The shared package snapshot, or {@code null} if the operation was cancelled while it was being built
+     */
+    @WorkerThread
+    @Nullable
+    private static PackageSnapshot getPackageSnapshot() {
+        try {
+            return PackageSnapshot.getInstance();
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
     @NonNull
     private ItemCount getTrackerCountForApp(@NonNull PackageInfo packageInfo) {
         ItemCount trackerCount = new ItemCount();
         trackerCount.packageName = packageInfo.packageName;
-        trackerCount.packageLabel = packageInfo.applicationInfo.loadLabel(mPm).toString();
+        trackerCount.packageLabel = AppLabelCache.getInstance().getLabel(packageInfo.applicationInfo, mPm);
         trackerCount.count = ComponentUtils.getTrackerComponentsForPackage(packageInfo).size();
         return trackerCount;
     }
@@ -291,4 +307,16 @@ public class OneClickOpsViewModel extends AndroidViewModel {
     private boolean isInstalled(@NonNull ApplicationInfo info) {
         return info.processName != null && Paths.exists(info.publicSourceDir);
     }
+
+    public static class PackageIntentReceiver extends PackageChangeReceiver {
+        public PackageIntentReceiver(@NonNull Context context) {
+            super(context);
+        }
+
+        @Override
+        @WorkerThread
+        protected void onPackageChanged(Intent intent, @Nullable Integer uid, @Nullable String[] packages) {
+            PackageSnapshot.invalidate();
+        }
+    }
 }
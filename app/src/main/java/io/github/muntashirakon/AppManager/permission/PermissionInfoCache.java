@@ -0,0 +1,186 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.permission;
+
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.content.pm.PermissionInfoCompat;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.muntashirakon.AppManager.BuildConfig;
+import io.github.muntashirakon.AppManager.compat.PermissionCompat;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
+
+/**
+ * A process-wide cache of permission definitions. Definitions are global, i.e. they do not depend on the requesting
+ * package or user, and only change when the package defining them is installed, updated or uninstalled. The cache is
+ * therefore invalidated by the {@link PackageChangeReceiver}s of the main list and the App Details page, and cleared
+ * whenever the main list is created since packages are not observed while it is closed.
+ * <p>
+ * Permission group definitions are not cached: none of the screens look them up.
+ * <p>
+ * The returned objects are shared and must not be modified.
+ */
+public final class PermissionInfoCache {
+    public static final String TAG = PermissionInfoCache.class.getSimpleName();
+
+    // Sentinel for permissions that are not defined by any package
+    private static final PermissionInfo UNDEFINED_PERMISSION = new PermissionInfo();
+
+    private static PermissionInfoCache sInstance;
+
+    @AnyThread
+    @NonNull
+    public static PermissionInfoCache getInstance() {
+        synchronized (PermissionInfoCache.class) {
+            if (sInstance == null) {
+                sInstance = new PermissionInfoCache();
+            }
+            return sInstance;
+        }
+    }
+
+    private final Map<String, PermissionInfo> mPermissions = new ConcurrentHashMap<>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private PermissionInfoCache() {
+    }
+
+    /**
+     * Same as {@link PermissionCompat#getPermissionInfo(String, String, int)} with {@link
+     * PackageManager#GET_META_DATA}, except that the result is cached.
+     */
+    @WorkerThread
+    @Nullable
+    public PermissionInfo getPermissionInfo(@NonNull String permissionName) throws RemoteException {
+        PermissionInfo permissionInfo = mPermissions.get(permissionName);
+        if (permissionInfo != null) {
+            mHits.incrementAndGet();
+            return permissionInfo == UNDEFINED_PERMISSION ? null : permissionInfo;
+        }
+        mMisses.incrementAndGet();
+        permissionInfo = PermissionCompat.getPermissionInfo(permissionName, BuildConfig.APPLICATION_ID,
+                PackageManager.GET_META_DATA);
+        mPermissions.put(permissionName, permissionInfo != null ? permissionInfo : UNDEFINED_PERMISSION);
+        return permissionInfo;
+    }
+
+    /**
+     * Same as {@link #getPermissionInfo(String)} except that it returns {@code null} if the permission info could not
+     * be retrieved.
+     */
+    @WorkerThread
+    @Nullable
+    public PermissionInfo getPermissionInfoOrNull(@NonNull String permissionName) {
+        try {
+            return getPermissionInfo(permissionName);
+        } catch (RemoteException | RuntimeException e) {
+            Log.w(TAG, "Could not fetch info for permission %s", e, permissionName);
+            return null;
+        }
+    }
+
+    /**
+     * Return the base protection level of the permission, or {@code -1} if the permission is not defined.
+     *
+     * @see PermissionInfoCompat#getProtection(PermissionInfo)
+     */
+    @WorkerThread
+    public int getProtection(@NonNull String permissionName) {
+        PermissionInfo permissionInfo = getPermissionInfoOrNull(permissionName);
+        return permissionInfo != null ? PermissionInfoCompat.getProtection(permissionInfo) : -1;
+    }
+
+    /**
+     * Return the protection flags of the permission, or {@code 0} if the permission is not defined.
+     *
+     * @see PermissionInfoCompat#getProtectionFlags(PermissionInfo)
+     */
+    @WorkerThread
+    public int getProtectionFlags(@NonNull String permissionName) {
+        PermissionInfo permissionInfo = getPermissionInfoOrNull(permissionName);
+        return permissionInfo != null ? PermissionInfoCompat.getProtectionFlags(permissionInfo) : 0;
+    }
+
+    /**
+     * Whether the permission can be granted or revoked at runtime, i.e. it is a dangerous or a development permission.
+     */
+    @WorkerThread
+    public boolean isModifiable(@NonNull String permissionName) {
+        PermissionInfo permissionInfo = getPermissionInfoOrNull(permissionName);
+        if (permissionInfo == null) {
+            return false;
+        }
+        return PermissionInfoCompat.getProtection(permissionInfo) == PermissionInfo.PROTECTION_DANGEROUS
+                || (PermissionInfoCompat.getProtectionFlags(permissionInfo)
+                & PermissionInfo.PROTECTION_FLAG_DEVELOPMENT) != 0;
+    }
+
+    @AnyThread
+    public void invalidate() {
+        mPermissions.clear();
+    }
+
+    /**
+     * Remove the definitions of the packages reported by a {@link PackageChangeReceiver}.
+     */
+    @AnyThread
+    public void invalidate(@NonNull Intent intent, @Nullable String[] packages) {
+        Uri data = intent.getData();
+        if (data != null) {
+            invalidatePackage(data.getSchemeSpecificPart());
+        } else if (packages != null) {
+            for (String packageName : packages) {
+                invalidatePackage(packageName);
+            }
+        }
+    }
+
+    /**
+     * Remove the definitions of the given package as well as the permissions that were not defined when they were
+     * queried, since the package may define them now.
+     */
+    @AnyThread
+    public void invalidatePackage(@NonNull String packageName) {
+        Iterator<PermissionInfo> iterator = mPermissions.values().iterator();
+        while (iterator.hasNext()) {
+            PermissionInfo permissionInfo = iterator.next();
+            if (permissionInfo == UNDEFINED_PERMISSION || packageName.equals(permissionInfo.packageName)) {
+                iterator.remove();
+            }
+        }
+        Log.d(TAG, "Invalidated %s. %s", packageName, getStats());
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    @NonNull
+    public String getStats() {
+        long hits = mHits.get();
+        long total = hits + mMisses.get();
+        return String.format(Locale.ROOT, "PermissionInfoCache{size=%d, hits=%d, misses=%d, hitRate=%.1f%%}",
+                mPermissions.size(), hits, total - hits,
+                total > 0 ? hits * 100f / total : 0f);
+    }
+}
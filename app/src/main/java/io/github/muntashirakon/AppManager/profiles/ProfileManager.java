@@ -15,6 +15,7 @@ import org.json.JSONException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
@@ -123,6 +124,8 @@ public class ProfileManager {
     @Nullable
     private ProfileLogger mLogger;
     private boolean mRequiresRestart;
+    private int mModifiedCount;
+    private int mMatchedCount;
 
     public ProfileManager(@NonNull String profileId) throws IOException {
         try {
@@ -170,6 +173,9 @@ public class ProfileManager {
         }
         BatchOpsManager batchOpsManager = new BatchOpsManager(mLogger);
         BatchOpsManager.Result result;
+        // Read the current state so that only the packages that do not match the profile are modified
+        ProfileReconciler reconciler = new ProfileReconciler(mProfile, state);
+        reconciler.loadPackages(userPackagePairs);
         // Apply component blocking
         String[] components = mProfile.components;
         if (components != null) {
@@ -179,11 +185,13 @@ public class ProfileManager {
             batchOpsManager.setArgs(args);
             switch (state) {
                 case AppsProfile.STATE_ON:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_BLOCK_COMPONENTS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_BLOCK_COMPONENTS, userPackagePairs,
+                            reconciler.filterComponents(userPackagePairs), progressHandler);
                     break;
                 case AppsProfile.STATE_OFF:
                 default:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_UNBLOCK_COMPONENTS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_UNBLOCK_COMPONENTS, userPackagePairs,
+                            reconciler.filterComponents(userPackagePairs), progressHandler);
             }
             if (!result.isSuccessful()) {
                 Log.d(TAG, "Failed packages: %s", result);
@@ -204,7 +212,8 @@ public class ProfileManager {
                     args.putInt(BatchOpsManager.ARG_APP_OP_MODE, AppOpsManager.MODE_DEFAULT);
             }
             batchOpsManager.setArgs(args);
-            result = batchOpsManager.performOp(BatchOpsManager.OP_SET_APP_OPS, userPackagePairs, progressHandler);
+            result = reconcile(batchOpsManager, BatchOpsManager.OP_SET_APP_OPS, userPackagePairs,
+                    reconciler.filterAppOps(userPackagePairs), progressHandler);
             if (!result.isSuccessful()) {
                 Log.d(TAG, "Failed packages: %s", result);
             }
@@ -218,11 +227,13 @@ public class ProfileManager {
             batchOpsManager.setArgs(args);
             switch (state) {
                 case AppsProfile.STATE_ON:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_REVOKE_PERMISSIONS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_REVOKE_PERMISSIONS, userPackagePairs,
+                            reconciler.filterPermissions(userPackagePairs), progressHandler);
                     break;
                 case AppsProfile.STATE_OFF:
                 default:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_GRANT_PERMISSIONS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_GRANT_PERMISSIONS, userPackagePairs,
+                            reconciler.filterPermissions(userPackagePairs), progressHandler);
             }
             if (!result.isSuccessful()) {
                 Log.d(TAG, "Failed packages: %s", result);
@@ -239,11 +250,13 @@ public class ProfileManager {
             log("====> Started freeze/unfreeze. State: " + state);
             switch (state) {
                 case AppsProfile.STATE_ON:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_FREEZE, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_FREEZE, userPackagePairs,
+                            reconciler.filterFreeze(userPackagePairs), progressHandler);
                     break;
                 case AppsProfile.STATE_OFF:
                 default:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_UNFREEZE, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_UNFREEZE, userPackagePairs,
+                            reconciler.filterFreeze(userPackagePairs), progressHandler);
             }
             if (!result.isSuccessful()) {
                 Log.d(TAG, "Failed packages: %s", result);
@@ -278,11 +291,13 @@ public class ProfileManager {
             log("====> Started block trackers. State: " + state);
             switch (state) {
                 case AppsProfile.STATE_ON:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_BLOCK_TRACKERS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_BLOCK_TRACKERS, userPackagePairs,
+                            reconciler.filterTrackers(userPackagePairs), progressHandler);
                     break;
                 case AppsProfile.STATE_OFF:
                 default:
-                    result = batchOpsManager.performOp(BatchOpsManager.OP_UNBLOCK_TRACKERS, userPackagePairs, progressHandler);
+                    result = reconcile(batchOpsManager, BatchOpsManager.OP_UNBLOCK_TRACKERS, userPackagePairs,
+                            reconciler.filterTrackers(userPackagePairs), progressHandler);
             }
             if (!result.isSuccessful()) {
                 Log.d(TAG, "Failed packages: %s", result);
@@ -329,7 +344,8 @@ public class ProfileManager {
                 Log.d(TAG, "Failed packages: %s", result);
             }
         } else Log.d(TAG, "Skipped backup/restore.");
-        log("====> Execution completed.");
+        log("====> Execution completed. Modified: " + mModifiedCount + ", already matched the profile: "
+                + mMatchedCount);
         batchOpsManager.conclude();
     }
 
@@ -339,6 +355,34 @@ public class ProfileManager {
         }
     }
 
+    /**
+     * Perform the operation only for the packages that do not match the profile yet.
+     *
+     * @param userPackagePairs        All packages in the profile
+     * @param pendingUserPackagePairs Packages that do not match the profile
+     */
+    @NonNull
+    private BatchOpsManager.Result reconcile(@NonNull BatchOpsManager batchOpsManager, @BatchOpsManager.OpType int op,
+                                             @NonNull List<UserPackagePair> userPackagePairs,
+                                             @NonNull List<UserPackagePair> pendingUserPackagePairs,
+                                             @Nullable ProgressHandler progressHandler) {
+        int matchedCount = userPackagePairs.size() - pendingUserPackagePairs.size();
+        mModifiedCount += pendingUserPackagePairs.size();
+        mMatchedCount += matchedCount;
+        log("====> Already matched the profile: " + matchedCount + ", to be modified: " + pendingUserPackagePairs);
+        BatchOpsManager.Result result;
+        if (pendingUserPackagePairs.isEmpty()) {
+            result = new BatchOpsManager.Result(Collections.emptyList());
+        } else {
+            result = batchOpsManager.performOp(op, pendingUserPackagePairs, progressHandler);
+        }
+        if (progressHandler != null && matchedCount > 0) {
+            // Skipped packages count as done
+            progressHandler.postUpdate(progressHandler.getLastProgress() + matchedCount);
+        }
+        return result;
+    }
+
     private int calculateMaxProgress(@NonNull List<UserPackagePair> userPackagePairs) {
         int packageCount = userPackagePairs.size();
         int opCount = 0;
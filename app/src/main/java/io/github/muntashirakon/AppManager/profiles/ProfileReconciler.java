@@ -0,0 +1,371 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.profiles;
+
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_DISABLED_COMPONENTS;
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES;
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_UNINSTALLED_PACKAGES;
+
+import android.app.AppOpsManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import io.github.muntashirakon.AppManager.compat.AppOpsManagerCompat;
+import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
+import io.github.muntashirakon.AppManager.profiles.struct.AppsProfile;
+import io.github.muntashirakon.AppManager.rules.RulesStorageManager;
+import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
+import io.github.muntashirakon.AppManager.rules.compontents.ComponentsBlocker;
+import io.github.muntashirakon.AppManager.rules.struct.AppOpRule;
+import io.github.muntashirakon.AppManager.rules.struct.ComponentRule;
+import io.github.muntashirakon.AppManager.self.SelfPermissions;
+import io.github.muntashirakon.AppManager.types.UserPackagePair;
+import io.github.muntashirakon.AppManager.utils.FreezeUtils;
+import io.github.muntashirakon.AppManager.utils.PackageUtils;
+import io.github.muntashirakon.AppManager.utils.ThreadUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+/**
+ * Compare the current state of the packages with a profile so that only the packages that do not match the profile
+ * yet have to be modified. This is only done for the sections that describe a state (components, app ops,
+ * permissions, freezing and trackers). The other sections (force-stop, clear cache, backups, etc.) are actions, and
+ * they are always performed.
+ * <p>
+ * A package is only skipped if its state is known to match the profile. If the state cannot be read (e.g. the package
+ * is not installed for the user), the package is modified as usual, and any error is reported there.
+ */
+public class ProfileReconciler {
+    public static final String TAG = ProfileReconciler.class.getSimpleName();
+
+    /**
+     * Load all installed packages of a user in one go if the profile has at least this many packages for the user,
+     * otherwise load the packages one by one.
+     */
+    private static final int BULK_LOAD_THRESHOLD = 20;
+
+    @NonNull
+    private final AppsProfile mProfile;
+    private final boolean mStateOn;
+    @NonNull
+    private final Map<UserPackagePair, PackageInfo> mPackageInfoMap = new HashMap<>();
+    // Directory containing the IFW rules, or null if they cannot be read
+    @Nullable
+    private final Path mIfwRulesPath;
+    @Nullable
+    private AppOpsManagerCompat mAppOpsManager;
+    @Nullable
+    private PermissionInfoCache mPermissionInfoCache;
+
+    public ProfileReconciler(@NonNull AppsProfile profile, @NonNull String state) {
+        mProfile = profile;
+        mStateOn = AppsProfile.STATE_ON.equals(state);
+        mIfwRulesPath = SelfPermissions.canBlockByIFW() ? Paths.get(ComponentsBlocker.SYSTEM_RULES_PATH) : null;
+    }
+
+    /**
+     * Read the current state of the given packages. This must be called before filtering the packages.
+     */
+    @WorkerThread
+    public void loadPackages(@NonNull List<UserPackagePair> userPackagePairs) {
+        long s = System.currentTimeMillis();
+        int flags = PackageManager.GET_PERMISSIONS | MATCH_DISABLED_COMPONENTS | MATCH_UNINSTALLED_PACKAGES
+                | MATCH_STATIC_SHARED_AND_SDK_LIBRARIES;
+        if (mProfile.components != null || mProfile.blockTrackers) {
+            flags |= PackageManager.GET_ACTIVITIES | PackageManager.GET_RECEIVERS | PackageManager.GET_PROVIDERS
+                    | PackageManager.GET_SERVICES;
+        }
+        Map<Integer, Set<String>> userPackagesMap = new HashMap<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            Set<String> packages = userPackagesMap.get(pair.getUserId());
+            if (packages == null) {
+                packages = new HashSet<>();
+                userPackagesMap.put(pair.getUserId(), packages);
+            }
+            packages.add(pair.getPackageName());
+        }
+        for (Map.Entry<Integer, Set<String>> userPackages : userPackagesMap.entrySet()) {
+            int userId = userPackages.getKey();
+            Set<String> packages = userPackages.getValue();
+            if (packages.size() >= BULK_LOAD_THRESHOLD) {
+                try {
+                    for (PackageInfo info : PackageManagerCompat.getInstalledPackages(flags, userId)) {
+                        if (packages.contains(info.packageName)) {
+                            mPackageInfoMap.put(new UserPackagePair(info.packageName, userId), info);
+                        }
+                    }
+                    continue;
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not load installed packages for user %d, loading them one by one.", e, userId);
+                }
+            }
+            for (String packageName : packages) {
+                if (ThreadUtils.isInterrupted()) {
+                    return;
+                }
+                try {
+                    mPackageInfoMap.put(new UserPackagePair(packageName, userId),
+                            PackageManagerCompat.getPackageInfo(packageName, flags, userId));
+                } catch (Exception ignore) {
+                    // Not installed, the operation will report it
+                }
+            }
+        }
+        Log.d(TAG, "Loaded %d packages in %d ms", mPackageInfoMap.size(), System.currentTimeMillis() - s);
+    }
+
+    /**
+     * Packages whose filtered components are not blocked or unblocked as required by the profile.
+     */
+    @WorkerThread
+    @NonNull
+    public List<UserPackagePair> filterComponents(@NonNull List<UserPackagePair> userPackagePairs) {
+        String[] signatures = mProfile.components;
+        if (signatures == null) {
+            return userPackagePairs;
+        }
+        List<UserPackagePair> pendingPairs = new ArrayList<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            PackageInfo info = mPackageInfoMap.get(pair);
+            if (info == null || !componentsMatch(pair, PackageUtils.getFilteredComponents(info, signatures).keySet())) {
+                pendingPairs.add(pair);
+            }
+        }
+        return pendingPairs;
+    }
+
+    /**
+     * Packages whose tracker components are not blocked or unblocked as required by the profile.
+     */
+    @WorkerThread
+    @NonNull
+    public List<UserPackagePair> filterTrackers(@NonNull List<UserPackagePair> userPackagePairs) {
+        List<UserPackagePair> pendingPairs = new ArrayList<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            PackageInfo info = mPackageInfoMap.get(pair);
+            if (info == null || !componentsMatch(pair, ComponentUtils.getTrackerComponentsForPackage(info).keySet())) {
+                pendingPairs.add(pair);
+            }
+        }
+        return pendingPairs;
+    }
+
+    /**
+     * Packages whose app ops are not set to the mode required by the profile, either in the system or in the rules.
+     */
+    @WorkerThread
+    @NonNull
+    public List<UserPackagePair> filterAppOps(@NonNull List<UserPackagePair> userPackagePairs) {
+        int[] appOps = mProfile.appOps;
+        if (appOps == null) {
+            return userPackagePairs;
+        }
+        boolean wildcard = appOps.length == 1 && appOps[0] == AppOpsManagerCompat.OP_NONE;
+        if (mAppOpsManager == null) {
+            mAppOpsManager = new AppOpsManagerCompat();
+        }
+        List<UserPackagePair> pendingPairs = new ArrayList<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            PackageInfo info = mPackageInfoMap.get(pair);
+            if (info == null || info.applicationInfo == null) {
+                pendingPairs.add(pair);
+                continue;
+            }
+            try {
+                // All ops of the package in a single call
+                List<AppOpsManagerCompat.OpEntry> opEntries = AppOpsManagerCompat.getConfiguredOpsForPackage(
+                        mAppOpsManager, info.packageName, info.applicationInfo.uid);
+                int[] ops;
+                if (wildcard) {
+                    ops = new int[opEntries.size()];
+                    for (int i = 0; i < ops.length; ++i) {
+                        ops[i] = opEntries.get(i).getOp();
+                    }
+                } else ops = appOps;
+                if (!appOpsMatch(pair, ops, opEntries)) {
+                    pendingPairs.add(pair);
+                }
+            } catch (Exception e) {
+                pendingPairs.add(pair);
+            }
+        }
+        return pendingPairs;
+    }
+
+    /**
+     * Packages whose permissions are not granted or revoked as required by the profile. Only the permissions that the
+     * package requests and that can be granted or revoked are taken into account.
+     */
+    @WorkerThread
+    @NonNull
+    public List<UserPackagePair> filterPermissions(@NonNull List<UserPackagePair> userPackagePairs) {
+        String[] permissions = mProfile.permissions;
+        if (permissions == null) {
+            return userPackagePairs;
+        }
+        boolean wildcard = permissions.length == 1 && permissions[0].equals("*");
+        Set<String> permissionSet = new HashSet<>(permissions.length);
+        for (String permission : permissions) {
+            permissionSet.add(permission);
+        }
+        if (mPermissionInfoCache == null) {
+            mPermissionInfoCache = PermissionInfoCache.getInstance();
+        }
+        // Permissions are revoked when the profile is turned on
+        boolean grant = !mStateOn;
+        List<UserPackagePair> pendingPairs = new ArrayList<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            PackageInfo info = mPackageInfoMap.get(pair);
+            if (info == null) {
+                pendingPairs.add(pair);
+                continue;
+            }
+            if (info.requestedPermissions == null || info.requestedPermissionsFlags == null) {
+                // Nothing to grant or revoke
+                continue;
+            }
+            for (int i = 0; i < info.requestedPermissions.length; ++i) {
+                String permission = info.requestedPermissions[i];
+                if (!wildcard && !permissionSet.contains(permission)) {
+                    continue;
+                }
+                if (!mPermissionInfoCache.isModifiable(permission)) {
+                    if (wildcard) {
+                        // Skipped by the operation as well
+                        continue;
+                    }
+                    // The operation will report it
+                    pendingPairs.add(pair);
+                    break;
+                }
+                boolean granted = (info.requestedPermissionsFlags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0;
+                if (granted != grant) {
+                    pendingPairs.add(pair);
+                    break;
+                }
+            }
+        }
+        return pendingPairs;
+    }
+
+    /**
+     * Packages that are not frozen or unfrozen as required by the profile.
+     */
+    @NonNull
+    public List<UserPackagePair> filterFreeze(@NonNull List<UserPackagePair> userPackagePairs) {
+        List<UserPackagePair> pendingPairs = new ArrayList<>();
+        for (UserPackagePair pair : userPackagePairs) {
+            PackageInfo info = mPackageInfoMap.get(pair);
+            if (info == null || info.applicationInfo == null
+                    || FreezeUtils.isFrozen(info.applicationInfo) != mStateOn) {
+                pendingPairs.add(pair);
+            }
+        }
+        return pendingPairs;
+    }
+
+    private boolean componentsMatch(@NonNull UserPackagePair pair, @NonNull Set<String> componentNames) {
+        if (componentNames.isEmpty()) {
+            // Nothing to do
+            return true;
+        }
+        Map<String, ComponentRule> rules = new HashMap<>();
+        try (RulesStorageManager rsm = RulesStorageManager.getSavedRules(pair.getPackageName(), pair.getUserId())) {
+            for (ComponentRule rule : rsm.getAll(ComponentRule.class)) {
+                rules.put(rule.name, rule);
+            }
+        }
+        Set<String> ifwComponents = mIfwRulesPath != null ? ComponentUtils.getIFWRulesForPackage(
+                pair.getPackageName(), mIfwRulesPath).keySet() : null;
+        int userId = pair.getUserId();
+        return componentsMatch(mStateOn, componentNames, rules, ifwComponents, rule -> {
+            try {
+                return PackageManagerCompat.getComponentEnabledSetting(rule.getComponentName(), userId);
+            } catch (Exception e) {
+                // Unknown
+                return -1;
+            }
+        });
+    }
+
+    /**
+     * Whether the live state of the components matches the profile. The saved rules alone are not enough, since a
+     * component can be re-enabled or its IFW rule can be removed outside App Manager.
+     *
+     * @param rules                Saved rules of the package
+     * @param ifwComponents        Components blocked by the IFW rules of the package, or {@code null} if the IFW rules
+     *                             cannot be read
+     * @param enabledSettingReader Current enabled setting of a component, or -1 if it cannot be read
+     */
+    @VisibleForTesting
+    static boolean componentsMatch(boolean stateOn, @NonNull Set<String> componentNames,
+                                   @NonNull Map<String, ComponentRule> rules, @Nullable Set<String> ifwComponents,
+                                   @NonNull ToIntFunction<ComponentRule> enabledSettingReader) {
+        for (String componentName : componentNames) {
+            ComponentRule rule = rules.get(componentName);
+            if (!stateOn) {
+                // Unblocking removes the rule as well as any leftover IFW rule
+                if (rule != null || (ifwComponents != null && ifwComponents.contains(componentName))) {
+                    return false;
+                }
+                continue;
+            }
+            // Must be blocked and applied
+            if (rule == null || !rule.isBlocked() || !rule.isApplied()) {
+                return false;
+            }
+            if (rule.isIfw() && (ifwComponents == null || !ifwComponents.contains(componentName))) {
+                // The IFW rule is missing or cannot be verified
+                return false;
+            }
+            if (!ComponentRule.COMPONENT_BLOCKED_IFW.equals(rule.getComponentStatus())
+                    && enabledSettingReader.applyAsInt(rule) < PackageManager.COMPONENT_ENABLED_STATE_DISABLED) {
+                // Must be disabled, but it is enabled or the state is unknown
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean appOpsMatch(@NonNull UserPackagePair pair, @NonNull int[] ops,
+                                @NonNull List<AppOpsManagerCompat.OpEntry> opEntries) {
+        int mode = mStateOn ? AppOpsManager.MODE_IGNORED : AppOpsManager.MODE_DEFAULT;
+        Map<Integer, Integer> ruleModes = new HashMap<>();
+        try (RulesStorageManager rsm = RulesStorageManager.getSavedRules(pair.getPackageName(), pair.getUserId())) {
+            for (AppOpRule rule : rsm.getAll(AppOpRule.class)) {
+                ruleModes.put(rule.getOp(), rule.getMode());
+            }
+        }
+        for (int op : ops) {
+            int currentMode = AppOpsManagerCompat.getModeFromOpEntriesOrDefault(op, opEntries);
+            Integer ruleMode = ruleModes.get(op);
+            if (mStateOn) {
+                if (currentMode != mode || ruleMode == null || ruleMode != mode) {
+                    return false;
+                }
+            } else {
+                // An op at its default mode is as good as reset
+                if ((currentMode != mode && currentMode != AppOpsManagerCompat.opToDefaultMode(op))
+                        || (ruleMode != null && ruleMode != mode)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -53,6 +53,15 @@ public class RulesStorageManager implements Closeable {
     @UserIdInt
     protected int userId;
 
+    /**
+     * Get the saved rules of a package without reading anything else (e.g. the package info or the IFW rules). The
+     * instance is read-only.
+     */
+    @NonNull
+    public static RulesStorageManager getSavedRules(@NonNull String packageName, @UserIdInt int userId) {
+        return new RulesStorageManager(packageName, userId);
+    }
+
     protected RulesStorageManager(@NonNull String packageName, @UserIdInt int userId) {
         this.packageName = packageName;
         this.userId = userId;
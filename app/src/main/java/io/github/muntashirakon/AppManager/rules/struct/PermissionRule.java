@@ -3,7 +3,6 @@
 package io.github.muntashirakon.AppManager.rules.struct;
 
 import android.content.pm.PermissionInfo;
-import android.os.RemoteException;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.pm.PermissionInfoCompat;
@@ -16,6 +15,7 @@ import io.github.muntashirakon.AppManager.compat.PermissionCompat;
 import io.github.muntashirakon.AppManager.permission.DevelopmentPermission;
 import io.github.muntashirakon.AppManager.permission.PermUtils;
 import io.github.muntashirakon.AppManager.permission.Permission;
+import io.github.muntashirakon.AppManager.permission.PermissionInfoCache;
 import io.github.muntashirakon.AppManager.permission.ReadOnlyPermission;
 import io.github.muntashirakon.AppManager.permission.RuntimePermission;
 import io.github.muntashirakon.AppManager.rules.RuleType;
@@ -72,11 +72,7 @@ public class PermissionRule extends RuleEntry {
     }
 
     public Permission getPermission(boolean appOpAllowed) {
-        PermissionInfo permissionInfo = null;
-        try {
-            permissionInfo = PermissionCompat.getPermissionInfo(name, packageName, 0);
-        } catch (RemoteException ignore) {
-        }
+        PermissionInfo permissionInfo = PermissionInfoCache.getInstance().getPermissionInfoOrNull(name);
         if (permissionInfo == null) {
             permissionInfo = new PermissionInfo();
             permissionInfo.name = name;
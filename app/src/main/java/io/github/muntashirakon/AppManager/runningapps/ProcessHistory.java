@@ -0,0 +1,176 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.runningapps;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Recent samples of a single process, kept in fixed-size ring buffers of primitives so that adding a sample does not
+ * allocate anything. The rates are computed from the difference between two consecutive samples.
+ */
+public class ProcessHistory {
+    public static final int CAPACITY = 60;
+
+    private final int mPid;
+    private final long mStartTime;
+
+    @GuardedBy("this")
+    private final long[] mTimes = new long[CAPACITY];
+    @GuardedBy("this")
+    private final float[] mCpuPercent = new float[CAPACITY];
+    @GuardedBy("this")
+    private final long[] mRss = new long[CAPACITY];
+    @GuardedBy("this")
+    private final float[] mIoReadRate = new float[CAPACITY];
+    @GuardedBy("this")
+    private final float[] mIoWriteRate = new float[CAPACITY];
+    // Index of the oldest sample
+    @GuardedBy("this")
+    private int mStart;
+    @GuardedBy("this")
+    private int mSize;
+
+    // Raw values of the previous sample
+    @GuardedBy("this")
+    private long mLastTime = -1;
+    @GuardedBy("this")
+    private long mLastCpuTimeMillis;
+    @GuardedBy("this")
+    private long mLastIoReadBytes;
+    @GuardedBy("this")
+    private long mLastIoWriteBytes;
+
+    ProcessHistory(int pid, long startTime) {
+        mPid = pid;
+        mStartTime = startTime;
+    }
+
+    public int getPid() {
+        return mPid;
+    }
+
+    long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Add a sample. The first sample of a process only serves as the baseline for the rates, and is not recorded.
+     *
+     * @param time          Time of the sample in milliseconds, monotonic
+     * @param cpuTimeMillis Total CPU time consumed by the process
+     * @param rss           Resident set size in bytes
+     * @param ioReadBytes   Total bytes read from the storage, or -1 if not available
+     * @param ioWriteBytes  Total bytes written to the storage, or -1 if not available
+     */
+    @WorkerThread
+    synchronized void add(long time, long cpuTimeMillis, long rss, long ioReadBytes, long ioWriteBytes) {
+        long lastTime = mLastTime;
+        long elapsed = time - lastTime;
+        if (lastTime >= 0 && elapsed <= 0) {
+            // Same round
+            return;
+        }
+        if (lastTime >= 0) {
+            int index = (mStart + mSize) % CAPACITY;
+            if (mSize == CAPACITY) {
+                mStart = (mStart + 1) % CAPACITY;
+            } else ++mSize;
+            mTimes[index] = time;
+            // May exceed 100% if the process runs on multiple CPU cores
+            mCpuPercent[index] = Math.max(cpuTimeMillis - mLastCpuTimeMillis, 0) * 100f / elapsed;
+            mRss[index] = rss;
+            mIoReadRate[index] = getRate(mLastIoReadBytes, ioReadBytes, elapsed);
+            mIoWriteRate[index] = getRate(mLastIoWriteBytes, ioWriteBytes, elapsed);
+        }
+        mLastTime = time;
+        mLastCpuTimeMillis = cpuTimeMillis;
+        mLastIoReadBytes = ioReadBytes;
+        mLastIoWriteBytes = ioWriteBytes;
+    }
+
+    @AnyThread
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return CPU usage in percent between the last two samples, or 0 if there is only one sample yet
+     */
+    @AnyThread
+    public synchronized float getRecentCpuPercent() {
+        return mSize == 0 ? 0 : mCpuPercent[(mStart + mSize - 1) % CAPACITY];
+    }
+
+    /**
+     * @return Sample times in milliseconds, oldest first
+     */
+    @AnyThread
+    @NonNull
+    public synchronized long[] getTimes() {
+        long[] times = new long[mSize];
+        for (int i = 0; i < mSize; ++i) {
+            times[i] = mTimes[(mStart + i) % CAPACITY];
+        }
+        return times;
+    }
+
+    /**
+     * @return CPU usage in percent, oldest first
+     */
+    @AnyThread
+    @NonNull
+    public synchronized float[] getCpuPercentHistory() {
+        return copyOf(mCpuPercent);
+    }
+
+    /**
+     * @return Resident set size in bytes, oldest first
+     */
+    @AnyThread
+    @NonNull
+    public synchronized long[] getRssHistory() {
+        long[] rss = new long[mSize];
+        for (int i = 0; i < mSize; ++i) {
+            rss[i] = mRss[(mStart + i) % CAPACITY];
+        }
+        return rss;
+    }
+
+    /**
+     * @return Bytes read from the storage per second, oldest first. Values are -1 if not available.
+     */
+    @AnyThread
+    @NonNull
+    public synchronized float[] getIoReadRateHistory() {
+        return copyOf(mIoReadRate);
+    }
+
+    /**
+     * @return Bytes written to the storage per second, oldest first. Values are -1 if not available.
+     */
+    @AnyThread
+    @NonNull
+    public synchronized float[] getIoWriteRateHistory() {
+        return copyOf(mIoWriteRate);
+    }
+
+    @GuardedBy("this")
+    @NonNull
+    private float[] copyOf(@NonNull float[] ring) {
+        float[] values = new float[mSize];
+        for (int i = 0; i < mSize; ++i) {
+            values[i] = ring[(mStart + i) % CAPACITY];
+        }
+        return values;
+    }
+
+    private static float getRate(long lastBytes, long bytes, long elapsedMillis) {
+        if (lastBytes < 0 || bytes < 0) {
+            return -1;
+        }
+        return Math.max(bytes - lastBytes, 0) * 1000f / elapsedMillis;
+    }
+}
@@ -51,6 +51,31 @@ public class ProcessItem implements Parcelable {
         return mProcessEntry.cpuTimeConsumed * 1000;
     }
 
+    public long getStartTime() {
+        return mProcessEntry.startTime;
+    }
+
+    /**
+     * Same as {@link #getCpuTimeInMillis()}, but not rounded down to seconds.
+     */
+    public long getPreciseCpuTimeInMillis() {
+        return mProcessEntry.cpuTimeMillis;
+    }
+
+    /**
+     * @return Bytes read from the storage, or -1 if not available
+     */
+    public long getIoReadBytes() {
+        return mProcessEntry.ioReadBytes;
+    }
+
+    /**
+     * @return Bytes written to the storage, or -1 if not available
+     */
+    public long getIoWriteBytes() {
+        return mProcessEntry.ioWriteBytes;
+    }
+
     public String getCommandlineArgsAsString() {
         return mProcessEntry.name.replace('\u0000', ' ');
     }
@@ -8,6 +8,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
@@ -15,9 +16,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.muntashirakon.AppManager.compat.ActivityManagerCompat;
 import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.ipc.LocalServices;
 import io.github.muntashirakon.AppManager.ipc.ps.ProcessEntry;
 import io.github.muntashirakon.AppManager.ipc.ps.Ps;
@@ -32,20 +35,20 @@ import io.github.muntashirakon.io.Paths;
 public final class ProcessParser {
     private final Context mContext;
     private final PackageManager mPm;
-    private HashMap<String, PackageInfo> mInstalledPackages;
-    private HashMap<Integer, PackageInfo> mInstalledUidList;
     private final HashMap<Integer, ActivityManager.RunningAppProcessInfo> mRunningAppProcesses = new HashMap<>(50);
+    private InstalledPackages mInstalledPackages;
+    // Reused across refreshes
+    @Nullable
+    private Ps mPs;
 
     ProcessParser() {
         if (Utils.isRoboUnitTest()) {
-            mInstalledPackages = new HashMap<>();
-            mInstalledUidList = new HashMap<>();
+            mInstalledPackages = new InstalledPackages();
             mPm = null;
             mContext = null;
         } else {
             mContext = ContextUtils.getContext();
             mPm = mContext.getPackageManager();
-            getInstalledPackages();
         }
     }
 
@@ -54,13 +57,16 @@ public final class ProcessParser {
     List<ProcessItem> parse() {
         List<ProcessItem> processItems = new ArrayList<>();
         try {
+            loadInstalledPackages();
             List<ProcessEntry> processEntries;
             if (Paths.get("/proc/1").canRead() && LocalServices.alive()) {
                 processEntries = (List<ProcessEntry>) LocalServices.getAmService().getRunningProcesses().getList();
             } else {
-                Ps ps = new Ps();
-                ps.loadProcesses();
-                processEntries = ps.getProcesses();
+                if (mPs == null) {
+                    mPs = new Ps();
+                }
+                mPs.loadProcesses();
+                processEntries = mPs.getProcesses();
             }
             for (ProcessEntry processEntry : processEntries) {
                 if (processEntry.seLinuxPolicy != null && processEntry.seLinuxPolicy.contains(":kernel:")) {
@@ -102,9 +108,9 @@ public final class ProcessParser {
             String[] pkgList = Objects.requireNonNull(mRunningAppProcesses.get(processEntry.pid)).pkgList;
             if (pkgList != null && pkgList.length > 0) {
                 for (String pkgName : pkgList) {
-                    @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledPackages.get(pkgName));
+                    @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledPackages.packages.get(pkgName));
                     ProcessItem processItem = new AppProcessItem(processEntry, packageInfo);
-                    processItem.name = mPm.getApplicationLabel(packageInfo.applicationInfo)
+                    processItem.name = AppLabelCache.getInstance().getLabel(packageInfo.applicationInfo, mPm)
                             + getProcessNameFilteringPackageName(processEntry.name, packageInfo.packageName);
                     processItems.add(processItem);
                 }
@@ -113,16 +119,16 @@ public final class ProcessParser {
                 processItem.name = getProcessName(processEntry.name);
                 processItems.add(processItem);
             }
-        } else if (mInstalledPackages.containsKey(packageName)) {
-            @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledPackages.get(packageName));
+        } else if (mInstalledPackages.packages.containsKey(packageName)) {
+            @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledPackages.packages.get(packageName));
             ProcessItem processItem = new AppProcessItem(processEntry, packageInfo);
-            processItem.name = mPm.getApplicationLabel(packageInfo.applicationInfo)
+            processItem.name = AppLabelCache.getInstance().getLabel(packageInfo.applicationInfo, mPm)
                     + getProcessNameFilteringPackageName(processEntry.name, packageInfo.packageName);
             processItems.add(processItem);
-        } else if (mInstalledUidList.containsKey(processEntry.users.fsUid)) {
-            @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledUidList.get(processEntry.users.fsUid));
+        } else if (mInstalledPackages.uniqueUids.containsKey(processEntry.users.fsUid)) {
+            @NonNull PackageInfo packageInfo = Objects.requireNonNull(mInstalledPackages.uniqueUids.get(processEntry.users.fsUid));
             ProcessItem processItem = new AppProcessItem(processEntry, packageInfo);
-            processItem.name = mPm.getApplicationLabel(packageInfo.applicationInfo)
+            processItem.name = AppLabelCache.getInstance().getLabel(packageInfo.applicationInfo, mPm)
                     + getProcessNameFilteringPackageName(processEntry.name, packageInfo.packageName);
             processItems.add(processItem);
         } else {
@@ -143,24 +149,12 @@ public final class ProcessParser {
         return processItems;
     }
 
-    private void getInstalledPackages() {
-        List<PackageInfo> packageInfoList = PackageUtils.getAllPackages(PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES);
-        mInstalledPackages = new HashMap<>(packageInfoList.size());
-        for (PackageInfo info : packageInfoList) {
-            mInstalledPackages.put(info.packageName, info);
-        }
-        mInstalledUidList = new HashMap<>(packageInfoList.size());
-        List<Integer> duplicateUids = new ArrayList<>();
-        for (PackageInfo info : packageInfoList) {
-            int uid = info.applicationInfo.uid;
-            if (mInstalledUidList.containsKey(uid)) {
-                // A shared user ID (other way to check user ID will not work since we're only interested in
-                // duplicate values)
-                duplicateUids.add(uid);
-            } else mInstalledUidList.put(uid, info);
+    private void loadInstalledPackages() {
+        if (mContext == null) {
+            return;
         }
-        // Remove duplicate UIDs as they might create collisions
-        for (int uid : duplicateUids) mInstalledUidList.remove(uid);
+        mInstalledPackages = InstalledPackages.getInstance();
+        mRunningAppProcesses.clear();
         List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = ActivityManagerCompat.getRunningAppProcesses();
         for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
             mRunningAppProcesses.put(info.pid, info);
@@ -193,4 +187,74 @@ public final class ProcessParser {
         int colonIdx = processName.indexOf(':');
         return colonIdx < 0 ? (":" + processName) : processName.substring(colonIdx);
     }
+
+    /**
+     * Drop the installed packages shared by the parsers, they are loaded again on the next refresh.
+     */
+    static void invalidateInstalledPackages() {
+        InstalledPackages.sGeneration.incrementAndGet();
+    }
+
+    /**
+     * Installed packages mapped by package name and UID. Fetching all the packages is expensive, and the list is
+     * refreshed every few seconds, so the maps are shared by all the parsers until they are invalidated, i.e. until a
+     * package is added, removed or updated.
+     *
+     * @see #invalidateInstalledPackages()
+     */
+    private static final class InstalledPackages {
+        private static final AtomicInteger sGeneration = new AtomicInteger();
+        @Nullable
+        private static volatile InstalledPackages sInstance;
+
+        @NonNull
+        public static InstalledPackages getInstance() {
+            InstalledPackages instance = sInstance;
+            if (instance != null && instance.mGeneration == sGeneration.get()) {
+                return instance;
+            }
+            synchronized (InstalledPackages.class) {
+                instance = sInstance;
+                int generation = sGeneration.get();
+                if (instance == null || instance.mGeneration != generation) {
+                    instance = new InstalledPackages(generation);
+                    sInstance = instance;
+                }
+                return instance;
+            }
+        }
+
+        public final HashMap<String, PackageInfo> packages;
+        // UIDs shared by multiple packages are excluded
+        public final HashMap<Integer, PackageInfo> uniqueUids;
+        private final int mGeneration;
+
+        InstalledPackages() {
+            packages = new HashMap<>();
+            uniqueUids = new HashMap<>();
+            mGeneration = -1;
+        }
+
+        @WorkerThread
+        private InstalledPackages(int generation) {
+            mGeneration = generation;
+            List<PackageInfo> packageInfoList = PackageUtils.getAllPackages(PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES);
+            packages = new HashMap<>(packageInfoList.size());
+            for (PackageInfo info : packageInfoList) {
+                packages.put(info.packageName, info);
+            }
+            uniqueUids = new HashMap<>(packageInfoList.size());
+            List<Integer> duplicateUids = new ArrayList<>();
+            for (PackageInfo info : packageInfoList) {
+                int uid = info.applicationInfo.uid;
+                if (uniqueUids.containsKey(uid)) {
+                    // A shared user ID (other way to check user ID will not work since we're only interested in
+                    // duplicate values)
+                    duplicateUids.add(uid);
+                } else uniqueUids.put(uid, info);
+            }
+            // Remove duplicate UIDs as they might create collisions
+            for (int uid : duplicateUids) uniqueUids.remove(uid);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.runningapps;
+
+import android.util.SparseArray;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.Collection;
+
+/**
+ * Keeps a {@link ProcessHistory} for every running process. Each refresh of the running processes is added as a
+ * sample, and the histories of the processes that are no longer running are dropped.
+ */
+public class ProcessSampler {
+    @GuardedBy("mHistories")
+    private final SparseArray<ProcessHistory> mHistories = new SparseArray<>(256);
+    // Reused for finding the histories to drop
+    @GuardedBy("mHistories")
+    private final SparseArray<ProcessHistory> mSampledHistories = new SparseArray<>(256);
+
+    /**
+     * @param time Time of the sample in milliseconds, e.g. {@link android.os.SystemClock#elapsedRealtime()}
+     */
+    @WorkerThread
+    public void addSample(@NonNull Collection<ProcessItem> processItems, long time) {
+        synchronized (mHistories) {
+            mSampledHistories.clear();
+            for (ProcessItem item : processItems) {
+                ProcessHistory history = getHistory(mHistories.get(item.pid), item.pid, item.getStartTime());
+                // An app process may appear multiple times (once per package), the history ignores the duplicates
+                history.add(time, item.getPreciseCpuTimeInMillis(), item.getMemory(), item.getIoReadBytes(),
+                        item.getIoWriteBytes());
+                mSampledHistories.put(item.pid, history);
+            }
+            mHistories.clear();
+            for (int i = 0; i < mSampledHistories.size(); ++i) {
+                mHistories.append(mSampledHistories.keyAt(i), mSampledHistories.valueAt(i));
+            }
+            mSampledHistories.clear();
+        }
+    }
+
+    /**
+     * @return The existing history if it belongs to the same process, or a new history if the process is new or the
+     * PID is reused by another process
+     */
+    @VisibleForTesting
+    @NonNull
+    static ProcessHistory getHistory(@Nullable ProcessHistory history, int pid, long startTime) {
+        if (history == null || history.getPid() != pid || history.getStartTime() != startTime) {
+            return new ProcessHistory(pid, startTime);
+        }
+        return history;
+    }
+
+    @AnyThread
+    @Nullable
+    public ProcessHistory getHistory(int pid) {
+        synchronized (mHistories) {
+            return mHistories.get(pid);
+        }
+    }
+
+    /**
+     * @return CPU usage in percent between the last two samples, or 0 if not available
+     */
+    @AnyThread
+    public float getRecentCpuPercent(int pid) {
+        ProcessHistory history = getHistory(pid);
+        return history != null ? history.getRecentCpuPercent() : 0;
+    }
+
+    @AnyThread
+    public void clear() {
+        synchronized (mHistories) {
+            mHistories.clear();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.google.android.material.button.MaterialButton;
 import java.util.Locale;
 
 import io.github.muntashirakon.AppManager.R;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.details.AppDetailsActivity;
 import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
 import io.github.muntashirakon.AppManager.utils.DateUtils;
@@ -100,7 +101,8 @@ public class RunningAppDetails extends CapsuleBottomSheetDialogFragment {
             PackageInfo packageInfo = ((AppProcessItem) processItem).packageInfo;
             appContainer.setVisibility(View.VISIBLE);
             ImageLoader.getInstance().displayImage(packageInfo.packageName, packageInfo.applicationInfo, appIcon);
-            appLabel.setText(packageInfo.applicationInfo.loadLabel(requireContext().getPackageManager()));
+            appLabel.setText(AppLabelCache.getInstance().getLabel(packageInfo.applicationInfo,
+                    requireContext().getPackageManager()));
             packageName.setText(packageInfo.packageName);
             openAppInfoButton.setOnClickListener(v -> {
                 Intent appDetailsIntent = AppDetailsActivity.getIntent(requireContext(), packageInfo.packageName,
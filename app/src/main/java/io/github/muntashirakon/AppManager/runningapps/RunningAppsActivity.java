@@ -40,6 +40,7 @@ import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
 import io.github.muntashirakon.AppManager.scanner.vt.VtFileReport;
 import io.github.muntashirakon.AppManager.scanner.vt.VtFileScanMeta;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
+import io.github.muntashirakon.AppManager.self.imagecache.ImagePrefetcher;
 import io.github.muntashirakon.AppManager.settings.FeatureController;
 import io.github.muntashirakon.AppManager.settings.Ops;
 import io.github.muntashirakon.AppManager.settings.Prefs;
@@ -56,6 +57,7 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
             SORT_BY_PROCESS_NAME,
             SORT_BY_APPS_FIRST,
             SORT_BY_MEMORY_USAGE,
+            SORT_BY_CPU_USAGE,
     })
     @Retention(RetentionPolicy.SOURCE)
     public @interface SortOrder {
@@ -65,6 +67,7 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
     public static final int SORT_BY_PROCESS_NAME = 1;
     public static final int SORT_BY_APPS_FIRST = 2;
     public static final int SORT_BY_MEMORY_USAGE = 3;
+    public static final int SORT_BY_CPU_USAGE = 4;
 
     @IntDef(value = {
             FILTER_NONE,
@@ -84,6 +87,15 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
             R.id.action_sort_by_process_name,
             R.id.action_sort_by_apps_first,
             R.id.action_sort_by_memory_usage,
+            R.id.action_sort_by_cpu_usage,
+    };
+
+    private static final int[] REFRESH_INTERVALS = new int[]{2, 5, 10, 30};
+    private static final int[] REFRESH_INTERVAL_IDS = new int[]{
+            R.id.action_refresh_interval_2s,
+            R.id.action_refresh_interval_5s,
+            R.id.action_refresh_interval_10s,
+            R.id.action_refresh_interval_30s,
     };
 
     @Nullable
@@ -98,6 +110,7 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
     private MultiSelectionView mMultiSelectionView;
     @Nullable
     private Menu mSelectionMenu;
+    @Nullable
     private Timer mTimer;
 
     @Override
@@ -117,6 +130,7 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
         mAdapter = new RunningAppsAdapter(this);
         mAdapter.setHasStableIds(false);
         recyclerView.setAdapter(mAdapter);
+        recyclerView.addOnScrollListener(new ImagePrefetcher(mAdapter));
         // Recycler view is focused by default
         recyclerView.requestFocus();
         mMultiSelectionView = findViewById(R.id.selection_view);
@@ -224,6 +238,10 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.activity_running_apps_actions, menu);
+        for (int i = 0; i < REFRESH_INTERVALS.length; ++i) {
+            menu.findItem(REFRESH_INTERVAL_IDS[i]).setTitle(getResources().getQuantityString(R.plurals.usage_seconds,
+                    REFRESH_INTERVALS[i], REFRESH_INTERVALS[i]));
+        }
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -239,6 +257,12 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
         if ((filter & FILTER_USER_APPS) != 0) {
             menu.findItem(R.id.action_filter_user_apps).setChecked(true);
         }
+        int refreshInterval = Prefs.RunningApps.getRefreshIntervalSeconds();
+        for (int i = 0; i < REFRESH_INTERVALS.length; ++i) {
+            if (REFRESH_INTERVALS[i] == refreshInterval) {
+                menu.findItem(REFRESH_INTERVAL_IDS[i]).setChecked(true);
+            }
+        }
         return super.onPrepareOptionsMenu(menu);
     }
 
@@ -266,6 +290,19 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
         } else if (id == R.id.action_sort_by_memory_usage) {
             model.setSortOrder(SORT_BY_MEMORY_USAGE);
             item.setChecked(true);
+        } else if (id == R.id.action_sort_by_cpu_usage) {
+            model.setSortOrder(SORT_BY_CPU_USAGE);
+            item.setChecked(true);
+            // Refresh interval
+        } else if (id == R.id.action_refresh_interval_2s || id == R.id.action_refresh_interval_5s
+                || id == R.id.action_refresh_interval_10s || id == R.id.action_refresh_interval_30s) {
+            for (int i = 0; i < REFRESH_INTERVAL_IDS.length; ++i) {
+                if (REFRESH_INTERVAL_IDS[i] == id) {
+                    Prefs.RunningApps.setRefreshIntervalSeconds(REFRESH_INTERVALS[i]);
+                }
+            }
+            item.setChecked(true);
+            scheduleRefresh();
             // Filter
         } else if (id == R.id.action_filter_apps) {
             if (!item.isChecked()) model.addFilter(FILTER_APPS);
@@ -282,6 +319,26 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
     @Override
     protected void onResume() {
         super.onResume();
+        scheduleRefresh();
+    }
+
+    @Override
+    protected void onPause() {
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer.purge();
+            mTimer = null;
+        }
+        super.onPause();
+    }
+
+    private void scheduleRefresh() {
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer.purge();
+        }
+        // Every refresh is also a sample for the CPU usage, so it should be frequent enough
+        long interval = Prefs.RunningApps.getRefreshIntervalSeconds() * 1000L;
         mTimer = new Timer("running_apps");
         mTimer.schedule(new TimerTask() {
             @Override
@@ -293,14 +350,7 @@ public class RunningAppsActivity extends BaseActivity implements MultiSelectionV
                     }
                 });
             }
-        }, 0, 10_000);
-    }
-
-    @Override
-    protected void onPause() {
-        mTimer.cancel();
-        mTimer.purge();
-        super.onPause();
+        }, 0, interval);
     }
 
     @Override
@@ -21,6 +21,7 @@ import android.widget.TextView;
 
 import androidx.annotation.AttrRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
 import androidx.appcompat.widget.LinearLayoutCompat;
 import androidx.appcompat.widget.PopupMenu;
 
@@ -38,6 +39,7 @@ import io.github.muntashirakon.AppManager.logcat.LogViewerActivity;
 import io.github.muntashirakon.AppManager.logcat.struct.SearchCriteria;
 import io.github.muntashirakon.AppManager.self.SelfPermissions;
 import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
+import io.github.muntashirakon.AppManager.self.imagecache.ImagePrefetcher;
 import io.github.muntashirakon.AppManager.settings.FeatureController;
 import io.github.muntashirakon.AppManager.settings.Ops;
 import io.github.muntashirakon.AppManager.settings.Prefs;
@@ -49,7 +51,8 @@ import io.github.muntashirakon.proc.ProcMemoryInfo;
 import io.github.muntashirakon.util.AdapterUtils;
 import io.github.muntashirakon.widget.MultiSelectionView;
 
-public class RunningAppsAdapter extends MultiSelectionView.Adapter<MultiSelectionView.ViewHolder> {
+public class RunningAppsAdapter extends MultiSelectionView.Adapter<MultiSelectionView.ViewHolder>
+        implements ImagePrefetcher.PrefetchCallback {
     private static final int VIEW_TYPE_MEMORY_INFO = 1;
     private static final int VIEW_TYPE_PROCESS_INFO = 2;
 
@@ -187,10 +190,11 @@ public class RunningAppsAdapter extends MultiSelectionView.Adapter<MultiSelectio
         }
         // Set process IDs
         holder.processIds.setText(mActivity.getString(R.string.pid_and_ppid, processItem.pid, processItem.ppid));
-        // Set memory usage
-        holder.memoryUsage.setText(mActivity.getString(R.string.memory_virtual_memory,
+        // Set memory and recent CPU usage
+        holder.memoryUsage.setText(mActivity.getString(R.string.memory_virtual_memory_cpu,
                 Formatter.formatFileSize(mActivity, processItem.getMemory()),
-                Formatter.formatFileSize(mActivity, processItem.getVirtualMemory())));
+                Formatter.formatFileSize(mActivity, processItem.getVirtualMemory()),
+                mModel.getRecentCpuPercent(processItem.pid)));
         // Set user info
         String userInfo = mActivity.getString(R.string.user_and_uid, processItem.user, processItem.uid);
         String stateInfo;
@@ -349,6 +353,22 @@ public class RunningAppsAdapter extends MultiSelectionView.Adapter<MultiSelectio
         return mModel.getTotalCount();
     }
 
+    @UiThread
+    @Override
+    public void prefetchImage(int position) {
+        ProcessItem processItem;
+        synchronized (mLock) {
+            // The first item is the memory info
+            if (position < 1 || position > mProcessItems.size()) return;
+            processItem = mProcessItems.get(position - 1);
+        }
+        ApplicationInfo applicationInfo;
+        if (processItem instanceof AppProcessItem) {
+            applicationInfo = ((AppProcessItem) processItem).packageInfo.applicationInfo;
+        } else applicationInfo = null;
+        ImageLoader.getInstance().prefetchImage(processItem.name, applicationInfo);
+    }
+
     @Override
     public int getItemCount() {
         synchronized (mLock) {
@@ -4,9 +4,12 @@ package io.github.muntashirakon.AppManager.runningapps;
 
 import android.app.AppOpsManager;
 import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.os.Build;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandleHidden;
 import android.text.TextUtils;
 
@@ -41,6 +44,7 @@ import io.github.muntashirakon.AppManager.scanner.vt.VirusTotal;
 import io.github.muntashirakon.AppManager.scanner.vt.VtFileReport;
 import io.github.muntashirakon.AppManager.scanner.vt.VtFileScanMeta;
 import io.github.muntashirakon.AppManager.settings.Prefs;
+import io.github.muntashirakon.AppManager.types.PackageChangeReceiver;
 import io.github.muntashirakon.AppManager.types.UserPackagePair;
 import io.github.muntashirakon.AppManager.utils.DigestUtils;
 import io.github.muntashirakon.AppManager.utils.MultithreadedExecutor;
@@ -57,16 +61,21 @@ public class RunningAppsViewModel extends AndroidViewModel {
     private final MultithreadedExecutor mExecutor = MultithreadedExecutor.getNewInstance();
     @Nullable
     private final VirusTotal mVt;
+    private final PackageIntentReceiver mPackageObserver;
 
     public RunningAppsViewModel(@NonNull Application application) {
         super(application);
         mSortOrder = Prefs.RunningApps.getSortOrder();
         mFilter = Prefs.RunningApps.getFilters();
         mVt = VirusTotal.getInstance();
+        // Packages may have changed while the running apps were not observed
+        ProcessParser.invalidateInstalledPackages();
+        mPackageObserver = new PackageIntentReceiver(application);
     }
 
     @Override
     protected void onCleared() {
+        getApplication().unregisterReceiver(mPackageObserver);
         mExecutor.shutdownNow();
         super.onCleared();
     }
@@ -163,14 +172,36 @@ public class RunningAppsViewModel extends AndroidViewModel {
 
     @NonNull
     private final List<ProcessItem> mProcessList = new ArrayList<>();
+    // Reused across refreshes, guarded by mProcessList
+    @Nullable
+    private ProcessParser mProcessParser;
+    private final ProcessSampler mProcessSampler = new ProcessSampler();
+
+    /**
+     * Recent CPU, memory and I/O usage of a process, sampled at every refresh, e.g. for drawing a chart.
+     */
+    @AnyThread
+    @Nullable
+    public ProcessHistory getProcessHistory(int pid) {
+        return mProcessSampler.getHistory(pid);
+    }
+
+    @AnyThread
+    public float getRecentCpuPercent(int pid) {
+        return mProcessSampler.getRecentCpuPercent(pid);
+    }
 
     @AnyThread
     public void loadProcesses() {
         mExecutor.submit(() -> {
             synchronized (mProcessList) {
                 try {
+                    if (mProcessParser == null) {
+                        mProcessParser = new ProcessParser();
+                    }
                     mProcessList.clear();
-                    mProcessList.addAll(new ProcessParser().parse());
+                    mProcessList.addAll(mProcessParser.parse());
+                    mProcessSampler.addSample(mProcessList, SystemClock.elapsedRealtime());
                     filterAndSort();
                 } catch (Throwable th) {
                     Log.e("RunningApps", th);
@@ -384,6 +415,9 @@ public class RunningAppsViewModel extends AndroidViewModel {
                         return -Boolean.compare(p1 instanceof AppProcessItem, p2 instanceof AppProcessItem);
                     case RunningAppsActivity.SORT_BY_MEMORY_USAGE:
                         return -Long.compare(p1.rss, p2.rss);
+                    case RunningAppsActivity.SORT_BY_CPU_USAGE:
+                        return -Float.compare(mProcessSampler.getRecentCpuPercent(p1.pid),
+                                mProcessSampler.getRecentCpuPercent(p2.pid));
                     case RunningAppsActivity.SORT_BY_PROCESS_NAME:
                         return p1.name.compareToIgnoreCase(p2.name);
                     case RunningAppsActivity.SORT_BY_PID:
@@ -465,4 +499,16 @@ public class RunningAppsViewModel extends AndroidViewModel {
             mUploadingEnabledWatcher.countDown();
         }
     }
+
+    public static class PackageIntentReceiver extends PackageChangeReceiver {
+        public PackageIntentReceiver(@NonNull Context context) {
+            super(context);
+        }
+
+        @Override
+        @WorkerThread
+        protected void onPackageChanged(Intent intent, @Nullable Integer uid, @Nullable String[] packages) {
+            ProcessParser.invalidateInstalledPackages();
+        }
+    }
 }
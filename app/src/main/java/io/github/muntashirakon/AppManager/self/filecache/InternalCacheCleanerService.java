@@ -14,6 +14,7 @@ import androidx.core.app.PendingIntentCompat;
 
 import java.util.Calendar;
 
+import io.github.muntashirakon.AppManager.self.imagecache.ImageLoader;
 import io.github.muntashirakon.AppManager.types.ForegroundService;
 import io.github.muntashirakon.AppManager.utils.FileUtils;
 import io.github.muntashirakon.io.FileSystemManager;
@@ -68,11 +69,8 @@ public class InternalCacheCleanerService extends ForegroundService {
     }
 
     private void clearOldImages() {
-        // Delete any files not accessed the last 7 days
-        long lastAccessDate = System.currentTimeMillis() - 604_800_000;
-        Path fileCache = Paths.getUnprivileged(FileSystemManager.getLocal().getFile(FileUtils.getCachePath(), "images"));
-        int deleteCount = deleteFilesWithAccessDate(fileCache, lastAccessDate);
-        Log.i(TAG, "Deleted " + deleteCount + " images.");
+        // Images are kept for 7 days
+        ImageLoader.getInstance().clearOldImages();
     }
 
     private static int deleteFilesWithAccessDate(@NonNull Path basePath, long accessDate) {
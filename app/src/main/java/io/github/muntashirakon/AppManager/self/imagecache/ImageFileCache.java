@@ -4,96 +4,353 @@ package io.github.muntashirakon.AppManager.self.imagecache;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.drawable.Drawable;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.utils.FileUtils;
-import io.github.muntashirakon.AppManager.utils.UIUtils;
 import io.github.muntashirakon.io.IoUtils;
 
+/**
+ * A disk cache that packs all the images into a single file instead of keeping one file per image. Thousands of small
+ * files are slow to create, look up and delete on most file systems, and each of them wastes at least a block.
+ * <p>
+ * The file is a sequence of records, each consisting of the tag, the time it was written and the PNG-encoded image.
+ * Records are only ever appended. The index of the latest record of each tag is kept in memory and rebuilt from the
+ * record headers when the file is opened. Replaced and expired records are dropped when the file is compacted.
+ */
 class ImageFileCache {
-    private static final long sLastModifiedDate = System.currentTimeMillis() - 604_800_000;
+    public static final String TAG = ImageFileCache.class.getSimpleName();
 
-    private final File mCacheDir;
+    private static final int MAGIC = 0x414d4943; // AMIC
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final long MAX_AGE_MILLIS = 604_800_000; // 7 days
+    private static final long MAX_FILE_SIZE = 64 * 1024 * 1024; // 64 MiB
+    private static final int MAX_TAG_LENGTH = 4096;
+    private static final int MAX_IMAGE_SIZE = 16 * 1024 * 1024;
 
-    public ImageFileCache() {
-        mCacheDir = new File(FileUtils.getCachePath(), "images");
-        if (!mCacheDir.exists()) {
-            if (!mCacheDir.mkdirs()) {
-                throw new IllegalStateException("Could not create cache. Is this OS broken?");
-            }
+    private static class Entry {
+        final long offset;
+        final int length;
+        final long time;
+
+        Entry(long offset, int length, long time) {
+            this.offset = offset;
+            this.length = length;
+            this.time = time;
         }
     }
 
-    public void putImage(@NonNull String name, @NonNull InputStream inputStream) throws IOException {
-        File iconFile = getImageFile(name);
-        try (OutputStream os = new FileOutputStream(iconFile)) {
-            IoUtils.copy(inputStream, os);
-        }
+    private final File mPackFile;
+    // Previous cache, one PNG file per image
+    private final File mLegacyCacheDir;
+    @GuardedBy("this")
+    private final Map<String, Entry> mIndex = new HashMap<>();
+    @GuardedBy("this")
+    @Nullable
+    private RandomAccessFile mFile;
+    // Size of the replaced and expired records
+    @GuardedBy("this")
+    private long mGarbageSize;
+
+    public ImageFileCache() {
+        this(FileUtils.getCachePath());
     }
 
-    public void putImage(@NonNull String name, @NonNull Drawable drawable) throws IOException {
-        putImage(name, UIUtils.getBitmapFromDrawable(drawable));
+    @VisibleForTesting
+    ImageFileCache(@NonNull File cacheDir) {
+        // Opened lazily on a worker thread
+        mPackFile = new File(cacheDir, "images.pack");
+        mLegacyCacheDir = new File(cacheDir, "images");
     }
 
+    @WorkerThread
     public void putImage(@NonNull String name, @NonNull Bitmap bitmap) throws IOException {
-        File iconFile = getImageFile(name);
-        try (OutputStream os = new FileOutputStream(iconFile)) {
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
-            os.flush();
+        ByteArrayOutputStream image = new ByteArrayOutputStream(16 * 1024);
+        // PNG is lossless, the quality is ignored
+        if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, image)) {
+            throw new IOException("Could not encode image " + name);
+        }
+        putImageBytes(name, image.toByteArray(), System.currentTimeMillis());
+    }
+
+    @VisibleForTesting
+    @WorkerThread
+    void putImageBytes(@NonNull String name, @NonNull byte[] image, long time) throws IOException {
+        byte[] tag = name.getBytes(StandardCharsets.UTF_8);
+        // Build the record in memory so that it is written with a single call
+        ByteArrayOutputStream record = new ByteArrayOutputStream(tag.length + image.length + 16);
+        DataOutputStream dos = new DataOutputStream(record);
+        dos.writeInt(tag.length);
+        dos.write(tag);
+        dos.writeLong(time);
+        dos.writeInt(image.length);
+        dos.write(image);
+        byte[] bytes = record.toByteArray();
+        synchronized (this) {
+            RandomAccessFile file = openLocked();
+            long offset = file.length();
+            if (offset + bytes.length > MAX_FILE_SIZE) {
+                compactLocked();
+                file = openLocked();
+                offset = file.length();
+                if (offset + bytes.length > MAX_FILE_SIZE) {
+                    // Every image is live, start afresh
+                    resetLocked();
+                    file = openLocked();
+                    offset = file.length();
+                }
+            }
+            file.seek(offset);
+            file.write(bytes);
+            Entry previous = mIndex.put(name, new Entry(offset + bytes.length - image.length, image.length, time));
+            if (previous != null) {
+                mGarbageSize += getRecordSize(name, previous);
+            }
         }
     }
 
+    @WorkerThread
     @Nullable
     public Bitmap getImage(@NonNull String name) {
-        File iconFile = getImageFile(name);
-        if (iconFile.lastModified() >= sLastModifiedDate) {
-            try (FileInputStream fis = new FileInputStream(iconFile)) {
-                return BitmapFactory.decodeStream(fis);
-            } catch (IOException e) {
+        byte[] image = getImageBytes(name);
+        if (image == null) {
+            return null;
+        }
+        // Decode outside the lock
+        return BitmapFactory.decodeByteArray(image, 0, image.length);
+    }
+
+    @VisibleForTesting
+    @WorkerThread
+    @Nullable
+    synchronized byte[] getImageBytes(@NonNull String name) {
+        try {
+            FileChannel channel = openLocked().getChannel();
+            Entry entry = mIndex.get(name);
+            if (entry == null || isExpired(entry, System.currentTimeMillis())) {
                 return null;
             }
+            byte[] image = new byte[entry.length];
+            ByteBuffer buffer = ByteBuffer.wrap(image);
+            // A single read may return fewer bytes than requested
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new EOFException("Image " + name + " is truncated.");
+                }
+            }
+            return image;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read image %s", e, name);
+            return null;
         }
-        return null;
     }
 
-    @Nullable
-    public Drawable getImageDrawable(@NonNull String name) {
-        File iconFile = getImageFile(name);
-        if (iconFile.lastModified() >= sLastModifiedDate) {
-            try (FileInputStream fis = new FileInputStream(iconFile)) {
-                return Drawable.createFromStream(fis, name);
+    /**
+     * Drop the expired images and reclaim the space used by the replaced ones.
+     */
+    @WorkerThread
+    public void clear() {
+        synchronized (this) {
+            try {
+                openLocked();
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String, Entry> mapEntry : mIndex.entrySet()) {
+                    if (isExpired(mapEntry.getValue(), now)) {
+                        mGarbageSize += getRecordSize(mapEntry.getKey(), mapEntry.getValue());
+                    }
+                }
+                if (mGarbageSize > 0) {
+                    compactLocked();
+                }
             } catch (IOException e) {
-                return null;
+                Log.w(TAG, "Could not clear cache", e);
             }
         }
-        return null;
     }
 
+    @GuardedBy("this")
     @NonNull
-    private File getImageFile(@NonNull String name) {
-        return new File(mCacheDir, name + ".png");
+    private RandomAccessFile openLocked() throws IOException {
+        if (mFile != null) {
+            return mFile;
+        }
+        deleteLegacyCache();
+        try {
+            mFile = new RandomAccessFile(mPackFile, "rw");
+            loadIndexLocked(mFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load cache, discarding it.", e);
+            resetLocked();
+            mFile = new RandomAccessFile(mPackFile, "rw");
+        }
+        if (mFile.length() == 0) {
+            mFile.writeInt(MAGIC);
+            mFile.writeInt(VERSION);
+        } else if (mGarbageSize > mFile.length() / 2) {
+            compactLocked();
+        }
+        //noinspection ConstantConditions
+        return mFile;
     }
 
-    public void clear() {
-        File[] files = mCacheDir.listFiles();
-        if (files == null) return;
-        int count = 0;
+    @GuardedBy("this")
+    private void loadIndexLocked(@NonNull RandomAccessFile file) throws IOException {
+        mIndex.clear();
+        mGarbageSize = 0;
+        long fileSize = file.length();
+        if (fileSize == 0) {
+            return;
+        }
+        long s = System.currentTimeMillis();
+        long offset = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(mPackFile)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("Unsupported cache file.");
+            }
+            offset = HEADER_SIZE;
+            while (offset < fileSize) {
+                int tagLength = dis.readInt();
+                if (tagLength <= 0 || tagLength > MAX_TAG_LENGTH) {
+                    throw new IOException("Invalid tag length " + tagLength + " at " + offset);
+                }
+                byte[] tag = new byte[tagLength];
+                dis.readFully(tag);
+                long time = dis.readLong();
+                int length = dis.readInt();
+                if (length < 0 || length > MAX_IMAGE_SIZE) {
+                    throw new IOException("Invalid image length " + length + " at " + offset);
+                }
+                long imageOffset = offset + 4 + tagLength + 8 + 4;
+                if (imageOffset + length > fileSize) {
+                    throw new EOFException();
+                }
+                skipFully(dis, length);
+                String name = new String(tag, StandardCharsets.UTF_8);
+                Entry previous = mIndex.put(name, new Entry(imageOffset, length, time));
+                if (previous != null) {
+                    mGarbageSize += getRecordSize(name, previous);
+                }
+                offset = imageOffset + length;
+            }
+        } catch (EOFException e) {
+            // The last record was not written completely, e.g. the app was killed
+            Log.i(TAG, "Discarding incomplete record at %d", offset);
+            file.setLength(offset);
+        }
+        Log.d(TAG, "Time to load %d images: %d ms", mIndex.size(), System.currentTimeMillis() - s);
+    }
+
+    /**
+     * Rewrite the file with only the live records.
+     */
+    @GuardedBy("this")
+    private void compactLocked() throws IOException {
+        RandomAccessFile oldFile = openLocked();
+        File tmpFile = new File(mPackFile.getParentFile(), mPackFile.getName() + ".tmp");
+        Map<String, Entry> newIndex = new HashMap<>(mIndex.size());
+        long now = System.currentTimeMillis();
+        try (RandomAccessFile newFile = new RandomAccessFile(tmpFile, "rw")) {
+            newFile.setLength(0);
+            newFile.writeInt(MAGIC);
+            newFile.writeInt(VERSION);
+            for (Map.Entry<String, Entry> mapEntry : mIndex.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if (isExpired(entry, now)) {
+                    continue;
+                }
+                byte[] tag = mapEntry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] image = new byte[entry.length];
+                oldFile.seek(entry.offset);
+                oldFile.readFully(image);
+                newFile.writeInt(tag.length);
+                newFile.write(tag);
+                newFile.writeLong(entry.time);
+                newFile.writeInt(image.length);
+                long offset = newFile.getFilePointer();
+                newFile.write(image);
+                newIndex.put(mapEntry.getKey(), new Entry(offset, image.length, entry.time));
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            throw e;
+        }
+        IoUtils.closeQuietly(oldFile);
+        mFile = null;
+        if (!tmpFile.renameTo(mPackFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            throw new IOException("Could not replace " + mPackFile);
+        }
+        mFile = new RandomAccessFile(mPackFile, "rw");
+        mIndex.clear();
+        mIndex.putAll(newIndex);
+        mGarbageSize = 0;
+        Log.d(TAG, "Compacted cache: %d images, %d bytes", mIndex.size(), mFile.length());
+    }
+
+    @GuardedBy("this")
+    private void resetLocked() {
+        if (mFile != null) {
+            IoUtils.closeQuietly(mFile);
+            mFile = null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mPackFile.delete();
+        mIndex.clear();
+        mGarbageSize = 0;
+    }
+
+    private void deleteLegacyCache() {
+        File[] files = mLegacyCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
         for (File f : files) {
-            if (f.lastModified() < sLastModifiedDate) {
-                if (f.delete()) ++count;
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mLegacyCacheDir.delete();
+    }
+
+    private static boolean isExpired(@NonNull Entry entry, long now) {
+        return (now - entry.time) >= MAX_AGE_MILLIS;
+    }
+
+    private static long getRecordSize(@NonNull String name, @NonNull Entry entry) {
+        return 4 + name.getBytes(StandardCharsets.UTF_8).length + 8 + 4 + entry.length;
+    }
+
+    private static void skipFully(@NonNull DataInputStream dis, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = dis.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
             }
+            remaining -= skipped;
         }
-        Log.d("Cache", "Deleted %d images.", count);
     }
 }
@@ -10,6 +10,7 @@ import android.widget.ImageView;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.DrawableRes;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.Px;
@@ -21,13 +22,28 @@ import androidx.core.content.ContextCompat;
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.utils.ContextUtils;
 import io.github.muntashirakon.AppManager.utils.ThreadUtils;
 import io.github.muntashirakon.AppManager.utils.UIUtils;
 
 public class ImageLoader implements Closeable {
+    public static final String TAG = ImageLoader.class.getSimpleName();
+
     @AnyThread
     public static void displayImage(@Nullable PackageItemInfo info, @Nullable ImageView imageView) {
         WeakReference<ImageView> ivRef = new WeakReference<>(imageView);
@@ -52,6 +68,11 @@ public class ImageLoader implements Closeable {
         ImageFetcherResult fetchImage(@NonNull String tag);
     }
 
+    // Fetching images is mostly I/O and decoding, a few threads are enough to keep up with scrolling
+    private static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Prefetch only when the loader is not busy with the visible images
+    private static final int MAX_QUEUED_PREFETCHES = 16;
+
     private static final ImageLoader sInstance = new ImageLoader();
 
     @NonNull
@@ -59,11 +80,29 @@ public class ImageLoader implements Closeable {
         return sInstance;
     }
 
-    private final LruCache<String, Bitmap> mMemoryCache = new LruCache<>(300);
+    private final LruCache<String, Bitmap> mMemoryCache;
     private final ImageFileCache mImageFileCache = new ImageFileCache();
-    private boolean mIsClosed = false;
+    // Pending requests are run by priority, see ImageRequest#compareTo(ImageRequest)
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 10,
+            TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+    // Requests that are queued or running, at most one per tag
+    @GuardedBy("mRequests")
+    private final Map<String, ImageRequest> mRequests = new HashMap<>();
+    // The last request of each image view, only accessed from the main thread
+    private final WeakHashMap<ImageView, ImageRequest> mViewRequests = new WeakHashMap<>();
+    private final AtomicLong mSequence = new AtomicLong();
+    private volatile boolean mIsClosed = false;
 
     private ImageLoader() {
+        // Use at most 1/8th of the available memory, like most image loaders
+        int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        mExecutor.allowCoreThreadTimeOut(true);
     }
 
     @WorkerThread
@@ -80,6 +119,10 @@ public class ImageLoader implements Closeable {
     @UiThread
     public void displayImage(@NonNull String tag, @NonNull ImageView imageView,
                              @NonNull ImageFetcherInterface imageFetcherInterface) {
+        if (!cancelPreviousRequest(tag, imageView)) {
+            // Same image is already being loaded in this view
+            return;
+        }
         Bitmap image = mMemoryCache.get(tag);
         if (image != null) {
             imageView.setImageBitmap(image);
@@ -90,24 +133,127 @@ public class ImageLoader implements Closeable {
 
     @UiThread
     public void displayImage(@NonNull String tag, @Nullable PackageItemInfo info, @NonNull ImageView imageView) {
-        Bitmap image = mMemoryCache.get(tag);
-        if (image != null) {
-            imageView.setImageBitmap(image);
-        } else {
-            queueImage(tag, info, imageView);
-        }
+        displayImage(tag, imageView, new PackageInfoImageFetcher(info));
     }
 
+    /**
+     * Load the image into the cache ahead of time, e.g. for the items that are about to be scrolled into view. Unlike
+     * {@link #displayImage(String, ImageView, ImageFetcherInterface)}, images that are being displayed are loaded
+     * first, and nothing is done if too many images are still waiting to be loaded.
+     *
+     * @see ImagePrefetcher
+     */
     @AnyThread
-    private void queueImage(@NonNull String tag, @Nullable PackageItemInfo info, @NonNull ImageView imageView) {
-        queueImage(tag, imageView, new PackageInfoImageFetcher(info));
+    public void prefetchImage(@NonNull String tag, @NonNull ImageFetcherInterface imageFetcherInterface) {
+        if (mIsClosed || mMemoryCache.get(tag) != null || mExecutor.getQueue().size() >= MAX_QUEUED_PREFETCHES) {
+            return;
+        }
+        synchronized (mRequests) {
+            if (mRequests.containsKey(tag)) {
+                return;
+            }
+            ImageRequest request = new ImageRequest(tag, imageFetcherInterface, true, mSequence.incrementAndGet());
+            mRequests.put(tag, request);
+            mExecutor.execute(request);
+        }
     }
 
     @AnyThread
+    public void prefetchImage(@NonNull String tag, @Nullable PackageItemInfo info) {
+        prefetchImage(tag, new PackageInfoImageFetcher(info));
+    }
+
+    @UiThread
     private void queueImage(@NonNull String tag, @NonNull ImageView imageView,
                             @NonNull ImageFetcherInterface imageFetcherInterface) {
-        ImageLoaderQueueItem queueItem = new ImageLoaderQueueItem(tag, imageFetcherInterface, imageView);
-        ThreadUtils.postOnBackgroundThread(new LoadQueueItem(queueItem));
+        ImageRequest request;
+        synchronized (mRequests) {
+            request = mRequests.get(tag);
+            if (request == null) {
+                request = new ImageRequest(tag, imageFetcherInterface, false, mSequence.incrementAndGet());
+                mRequests.put(tag, request);
+                mExecutor.execute(request);
+            } else if (request.isPrefetch() && mExecutor.remove(request)) {
+                // A prefetched image is now being displayed, requeue it with a higher priority
+                request = new ImageRequest(tag, request.getFetcher(), false, mSequence.incrementAndGet());
+                mRequests.put(tag, request);
+                mExecutor.execute(request);
+            }
+            // else: coalesce with the pending request
+        }
+        request.addImageView(imageView);
+        mViewRequests.put(imageView, request);
+    }
+
+    /**
+     * Detach the image view from the image it was previously bound to, e.g. when a row of a list is recycled. The
+     * request is cancelled if no other image view is waiting for it.
+     *
+     * @return {@code false} if the image view is already waiting for the given tag.
+     */
+    @UiThread
+    private boolean cancelPreviousRequest(@NonNull String tag, @NonNull ImageView imageView) {
+        ImageRequest request = mViewRequests.get(imageView);
+        if (request == null) {
+            return true;
+        }
+        if (request.tag.equals(tag)) {
+            return false;
+        }
+        mViewRequests.remove(imageView);
+        if (request.removeImageView(imageView) && !request.isPrefetch()) {
+            synchronized (mRequests) {
+                if (mExecutor.remove(request) && mRequests.get(request.tag) == request) {
+                    mRequests.remove(request.tag);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Load the icons of the given packages and store them in the disk cache, replacing the old ones. This is meant to
+     * be done when the packages are installed or updated so that their icons need not be loaded from the APK files
+     * when they are displayed. The package names are used as tags.
+     */
+    @AnyThread
+    public void storeImagesInBackground(@NonNull List<? extends PackageItemInfo> infoList) {
+        if (infoList.isEmpty()) {
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            Set<String> tags = new HashSet<>(infoList.size());
+            for (PackageItemInfo info : infoList) {
+                if (mIsClosed || ThreadUtils.isInterrupted()) {
+                    return;
+                }
+                if (!tags.add(info.packageName)) {
+                    // Same package in another user
+                    continue;
+                }
+                try {
+                    ImageFetcherResult result = new PackageInfoImageFetcher(info).fetchImage(info.packageName);
+                    if (result.bitmap == null) {
+                        continue;
+                    }
+                    mImageFileCache.putImage(result.tag, result.bitmap);
+                    if (mMemoryCache.get(result.tag) != null) {
+                        // Replace the outdated icon
+                        mMemoryCache.put(result.tag, result.bitmap);
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not store icon of %s", e, info.packageName);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove the old images from the disk cache.
+     */
+    @WorkerThread
+    public void clearOldImages() {
+        mImageFileCache.clear();
     }
 
     @Override
@@ -257,105 +403,152 @@ public class ImageLoader implements Closeable {
         }
     }
 
-    @AnyThread
-    public static class ImageLoaderQueueItem {
+    private class ImageRequest implements Runnable, Comparable<ImageRequest> {
+        @NonNull
         public final String tag;
-        public final WeakReference<ImageView> imageView;
-
+        @NonNull
         private final ImageFetcherInterface mImageFetcherInterface;
+        private final boolean mPrefetch;
+        private final long mSequence;
+        // Only accessed from the main thread
+        private final List<WeakReference<ImageView>> mImageViews = new ArrayList<>(1);
 
-        public ImageLoaderQueueItem(@NonNull String tag, @NonNull ImageFetcherInterface imageFetcherInterface,
-                                    @NonNull ImageView imageView) {
+        ImageRequest(@NonNull String tag, @NonNull ImageFetcherInterface imageFetcherInterface, boolean prefetch,
+                     long sequence) {
             this.tag = tag;
-            this.imageView = new WeakReference<>(imageView);
             mImageFetcherInterface = imageFetcherInterface;
+            mPrefetch = prefetch;
+            mSequence = sequence;
         }
-    }
 
-    private class LoadQueueItem implements Runnable {
-        private final ImageLoaderQueueItem mQueueItem;
+        @NonNull
+        ImageFetcherInterface getFetcher() {
+            return mImageFetcherInterface;
+        }
 
-        LoadQueueItem(ImageLoaderQueueItem queueItem) {
-            mQueueItem = queueItem;
+        boolean isPrefetch() {
+            return mPrefetch;
         }
 
-        @WorkerThread
-        public void run() {
-            if (imageViewReusedOrClosed(mQueueItem)) return;
-            Bitmap image = mImageFileCache.getImage(mQueueItem.tag);
-            if (image != null) {
-                // Cache hit
-                mMemoryCache.put(mQueueItem.tag, image);
-            } else {
-                // Cache miss
-                ImageFetcherResult result = mQueueItem.mImageFetcherInterface.fetchImage(mQueueItem.tag);
-                if (result.bitmap == null) {
-                    // No image produced, try default
-                    DefaultImage defaultImage = result.defaultImage;
-                    String tag = defaultImage.getTag();
-                    if (tag == null) {
-                        // No tag listed, use the image directly
-                        image = defaultImage.getImage();
-                    } else {
-                        // Listed a tag, try cache first
-                        image = mMemoryCache.get(tag);
-                        if (image == null) {
-                            image = mImageFileCache.getImage(tag);
-                        }
-                        if (image == null) {
-                            // Cache miss
-                            image = defaultImage.getImage();
-                            mMemoryCache.put(tag, image);
-                            try {
-                                mImageFileCache.putImage(tag, image);
-                            } catch (IOException ignore) {
-                            }
-                        }
-                    }
-                } else {
-                    image = result.bitmap;
-                    if (result.cacheInMemory) {
-                        mMemoryCache.put(mQueueItem.tag, image);
-                    }
-                    if (result.persistCache) {
-                        try {
-                            mImageFileCache.putImage(result.tag, image);
-                        } catch (IOException ignore) {
-                        }
-                    }
+        @UiThread
+        void addImageView(@NonNull ImageView imageView) {
+            mImageViews.add(new WeakReference<>(imageView));
+        }
+
+        /**
+         * @return {@code true} if no image view is waiting for this request anymore
+         */
+        @UiThread
+        boolean removeImageView(@NonNull ImageView imageView) {
+            Iterator<WeakReference<ImageView>> it = mImageViews.iterator();
+            while (it.hasNext()) {
+                ImageView iv = it.next().get();
+                if (iv == null || iv == imageView) {
+                    it.remove();
                 }
             }
-            if (imageViewReusedOrClosed(mQueueItem)) return;
-            ThreadUtils.postOnMainThread(new LoadImageInImageView(image, mQueueItem));
+            return mImageViews.isEmpty();
         }
-    }
 
-    // Used to display bitmap in the UI thread
-    private class LoadImageInImageView implements Runnable {
-        private final Bitmap mImage;
-        private final ImageLoaderQueueItem mQueueItem;
+        /**
+         * Images that are being displayed come before the prefetched ones, and the most recent requests come first
+         * since they are the most likely to be still visible.
+         */
+        @Override
+        public int compareTo(@NonNull ImageRequest o) {
+            if (mPrefetch != o.mPrefetch) {
+                return mPrefetch ? 1 : -1;
+            }
+            return Long.compare(o.mSequence, mSequence);
+        }
 
-        public LoadImageInImageView(@NonNull Bitmap image, ImageLoaderQueueItem queueItem) {
-            mImage = image;
-            mQueueItem = queueItem;
+        @WorkerThread
+        @Override
+        public void run() {
+            Bitmap image = null;
+            try {
+                if (!mIsClosed) {
+                    image = loadImage(tag, mImageFetcherInterface);
+                }
+            } finally {
+                synchronized (mRequests) {
+                    if (mRequests.get(tag) == this) {
+                        mRequests.remove(tag);
+                    }
+                }
+            }
+            Bitmap finalImage = image;
+            ThreadUtils.postOnMainThread(() -> deliver(finalImage));
         }
 
         @UiThread
-        public void run() {
-            if (imageViewReusedOrClosed(mQueueItem)) return;
-            ImageView iv = mQueueItem.imageView.get();
-            if (iv != null) {
-                Object tag = iv.getTag();
-                if (tag == null || tag.equals(mQueueItem.tag)) {
-                    iv.setImageBitmap(mImage);
+        private void deliver(@Nullable Bitmap image) {
+            for (WeakReference<ImageView> ivRef : mImageViews) {
+                ImageView iv = ivRef.get();
+                if (iv == null || mViewRequests.get(iv) != this) {
+                    // Recycled or rebound to another image
+                    continue;
+                }
+                mViewRequests.remove(iv);
+                Object ivTag = iv.getTag();
+                if (image != null && !mIsClosed && (ivTag == null || ivTag.equals(tag))) {
+                    iv.setImageBitmap(image);
                 }
             }
+            mImageViews.clear();
         }
     }
 
-    @AnyThread
-    private boolean imageViewReusedOrClosed(@NonNull ImageLoaderQueueItem imageLoaderQueueItem) {
-        ImageView iv = imageLoaderQueueItem.imageView.get();
-        return mIsClosed || iv == null;
+    @WorkerThread
+    @NonNull
+    private Bitmap loadImage(@NonNull String imageTag, @NonNull ImageFetcherInterface imageFetcherInterface) {
+        Bitmap image = mMemoryCache.get(imageTag);
+        if (image != null) {
+            // Loaded by another request in the meantime
+            return image;
+        }
+        image = mImageFileCache.getImage(imageTag);
+        if (image != null) {
+            // Cache hit
+            mMemoryCache.put(imageTag, image);
+            return image;
+        }
+        // Cache miss
+        ImageFetcherResult result = imageFetcherInterface.fetchImage(imageTag);
+        if (result.bitmap == null) {
+            // No image produced, try default
+            DefaultImage defaultImage = result.defaultImage;
+            String tag = defaultImage.getTag();
+            if (tag == null) {
+                // No tag listed, use the image directly
+                return defaultImage.getImage();
+            }
+            // Listed a tag, try cache first
+            image = mMemoryCache.get(tag);
+            if (image == null) {
+                image = mImageFileCache.getImage(tag);
+            }
+            if (image == null) {
+                // Cache miss
+                image = defaultImage.getImage();
+                try {
+                    mImageFileCache.putImage(tag, image);
+                } catch (IOException ignore) {
+                }
+            }
+            mMemoryCache.put(tag, image);
+            return image;
+        }
+        image = result.bitmap;
+        if (result.cacheInMemory) {
+            mMemoryCache.put(imageTag, image);
+        }
+        if (result.persistCache) {
+            try {
+                mImageFileCache.putImage(result.tag, image);
+            } catch (IOException ignore) {
+            }
+        }
+        return image;
     }
 }
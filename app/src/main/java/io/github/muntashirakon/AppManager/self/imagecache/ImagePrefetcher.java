@@ -0,0 +1,73 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.self.imagecache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Prefetch the images of the items that are about to be scrolled into view, in the direction of the scroll. Only
+ * {@link LinearLayoutManager} is supported.
+ */
+public class ImagePrefetcher extends RecyclerView.OnScrollListener {
+    public interface PrefetchCallback {
+        /**
+         * Prefetch the image of the item at the given position, usually by calling
+         * {@link ImageLoader#prefetchImage(String, ImageLoader.ImageFetcherInterface)}.
+         */
+        @UiThread
+        void prefetchImage(int position);
+    }
+
+    private static final int PREFETCH_DISTANCE = 10;
+
+    @NonNull
+    private final PrefetchCallback mCallback;
+    // The furthest position prefetched in the current scroll direction
+    private int mLastPrefetchedPosition = RecyclerView.NO_POSITION;
+    private boolean mScrollingDown = true;
+
+    public ImagePrefetcher(@NonNull PrefetchCallback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        if (!(layoutManager instanceof LinearLayoutManager) || adapter == null) {
+            return;
+        }
+        LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+        boolean scrollingDown = dy > 0;
+        if (scrollingDown != mScrollingDown) {
+            mScrollingDown = scrollingDown;
+            mLastPrefetchedPosition = RecyclerView.NO_POSITION;
+        }
+        int itemCount = adapter.getItemCount();
+        if (scrollingDown) {
+            int first = linearLayoutManager.findLastVisibleItemPosition() + 1;
+            if (first <= 0) return;
+            int last = Math.min(first + PREFETCH_DISTANCE, itemCount) - 1;
+            for (int i = Math.max(first, mLastPrefetchedPosition + 1); i <= last; ++i) {
+                mCallback.prefetchImage(i);
+                mLastPrefetchedPosition = i;
+            }
+        } else {
+            int first = linearLayoutManager.findFirstVisibleItemPosition() - 1;
+            if (first < 0) return;
+            int last = Math.max(first - PREFETCH_DISTANCE, -1) + 1;
+            int start = mLastPrefetchedPosition == RecyclerView.NO_POSITION ? first
+                    : Math.min(first, mLastPrefetchedPosition - 1);
+            for (int i = start; i >= last; --i) {
+                mCallback.prefetchImage(i);
+                mLastPrefetchedPosition = i;
+            }
+        }
+    }
+}
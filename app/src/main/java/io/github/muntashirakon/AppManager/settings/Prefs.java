@@ -407,6 +407,18 @@ public final class Prefs {
         public static void setInstallerPackageName(@NonNull String packageName) {
             AppPref.set(AppPref.PrefKey.PREF_INSTALLER_INSTALLER_APP_STR, packageName);
         }
+
+        /**
+         * Number of queued packages that can be prepared while another package is being installed. {@code 0} disables
+         * preparation in advance.
+         */
+        public static int getPrepareAheadCount() {
+            return Math.max(AppPref.getInt(AppPref.PrefKey.PREF_INSTALLER_PREPARE_AHEAD_INT), 0);
+        }
+
+        public static void setPrepareAheadCount(int count) {
+            AppPref.set(AppPref.PrefKey.PREF_INSTALLER_PREPARE_AHEAD_INT, count);
+        }
     }
 
     public static final class LogViewer {
@@ -562,6 +574,14 @@ public final class Prefs {
         public static void setEnableKillForSystemApps(boolean enable) {
             AppPref.set(AppPref.PrefKey.PREF_ENABLE_KILL_FOR_SYSTEM_BOOL, enable);
         }
+
+        public static int getRefreshIntervalSeconds() {
+            return AppPref.getInt(AppPref.PrefKey.PREF_RUNNING_APPS_REFRESH_INTERVAL_INT);
+        }
+
+        public static void setRefreshIntervalSeconds(int seconds) {
+            AppPref.set(AppPref.PrefKey.PREF_RUNNING_APPS_REFRESH_INTERVAL_INT, seconds);
+        }
     }
 
     public static final class Privacy {
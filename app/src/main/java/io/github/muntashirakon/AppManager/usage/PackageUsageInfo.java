@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
+
 public class PackageUsageInfo implements Parcelable {
     @NonNull
     public final String packageName;
@@ -42,7 +44,7 @@ public class PackageUsageInfo implements Parcelable {
         this.userId = userId;
         this.applicationInfo = applicationInfo;
         if (applicationInfo != null) {
-            appLabel = applicationInfo.loadLabel(context.getPackageManager()).toString();
+            appLabel = AppLabelCache.getInstance().getLabel(applicationInfo, context.getPackageManager());
         } else appLabel = packageName;
     }
 
@@ -100,6 +100,7 @@ public class AppPref {
         PREF_INSTALLER_FORCE_DEX_OPT_BOOL,
         PREF_INSTALLER_INSTALL_LOCATION_INT,
         PREF_INSTALLER_INSTALLER_APP_STR,
+        PREF_INSTALLER_PREPARE_AHEAD_INT,
         PREF_INSTALLER_SIGN_APK_BOOL,
 
         PREF_LAST_VERSION_CODE_LONG,
@@ -125,6 +126,7 @@ public class AppPref {
         PREF_PERMISSIONS_SORT_ORDER_INT,
 
         PREF_RUNNING_APPS_FILTER_FLAGS_INT,
+        PREF_RUNNING_APPS_REFRESH_INTERVAL_INT,
         PREF_RUNNING_APPS_SORT_ORDER_INT,
 
         PREF_SAVED_APK_FORMAT_STR,
@@ -422,6 +424,8 @@ public class AppPref {
                 return RunningAppsActivity.SORT_BY_PID;
             case PREF_RUNNING_APPS_FILTER_FLAGS_INT:
                 return RunningAppsActivity.FILTER_NONE;
+            case PREF_RUNNING_APPS_REFRESH_INTERVAL_INT:
+                return 10; // seconds
             case PREF_ENCRYPTION_STR:
                 return CryptoUtils.MODE_NO_ENCRYPTION;
             case PREF_OPEN_PGP_PACKAGE_STR:
@@ -436,6 +440,8 @@ public class AppPref {
                 return PackageInfo.INSTALL_LOCATION_AUTO;
             case PREF_INSTALLER_INSTALLER_APP_STR:
                 return BuildConfig.APPLICATION_ID;
+            case PREF_INSTALLER_PREPARE_AHEAD_INT:
+                return 2;
             case PREF_SIGNATURE_SCHEMES_INT:
                 return SigSchemes.DEFAULT_SCHEMES;
             case PREF_BACKUP_VOLUME_STR:
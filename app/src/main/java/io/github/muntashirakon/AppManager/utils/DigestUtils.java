@@ -8,6 +8,7 @@ import android.util.Pair;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringDef;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
@@ -17,6 +18,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -26,6 +29,7 @@ import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 
 import aosp.libcore.util.HexEncoding;
+import io.github.muntashirakon.io.FileSystemManager;
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
@@ -46,6 +50,10 @@ public class DigestUtils {
     public static final String SHA_384 = "SHA-384";
     public static final String SHA_512 = "SHA-512";
 
+    // Large sequential reads are considerably faster on slow storage, e.g. SD cards
+    private static final int LARGE_BUFFER_SIZE = 1024 * 1024;
+    private static final long MAP_CHUNK_SIZE = 64 * 1024 * 1024;
+
     @AnyThread
     @NonNull
     public static String getHexDigest(@Algorithm String algo, @NonNull byte[] bytes) {
@@ -77,6 +85,22 @@ public class DigestUtils {
         return getHexDigest(algo, fullString.getBytes());
     }
 
+    /**
+     * Same as {@link #getHexDigest(String, Path)} for a regular file, except that errors are not ignored and the file
+     * is read in large chunks. Files that can be memory-mapped are hashed without copying their contents.
+     */
+    @WorkerThread
+    @NonNull
+    public static String getFileHexDigest(@Algorithm String algo, @NonNull Path file) throws IOException {
+        byte[] digest = CRC32.equals(algo) ? null : getMappedDigest(algo, file);
+        if (digest == null) {
+            try (InputStream is = file.openInputStream()) {
+                digest = getDigest(algo, is, LARGE_BUFFER_SIZE);
+            }
+        }
+        return HexEncoding.encodeToString(digest, false /* lowercase */);
+    }
+
     @WorkerThread
     @NonNull
     public static String getHexDigest(@Algorithm String algo, @NonNull InputStream stream) {
@@ -124,6 +148,69 @@ public class DigestUtils {
         }
     }
 
+    @WorkerThread
+    @NonNull
+    private static byte[] getDigest(@Algorithm String algo, @NonNull InputStream stream, int bufferSize)
+            throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        if (CRC32.equals(algo)) {
+            CRC32 crc32 = new CRC32();
+            int length;
+            while ((length = stream.read(buffer)) != -1) {
+                crc32.update(buffer, 0, length);
+            }
+            return longToBytes(crc32.getValue());
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(algo);
+        } catch (NoSuchAlgorithmException e) {
+            return ExUtils.rethrowAsIOException(e);
+        }
+        int length;
+        while ((length = stream.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, length);
+        }
+        return messageDigest.digest();
+    }
+
+    /**
+     * @return The digest, or {@code null} if the file cannot be memory-mapped, e.g. it is accessed via a remote file
+     * system or SAF.
+     */
+    @WorkerThread
+    @Nullable
+    private static byte[] getMappedDigest(@Algorithm String algo, @NonNull Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = file.openFileChannel(FileSystemManager.MODE_READ_ONLY);
+        } catch (IOException e) {
+            return null;
+        }
+        try (FileChannel fc = channel) {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance(algo);
+            } catch (NoSuchAlgorithmException e) {
+                return ExUtils.rethrowAsIOException(e);
+            }
+            long size = fc.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(MAP_CHUNK_SIZE, size - position);
+                MappedByteBuffer buffer;
+                try {
+                    buffer = fc.map(FileChannel.MapMode.READ_ONLY, position, length);
+                } catch (UnsupportedOperationException e) {
+                    return null;
+                }
+                messageDigest.update(buffer);
+                position += length;
+            }
+            return messageDigest.digest();
+        }
+    }
+
     @WorkerThread
     public static long calculateCrc32(Path file) throws IOException {
         try (InputStream is = file.openInputStream()) {
@@ -0,0 +1,352 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_DISABLED_COMPONENTS;
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES;
+import static io.github.muntashirakon.AppManager.compat.PackageManagerCompat.MATCH_UNINSTALLED_PACKAGES;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.os.UserHandleHidden;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UserIdInt;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.muntashirakon.AppManager.compat.AppOpsManagerCompat;
+import io.github.muntashirakon.AppManager.compat.ManifestCompat;
+import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
+import io.github.muntashirakon.AppManager.logs.Log;
+import io.github.muntashirakon.AppManager.rules.RuleType;
+import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
+import io.github.muntashirakon.AppManager.self.SelfPermissions;
+import io.github.muntashirakon.AppManager.users.Users;
+
+/**
+ * A short-lived snapshot of the installed packages along with their labels, components and configured app ops. Scans
+ * over all packages (one-click operations, debloater, etc.) would otherwise fetch the package info and load the label
+ * of every package again and again. The snapshot is built once, in parallel, and shared until it expires or it is
+ * {@link #invalidate() invalidated}, i.e. when a package is installed, updated or uninstalled, or when the app ops of a
+ * package are modified. Only the names of the components are kept, so blocking them does not invalidate the snapshot.
+ * <p>
+ * Packages are loaded for all users if the app can interact across users, and for the current user otherwise. The
+ * returned objects are shared and must not be modified.
+ */
+public final class PackageSnapshot {
+    public static final String TAG = PackageSnapshot.class.getSimpleName();
+
+    private static final long MAX_AGE_MILLIS = 5 * 60_000; // 5 minutes
+
+    public static final class Entry {
+        @NonNull
+        public final ApplicationInfo applicationInfo;
+        @UserIdInt
+        public final int userId;
+        @NonNull
+        public final String label;
+        @NonNull
+        private final Map<String, RuleType> mComponents;
+        @GuardedBy("this")
+        @Nullable
+        private List<AppOpsManagerCompat.OpEntry> mOpEntries;
+        @GuardedBy("this")
+        private boolean mOpEntriesLoaded;
+
+        private Entry(@NonNull PackageInfo packageInfo, @UserIdInt int userId, @NonNull PackageManager pm) {
+            this.applicationInfo = packageInfo.applicationInfo;
+            this.userId = userId;
+            this.label = AppLabelCache.getInstance().getLabel(applicationInfo, pm);
+            mComponents = Collections.unmodifiableMap(PackageUtils.collectComponentClassNames(packageInfo));
+        }
+
+        @NonNull
+        public String getPackageName() {
+            return applicationInfo.packageName;
+        }
+
+        /**
+         * Same as {@link PackageUtils#collectComponentClassNames(PackageInfo)}.
+         */
+        @NonNull
+        public Map<String, RuleType> getComponents() {
+            return mComponents;
+        }
+
+        /**
+         * Same as {@link PackageUtils#getFilteredComponents(PackageInfo, String[])}.
+         */
+        @NonNull
+        public HashMap<String, RuleType> getFilteredComponents(@NonNull String[] signatures) {
+            return PackageUtils.getFilteredComponents(mComponents, signatures);
+        }
+
+        /**
+         * Same as {@link ComponentUtils#getTrackerComponentsForPackage(PackageInfo)}.
+         */
+        @NonNull
+        public HashMap<String, RuleType> getTrackerComponents() {
+            HashMap<String, RuleType> trackers = new HashMap<>();
+            for (Map.Entry<String, RuleType> component : mComponents.entrySet()) {
+                if (ComponentUtils.isTracker(component.getKey())) {
+                    trackers.put(component.getKey(), component.getValue());
+                }
+            }
+            return trackers;
+        }
+
+        /**
+         * Return the app ops whose configured mode differs from the given mode. Unlike {@link
+         * PackageUtils#getFilteredAppOps(String, int, int[], int)}, the configured app ops are fetched only once per
+         * package. If they could not be fetched, all the given app ops are returned.
+         *
+         * @see PackageSnapshot#loadAppOps()
+         */
+        @WorkerThread
+        @NonNull
+        public Collection<Integer> getFilteredAppOps(@NonNull int[] appOps, int mode) {
+            List<AppOpsManagerCompat.OpEntry> opEntries = getConfiguredOps();
+            List<Integer> filteredAppOps = new ArrayList<>();
+            for (int appOp : appOps) {
+                if (opEntries == null || AppOpsManagerCompat.getModeFromOpEntriesOrDefault(appOp, opEntries) != mode) {
+                    filteredAppOps.add(appOp);
+                }
+            }
+            return filteredAppOps;
+        }
+
+        @WorkerThread
+        @Nullable
+        private synchronized List<AppOpsManagerCompat.OpEntry> getConfiguredOps() {
+            if (!mOpEntriesLoaded) {
+                try {
+                    mOpEntries = AppOpsManagerCompat.getConfiguredOpsForPackage(new AppOpsManagerCompat(),
+                            applicationInfo.packageName, applicationInfo.uid);
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not fetch app ops for %s (user %d)", e, applicationInfo.packageName, userId);
+                    mOpEntries = null;
+                }
+                mOpEntriesLoaded = true;
+            }
+            return mOpEntries;
+        }
+    }
+
+    @GuardedBy("PackageSnapshot.class")
+    @Nullable
+    private static PackageSnapshot sInstance;
+    // Not guarded by the class lock so that package broadcasts are never blocked by a build
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+    private static final Object sObserverLock = new Object();
+    @GuardedBy("sObserverLock")
+    private static int sObserverCount;
+
+    /**
+     * Return the current snapshot, building it if it has expired or has been invalidated. Concurrent callers wait for
+     * the same snapshot to be built.
+     *
+     * @throws InterruptedException if the thread was interrupted while the snapshot was being built
+     */
+    @WorkerThread
+    @NonNull
+    public static PackageSnapshot getInstance() throws InterruptedException {
+        synchronized (PackageSnapshot.class) {
+            if (sInstance != null && !sInstance.isExpired()) {
+                return sInstance;
+            }
+            PackageSnapshot snapshot = new PackageSnapshot(sGeneration.get());
+            snapshot.build(ContextUtils.getContext().getPackageManager());
+            sInstance = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Drop the current snapshot, including the configured app ops of its packages. It is built again the next time it
+     * is requested. Changes in app ops are not broadcast by the system, so the callers modifying them must invalidate
+     * the snapshot themselves.
+     */
+    @AnyThread
+    public static void invalidate() {
+        sGeneration.incrementAndGet();
+    }
+
+    /**
+     * Called by the screens that invalidate the snapshot on package changes when they start observing them. If no
+     * screen was observing package changes, they may have changed in the meantime, and the snapshot is invalidated.
+     * Otherwise, the snapshot is shared with the screens already observing them.
+     */
+    @AnyThread
+    public static void startObserving() {
+        synchronized (sObserverLock) {
+            if (sObserverCount++ == 0) {
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * Called by the screens that called {@link #startObserving()} when they stop observing package changes.
+     */
+    @AnyThread
+    public static void stopObserving() {
+        synchronized (sObserverLock) {
+            --sObserverCount;
+        }
+    }
+
+    private final int mGeneration;
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final List<Entry> mUniqueEntries = new ArrayList<>();
+    private final Map<String, List<Entry>> mPackageEntries = new HashMap<>();
+    private long mCreationTime;
+    @GuardedBy("this")
+    private boolean mAppOpsLoaded;
+
+    private PackageSnapshot(int generation) {
+        mGeneration = generation;
+    }
+
+    /**
+     * All the packages in all the loaded users.
+     */
+    @NonNull
+    public List<Entry> getAllEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    /**
+     * One entry per package, i.e. a package installed in multiple users appear only once. Users are searched in the
+     * order of {@link Users#getUsersIds()}.
+     */
+    @NonNull
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(mUniqueEntries);
+    }
+
+    /**
+     * @return The entry for the package in the given user, or {@code null} if the package is not installed in the user
+     * or the user was not loaded.
+     */
+    @Nullable
+    public Entry getEntry(@NonNull String packageName, @UserIdInt int userId) {
+        List<Entry> entries = mPackageEntries.get(packageName);
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.userId == userId) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetch the configured app ops of all the packages in parallel. This is optional, {@link
+     * Entry#getFilteredAppOps(int[], int)} fetches them for the package on demand otherwise.
+     */
+    @WorkerThread
+    public void loadAppOps() throws InterruptedException {
+        synchronized (this) {
+            if (mAppOpsLoaded) {
+                return;
+            }
+            long s = SystemClock.elapsedRealtime();
+            List<Callable<Object>> tasks = new ArrayList<>(mEntries.size());
+            for (Entry entry : mEntries) {
+                tasks.add(Executors.callable(entry::getConfiguredOps));
+            }
+            invokeAll(tasks);
+            mAppOpsLoaded = true;
+            Log.d(TAG, "Time to load app ops of %d packages: %d ms", mEntries.size(),
+                    SystemClock.elapsedRealtime() - s);
+        }
+    }
+
+    private boolean isExpired() {
+        return mGeneration != sGeneration.get() || (SystemClock.elapsedRealtime() - mCreationTime) >= MAX_AGE_MILLIS;
+    }
+
+    @WorkerThread
+    private void build(@NonNull PackageManager pm) throws InterruptedException {
+        long s = SystemClock.elapsedRealtime();
+        int flags = PackageManager.GET_ACTIVITIES | PackageManager.GET_RECEIVERS | PackageManager.GET_PROVIDERS
+                | PackageManager.GET_SERVICES | MATCH_DISABLED_COMPONENTS | MATCH_UNINSTALLED_PACKAGES
+                | MATCH_STATIC_SHARED_AND_SDK_LIBRARIES;
+        boolean crossUserPermission = SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS)
+                || SelfPermissions.checkSelfOrRemotePermission(ManifestCompat.permission.INTERACT_ACROSS_USERS_FULL);
+        int[] userIds = crossUserPermission ? Users.getUsersIds() : new int[]{UserHandleHidden.myUserId()};
+        List<Callable<Entry>> tasks = new ArrayList<>();
+        for (int userId : userIds) {
+            for (PackageInfo packageInfo : PackageManagerCompat.getInstalledPackages(flags, userId)) {
+                // Labels are loaded from the APK files, which is the slowest part
+                tasks.add(() -> new Entry(packageInfo, userId, pm));
+            }
+            if (ThreadUtils.isInterrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        Set<String> packageNames = new HashSet<>(tasks.size());
+        for (Entry entry : invokeAll(tasks)) {
+            mEntries.add(entry);
+            String packageName = entry.getPackageName();
+            if (packageNames.add(packageName)) {
+                mUniqueEntries.add(entry);
+            }
+            List<Entry> entries = mPackageEntries.get(packageName);
+            if (entries == null) {
+                entries = new ArrayList<>(1);
+                mPackageEntries.put(packageName, entries);
+            }
+            entries.add(entry);
+        }
+        mCreationTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Time to load %d packages of %d users: %d ms", mEntries.size(), userIds.length,
+                mCreationTime - s);
+    }
+
+    /**
+     * Run the tasks on a bounded pool and return the successful results in the same order as the tasks.
+     */
+    @WorkerThread
+    @NonNull
+    private static <T> List<T> invokeAll(@NonNull List<Callable<T>> tasks) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(MultithreadedExecutor.getThreadCount());
+        try {
+            List<Future<T>> futures = executor.invokeAll(tasks);
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // e.g. the package was uninstalled in the meantime
+                    Log.w(TAG, "Could not load package", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -86,6 +86,7 @@ import io.github.muntashirakon.AppManager.compat.PackageManagerCompat;
 import io.github.muntashirakon.AppManager.db.entity.App;
 import io.github.muntashirakon.AppManager.db.entity.Backup;
 import io.github.muntashirakon.AppManager.db.utils.AppDb;
+import io.github.muntashirakon.AppManager.db.utils.AppLabelCache;
 import io.github.muntashirakon.AppManager.ipc.ProxyBinder;
 import io.github.muntashirakon.AppManager.logs.Log;
 import io.github.muntashirakon.AppManager.main.ApplicationItem;
@@ -396,8 +397,18 @@ public final class PackageUtils {
 
     @NonNull
     public static HashMap<String, RuleType> getFilteredComponents(String packageName, @UserIdInt int userHandle, String[] signatures) {
+        return getFilteredComponents(collectComponentClassNames(packageName, userHandle), signatures);
+    }
+
+    @NonNull
+    public static HashMap<String, RuleType> getFilteredComponents(@Nullable PackageInfo packageInfo, String[] signatures) {
+        return getFilteredComponents(collectComponentClassNames(packageInfo), signatures);
+    }
+
+    @NonNull
+    public static HashMap<String, RuleType> getFilteredComponents(@NonNull Map<String, RuleType> components,
+                                                                  String[] signatures) {
         HashMap<String, RuleType> filteredComponents = new HashMap<>();
-        HashMap<String, RuleType> components = collectComponentClassNames(packageName, userHandle);
         for (String componentName : components.keySet()) {
             for (String signature : signatures) {
                 if (componentName.startsWith(signature) || componentName.contains(signature)) {
@@ -514,6 +525,10 @@ public final class PackageUtils {
 
     @NonNull
     public static CharSequence getPackageLabel(@NonNull PackageManager pm, String packageName, int userHandle) {
+        String label = AppLabelCache.getInstance().getLabel(packageName, userHandle);
+        if (label != null) {
+            return label;
+        }
         try {
             ApplicationInfo applicationInfo = PackageManagerCompat.getApplicationInfo(packageName,
                     PackageManagerCompat.MATCH_STATIC_SHARED_AND_SDK_LIBRARIES, userHandle);
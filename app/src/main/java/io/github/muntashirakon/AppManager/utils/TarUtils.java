@@ -19,6 +19,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -30,6 +31,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
@@ -73,18 +75,41 @@ public final class TarUtils {
                                     @NonNull String destFilePrefix, @Nullable String[] filters,
                                     @Nullable Long splitSize, @Nullable String[] exclude, boolean followLinks)
             throws IOException {
+        return create(type, source, dest, destFilePrefix, filters, splitSize, exclude, followLinks, false);
+    }
+
+    /**
+     * Same as {@link #create(String, Path, Path, String, String[], Long, String[], boolean)} except that the fastest
+     * compression level can be requested. This is useful for files that are already compressed (e.g. APK files), where
+     * a higher compression level costs a lot of time for almost no gain. The output can be extracted as usual.
+     *
+     * @param fastCompression Whether to use the fastest compression level. Ignored for {@link #TAR_BZIP2}.
+     */
+    @WorkerThread
+    @NonNull
+    public static List<Path> create(@NonNull @TarType String type, @NonNull Path source, @NonNull Path dest,
+                                    @NonNull String destFilePrefix, @Nullable String[] filters,
+                                    @Nullable Long splitSize, @Nullable String[] exclude, boolean followLinks,
+                                    boolean fastCompression)
+            throws IOException {
         try (SplitOutputStream sos = new SplitOutputStream(dest, destFilePrefix, splitSize == null ? DEFAULT_SPLIT_SIZE : splitSize);
              BufferedOutputStream bos = new BufferedOutputStream(sos)) {
             OutputStream os;
             switch (type) {
                 case TAR_GZIP:
-                    os = new GzipCompressorOutputStream(bos);
+                    if (fastCompression) {
+                        GzipParameters parameters = new GzipParameters();
+                        parameters.setCompressionLevel(Deflater.BEST_SPEED);
+                        os = new GzipCompressorOutputStream(bos, parameters);
+                    } else os = new GzipCompressorOutputStream(bos);
                     break;
                 case TAR_BZIP2:
                     os = new BZip2CompressorOutputStream(bos);
                     break;
                 case TAR_ZSTD:
-                    os = new ZstdOutputStream(bos);
+                    if (fastCompression) {
+                        os = new ZstdOutputStream(bos, 1);
+                    } else os = new ZstdOutputStream(bos);
                     break;
                 default:
                     throw new IllegalArgumentException("Invalid compression type: " + type);
@@ -141,6 +166,20 @@ public final class TarUtils {
                                @Nullable String[] filters, @Nullable String[] exclusions,
                                @Nullable String realDataAppPath)
             throws IOException {
+        extract(type, new SplitInputStream(sources), dest, filters, exclusions, realDataAppPath);
+    }
+
+    /**
+     * Same as {@link #extract(String, Path[], Path, String[], String[], String)} except that the tar file is read from
+     * a stream, e.g. a stream that decrypts the tar file on the fly. The stream is closed after extraction.
+     *
+     * @param source The compressed tar file, all parts concatenated
+     */
+    @WorkerThread
+    public static void extract(@NonNull @TarType String type, @NonNull InputStream source, @NonNull Path dest,
+                               @Nullable String[] filters, @Nullable String[] exclusions,
+                               @Nullable String realDataAppPath)
+            throws IOException {
         // Convert filters into patterns to reduce overheads
         Pattern[] filterPatterns;
         if (filters != null) {
@@ -157,8 +196,7 @@ public final class TarUtils {
             }
         } else exclusionPatterns = null;
         // Run extraction
-        try (SplitInputStream sis = new SplitInputStream(sources);
-             BufferedInputStream bis = new BufferedInputStream(sis)) {
+        try (BufferedInputStream bis = new BufferedInputStream(source)) {
             InputStream is;
             switch (type) {
                 case TAR_GZIP:
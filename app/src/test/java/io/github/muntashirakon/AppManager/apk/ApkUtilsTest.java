@@ -0,0 +1,70 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.reandroid.xml.XMLAttribute;
+import com.reandroid.xml.XMLElement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import io.github.muntashirakon.AppManager.apk.parser.AndroidBinXmlDecoder;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApkUtilsTest {
+    private final ClassLoader classLoader = Objects.requireNonNull(getClass().getClassLoader());
+
+    @Test
+    public void getManifestAttributes() throws IOException, ApkFile.ApkFileException {
+        Path xmlBinary = Paths.get(classLoader.getResource("xml/HMS_Core_Android_Manifest.bin.xml").getFile());
+        ByteBuffer manifestBytes = ByteBuffer.wrap(xmlBinary.getContentAsBinary());
+        HashMap<String, String> manifestAttrs = ApkUtils.getManifestAttributes(manifestBytes);
+        // ApkFile looks up the attributes by these keys
+        assertEquals("com.huawei.hwid", manifestAttrs.get("package"));
+        assertEquals("50001204", manifestAttrs.get("android:versionCode"));
+        assertEquals("com.huawei.hms.app.CoreApplication", manifestAttrs.get("android:name"));
+        assertFalse(manifestAttrs.containsKey("split"));
+        assertFalse(manifestAttrs.containsKey("android:isFeatureSplit"));
+        // The attributes must be the same as the ones read from the whole document
+        manifestBytes.rewind();
+        assertEquals(getManifestAttributesFromDocument(manifestBytes), manifestAttrs);
+    }
+
+    /**
+     * Read the attributes of the manifest and the application elements from the decoded document, as ApkUtils did
+     * before it switched to a pull parser.
+     */
+    private static Map<String, String> getManifestAttributesFromDocument(ByteBuffer manifestBytes) throws IOException {
+        Map<String, String> manifestAttrs = new HashMap<>();
+        XMLElement manifestElement = AndroidBinXmlDecoder.decodeToXml(manifestBytes).getDocumentElement();
+        assertEquals("manifest", manifestElement.getName());
+        for (XMLAttribute attribute : manifestElement.listAttributes()) {
+            if (!attribute.getName().isEmpty()) {
+                manifestAttrs.put(attribute.getName(), attribute.getValue());
+            }
+        }
+        for (XMLElement elem : manifestElement.getChildElementList()) {
+            if ("application".equals(elem.getName())) {
+                for (XMLAttribute attribute : elem.listAttributes()) {
+                    if (!attribute.getName().isEmpty()) {
+                        manifestAttrs.put(attribute.getName(), attribute.getValue());
+                    }
+                }
+                break;
+            }
+        }
+        return manifestAttrs;
+    }
+}
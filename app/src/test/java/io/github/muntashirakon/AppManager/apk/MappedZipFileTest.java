@@ -0,0 +1,94 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class MappedZipFileTest {
+    private static final byte[] MANIFEST = "manifest contents manifest contents".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TEXT = "some text".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void readStoredApkInPlace() throws IOException {
+        byte[] apk = createZip(false, "AndroidManifest.xml", MANIFEST);
+        byte[] bundle = createZip(true, "base.apk", apk);
+        MappedZipFile bundleFile = new MappedZipFile(ByteBuffer.wrap(bundle));
+        assertEquals(1, bundleFile.getEntries().size());
+        MappedZipFile.Entry apkEntry = bundleFile.getEntry("base.apk");
+        assertNotNull(apkEntry);
+        assertTrue(apkEntry.isStored());
+        assertEquals(apk.length, apkEntry.getSize());
+        // Nested APK is read without copying
+        ByteBuffer apkData = bundleFile.getStoredData(apkEntry);
+        assertEquals(apk.length, apkData.remaining());
+        MappedZipFile apkFile = new MappedZipFile(apkData);
+        ByteBuffer manifest = ApkUtils.getManifestFromApk(apkFile);
+        assertArrayEquals(MANIFEST, manifest.array());
+    }
+
+    @Test
+    public void readMappedFile() throws IOException {
+        File file = tmpFolder.newFile("test.zip");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(createZip(false, "dir/text.txt", TEXT));
+        }
+        MappedZipFile zipFile = MappedZipFile.open(file);
+        assertNull(zipFile.getEntry("text.txt"));
+        MappedZipFile.Entry entry = zipFile.getEntry("dir/text.txt");
+        assertNotNull(entry);
+        assertFalse(entry.isStored());
+        assertFalse(entry.isDirectory());
+        assertArrayEquals(TEXT, zipFile.getBytes(entry));
+    }
+
+    @Test(expected = ZipException.class)
+    public void readInvalidZip() throws IOException {
+        new MappedZipFile(ByteBuffer.wrap(TEXT));
+    }
+
+    private static byte[] createZip(boolean stored, String name, byte[] contents) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            ZipEntry zipEntry = new ZipEntry(name);
+            if (stored) {
+                CRC32 crc32 = new CRC32();
+                crc32.update(contents);
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(contents.length);
+                zipEntry.setCompressedSize(contents.length);
+                zipEntry.setCrc(crc32.getValue());
+            }
+            zos.putNextEntry(zipEntry);
+            zos.write(contents);
+            zos.closeEntry();
+        }
+        return bos.toByteArray();
+    }
+}
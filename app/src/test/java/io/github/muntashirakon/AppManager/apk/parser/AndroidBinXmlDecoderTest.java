@@ -7,15 +7,20 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.util.Locale;
 import java.util.Objects;
 
+import io.github.muntashirakon.AppManager.apk.ApkFile;
+import io.github.muntashirakon.AppManager.apk.ApkUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
 
@@ -58,4 +63,52 @@ public class AndroidBinXmlDecoderTest {
         String xml = AndroidBinXmlDecoder.decode(xmlBinary.getContentAsBinary());
         assertEquals(xmlPlainManifest.getContentAsString(), xml);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDecodeToWriter() throws IOException {
+        Path xmlBinary = Paths.get(classLoader.getResource("xml/HMS_Core_Android_Manifest.bin.xml").getFile());
+        Path xmlPlainManifest = Paths.get(classLoader.getResource("xml/HMS_Core_Android_Manifest.man.xml").getFile());
+        byte[] bytes = xmlBinary.getContentAsBinary();
+        // Direct buffers (e.g. memory-mapped files) are supported as well
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bytes.length);
+        byteBuffer.put(bytes);
+        byteBuffer.rewind();
+        StringWriter writer = new StringWriter();
+        AndroidBinXmlDecoder.decode(byteBuffer, writer);
+        assertEquals(xmlPlainManifest.getContentAsString(), writer.toString());
+    }
+
+    @Test
+    public void benchmarkDecode() throws IOException, ApkFile.ApkFileException {
+        // Run with -Pbenchmark
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        Path xmlBinary = Paths.get(classLoader.getResource("xml/HMS_Core_Android_Manifest.bin.xml").getFile());
+        ByteBuffer byteBuffer = ByteBuffer.wrap(xmlBinary.getContentAsBinary());
+        int iterations = 200;
+        // Warm up
+        for (int i = 0; i < 20; ++i) {
+            AndroidBinXmlDecoder.decodeToXml(byteBuffer);
+            AndroidBinXmlDecoder.decode(byteBuffer, new StringWriter());
+        }
+        long s = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            AndroidBinXmlDecoder.decodeToXml(byteBuffer);
+        }
+        long documentTime = (System.nanoTime() - s) / iterations / 1000;
+        s = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            AndroidBinXmlDecoder.decode(byteBuffer, new StringWriter());
+        }
+        long textTime = (System.nanoTime() - s) / iterations / 1000;
+        s = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            ApkUtils.getManifestAttributes(byteBuffer);
+        }
+        long attributesTime = (System.nanoTime() - s) / iterations / 1000;
+        // Reading the manifest attributes only decodes the beginning of the document
+        String message = String.format(Locale.ROOT,
+                "Per manifest: document %d us, text %d us, manifest attributes %d us", documentTime, textTime,
+                attributesTime);
+        assertTrue(message, attributesTime < documentTime);
+    }
+}
@@ -0,0 +1,193 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.backup.convert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import io.github.muntashirakon.AppManager.backup.CryptoUtils;
+import io.github.muntashirakon.AppManager.crypto.Crypto;
+import io.github.muntashirakon.AppManager.crypto.CryptoException;
+import io.github.muntashirakon.AppManager.crypto.RSACrypto;
+import io.github.muntashirakon.AppManager.utils.DigestUtils;
+import io.github.muntashirakon.io.IoUtils;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class EncryptedSplitOutputStreamTest {
+    private static final int PART_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path mBasePath;
+    private RSACrypto mCrypto;
+    private byte[] mData;
+
+    @Before
+    public void setUp() throws IOException, CryptoException {
+        mBasePath = Paths.get(tmpFolder.newFolder());
+        // Without an encrypted key, a random AES key is generated and the key store is not needed
+        mCrypto = new RSACrypto(new byte[12], null);
+        mData = new byte[10_000];
+        new Random(42).nextBytes(mData);
+    }
+
+    @After
+    public void tearDown() {
+        mCrypto.close();
+    }
+
+    @Test
+    public void encryptMultiplePartsOnTheFly() throws IOException {
+        Map<String, String> checksums = write(mCrypto, DigestUtils.SHA_256);
+        assertEquals(Arrays.asList("data.tar.gz.0.rsa", "data.tar.gz.1.rsa", "data.tar.gz.2.rsa"),
+                new ArrayList<>(checksums.keySet()));
+        // No unencrypted part is left behind
+        assertFalse(mBasePath.hasFile("data.tar.gz.0"));
+        assertChecksums(checksums, DigestUtils.SHA_256);
+        assertArrayEquals(mData, decrypt(checksums));
+    }
+
+    @Test
+    public void encryptMultiplePartsWithCrc32() throws IOException {
+        Map<String, String> checksums = write(mCrypto, DigestUtils.CRC32);
+        assertEquals(3, checksums.size());
+        assertChecksums(checksums, DigestUtils.CRC32);
+        assertArrayEquals(mData, decrypt(checksums));
+    }
+
+    @Test
+    public void encryptAfterWritingIfNotOnTheFly() throws IOException {
+        // Same as OpenPGP, which cannot encrypt on the fly
+        Crypto crypto = new DelegatingCrypto(mCrypto);
+        mData = Arrays.copyOf(mData, PART_SIZE);
+        Map<String, String> checksums = write(crypto, DigestUtils.SHA_256);
+        assertEquals(Collections.singletonList("data.tar.gz.0.rsa"), new ArrayList<>(checksums.keySet()));
+        assertFalse(mBasePath.hasFile("data.tar.gz.0"));
+        assertChecksums(checksums, DigestUtils.SHA_256);
+        assertArrayEquals(mData, decrypt(checksums));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checksumsRequireClosing() throws IOException {
+        EncryptedSplitOutputStream esos = new EncryptedSplitOutputStream(mBasePath, "data.tar.gz", PART_SIZE,
+                mCrypto, CryptoUtils.MODE_RSA, DigestUtils.SHA_256);
+        esos.write(mData, 0, 10);
+        esos.getChecksums();
+    }
+
+    @NonNull
+    private Map<String, String> write(@NonNull Crypto crypto, @DigestUtils.Algorithm String algorithm)
+            throws IOException {
+        EncryptedSplitOutputStream esos = new EncryptedSplitOutputStream(mBasePath, "data.tar.gz", PART_SIZE,
+                crypto, CryptoUtils.MODE_RSA, algorithm);
+        try (OutputStream os = esos) {
+            // Mix of single bytes and chunks, a chunk is never split between two parts
+            os.write(mData[0]);
+            for (int off = 1; off < mData.length; off += 1000) {
+                os.write(mData, off, Math.min(1000, mData.length - off));
+            }
+        }
+        return esos.getChecksums();
+    }
+
+    private void assertChecksums(@NonNull Map<String, String> checksums, @DigestUtils.Algorithm String algorithm)
+            throws IOException {
+        for (Map.Entry<String, String> checksum : checksums.entrySet()) {
+            Path part = mBasePath.findFile(checksum.getKey());
+            assertEquals(DigestUtils.getFileHexDigest(algorithm, part), checksum.getValue());
+        }
+    }
+
+    @NonNull
+    private byte[] decrypt(@NonNull Map<String, String> checksums) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (String name : checksums.keySet()) {
+            // Each part is encrypted separately
+            try (InputStream is = mCrypto.getDecryptingStream(mBasePath.findFile(name).openInputStream())) {
+                byte[] part = IoUtils.readFully(is, -1, true);
+                assertTrue(part.length <= PART_SIZE);
+                bos.write(part);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static class DelegatingCrypto implements Crypto {
+        @NonNull
+        private final Crypto mCrypto;
+
+        DelegatingCrypto(@NonNull Crypto crypto) {
+            mCrypto = crypto;
+        }
+
+        @Override
+        public void encrypt(@NonNull Path[] files) throws IOException {
+            mCrypto.encrypt(files);
+        }
+
+        @Override
+        public void encrypt(@NonNull InputStream unencryptedStream, @NonNull OutputStream encryptedStream)
+                throws IOException {
+            mCrypto.encrypt(unencryptedStream, encryptedStream);
+        }
+
+        @Override
+        public void decrypt(@NonNull Path[] files) throws IOException {
+            mCrypto.decrypt(files);
+        }
+
+        @Override
+        public void decrypt(@NonNull InputStream encryptedStream, @NonNull OutputStream unencryptedStream)
+                throws IOException {
+            mCrypto.decrypt(encryptedStream, unencryptedStream);
+        }
+
+        @Nullable
+        @Override
+        public InputStream getDecryptingStream(@NonNull InputStream encryptedStream) {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public OutputStream getEncryptingStream(@NonNull OutputStream unencryptedStream) {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public Path[] getNewFiles() {
+            return mCrypto.getNewFiles();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
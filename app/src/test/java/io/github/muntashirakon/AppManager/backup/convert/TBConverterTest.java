@@ -2,24 +2,32 @@
 
 package io.github.muntashirakon.AppManager.backup.convert;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import io.github.muntashirakon.AppManager.backup.BackupException;
 import io.github.muntashirakon.AppManager.settings.Prefs;
+import io.github.muntashirakon.AppManager.utils.TarUtils;
 import io.github.muntashirakon.AppManager.utils.TarUtilsTest;
+import io.github.muntashirakon.io.IoUtils;
 import io.github.muntashirakon.io.Path;
 import io.github.muntashirakon.io.Paths;
 
@@ -30,6 +38,9 @@ public class TBConverterTest {
     private static final String PACKAGE_NAME_INT = "ca.cmetcalfe.locationshare";
     private static final String PACKAGE_NAME_APK = "ademar.textlauncher";
 
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
     private final ClassLoader classLoader = getClass().getClassLoader();
     private File backupLocation;
 
@@ -44,6 +55,7 @@ public class TBConverterTest {
     @After
     public void tearDown() {
         Paths.get("/tmp/AppManager").delete();
+        Prefs.BackupRestore.setCompressionMethod(TarUtils.TAR_GZIP);
     }
 
     @Test
@@ -146,4 +158,35 @@ public class TBConverterTest {
         assertFalse(newBackupLocation.hasFile("data0.tar.gz.0"));
         assertFalse(newBackupLocation.hasFile("data1.tar.gz.0"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void convertApkAndExtractTest() throws BackupException, IOException {
+        // The APK is decompressed and compressed again using a different method
+        Prefs.BackupRestore.setCompressionMethod(TarUtils.TAR_GZIP);
+        assertApkExtracted(TarUtils.TAR_GZIP, "source.tar.gz.0");
+    }
+
+    @Test
+    public void convertCompressedApkAndExtractTest() throws BackupException, IOException {
+        // The compressed APK is put between the separately compressed tar header and trailer
+        Prefs.BackupRestore.setCompressionMethod(TarUtils.TAR_BZIP2);
+        assertApkExtracted(TarUtils.TAR_BZIP2, "source.tar.bz2.0");
+    }
+
+    private void assertApkExtracted(@TarUtils.TarType String tarType, String sourceFilename)
+            throws BackupException, IOException {
+        Path propFile = Paths.get(new File(backupLocation, PACKAGE_NAME_APK + "-20210530-111646.properties"));
+        TBConverter tbConvert = new TBConverter(propFile);
+        tbConvert.convert();
+        Path newBackupLocation = Prefs.Storage.getAppManagerDirectory().findFile(PACKAGE_NAME_APK).findFile("0_TB");
+        Path dest = Paths.get(tmpFolder.newFolder("extracted"));
+        TarUtils.extract(tarType, new Path[]{newBackupLocation.findFile(sourceFilename)}, dest, null, null, null);
+        byte[] expectedApk;
+        try (InputStream is = new BZip2CompressorInputStream(new FileInputStream(new File(backupLocation,
+                PACKAGE_NAME_APK + "-7016ac07c52a556afd2eed992b976255.apk.bz2")), true)) {
+            expectedApk = IoUtils.readFully(is, -1, true);
+        }
+        assertEquals(Collections.singletonList("base.apk"), Arrays.asList(dest.listFileNames()));
+        assertArrayEquals(expectedApk, dest.findFile("base.apk").getContentAsBinary());
+    }
+}
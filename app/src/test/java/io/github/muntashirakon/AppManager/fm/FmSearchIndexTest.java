@@ -0,0 +1,134 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.fm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class FmSearchIndexTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void searchNameTable() {
+        FmSearchIndex.NameTable nameTable = FmSearchIndex.NameTable.build(Arrays.asList(
+                "DCIM", "DCIM/Camera", "DCIM/Camera/IMG_0001.jpg", "DCIM/Camera/IMG_0002.JPG",
+                "Download/report.pdf", "Download/img.png"));
+        List<String> results = nameTable.search("img_", "", 10);
+        assertEquals(Arrays.asList("DCIM/Camera/IMG_0001.jpg", "DCIM/Camera/IMG_0002.JPG"), results);
+        // Short queries
+        results = nameTable.search("im", "", 10);
+        assertEquals(4, results.size());
+        // Prefix restricts the results to a subdirectory
+        results = nameTable.search("im", "Download/", 10);
+        assertEquals(Collections.singletonList("Download/img.png"), results);
+        // Limit
+        assertEquals(1, nameTable.search("img", "", 1).size());
+        // No match
+        assertTrue(nameTable.search("xyz", "", 10).isEmpty());
+    }
+
+    @Test
+    public void updateIndex() throws IOException {
+        File root = tmpFolder.newFolder("root");
+        File music = new File(root, "Music");
+        assertTrue(new File(music, "Albums").mkdirs());
+        assertTrue(new File(music, "Albums/song.mp3").createNewFile());
+        assertTrue(new File(root, "notes.txt").createNewFile());
+        Path rootPath = Paths.get(root);
+        FmSearchIndex index = FmSearchIndex.getInstance(rootPath);
+        assertTrue(index.update());
+        assertTrue(index.isReady());
+        List<Path> results = index.search(rootPath, "SONG", 10);
+        assertEquals(1, results.size());
+        assertEquals("song.mp3", results.get(0).getName());
+        // Subdirectories share the index of the root
+        Path musicPath = Paths.get(music);
+        assertEquals(index, FmSearchIndex.getInstance(musicPath));
+        assertEquals(1, index.search(musicPath, "song", 10).size());
+        assertTrue(index.search(musicPath, "notes", 10).isEmpty());
+    }
+
+    @Test
+    public void reuseRecentlyUsedIndex() throws IOException {
+        Path first = Paths.get(tmpFolder.newFolder("first"));
+        FmSearchIndex firstIndex = FmSearchIndex.getInstance(first);
+        // Using the first index while other folders are opened keeps it from being evicted
+        for (int i = 0; i < 8; ++i) {
+            FmSearchIndex.getInstance(Paths.get(tmpFolder.newFolder("other" + i)));
+            assertSame(firstIndex, FmSearchIndex.getInstance(first));
+        }
+    }
+
+    @Test
+    public void searchLargeNameTable() {
+        List<String> paths = new ArrayList<>(50_000);
+        for (int dir = 0; dir < 500; ++dir) {
+            for (int file = 0; file < 100; ++file) {
+                paths.add(String.format(Locale.ROOT, "dir%04d/sub%02d/file_%04d_%02d.dat", dir, file % 10, dir, file));
+            }
+        }
+        FmSearchIndex.NameTable nameTable = FmSearchIndex.NameTable.build(paths);
+        assertEquals(paths.size(), nameTable.size());
+        List<String> results = nameTable.search("file_0123_5", "", 1000);
+        assertEquals(10, results.size());
+        for (String result : results) {
+            assertTrue(result.startsWith("dir0123/"));
+        }
+    }
+
+    @Test
+    public void skipVirtualFileSystems() throws IOException {
+        assertFalse(FmSearchIndex.isIndexable(Paths.get("/")));
+        assertFalse(FmSearchIndex.isIndexable(Paths.get("/proc")));
+        assertFalse(FmSearchIndex.isIndexable(Paths.get("/proc/self")));
+        assertFalse(FmSearchIndex.isIndexable(Paths.get("/sys")));
+        assertTrue(FmSearchIndex.isIndexable(Paths.get("/storage/emulated/0")));
+        assertTrue(FmSearchIndex.isIndexable(Paths.get(tmpFolder.newFolder("processes"))));
+    }
+
+    @Test
+    public void benchmarkNameTable() {
+        // Run with -Pbenchmark
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        List<String> paths = new ArrayList<>(500_000);
+        for (int dir = 0; dir < 5_000; ++dir) {
+            for (int file = 0; file < 100; ++file) {
+                paths.add(String.format(Locale.ROOT, "dir%04d/sub%02d/file_%04d_%02d.dat", dir, file % 10, dir, file));
+            }
+        }
+        long s = System.currentTimeMillis();
+        FmSearchIndex.NameTable nameTable = FmSearchIndex.NameTable.build(paths);
+        long buildMillis = System.currentTimeMillis() - s;
+        s = System.nanoTime();
+        List<String> results = nameTable.search("file_1234_5", "", 1000);
+        long searchMillis = (System.nanoTime() - s) / 1_000_000;
+        assertEquals(10, results.size());
+        // The index is built in the background, but searching must be instant
+        String message = String.format(Locale.ROOT, "Built index of %d entries in %d ms, searched in %d ms",
+                nameTable.size(), buildMillis, searchMillis);
+        assertTrue(message, buildMillis < 30_000);
+        assertTrue(message, searchMillis < 50);
+    }
+}
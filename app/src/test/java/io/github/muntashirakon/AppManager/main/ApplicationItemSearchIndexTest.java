@@ -0,0 +1,63 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.muntashirakon.AppManager.misc.AdvancedSearchView;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApplicationItemSearchIndexTest {
+    private final ApplicationItem mPlayStore = newItem("com.android.vending", "Google Play Store");
+    private final ApplicationItem mWhatsApp = newItem("com.whatsapp", "WhatsApp");
+    private final ApplicationItem mSettings = newItem("com.android.settings", "Settings");
+    private final List<ApplicationItem> mItems = Arrays.asList(mPlayStore, mWhatsApp, mSettings);
+
+    @Test
+    public void searchContains() {
+        ApplicationItemSearchIndex index = new ApplicationItemSearchIndex();
+        index.prepare(mItems);
+        assertEquals(Arrays.asList(mPlayStore, mSettings), index.search("android", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems));
+        // Initials
+        assertEquals(Collections.singletonList(mPlayStore), index.search("gps", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems));
+        assertEquals(Collections.singletonList(mWhatsApp), index.search("wa", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems));
+    }
+
+    @Test
+    public void searchWhileTyping() {
+        ApplicationItemSearchIndex index = new ApplicationItemSearchIndex();
+        assertEquals(3, index.search("s", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems).size());
+        assertEquals(Collections.singletonList(mPlayStore), index.search("st", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems));
+        // A changed label must be looked at again even though it was rejected before
+        ApplicationItem renamed = newItem("com.whatsapp", "Status");
+        List<ApplicationItem> items = Arrays.asList(mPlayStore, renamed, mSettings);
+        assertEquals(Collections.singletonList(renamed), index.search("sta", AdvancedSearchView.SEARCH_TYPE_CONTAINS, items));
+        // Deleting characters widens the search again
+        assertEquals(3, index.search("s", AdvancedSearchView.SEARCH_TYPE_CONTAINS, mItems).size());
+    }
+
+    @Test
+    public void searchPrefixAndRegex() {
+        ApplicationItemSearchIndex index = new ApplicationItemSearchIndex();
+        assertEquals(Collections.singletonList(mSettings), index.search("set", AdvancedSearchView.SEARCH_TYPE_PREFIX, mItems));
+        assertEquals(Collections.singletonList(mWhatsApp), index.search("^What", AdvancedSearchView.SEARCH_TYPE_REGEX, mItems));
+        // Invalid pattern
+        assertTrue(index.search("[", AdvancedSearchView.SEARCH_TYPE_REGEX, mItems).isEmpty());
+    }
+
+    private static ApplicationItem newItem(String packageName, String label) {
+        ApplicationItem item = new ApplicationItem();
+        item.packageName = packageName;
+        item.label = label;
+        return item;
+    }
+}
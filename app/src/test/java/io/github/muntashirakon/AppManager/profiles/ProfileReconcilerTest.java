@@ -0,0 +1,176 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.profiles;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.muntashirakon.AppManager.rules.RuleType;
+import io.github.muntashirakon.AppManager.rules.compontents.ComponentUtils;
+import io.github.muntashirakon.AppManager.rules.struct.ComponentRule;
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProfileReconcilerTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final String RECEIVER = "com.example.app.TrackingReceiver";
+    private static final String SERVICE = "com.example.app.TrackingService";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final Set<String> mComponents = new HashSet<>(Arrays.asList(RECEIVER, SERVICE));
+    private final Map<String, ComponentRule> mRules = new HashMap<>();
+    private final Map<String, Integer> mEnabledSettings = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        mRules.clear();
+        mEnabledSettings.clear();
+    }
+
+    @Test
+    public void blockedByIfw() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW);
+        assertTrue(componentsMatch(true, mComponents));
+    }
+
+    @Test
+    public void ifwRuleRemovedOutsideAppManager() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW);
+        assertFalse(componentsMatch(true, Collections.singleton(RECEIVER)));
+    }
+
+    @Test
+    public void ifwRulesUnreadable() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW);
+        assertFalse(componentsMatch(true, null));
+    }
+
+    @Test
+    public void disabled() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_DISABLED);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_DISABLED);
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_DISABLED);
+        mEnabledSettings.put(SERVICE, PackageManager.COMPONENT_ENABLED_STATE_DISABLED_USER);
+        // IFW rules are not needed
+        assertTrue(componentsMatch(true, null));
+    }
+
+    @Test
+    public void reEnabledOutsideAppManager() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_DISABLED);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_DISABLED);
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_DISABLED);
+        mEnabledSettings.put(SERVICE, PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
+        assertFalse(componentsMatch(true, null));
+        mEnabledSettings.put(SERVICE, PackageManager.COMPONENT_ENABLED_STATE_DEFAULT);
+        assertFalse(componentsMatch(true, null));
+    }
+
+    @Test
+    public void enabledSettingUnknown() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_DISABLED);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_DISABLED);
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_DISABLED);
+        assertFalse(componentsMatch(true, null));
+    }
+
+    @Test
+    public void blockedByIfwAndDisabled() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW_DISABLE);
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_DISABLED);
+        mEnabledSettings.put(SERVICE, PackageManager.COMPONENT_ENABLED_STATE_DISABLED);
+        assertTrue(componentsMatch(true, mComponents));
+        // Both are required
+        assertFalse(componentsMatch(true, Collections.singleton(SERVICE)));
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
+        assertFalse(componentsMatch(true, mComponents));
+    }
+
+    @Test
+    public void ruleNotAppliedOrMissing() {
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_TO_BE_BLOCKED_IFW);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW);
+        assertFalse(componentsMatch(true, mComponents));
+        mRules.remove(RECEIVER);
+        assertFalse(componentsMatch(true, mComponents));
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_ENABLED);
+        mEnabledSettings.put(RECEIVER, PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
+        assertFalse(componentsMatch(true, mComponents));
+    }
+
+    @Test
+    public void unblocked() {
+        assertTrue(componentsMatch(false, Collections.emptySet()));
+        assertTrue(componentsMatch(false, null));
+    }
+
+    @Test
+    public void unblockedWithLeftovers() {
+        // Leftover IFW rule
+        assertFalse(componentsMatch(false, Collections.singleton(SERVICE)));
+        // Leftover saved rule
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_TO_BE_DEFAULTED);
+        assertFalse(componentsMatch(false, Collections.emptySet()));
+    }
+
+    @Test
+    public void readIfwRulesFromDisk() throws IOException {
+        Path ifwPath = Paths.get(tmpFolder.newFolder());
+        String rules = "<rules>\n" +
+                "<service block=\"true\" log=\"false\">\n" +
+                "  <component-filter name=\"" + PACKAGE_NAME + "/" + SERVICE + "\"/>\n" +
+                "</service>\n" +
+                "<broadcast block=\"true\" log=\"false\">\n" +
+                "  <component-filter name=\"" + PACKAGE_NAME + "/" + RECEIVER + "\"/>\n" +
+                "</broadcast>\n" +
+                "</rules>";
+        try (OutputStream os = ifwPath.createNewFile(PACKAGE_NAME + ".xml", null).openOutputStream()) {
+            os.write(rules.getBytes());
+        }
+        addRule(RECEIVER, RuleType.RECEIVER, ComponentRule.COMPONENT_BLOCKED_IFW);
+        addRule(SERVICE, RuleType.SERVICE, ComponentRule.COMPONENT_BLOCKED_IFW);
+        assertTrue(componentsMatch(true, ComponentUtils.getIFWRulesForPackage(PACKAGE_NAME, ifwPath).keySet()));
+        // The rules file is removed behind App Manager's back
+        assertTrue(ifwPath.findFile(PACKAGE_NAME + ".xml").delete());
+        assertFalse(componentsMatch(true, ComponentUtils.getIFWRulesForPackage(PACKAGE_NAME, ifwPath).keySet()));
+    }
+
+    private void addRule(@NonNull String name, @NonNull RuleType type, @NonNull String status) {
+        mRules.put(name, new ComponentRule(PACKAGE_NAME, name, type, status));
+    }
+
+    private boolean componentsMatch(boolean stateOn, @Nullable Set<String> ifwComponents) {
+        return ProfileReconciler.componentsMatch(stateOn, mComponents, mRules, ifwComponents, rule -> {
+            Integer enabledSetting = mEnabledSettings.get(rule.name);
+            return enabledSetting != null ? enabledSetting : -1;
+        });
+    }
+}
@@ -0,0 +1,130 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.runningapps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProcessHistoryTest {
+    private static final float DELTA = 0.001f;
+
+    @Test
+    public void firstSampleIsBaseline() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 500, 4096, 0, 0);
+        assertEquals(0, history.size());
+        assertEquals(0, history.getRecentCpuPercent(), DELTA);
+        assertArrayEquals(new long[0], history.getTimes());
+        assertArrayEquals(new float[0], history.getCpuPercentHistory(), DELTA);
+    }
+
+    @Test
+    public void rates() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 500, 4096, 1000, 2000);
+        history.add(3000, 1500, 8192, 5096, 2000);
+        assertEquals(1, history.size());
+        assertArrayEquals(new long[]{3000}, history.getTimes());
+        // 1 s of CPU time in 2 s
+        assertEquals(50, history.getRecentCpuPercent(), DELTA);
+        assertArrayEquals(new float[]{50}, history.getCpuPercentHistory(), DELTA);
+        assertArrayEquals(new long[]{8192}, history.getRssHistory());
+        assertArrayEquals(new float[]{2048}, history.getIoReadRateHistory(), DELTA);
+        assertArrayEquals(new float[]{0}, history.getIoWriteRateHistory(), DELTA);
+    }
+
+    @Test
+    public void multipleCpuCores() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 0, 0, 0, 0);
+        history.add(2000, 2500, 0, 0, 0);
+        assertEquals(250, history.getRecentCpuPercent(), DELTA);
+    }
+
+    @Test
+    public void countersGoingBackwards() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 1000, 0, 1000, 1000);
+        history.add(2000, 500, 0, 500, 500);
+        assertEquals(0, history.getRecentCpuPercent(), DELTA);
+        assertArrayEquals(new float[]{0}, history.getIoReadRateHistory(), DELTA);
+        assertArrayEquals(new float[]{0}, history.getIoWriteRateHistory(), DELTA);
+    }
+
+    @Test
+    public void sameOrEarlierTimeIsIgnored() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 0, 0, 0, 0);
+        history.add(2000, 1000, 4096, 0, 0);
+        // The same process is listed once per package
+        history.add(2000, 9999, 1, 9999, 9999);
+        history.add(1500, 9999, 1, 9999, 9999);
+        assertEquals(1, history.size());
+        assertEquals(100, history.getRecentCpuPercent(), DELTA);
+        assertArrayEquals(new long[]{4096}, history.getRssHistory());
+        // Rates are based on the last accepted sample
+        history.add(3000, 1500, 4096, 0, 0);
+        assertArrayEquals(new float[]{100, 50}, history.getCpuPercentHistory(), DELTA);
+    }
+
+    @Test
+    public void ioNotAvailable() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        history.add(1000, 0, 0, -1, -1);
+        history.add(2000, 0, 0, -1, -1);
+        // Becomes available, e.g. after gaining permission
+        history.add(3000, 0, 0, 1000, -1);
+        history.add(4000, 0, 0, 3000, -1);
+        assertArrayEquals(new float[]{-1, -1, 2000}, history.getIoReadRateHistory(), DELTA);
+        assertArrayEquals(new float[]{-1, -1, -1}, history.getIoWriteRateHistory(), DELTA);
+    }
+
+    @Test
+    public void wrapAround() {
+        ProcessHistory history = new ProcessHistory(100, 5000);
+        int count = ProcessHistory.CAPACITY + 10;
+        // Baseline, then one percent more CPU usage in each sample
+        history.add(0, 0, 0, 0, 0);
+        long cpuTime = 0;
+        for (int i = 1; i <= count; ++i) {
+            cpuTime += i * 10;
+            history.add(i * 1000L, cpuTime, i, 0, 0);
+        }
+        assertEquals(ProcessHistory.CAPACITY, history.size());
+        long[] times = history.getTimes();
+        float[] cpuPercent = history.getCpuPercentHistory();
+        long[] rss = history.getRssHistory();
+        assertEquals(ProcessHistory.CAPACITY, times.length);
+        // Oldest first, the first ten samples are dropped
+        for (int i = 0; i < ProcessHistory.CAPACITY; ++i) {
+            int sample = i + 11;
+            assertEquals(sample * 1000L, times[i]);
+            assertEquals(sample, cpuPercent[i], DELTA);
+            assertEquals(sample, rss[i]);
+        }
+        assertEquals(count, history.getRecentCpuPercent(), DELTA);
+    }
+
+    @Test
+    public void pidReuse() {
+        ProcessHistory history = ProcessSampler.getHistory(null, 100, 5000);
+        history.add(1000, 0, 0, 0, 0);
+        history.add(2000, 1000, 0, 0, 0);
+        // Same process
+        assertSame(history, ProcessSampler.getHistory(history, 100, 5000));
+        // The PID is reused by another process, its counters must not be compared with the old process
+        ProcessHistory newHistory = ProcessSampler.getHistory(history, 100, 9000);
+        assertNotSame(history, newHistory);
+        assertEquals(100, newHistory.getPid());
+        assertEquals(0, newHistory.size());
+        newHistory.add(3000, 10, 0, 0, 0);
+        assertEquals(0, newHistory.size());
+    }
+}
@@ -0,0 +1,208 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.self.imagecache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImageFileCacheTest {
+    private static final long DAY_MILLIS = 86_400_000;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File mCacheDir;
+    private File mPackFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mCacheDir = tmpFolder.newFolder();
+        mPackFile = new File(mCacheDir, "images.pack");
+    }
+
+    @Test
+    public void putAndGetImages() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        byte[] a = randomBytes(1, 100);
+        byte[] b = randomBytes(2, 1024 * 1024);
+        long now = System.currentTimeMillis();
+        cache.putImageBytes("a", a, now);
+        cache.putImageBytes("b", b, now);
+        assertArrayEquals(a, cache.getImageBytes("a"));
+        assertArrayEquals(b, cache.getImageBytes("b"));
+        assertNull(cache.getImageBytes("c"));
+        // The index is rebuilt from the file
+        cache = new ImageFileCache(mCacheDir);
+        assertArrayEquals(a, cache.getImageBytes("a"));
+        assertArrayEquals(b, cache.getImageBytes("b"));
+    }
+
+    @Test
+    public void fileFormat() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        cache.putImageBytes("tag", new byte[]{1, 2, 3}, 1234L);
+        assertEquals(8 + recordSize("tag", 3), mPackFile.length());
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(mPackFile))) {
+            assertEquals(0x414d4943, dis.readInt()); // AMIC
+            assertEquals(1, dis.readInt());
+            assertEquals(3, dis.readInt());
+            byte[] tag = new byte[3];
+            dis.readFully(tag);
+            assertEquals("tag", new String(tag, StandardCharsets.UTF_8));
+            assertEquals(1234L, dis.readLong());
+            assertEquals(3, dis.readInt());
+            byte[] image = new byte[3];
+            dis.readFully(image);
+            assertArrayEquals(new byte[]{1, 2, 3}, image);
+            assertEquals(-1, dis.read());
+        }
+    }
+
+    @Test
+    public void replaceImage() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        byte[] image1 = randomBytes(1, 1000);
+        byte[] image2 = randomBytes(2, 500);
+        long now = System.currentTimeMillis();
+        cache.putImageBytes("a", image1, now);
+        cache.putImageBytes("a", image2, now);
+        assertArrayEquals(image2, cache.getImageBytes("a"));
+        // Records are only appended
+        assertEquals(8 + recordSize("a", 1000) + recordSize("a", 500), mPackFile.length());
+        // The latest record wins
+        cache = new ImageFileCache(mCacheDir);
+        assertArrayEquals(image2, cache.getImageBytes("a"));
+    }
+
+    @Test
+    public void expiredImage() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        long now = System.currentTimeMillis();
+        cache.putImageBytes("old", randomBytes(1, 100), now - 8 * DAY_MILLIS);
+        cache.putImageBytes("new", randomBytes(2, 100), now - DAY_MILLIS);
+        assertNull(cache.getImageBytes("old"));
+        assertArrayEquals(randomBytes(2, 100), cache.getImageBytes("new"));
+        // Expired images are dropped
+        cache.clear();
+        assertEquals(8 + recordSize("new", 100), mPackFile.length());
+        assertArrayEquals(randomBytes(2, 100), cache.getImageBytes("new"));
+    }
+
+    @Test
+    public void compactOnClear() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; ++i) {
+            cache.putImageBytes("a", randomBytes(i, 1000), now);
+            cache.putImageBytes("b" + i, randomBytes(100 + i, 100), now);
+        }
+        cache.clear();
+        assertEquals(8 + recordSize("a", 1000) + 10 * recordSize("b0", 100), mPackFile.length());
+        assertFalse(new File(mCacheDir, "images.pack.tmp").exists());
+        assertArrayEquals(randomBytes(9, 1000), cache.getImageBytes("a"));
+        for (int i = 0; i < 10; ++i) {
+            assertArrayEquals(randomBytes(100 + i, 100), cache.getImageBytes("b" + i));
+        }
+        // Appending after compaction
+        cache.putImageBytes("c", randomBytes(3, 10), now);
+        cache = new ImageFileCache(mCacheDir);
+        assertArrayEquals(randomBytes(9, 1000), cache.getImageBytes("a"));
+        assertArrayEquals(randomBytes(3, 10), cache.getImageBytes("c"));
+    }
+
+    @Test
+    public void compactOnOpen() throws IOException {
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; ++i) {
+            cache.putImageBytes("a", randomBytes(i, 1000), now);
+        }
+        // More than half of the file is garbage
+        cache = new ImageFileCache(mCacheDir);
+        assertArrayEquals(randomBytes(2, 1000), cache.getImageBytes("a"));
+        assertEquals(8 + recordSize("a", 1000), mPackFile.length());
+    }
+
+    @Test
+    public void discardTruncatedTail() throws IOException {
+        long now = System.currentTimeMillis();
+        long validLength = 8 + recordSize("a", 1000);
+        ImageFileCache cache = null;
+        // Truncated in the image, the header and the tag length of the last record
+        for (int missing : new int[]{1, recordSize("b", 1000) - 10, recordSize("b", 1000) - 3}) {
+            assertTrue(!mPackFile.exists() || mPackFile.delete());
+            cache = new ImageFileCache(mCacheDir);
+            cache.putImageBytes("a", randomBytes(1, 1000), now);
+            cache.putImageBytes("b", randomBytes(2, 1000), now);
+            // e.g. the app was killed while writing the last record
+            try (RandomAccessFile file = new RandomAccessFile(mPackFile, "rw")) {
+                file.setLength(file.length() - missing);
+            }
+            cache = new ImageFileCache(mCacheDir);
+            assertArrayEquals(randomBytes(1, 1000), cache.getImageBytes("a"));
+            assertNull(cache.getImageBytes("b"));
+            assertEquals(validLength, mPackFile.length());
+        }
+        // New records are appended after the last complete record
+        cache.putImageBytes("c", randomBytes(3, 100), now);
+        cache = new ImageFileCache(mCacheDir);
+        assertArrayEquals(randomBytes(1, 1000), cache.getImageBytes("a"));
+        assertArrayEquals(randomBytes(3, 100), cache.getImageBytes("c"));
+    }
+
+    @Test
+    public void discardUnsupportedFile() throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(mPackFile)) {
+            fos.write(randomBytes(1, 100));
+        }
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        assertNull(cache.getImageBytes("a"));
+        // Only the header is left
+        assertEquals(8, mPackFile.length());
+        cache.putImageBytes("a", randomBytes(2, 100), System.currentTimeMillis());
+        assertArrayEquals(randomBytes(2, 100), new ImageFileCache(mCacheDir).getImageBytes("a"));
+    }
+
+    @Test
+    public void deleteLegacyCache() throws IOException {
+        File legacyCacheDir = new File(mCacheDir, "images");
+        assertTrue(legacyCacheDir.mkdir());
+        assertTrue(new File(legacyCacheDir, "a.png").createNewFile());
+        ImageFileCache cache = new ImageFileCache(mCacheDir);
+        assertNull(cache.getImageBytes("a"));
+        assertFalse(legacyCacheDir.exists());
+    }
+
+    @NonNull
+    private static byte[] randomBytes(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static int recordSize(@NonNull String tag, int length) {
+        return 4 + tag.getBytes(StandardCharsets.UTF_8).length + 8 + 4 + length;
+    }
+}
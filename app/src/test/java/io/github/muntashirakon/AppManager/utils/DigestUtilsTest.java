@@ -0,0 +1,51 @@
+// SPDX-License-Identifier: GPL-3.0-or-later
+
+package io.github.muntashirakon.AppManager.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import io.github.muntashirakon.io.Path;
+import io.github.muntashirakon.io.Paths;
+
+@RunWith(RobolectricTestRunner.class)
+public class DigestUtilsTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void getFileHexDigestMatchesStreamDigest() throws IOException {
+        Path file = createFile(3 * 1024 * 1024 + 17);
+        for (String algo : new String[]{DigestUtils.SHA_256, DigestUtils.MD5, DigestUtils.CRC32}) {
+            assertEquals(algo, DigestUtils.getHexDigest(algo, file), DigestUtils.getFileHexDigest(algo, file));
+        }
+    }
+
+    @Test
+    public void getFileHexDigestOfEmptyFile() throws IOException {
+        Path file = createFile(0);
+        assertEquals(DigestUtils.getHexDigest(DigestUtils.SHA_256, new byte[0]),
+                DigestUtils.getFileHexDigest(DigestUtils.SHA_256, file));
+    }
+
+    private Path createFile(int size) throws IOException {
+        File file = tmpFolder.newFile();
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(bytes);
+        }
+        return Paths.get(file);
+    }
+}